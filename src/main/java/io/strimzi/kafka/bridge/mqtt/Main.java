@@ -53,7 +53,7 @@ public class Main {
             EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
             MqttServer mqttServer = new MqttServer(bridgeConfig, bossGroup, workerGroup, ChannelOption.SO_KEEPALIVE);
             // start the HTTP server
-            HttpServer httpServer = new HttpServer(mqttServer, mqttServer);
+            HttpServer httpServer = new HttpServer(mqttServer, mqttServer, mqttServer, mqttServer);
 
             CountDownLatch latch = new CountDownLatch(1);
 
@@ -0,0 +1,40 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
+
+/**
+ * Represents a MQTT PUBLISH message decoded by the {@link MqttPublishDecoder},
+ * carrying its MQTT topic already mapped to Kafka.
+ */
+public class MappedPublishMessage extends MqttPublishMessage {
+
+    private final MappedTopic mappedTopic;
+
+    /**
+     * Constructor
+     *
+     * @param fixedHeader    the MQTT fixed header
+     * @param variableHeader the PUBLISH variable header
+     * @param payload        the message payload
+     * @param mappedTopic    the MQTT topic, mapped to Kafka
+     */
+    public MappedPublishMessage(MqttFixedHeader fixedHeader, MqttPublishVariableHeader variableHeader, ByteBuf payload, MappedTopic mappedTopic) {
+        super(fixedHeader, variableHeader, payload);
+        this.mappedTopic = mappedTopic;
+    }
+
+    /**
+     * @return the MQTT topic, mapped to Kafka
+     */
+    public MappedTopic mappedTopic() {
+        return mappedTopic;
+    }
+}
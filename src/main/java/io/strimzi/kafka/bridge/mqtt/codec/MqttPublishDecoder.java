@@ -0,0 +1,240 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Fast path decoder for the MQTT 3.1.1 PUBLISH messages, placed in front of the Netty MqttDecoder. <br>
+ * It splits the incoming bytes into MQTT frames and decodes the PUBLISH ones itself: the topic is looked up,
+ * by its bytes, in a small per-connection cache holding the topic String, its bytes and its mapping to Kafka,
+ * so a PUBLISH on an already seen topic decodes no String and maps nothing, and the payload is a slice of the
+ * received bytes, not a copy. <br>
+ * Any other frame, a PUBLISH it doesn't accept as is (i.e. invalid), and all the frames of a MQTT 5 connection
+ * are passed through to the MqttDecoder.
+ */
+public class MqttPublishDecoder extends ByteToMessageDecoder {
+
+    private static final int CONNECT = 1;
+    private static final int PUBLISH = 3;
+    // the remaining length is encoded on 4 bytes at most
+    private static final int MAX_REMAINING_LENGTH_BYTES = 4;
+    private static final int INCOMPLETE = -1;
+    private static final int MALFORMED = -2;
+
+    private final int maxBytesInMessage;
+    private final Function<String, MappedTopic> topicMapper;
+    // direct-mapped cache of the topics, the slot is picked by the hash of the topic bytes
+    private final MappedTopic[] topics;
+    private final int[] hashes;
+    // set on a MQTT 3.1.1 (or 3.1) CONNECT
+    private boolean fastPath;
+    // set on a MQTT 5 CONNECT or an invalid frame, the MqttDecoder handles everything from there
+    private boolean passThrough;
+    // length of the fixed header of the frame being decoded
+    private int fixedHeaderLength;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytesInMessage maximum number of bytes for a MQTT message, a longer one is left to the MqttDecoder
+     * @param topicCacheSize    number of topics cached, rounded up to a power of two
+     * @param topicMapper       function mapping a MQTT topic to Kafka, on a cache miss
+     */
+    public MqttPublishDecoder(int maxBytesInMessage, int topicCacheSize, Function<String, MappedTopic> topicMapper) {
+        if (topicCacheSize < 1) {
+            throw new IllegalArgumentException("Topic cache size must be greater than 0");
+        }
+        int capacity = topicCacheSize == 1 ? 1 : Integer.highestOneBit(topicCacheSize - 1) << 1;
+        this.maxBytesInMessage = maxBytesInMessage;
+        this.topicMapper = topicMapper;
+        this.topics = new MappedTopic[capacity];
+        this.hashes = new int[capacity];
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (this.passThrough) {
+            out.add(in.readRetainedSlice(in.readableBytes()));
+            return;
+        }
+        int start = in.readerIndex();
+        int remainingLength = readRemainingLength(in, start);
+        if (remainingLength == INCOMPLETE) {
+            return;
+        }
+        if (remainingLength == MALFORMED || remainingLength > this.maxBytesInMessage) {
+            // not buffered here, the MqttDecoder reports it
+            passThrough(in, out);
+            return;
+        }
+        int headerLength = this.fixedHeaderLength;
+        int frameLength = headerLength + remainingLength;
+        if (in.readableBytes() < frameLength) {
+            return;
+        }
+        int type = in.getUnsignedByte(start) >> 4;
+        if (type == PUBLISH && this.fastPath) {
+            MappedPublishMessage message = decodePublish(in, start, headerLength, remainingLength);
+            if (message != null) {
+                out.add(message);
+                return;
+            }
+        } else if (type == CONNECT) {
+            detectVersion(in, start + headerLength, remainingLength);
+        }
+        out.add(in.readRetainedSlice(frameLength));
+    }
+
+    /**
+     * Read the remaining length from the fixed header of a frame, setting the fixed header length
+     *
+     * @param in    the received bytes
+     * @param start index of the frame
+     * @return the remaining length, INCOMPLETE if more bytes are needed, MALFORMED if longer than 4 bytes
+     */
+    private int readRemainingLength(ByteBuf in, int start) {
+        int headerLength = 1;
+        int remainingLength = 0;
+        int shift = 0;
+        byte digit;
+        do {
+            if (headerLength > MAX_REMAINING_LENGTH_BYTES) {
+                return MALFORMED;
+            }
+            if (in.readableBytes() <= headerLength) {
+                return INCOMPLETE;
+            }
+            digit = in.getByte(start + headerLength++);
+            remainingLength |= (digit & 0x7F) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+        this.fixedHeaderLength = headerLength;
+        return remainingLength;
+    }
+
+    /**
+     * Enable the fast path for a MQTT 3.1.1 (or 3.1) CONNECT, or pass through everything for any other version
+     *
+     * @param in              the received bytes
+     * @param index           index of the CONNECT variable header
+     * @param remainingLength length of the CONNECT variable header and payload
+     */
+    private void detectVersion(ByteBuf in, int index, int remainingLength) {
+        if (remainingLength < 2) {
+            return;
+        }
+        int protocolNameLength = in.getUnsignedShort(index);
+        if (remainingLength < 2 + protocolNameLength + 1) {
+            return;
+        }
+        byte protocolLevel = in.getByte(index + 2 + protocolNameLength);
+        if (protocolLevel == 3 || protocolLevel == 4) {
+            this.fastPath = true;
+        } else {
+            this.passThrough = true;
+        }
+    }
+
+    /**
+     * Decode a MQTT 3.1.1 PUBLISH frame
+     *
+     * @param in              the received bytes, with the whole frame
+     * @param start           index of the frame
+     * @param headerLength    length of the fixed header
+     * @param remainingLength length of the variable header and payload
+     * @return the decoded message, null if the frame has to be decoded by the MqttDecoder
+     */
+    private MappedPublishMessage decodePublish(ByteBuf in, int start, int headerLength, int remainingLength) {
+        int flags = in.getUnsignedByte(start);
+        int qos = (flags & 0x06) >> 1;
+        int index = start + headerLength;
+        int end = index + remainingLength;
+        if (qos == 3 || remainingLength < 2) {
+            return null;
+        }
+        int topicLength = in.getUnsignedShort(index);
+        int topicEnd = index + 2 + topicLength;
+        int variableHeaderEnd = qos > 0 ? topicEnd + 2 : topicEnd;
+        if (topicLength == 0 || variableHeaderEnd > end) {
+            return null;
+        }
+        int packetId = -1;
+        if (qos > 0) {
+            packetId = in.getUnsignedShort(topicEnd);
+            if (packetId == 0) {
+                return null;
+            }
+        }
+        MappedTopic mappedTopic = lookupTopic(in, index + 2, topicLength);
+        if (mappedTopic == null) {
+            return null;
+        }
+        in.readerIndex(variableHeaderEnd);
+        ByteBuf payload = in.readRetainedSlice(end - variableHeaderEnd);
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, (flags & 0x08) != 0,
+                MqttQoS.valueOf(qos), (flags & 0x01) != 0, remainingLength);
+        return new MappedPublishMessage(fixedHeader, new MqttPublishVariableHeader(mappedTopic.mqttTopic(), packetId), payload, mappedTopic);
+    }
+
+    /**
+     * Get the topic with the given bytes from the cache, or decode and map it on a cache miss
+     *
+     * @param in     the received bytes
+     * @param index  index of the topic bytes
+     * @param length length of the topic bytes
+     * @return the mapped topic, null if the topic contains wildcards
+     */
+    private MappedTopic lookupTopic(ByteBuf in, int index, int length) {
+        int hash = 1;
+        boolean wildcard = false;
+        for (int i = index; i < index + length; i++) {
+            byte b = in.getByte(i);
+            // multi-byte UTF-8 sequences never contain ASCII bytes
+            wildcard |= b == '+' || b == '#';
+            hash = 31 * hash + b;
+        }
+        if (wildcard) {
+            return null;
+        }
+        int slot = (hash ^ (hash >>> 16)) & (this.topics.length - 1);
+        MappedTopic cached = this.topics[slot];
+        if (cached != null && this.hashes[slot] == hash && equals(in, index, length, cached.mqttTopicBytes())) {
+            return cached;
+        }
+        MappedTopic mappedTopic = this.topicMapper.apply(in.toString(index, length, StandardCharsets.UTF_8));
+        this.topics[slot] = mappedTopic;
+        this.hashes[slot] = hash;
+        return mappedTopic;
+    }
+
+    private static boolean equals(ByteBuf in, int index, int length, byte[] bytes) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (in.getByte(index + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void passThrough(ByteBuf in, List<Object> out) {
+        this.passThrough = true;
+        out.add(in.readRetainedSlice(in.readableBytes()));
+    }
+}
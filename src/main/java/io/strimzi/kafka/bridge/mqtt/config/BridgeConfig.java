@@ -27,6 +27,205 @@ public class BridgeConfig extends AbstractConfig {
     // default Kafka topic. Used when no mapping rule matches the mqtt topic.
     public static final String BRIDGE_DEFAULT_TOPIC = "messages_default";
 
+    // Maximum number of retries done by the bridge for a failed Kafka send
+    public static final String BRIDGE_SEND_RETRIES = BRIDGE_CONFIG_PREFIX + "kafka.send.retries";
+
+    // Base backoff, in milliseconds, between the retries of a failed Kafka send
+    public static final String BRIDGE_SEND_RETRY_BACKOFF_MS = BRIDGE_CONFIG_PREFIX + "kafka.send.retry.backoff.ms";
+
+    // Maximum backoff, in milliseconds, between the retries of a failed Kafka send
+    public static final String BRIDGE_SEND_RETRY_BACKOFF_MAX_MS = BRIDGE_CONFIG_PREFIX + "kafka.send.retry.backoff.max.ms";
+
+    // Ratio of retries allowed compared to the overall number of Kafka sends
+    public static final String BRIDGE_SEND_RETRY_BUDGET_RATIO = BRIDGE_CONFIG_PREFIX + "kafka.send.retry.budget.ratio";
+
+    // Number of retries per second always allowed, regardless of the traffic
+    public static final String BRIDGE_SEND_RETRY_BUDGET_RESERVE = BRIDGE_CONFIG_PREFIX + "kafka.send.retry.budget.reserve";
+
+    // Kafka topic where records which could not be delivered are routed to
+    public static final String BRIDGE_DEAD_LETTER_TOPIC = BRIDGE_CONFIG_PREFIX + "kafka.dead.letter.topic";
+
+    // Kafka topic where records expired before being sent are routed to, instead of being dropped
+    public static final String BRIDGE_EXPIRED_TOPIC = BRIDGE_CONFIG_PREFIX + "kafka.expired.topic";
+
+    // Enables the circuit breaker for each mapped Kafka topic
+    public static final String BRIDGE_CIRCUIT_BREAKER_ENABLED = BRIDGE_CONFIG_PREFIX + "kafka.circuit.breaker.enabled";
+
+    // Number of send errors within the window which trips the circuit breaker of a Kafka topic
+    public static final String BRIDGE_CIRCUIT_BREAKER_FAILURE_THRESHOLD = BRIDGE_CONFIG_PREFIX + "kafka.circuit.breaker.failure.threshold";
+
+    // Sliding window, in milliseconds, used for counting the send errors
+    public static final String BRIDGE_CIRCUIT_BREAKER_WINDOW_MS = BRIDGE_CONFIG_PREFIX + "kafka.circuit.breaker.window.ms";
+
+    // Duration, in milliseconds, a tripped circuit breaker stays open before probing the Kafka topic again
+    public static final String BRIDGE_CIRCUIT_BREAKER_OPEN_MS = BRIDGE_CONFIG_PREFIX + "kafka.circuit.breaker.open.ms";
+
+    // Action for records sent to a Kafka topic with an open circuit breaker (fail or divert)
+    public static final String BRIDGE_CIRCUIT_BREAKER_ACTION = BRIDGE_CONFIG_PREFIX + "kafka.circuit.breaker.action";
+
+    // Enables the adaptive tuning of the Kafka producers linger.ms and batch.size
+    public static final String BRIDGE_ADAPTIVE_ENABLED = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.enabled";
+
+    // Target ack latency, in milliseconds, for the adaptive tuning
+    public static final String BRIDGE_ADAPTIVE_LATENCY_SLO_MS = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.latency.slo.ms";
+
+    // Bounds for the linger.ms set by the adaptive tuning
+    public static final String BRIDGE_ADAPTIVE_LINGER_MS_MIN = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.linger.ms.min";
+    public static final String BRIDGE_ADAPTIVE_LINGER_MS_MAX = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.linger.ms.max";
+
+    // Bounds for the batch.size set by the adaptive tuning
+    public static final String BRIDGE_ADAPTIVE_BATCH_SIZE_MIN = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.batch.size.min";
+    public static final String BRIDGE_ADAPTIVE_BATCH_SIZE_MAX = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.batch.size.max";
+
+    // Interval, in milliseconds, between two evaluations of the adaptive tuning
+    public static final String BRIDGE_ADAPTIVE_INTERVAL_MS = BRIDGE_CONFIG_PREFIX + "kafka.adaptive.interval.ms";
+
+    // Maximum time, in milliseconds, to wait for the in-flight Kafka sends on shutdown
+    public static final String BRIDGE_SHUTDOWN_DRAIN_TIMEOUT_MS = BRIDGE_CONFIG_PREFIX + "shutdown.drain.timeout.ms";
+
+    // Number of recently produced QoS 1 messages remembered per client for suppressing the DUP re-sends, 0 (the default) to disable
+    public static final String BRIDGE_DEDUP_WINDOW_SIZE = BRIDGE_CONFIG_PREFIX + "dedup.window.size";
+    // Maximum number of clients tracked for suppressing the DUP re-sends, the least recently used ones are evicted
+    public static final String BRIDGE_DEDUP_MAX_CLIENTS = BRIDGE_CONFIG_PREFIX + "dedup.max.clients";
+
+    // Path of the memory-mapped file storing the persistent sessions, persistent sessions are not supported if not set
+    public static final String BRIDGE_SESSION_STORE_PATH = BRIDGE_CONFIG_PREFIX + "session.store.path";
+
+    // Maximum number of client connections, 0 for no limit
+    public static final String BRIDGE_CONNECT_MAX_CONNECTIONS = BRIDGE_CONFIG_PREFIX + "connect.max.connections";
+    // Rate and burst of the new TCP connections accepted, 0 rate for no limit
+    public static final String BRIDGE_CONNECT_ACCEPT_RATE = BRIDGE_CONFIG_PREFIX + "connect.accept.rate";
+    public static final String BRIDGE_CONNECT_ACCEPT_BURST = BRIDGE_CONFIG_PREFIX + "connect.accept.burst";
+    // Rate and burst of the CONNECTs processed, 0 rate for no limit
+    public static final String BRIDGE_CONNECT_RATE = BRIDGE_CONFIG_PREFIX + "connect.rate";
+    public static final String BRIDGE_CONNECT_BURST = BRIDGE_CONFIG_PREFIX + "connect.burst";
+    // Messages and payload bytes per second each client can publish, 0 for no limit
+    public static final String BRIDGE_RATE_LIMIT_CLIENT_MESSAGES = BRIDGE_CONFIG_PREFIX + "rate.limit.client.messages";
+    public static final String BRIDGE_RATE_LIMIT_CLIENT_BYTES = BRIDGE_CONFIG_PREFIX + "rate.limit.client.bytes";
+    // Messages and payload bytes per second all the clients with the same username can publish, 0 for no limit
+    public static final String BRIDGE_RATE_LIMIT_USERNAME_MESSAGES = BRIDGE_CONFIG_PREFIX + "rate.limit.username.messages";
+    public static final String BRIDGE_RATE_LIMIT_USERNAME_BYTES = BRIDGE_CONFIG_PREFIX + "rate.limit.username.bytes";
+    // Rate limits of MQTT topic prefixes, as comma separated prefix=messages[:bytes] entries
+    public static final String BRIDGE_RATE_LIMIT_TOPIC_PREFIXES = BRIDGE_CONFIG_PREFIX + "rate.limit.topic.prefixes";
+    // Burst allowed above the rate limits, in seconds of the rates
+    public static final String BRIDGE_RATE_LIMIT_BURST_SECONDS = BRIDGE_CONFIG_PREFIX + "rate.limit.burst.seconds";
+    // Action for the clients above the rate limits (pause or disconnect)
+    public static final String BRIDGE_RATE_LIMIT_ACTION = BRIDGE_CONFIG_PREFIX + "rate.limit.action";
+    // Enables the overload detection, shedding the QoS 0 messages and then the low priority ones when overloaded
+    public static final String BRIDGE_OVERLOAD_ENABLED = BRIDGE_CONFIG_PREFIX + "overload.enabled";
+    // Fraction of the Kafka producers buffer used above which the bridge is overloaded, 0 to ignore
+    public static final String BRIDGE_OVERLOAD_BUFFER_USAGE = BRIDGE_CONFIG_PREFIX + "overload.buffer.usage";
+    // Number of tasks pending in an event loop above which the bridge is overloaded, 0 to ignore
+    public static final String BRIDGE_OVERLOAD_PENDING_TASKS = BRIDGE_CONFIG_PREFIX + "overload.pending.tasks";
+    // Kafka ack latency, in milliseconds, above which the bridge is overloaded, 0 to ignore
+    public static final String BRIDGE_OVERLOAD_ACK_LATENCY_MS = BRIDGE_CONFIG_PREFIX + "overload.ack.latency.ms";
+    // Time, in milliseconds, the bridge stays overloaded before shedding the low priority messages
+    public static final String BRIDGE_OVERLOAD_ESCALATION_MS = BRIDGE_CONFIG_PREFIX + "overload.escalation.ms";
+    // Interval, in milliseconds, between two samples of the overload signals
+    public static final String BRIDGE_OVERLOAD_INTERVAL_MS = BRIDGE_CONFIG_PREFIX + "overload.interval.ms";
+    // Number of top clients and MQTT topics, by messages and bytes, tracked per window, 0 to disable
+    public static final String BRIDGE_HEAVY_HITTERS_TOP = BRIDGE_CONFIG_PREFIX + "heavy.hitters.top";
+    // Window, in milliseconds, the top clients and MQTT topics are tracked over
+    public static final String BRIDGE_HEAVY_HITTERS_WINDOW_MS = BRIDGE_CONFIG_PREFIX + "heavy.hitters.window.ms";
+    // Number of counters per row of the count-min sketches, rounded up to a power of two
+    public static final String BRIDGE_HEAVY_HITTERS_SKETCH_WIDTH = BRIDGE_CONFIG_PREFIX + "heavy.hitters.sketch.width";
+    // Number of messages within a window above which a client is logged, 0 to disable
+    public static final String BRIDGE_HEAVY_HITTERS_CLIENT_WARN_MESSAGES = BRIDGE_CONFIG_PREFIX + "heavy.hitters.client.warn.messages";
+    // Maximum number of MQTT topics whose last payload is tracked by the report-by-exception rules
+    public static final String BRIDGE_REPORT_BY_EXCEPTION_MAX_TOPICS = BRIDGE_CONFIG_PREFIX + "report.by.exception.max.topics";
+    // Interval, in milliseconds, between two checks of the ended downsampling windows
+    public static final String BRIDGE_DOWNSAMPLING_SWEEP_INTERVAL_MS = BRIDGE_CONFIG_PREFIX + "downsampling.sweep.interval.ms";
+    // Maximum number of MQTT topics counted by each event loop for the sampling rules
+    public static final String BRIDGE_SAMPLING_MAX_TOPICS = BRIDGE_CONFIG_PREFIX + "sampling.max.topics";
+
+    public static final int DEFAULT_BRIDGE_SEND_RETRIES = 3;
+
+    public static final long DEFAULT_BRIDGE_SEND_RETRY_BACKOFF_MS = 100;
+
+    public static final long DEFAULT_BRIDGE_SEND_RETRY_BACKOFF_MAX_MS = 5000;
+
+    public static final double DEFAULT_BRIDGE_SEND_RETRY_BUDGET_RATIO = 0.1;
+
+    public static final int DEFAULT_BRIDGE_SEND_RETRY_BUDGET_RESERVE = 10;
+
+    public static final boolean DEFAULT_BRIDGE_CIRCUIT_BREAKER_ENABLED = false;
+
+    public static final int DEFAULT_BRIDGE_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 20;
+
+    public static final long DEFAULT_BRIDGE_CIRCUIT_BREAKER_WINDOW_MS = 10000;
+
+    public static final long DEFAULT_BRIDGE_CIRCUIT_BREAKER_OPEN_MS = 30000;
+
+    public static final String DEFAULT_BRIDGE_CIRCUIT_BREAKER_ACTION = "fail";
+
+    public static final boolean DEFAULT_BRIDGE_ADAPTIVE_ENABLED = false;
+
+    public static final long DEFAULT_BRIDGE_ADAPTIVE_LATENCY_SLO_MS = 100;
+
+    public static final long DEFAULT_BRIDGE_ADAPTIVE_LINGER_MS_MIN = 0;
+
+    public static final long DEFAULT_BRIDGE_ADAPTIVE_LINGER_MS_MAX = 100;
+
+    public static final int DEFAULT_BRIDGE_ADAPTIVE_BATCH_SIZE_MIN = 16384;
+
+    public static final int DEFAULT_BRIDGE_ADAPTIVE_BATCH_SIZE_MAX = 1048576;
+
+    public static final long DEFAULT_BRIDGE_ADAPTIVE_INTERVAL_MS = 60000;
+
+    public static final long DEFAULT_BRIDGE_SHUTDOWN_DRAIN_TIMEOUT_MS = 10000;
+
+    public static final int DEFAULT_BRIDGE_DEDUP_WINDOW_SIZE = 0;
+
+    public static final int DEFAULT_BRIDGE_DEDUP_MAX_CLIENTS = 10000;
+
+    public static final int DEFAULT_BRIDGE_CONNECT_MAX_CONNECTIONS = 0;
+
+    public static final double DEFAULT_BRIDGE_CONNECT_ACCEPT_RATE = 0;
+
+    public static final double DEFAULT_BRIDGE_CONNECT_ACCEPT_BURST = 100;
+
+    public static final double DEFAULT_BRIDGE_CONNECT_RATE = 0;
+
+    public static final double DEFAULT_BRIDGE_CONNECT_BURST = 100;
+
+    public static final double DEFAULT_BRIDGE_RATE_LIMIT_CLIENT_MESSAGES = 0;
+
+    public static final double DEFAULT_BRIDGE_RATE_LIMIT_CLIENT_BYTES = 0;
+
+    public static final double DEFAULT_BRIDGE_RATE_LIMIT_USERNAME_MESSAGES = 0;
+
+    public static final double DEFAULT_BRIDGE_RATE_LIMIT_USERNAME_BYTES = 0;
+
+    public static final double DEFAULT_BRIDGE_RATE_LIMIT_BURST_SECONDS = 1;
+
+    public static final String DEFAULT_BRIDGE_RATE_LIMIT_ACTION = "pause";
+
+    public static final boolean DEFAULT_BRIDGE_OVERLOAD_ENABLED = false;
+
+    public static final double DEFAULT_BRIDGE_OVERLOAD_BUFFER_USAGE = 0.9;
+
+    public static final int DEFAULT_BRIDGE_OVERLOAD_PENDING_TASKS = 10000;
+
+    public static final long DEFAULT_BRIDGE_OVERLOAD_ACK_LATENCY_MS = 2000;
+
+    public static final long DEFAULT_BRIDGE_OVERLOAD_ESCALATION_MS = 5000;
+
+    public static final long DEFAULT_BRIDGE_OVERLOAD_INTERVAL_MS = 500;
+
+    public static final int DEFAULT_BRIDGE_HEAVY_HITTERS_TOP = 10;
+
+    public static final long DEFAULT_BRIDGE_HEAVY_HITTERS_WINDOW_MS = 60000;
+
+    public static final int DEFAULT_BRIDGE_HEAVY_HITTERS_SKETCH_WIDTH = 1024;
+
+    public static final long DEFAULT_BRIDGE_HEAVY_HITTERS_CLIENT_WARN_MESSAGES = 0;
+
+    public static final int DEFAULT_BRIDGE_REPORT_BY_EXCEPTION_MAX_TOPICS = 100000;
+
+    public static final long DEFAULT_BRIDGE_DOWNSAMPLING_SWEEP_INTERVAL_MS = 1000;
+
+    public static final int DEFAULT_BRIDGE_SAMPLING_MAX_TOPICS = 100000;
+
     private final MqttConfig mqttConfig;
     private final KafkaConfig kafkaConfig;
 
@@ -86,6 +285,344 @@ public class BridgeConfig extends AbstractConfig {
         return this.config.get(BridgeConfig.BRIDGE_DEFAULT_TOPIC_PREFIX) == null ? BRIDGE_DEFAULT_TOPIC : this.config.get(BridgeConfig.BRIDGE_DEFAULT_TOPIC_PREFIX).toString();
     }
 
+    /**
+     * @return the maximum number of retries done by the bridge for a failed Kafka send
+     */
+    public int getSendRetries() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_SEND_RETRIES, BridgeConfig.DEFAULT_BRIDGE_SEND_RETRIES).toString());
+    }
+
+    /**
+     * @return the base backoff, in milliseconds, between the retries of a failed Kafka send
+     */
+    public long getSendRetryBackoffMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_SEND_RETRY_BACKOFF_MS, BridgeConfig.DEFAULT_BRIDGE_SEND_RETRY_BACKOFF_MS).toString());
+    }
+
+    /**
+     * @return the maximum backoff, in milliseconds, between the retries of a failed Kafka send
+     */
+    public long getSendRetryBackoffMaxMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_SEND_RETRY_BACKOFF_MAX_MS, BridgeConfig.DEFAULT_BRIDGE_SEND_RETRY_BACKOFF_MAX_MS).toString());
+    }
+
+    /**
+     * @return the ratio of retries allowed compared to the overall number of Kafka sends
+     */
+    public double getSendRetryBudgetRatio() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_SEND_RETRY_BUDGET_RATIO, BridgeConfig.DEFAULT_BRIDGE_SEND_RETRY_BUDGET_RATIO).toString());
+    }
+
+    /**
+     * @return the number of retries per second always allowed, regardless of the traffic
+     */
+    public int getSendRetryBudgetReserve() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_SEND_RETRY_BUDGET_RESERVE, BridgeConfig.DEFAULT_BRIDGE_SEND_RETRY_BUDGET_RESERVE).toString());
+    }
+
+    /**
+     * @return the dead letter Kafka topic
+     * If not set, records which could not be delivered cause the client connection to be closed
+     */
+    public String getDeadLetterTopic() {
+        return this.config.get(BridgeConfig.BRIDGE_DEAD_LETTER_TOPIC) == null ? null : this.config.get(BridgeConfig.BRIDGE_DEAD_LETTER_TOPIC).toString();
+    }
+
+    /**
+     * @return the Kafka topic for the expired records
+     * If not set, records expired before being sent are dropped
+     */
+    public String getExpiredTopic() {
+        return this.config.get(BridgeConfig.BRIDGE_EXPIRED_TOPIC) == null ? null : this.config.get(BridgeConfig.BRIDGE_EXPIRED_TOPIC).toString();
+    }
+
+    /**
+     * @return true if the circuit breaker for each mapped Kafka topic is enabled
+     */
+    public boolean isCircuitBreakerEnabled() {
+        return Boolean.parseBoolean(this.config.getOrDefault(BridgeConfig.BRIDGE_CIRCUIT_BREAKER_ENABLED, BridgeConfig.DEFAULT_BRIDGE_CIRCUIT_BREAKER_ENABLED).toString());
+    }
+
+    /**
+     * @return the number of send errors within the window which trips the circuit breaker of a Kafka topic
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_CIRCUIT_BREAKER_FAILURE_THRESHOLD, BridgeConfig.DEFAULT_BRIDGE_CIRCUIT_BREAKER_FAILURE_THRESHOLD).toString());
+    }
+
+    /**
+     * @return the sliding window, in milliseconds, used for counting the send errors
+     */
+    public long getCircuitBreakerWindowMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_CIRCUIT_BREAKER_WINDOW_MS, BridgeConfig.DEFAULT_BRIDGE_CIRCUIT_BREAKER_WINDOW_MS).toString());
+    }
+
+    /**
+     * @return the duration, in milliseconds, a tripped circuit breaker stays open before probing the Kafka topic again
+     */
+    public long getCircuitBreakerOpenMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_CIRCUIT_BREAKER_OPEN_MS, BridgeConfig.DEFAULT_BRIDGE_CIRCUIT_BREAKER_OPEN_MS).toString());
+    }
+
+    /**
+     * @return the action for records sent to a Kafka topic with an open circuit breaker
+     */
+    public String getCircuitBreakerAction() {
+        return this.config.getOrDefault(BridgeConfig.BRIDGE_CIRCUIT_BREAKER_ACTION, BridgeConfig.DEFAULT_BRIDGE_CIRCUIT_BREAKER_ACTION).toString();
+    }
+
+    /**
+     * @return true if the adaptive tuning of the Kafka producers linger.ms and batch.size is enabled
+     */
+    public boolean isAdaptiveEnabled() {
+        return Boolean.parseBoolean(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_ENABLED, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_ENABLED).toString());
+    }
+
+    /**
+     * @return the target ack latency, in milliseconds, for the adaptive tuning
+     */
+    public long getAdaptiveLatencySloMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_LATENCY_SLO_MS, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_LATENCY_SLO_MS).toString());
+    }
+
+    /**
+     * @return the minimum linger.ms set by the adaptive tuning
+     */
+    public long getAdaptiveLingerMsMin() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_LINGER_MS_MIN, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_LINGER_MS_MIN).toString());
+    }
+
+    /**
+     * @return the maximum linger.ms set by the adaptive tuning
+     */
+    public long getAdaptiveLingerMsMax() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_LINGER_MS_MAX, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_LINGER_MS_MAX).toString());
+    }
+
+    /**
+     * @return the minimum batch.size set by the adaptive tuning
+     */
+    public int getAdaptiveBatchSizeMin() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_BATCH_SIZE_MIN, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_BATCH_SIZE_MIN).toString());
+    }
+
+    /**
+     * @return the maximum batch.size set by the adaptive tuning
+     */
+    public int getAdaptiveBatchSizeMax() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_BATCH_SIZE_MAX, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_BATCH_SIZE_MAX).toString());
+    }
+
+    /**
+     * @return the interval, in milliseconds, between two evaluations of the adaptive tuning
+     */
+    public long getAdaptiveIntervalMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_ADAPTIVE_INTERVAL_MS, BridgeConfig.DEFAULT_BRIDGE_ADAPTIVE_INTERVAL_MS).toString());
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, to wait for the in-flight Kafka sends on shutdown
+     */
+    public long getShutdownDrainTimeoutMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_SHUTDOWN_DRAIN_TIMEOUT_MS, BridgeConfig.DEFAULT_BRIDGE_SHUTDOWN_DRAIN_TIMEOUT_MS).toString());
+    }
+
+    /**
+     * @return the number of recently produced QoS 1 messages remembered per client, 0 if the suppression of the DUP re-sends is disabled
+     */
+    public int getDedupWindowSize() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_DEDUP_WINDOW_SIZE, BridgeConfig.DEFAULT_BRIDGE_DEDUP_WINDOW_SIZE).toString());
+    }
+
+    /**
+     * @return the maximum number of clients tracked for suppressing the DUP re-sends
+     */
+    public int getDedupMaxClients() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_DEDUP_MAX_CLIENTS, BridgeConfig.DEFAULT_BRIDGE_DEDUP_MAX_CLIENTS).toString());
+    }
+
+    /**
+     * @return the path of the file storing the persistent sessions, null if persistent sessions are not supported
+     */
+    public String getSessionStorePath() {
+        return this.config.get(BridgeConfig.BRIDGE_SESSION_STORE_PATH) == null ? null : this.config.get(BridgeConfig.BRIDGE_SESSION_STORE_PATH).toString();
+    }
+
+    /**
+     * @return the maximum number of client connections, 0 for no limit
+     */
+    public int getConnectMaxConnections() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_CONNECT_MAX_CONNECTIONS, BridgeConfig.DEFAULT_BRIDGE_CONNECT_MAX_CONNECTIONS).toString());
+    }
+
+    /**
+     * @return the new TCP connections accepted per second, 0 for no limit
+     */
+    public double getConnectAcceptRate() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_CONNECT_ACCEPT_RATE, BridgeConfig.DEFAULT_BRIDGE_CONNECT_ACCEPT_RATE).toString());
+    }
+
+    /**
+     * @return the new TCP connections accepted in a burst
+     */
+    public double getConnectAcceptBurst() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_CONNECT_ACCEPT_BURST, BridgeConfig.DEFAULT_BRIDGE_CONNECT_ACCEPT_BURST).toString());
+    }
+
+    /**
+     * @return the CONNECTs processed per second, 0 for no limit
+     */
+    public double getConnectRate() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_CONNECT_RATE, BridgeConfig.DEFAULT_BRIDGE_CONNECT_RATE).toString());
+    }
+
+    /**
+     * @return the CONNECTs processed in a burst
+     */
+    public double getConnectBurst() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_CONNECT_BURST, BridgeConfig.DEFAULT_BRIDGE_CONNECT_BURST).toString());
+    }
+
+    /**
+     * @return the messages per second each client can publish, 0 for no limit
+     */
+    public double getRateLimitClientMessages() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_RATE_LIMIT_CLIENT_MESSAGES, BridgeConfig.DEFAULT_BRIDGE_RATE_LIMIT_CLIENT_MESSAGES).toString());
+    }
+
+    /**
+     * @return the payload bytes per second each client can publish, 0 for no limit
+     */
+    public double getRateLimitClientBytes() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_RATE_LIMIT_CLIENT_BYTES, BridgeConfig.DEFAULT_BRIDGE_RATE_LIMIT_CLIENT_BYTES).toString());
+    }
+
+    /**
+     * @return the messages per second all the clients with the same username can publish, 0 for no limit
+     */
+    public double getRateLimitUsernameMessages() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_RATE_LIMIT_USERNAME_MESSAGES, BridgeConfig.DEFAULT_BRIDGE_RATE_LIMIT_USERNAME_MESSAGES).toString());
+    }
+
+    /**
+     * @return the payload bytes per second all the clients with the same username can publish, 0 for no limit
+     */
+    public double getRateLimitUsernameBytes() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_RATE_LIMIT_USERNAME_BYTES, BridgeConfig.DEFAULT_BRIDGE_RATE_LIMIT_USERNAME_BYTES).toString());
+    }
+
+    /**
+     * @return the rate limits of the MQTT topic prefixes, as comma separated prefix=messages[:bytes] entries, null if not set
+     */
+    public String getRateLimitTopicPrefixes() {
+        return this.config.get(BridgeConfig.BRIDGE_RATE_LIMIT_TOPIC_PREFIXES) == null ? null : this.config.get(BridgeConfig.BRIDGE_RATE_LIMIT_TOPIC_PREFIXES).toString();
+    }
+
+    /**
+     * @return the burst allowed above the rate limits, in seconds of the rates
+     */
+    public double getRateLimitBurstSeconds() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_RATE_LIMIT_BURST_SECONDS, BridgeConfig.DEFAULT_BRIDGE_RATE_LIMIT_BURST_SECONDS).toString());
+    }
+
+    /**
+     * @return the action for the clients above the rate limits
+     */
+    public String getRateLimitAction() {
+        return this.config.getOrDefault(BridgeConfig.BRIDGE_RATE_LIMIT_ACTION, BridgeConfig.DEFAULT_BRIDGE_RATE_LIMIT_ACTION).toString();
+    }
+
+    /**
+     * @return true if the overload detection is enabled
+     */
+    public boolean isOverloadEnabled() {
+        return Boolean.parseBoolean(this.config.getOrDefault(BridgeConfig.BRIDGE_OVERLOAD_ENABLED, BridgeConfig.DEFAULT_BRIDGE_OVERLOAD_ENABLED).toString());
+    }
+
+    /**
+     * @return the fraction of the Kafka producers buffer used above which the bridge is overloaded, 0 to ignore
+     */
+    public double getOverloadBufferUsage() {
+        return Double.parseDouble(this.config.getOrDefault(BridgeConfig.BRIDGE_OVERLOAD_BUFFER_USAGE, BridgeConfig.DEFAULT_BRIDGE_OVERLOAD_BUFFER_USAGE).toString());
+    }
+
+    /**
+     * @return the number of tasks pending in an event loop above which the bridge is overloaded, 0 to ignore
+     */
+    public int getOverloadPendingTasks() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_OVERLOAD_PENDING_TASKS, BridgeConfig.DEFAULT_BRIDGE_OVERLOAD_PENDING_TASKS).toString());
+    }
+
+    /**
+     * @return the Kafka ack latency, in milliseconds, above which the bridge is overloaded, 0 to ignore
+     */
+    public long getOverloadAckLatencyMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_OVERLOAD_ACK_LATENCY_MS, BridgeConfig.DEFAULT_BRIDGE_OVERLOAD_ACK_LATENCY_MS).toString());
+    }
+
+    /**
+     * @return the time, in milliseconds, the bridge stays overloaded before shedding the low priority messages
+     */
+    public long getOverloadEscalationMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_OVERLOAD_ESCALATION_MS, BridgeConfig.DEFAULT_BRIDGE_OVERLOAD_ESCALATION_MS).toString());
+    }
+
+    /**
+     * @return the interval, in milliseconds, between two samples of the overload signals
+     */
+    public long getOverloadIntervalMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_OVERLOAD_INTERVAL_MS, BridgeConfig.DEFAULT_BRIDGE_OVERLOAD_INTERVAL_MS).toString());
+    }
+
+    /**
+     * @return the number of top clients and MQTT topics tracked per window, 0 if disabled
+     */
+    public int getHeavyHittersTop() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_HEAVY_HITTERS_TOP, BridgeConfig.DEFAULT_BRIDGE_HEAVY_HITTERS_TOP).toString());
+    }
+
+    /**
+     * @return the window, in milliseconds, the top clients and MQTT topics are tracked over
+     */
+    public long getHeavyHittersWindowMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_HEAVY_HITTERS_WINDOW_MS, BridgeConfig.DEFAULT_BRIDGE_HEAVY_HITTERS_WINDOW_MS).toString());
+    }
+
+    /**
+     * @return the number of counters per row of the count-min sketches
+     */
+    public int getHeavyHittersSketchWidth() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_HEAVY_HITTERS_SKETCH_WIDTH, BridgeConfig.DEFAULT_BRIDGE_HEAVY_HITTERS_SKETCH_WIDTH).toString());
+    }
+
+    /**
+     * @return the number of messages within a window above which a client is logged, 0 if disabled
+     */
+    public long getHeavyHittersClientWarnMessages() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_HEAVY_HITTERS_CLIENT_WARN_MESSAGES, BridgeConfig.DEFAULT_BRIDGE_HEAVY_HITTERS_CLIENT_WARN_MESSAGES).toString());
+    }
+
+    /**
+     * @return the maximum number of MQTT topics whose last payload is tracked by the report-by-exception rules
+     */
+    public int getReportByExceptionMaxTopics() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_REPORT_BY_EXCEPTION_MAX_TOPICS, BridgeConfig.DEFAULT_BRIDGE_REPORT_BY_EXCEPTION_MAX_TOPICS).toString());
+    }
+
+    /**
+     * @return the interval, in milliseconds, between two checks of the ended downsampling windows
+     */
+    public long getDownsamplingSweepIntervalMs() {
+        return Long.parseLong(this.config.getOrDefault(BridgeConfig.BRIDGE_DOWNSAMPLING_SWEEP_INTERVAL_MS, BridgeConfig.DEFAULT_BRIDGE_DOWNSAMPLING_SWEEP_INTERVAL_MS).toString());
+    }
+
+    /**
+     * @return the maximum number of MQTT topics counted by each event loop for the sampling rules
+     */
+    public int getSamplingMaxTopics() {
+        return Integer.parseInt(this.config.getOrDefault(BridgeConfig.BRIDGE_SAMPLING_MAX_TOPICS, BridgeConfig.DEFAULT_BRIDGE_SAMPLING_MAX_TOPICS).toString());
+    }
+
     /**
      * @return the bridge configuration properties
      */
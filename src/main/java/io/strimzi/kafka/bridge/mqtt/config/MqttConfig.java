@@ -24,12 +24,27 @@ public class MqttConfig extends AbstractConfig {
 
     public static final String MQTT_MAX_BYTES_MESSAGE = MQTT_CONFIG_PREFIX + "max.bytes.message";
 
+    // max topic alias accepted from the MQTT 5 clients, 0 to not support topic aliases
+    public static final String MQTT_TOPIC_ALIAS_MAXIMUM = MQTT_CONFIG_PREFIX + "topic.alias.maximum";
+
+    // max QoS 1 and QoS 2 messages a MQTT 5 client can send without being acknowledged, from 1 to 65535
+    public static final String MQTT_RECEIVE_MAXIMUM = MQTT_CONFIG_PREFIX + "receive.maximum";
+
+    // topics cached per connection by the PUBLISH fast path decoder, 0 to disable the fast path
+    public static final String MQTT_TOPIC_CACHE_SIZE = MQTT_CONFIG_PREFIX + "topic.cache.size";
+
     public static final String DEFAULT_MQTT_HOST = "0.0.0.0";
 
     public static final int DEFAULT_MQTT_PORT = 1883;
 
     public static final int DEFAULT_MQTT_MAX_BYTES_MESSAGE = MqttConstant.DEFAULT_MAX_BYTES_IN_MESSAGE;
 
+    public static final int DEFAULT_MQTT_TOPIC_ALIAS_MAXIMUM = 64;
+
+    public static final int DEFAULT_MQTT_RECEIVE_MAXIMUM = 1000;
+
+    public static final int DEFAULT_MQTT_TOPIC_CACHE_SIZE = 32;
+
     /**
      * Constructor
      *
@@ -37,6 +52,8 @@ public class MqttConfig extends AbstractConfig {
      */
     public MqttConfig(Map<String, Object> config) {
         super(config);
+        // rejected when loading the configuration rather than on the first MQTT 5 connection
+        this.getReceiveMaximum();
     }
 
     /**
@@ -69,6 +86,32 @@ public class MqttConfig extends AbstractConfig {
         return Integer.parseInt(this.config.getOrDefault(MqttConfig.MQTT_MAX_BYTES_MESSAGE, MqttConfig.DEFAULT_MQTT_MAX_BYTES_MESSAGE).toString());
     }
 
+    /**
+     * @return the max topic alias accepted from the MQTT 5 clients, 0 if topic aliases are not supported
+     */
+    public int getTopicAliasMaximum() {
+        return Integer.parseInt(this.config.getOrDefault(MqttConfig.MQTT_TOPIC_ALIAS_MAXIMUM, MqttConfig.DEFAULT_MQTT_TOPIC_ALIAS_MAXIMUM).toString());
+    }
+
+    /**
+     * @return the max QoS 1 and QoS 2 messages a MQTT 5 client can send without being acknowledged
+     * @throws IllegalArgumentException if not between 1 and 65535, as the Receive Maximum is a non zero two bytes integer
+     */
+    public int getReceiveMaximum() {
+        int receiveMaximum = Integer.parseInt(this.config.getOrDefault(MqttConfig.MQTT_RECEIVE_MAXIMUM, MqttConfig.DEFAULT_MQTT_RECEIVE_MAXIMUM).toString());
+        if (receiveMaximum < 1 || receiveMaximum > 65535) {
+            throw new IllegalArgumentException("Invalid " + MqttConfig.MQTT_RECEIVE_MAXIMUM + " " + receiveMaximum + ", expected between 1 and 65535");
+        }
+        return receiveMaximum;
+    }
+
+    /**
+     * @return the topics cached per connection by the PUBLISH fast path decoder, 0 if the fast path is disabled
+     */
+    public int getTopicCacheSize() {
+        return Integer.parseInt(this.config.getOrDefault(MqttConfig.MQTT_TOPIC_CACHE_SIZE, MqttConfig.DEFAULT_MQTT_TOPIC_CACHE_SIZE).toString());
+    }
+
     @Override
     public String toString() {
         return "MqttConfig(" +
@@ -0,0 +1,55 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.core;
+
+import io.strimzi.kafka.bridge.mqtt.envelope.EnvelopeAggregator;
+import io.strimzi.kafka.bridge.mqtt.kafka.KafkaBridgeProducer;
+import io.strimzi.kafka.bridge.mqtt.kafka.MqttTopicPartitioner;
+import io.strimzi.kafka.bridge.mqtt.limit.ConnectionLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.OverloadDetector;
+import io.strimzi.kafka.bridge.mqtt.limit.PublishRateLimiter;
+import io.strimzi.kafka.bridge.mqtt.metrics.BridgeMetrics;
+import io.strimzi.kafka.bridge.mqtt.metrics.HeavyHitters;
+import io.strimzi.kafka.bridge.mqtt.session.ClientRegistry;
+import io.strimzi.kafka.bridge.mqtt.session.DuplicateDetector;
+import io.strimzi.kafka.bridge.mqtt.session.KeepAliveMonitor;
+import io.strimzi.kafka.bridge.mqtt.telemetry.ChangeFilter;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Downsampler;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Sampler;
+
+/**
+ * Groups the bridge components shared by all the client connections, created by the {@link MqttServer}
+ * and used by the {@link MqttServerHandler}.
+ *
+ * @param kafkaBridgeProducer   instance of the Kafka producer for sending messages
+ * @param partitioner           picker of the Kafka partition, for the mapping rules with partitioning
+ * @param envelopeAggregator    instance of the aggregator packing messages into envelopes, for the rules with aggregation
+ * @param duplicateDetector     instance of the detector of the QoS 1 messages re-sent with the DUP flag
+ * @param clientRegistry        registry of the connected clients and their sessions
+ * @param keepAliveMonitor      monitor enforcing the clients keep-alive
+ * @param connectionLimiter     admission control of the client connections
+ * @param metrics               counters of the MQTT traffic, exposed in the Prometheus format
+ * @param heavyHitters          tracker of the top clients and MQTT topics, by messages and bytes
+ * @param publishRateLimiter    rate limiting of the PUBLISH messages per client, username and MQTT topic prefix
+ * @param overloadDetector      detector of the overload, setting which PUBLISH messages are shed
+ * @param changeFilter          filter skipping the unchanged payloads, for the report-by-exception rules
+ * @param downsampler           stage folding the numeric values into windows, for the downsampling rules
+ * @param sampler               picker of the sample of messages sent to Kafka, for the sampling rules
+ */
+public record BridgeComponents(KafkaBridgeProducer kafkaBridgeProducer,
+                               MqttTopicPartitioner partitioner,
+                               EnvelopeAggregator envelopeAggregator,
+                               DuplicateDetector duplicateDetector,
+                               ClientRegistry clientRegistry,
+                               KeepAliveMonitor keepAliveMonitor,
+                               ConnectionLimiter connectionLimiter,
+                               BridgeMetrics metrics,
+                               HeavyHitters heavyHitters,
+                               PublishRateLimiter publishRateLimiter,
+                               OverloadDetector overloadDetector,
+                               ChangeFilter changeFilter,
+                               Downsampler downsampler,
+                               Sampler sampler) {
+}
@@ -4,6 +4,8 @@
  */
 package io.strimzi.kafka.bridge.mqtt.core;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.strimzi.kafka.bridge.mqtt.metrics.PrometheusWriter;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
@@ -14,9 +16,11 @@ import org.apache.logging.log4j.Logger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
- * Jetty based HTTP server used for health checks
+ * Jetty based HTTP server used for health checks, statistics and metrics
  */
 public class HttpServer {
 
@@ -26,16 +30,23 @@ public class HttpServer {
     private final Server server;
     private final Liveness liveness;
     private final Readiness readiness;
+    private final StatsProvider statsProvider;
+    private final MetricsProvider metricsProvider;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * Constructs the health check HTTP server.
      *
      * @param liveness  Callback used for the health check.
      * @param readiness Callback used for the readiness check.
+     * @param statsProvider Callback used for getting the statistics.
+     * @param metricsProvider Callback used for getting the Prometheus metrics.
      */
-    public HttpServer(Liveness liveness, Readiness readiness) {
+    public HttpServer(Liveness liveness, Readiness readiness, StatsProvider statsProvider, MetricsProvider metricsProvider) {
         this.liveness = liveness;
         this.readiness = readiness;
+        this.statsProvider = statsProvider;
+        this.metricsProvider = metricsProvider;
 
         this.server = new Server(HTTP_PORT);
 
@@ -47,7 +58,15 @@ public class HttpServer {
         livenessContext.setHandler(new HealthyHandler());
         livenessContext.setAllowNullPathInfo(true);
 
-        server.setHandler(new ContextHandlerCollection(readinessContext, livenessContext));
+        ContextHandler statsContext = new ContextHandler("/stats");
+        statsContext.setHandler(new StatsHandler());
+        statsContext.setAllowNullPathInfo(true);
+
+        ContextHandler metricsContext = new ContextHandler("/metrics");
+        metricsContext.setHandler(new MetricsHandler());
+        metricsContext.setAllowNullPathInfo(true);
+
+        server.setHandler(new ContextHandlerCollection(readinessContext, livenessContext, statsContext, metricsContext));
     }
 
     /**
@@ -107,4 +126,34 @@ public class HttpServer {
             baseRequest.setHandled(true);
         }
     }
+
+    /**
+     * Handler responsible for returning the statistics as JSON
+     */
+    class StatsHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("application/json");
+            objectMapper.writeValue(response.getOutputStream(), statsProvider.getStats());
+            LOGGER.debug("Responding {} to GET /stats", response.getStatus());
+            baseRequest.setHandled(true);
+        }
+    }
+
+    /**
+     * Handler responsible for returning the metrics in the Prometheus text format
+     */
+    class MetricsHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(PrometheusWriter.CONTENT_TYPE);
+            response.getOutputStream().write(metricsProvider.getMetrics().getBytes(StandardCharsets.UTF_8));
+            LOGGER.debug("Responding {} to GET /metrics", response.getStatus());
+            baseRequest.setHandled(true);
+        }
+    }
 }
@@ -0,0 +1,17 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.core;
+
+/**
+ * A metrics provider implemented by an application and called by the
+ * {@link HttpServer} when handling a metrics scrape request.
+ */
+public interface MetricsProvider {
+
+    /**
+     * @return  The application metrics in the Prometheus text format
+     */
+    String getMetrics();
+}
@@ -5,30 +5,81 @@
 package io.strimzi.kafka.bridge.mqtt.core;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
 import io.strimzi.kafka.bridge.mqtt.config.BridgeConfig;
 import io.strimzi.kafka.bridge.mqtt.config.MqttConfig;
+import io.strimzi.kafka.bridge.mqtt.envelope.EnvelopeAggregator;
 import io.strimzi.kafka.bridge.mqtt.kafka.KafkaBridgeProducer;
+import io.strimzi.kafka.bridge.mqtt.kafka.KafkaSendStats;
+import io.strimzi.kafka.bridge.mqtt.kafka.MqttTopicPartitioner;
+import io.strimzi.kafka.bridge.mqtt.limit.ConnectionLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.OverloadDetector;
+import io.strimzi.kafka.bridge.mqtt.limit.PublishRateLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.RateLimit;
+import io.strimzi.kafka.bridge.mqtt.limit.RateLimitAction;
+import io.strimzi.kafka.bridge.mqtt.metrics.BridgeMetrics;
+import io.strimzi.kafka.bridge.mqtt.metrics.HeavyHitters;
+import io.strimzi.kafka.bridge.mqtt.metrics.PrometheusWriter;
+import io.strimzi.kafka.bridge.mqtt.session.ClientRegistry;
+import io.strimzi.kafka.bridge.mqtt.session.DuplicateDetector;
+import io.strimzi.kafka.bridge.mqtt.session.KeepAliveMonitor;
+import io.strimzi.kafka.bridge.mqtt.session.SessionStore;
+import io.strimzi.kafka.bridge.mqtt.telemetry.ChangeFilter;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Downsampler;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Sampler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Represents the MqttServer component.
  */
-public class MqttServer implements Liveness, Readiness {
+@SuppressWarnings({"checkstyle:ClassFanOutComplexity", "checkstyle:ClassDataAbstractionCoupling"})
+public class MqttServer implements Liveness, Readiness, StatsProvider, MetricsProvider {
     private static final Logger LOGGER = LogManager.getLogger(MqttServer.class);
     private final EventLoopGroup masterGroup;
     private final EventLoopGroup workerGroup;
     private final ServerBootstrap serverBootstrap;
     private final MqttConfig mqttConfig;
     private final KafkaBridgeProducer kafkaBridgeProducer;
+    private final EnvelopeAggregator envelopeAggregator;
+    private final MqttTopicPartitioner partitioner;
+    private final DuplicateDetector duplicateDetector;
+    private final ClientRegistry clientRegistry;
+    private final KeepAliveMonitor keepAliveMonitor = new KeepAliveMonitor();
+    private final ConnectionLimiter connectionLimiter;
+    private final BridgeMetrics metrics = new BridgeMetrics();
+    private final HeavyHitters heavyHitters;
+    private final PublishRateLimiter publishRateLimiter;
+    private final OverloadDetector overloadDetector;
+    private final ChangeFilter changeFilter;
+    private final Downsampler downsampler;
+    private final Sampler sampler;
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private final long drainTimeoutMs;
 
     private ChannelFuture channelFuture;
+    private volatile boolean draining;
+    // outcome of the drain on shutdown
+    private volatile long drainInFlight;
+    private volatile long drainNotCompleted;
+    private volatile long drainDurationMs;
 
     /**
      * Constructor
@@ -44,12 +95,58 @@ public class MqttServer implements Liveness, Readiness {
         this.masterGroup = masterGroup;
         this.workerGroup = workerGroup;
         this.mqttConfig = config.getMqttConfig();
-        this.kafkaBridgeProducer = new KafkaBridgeProducer(config.getKafkaConfig());
+        this.kafkaBridgeProducer = new KafkaBridgeProducer(config);
+        this.envelopeAggregator = new EnvelopeAggregator(this.kafkaBridgeProducer);
+        this.partitioner = new MqttTopicPartitioner(this.kafkaBridgeProducer);
+        this.drainTimeoutMs = config.getShutdownDrainTimeoutMs();
+        this.duplicateDetector = new DuplicateDetector(config.getDedupWindowSize(), config.getDedupMaxClients());
+        try {
+            SessionStore sessionStore = config.getSessionStorePath() != null ? new SessionStore(Path.of(config.getSessionStorePath())) : null;
+            this.clientRegistry = new ClientRegistry(sessionStore);
+        } catch (IOException e) {
+            LOGGER.error("Failed to open the session store", e);
+            throw new RuntimeException(e);
+        }
+        this.connectionLimiter = new ConnectionLimiter(config.getConnectMaxConnections(),
+                config.getConnectAcceptRate(), config.getConnectAcceptBurst(),
+                config.getConnectRate(), config.getConnectBurst());
+        this.heavyHitters = new HeavyHitters(config.getHeavyHittersTop(), config.getHeavyHittersSketchWidth(),
+                config.getHeavyHittersWindowMs(), config.getHeavyHittersClientWarnMessages());
+        this.publishRateLimiter = new PublishRateLimiter(
+                new RateLimit(config.getRateLimitClientMessages(), config.getRateLimitClientBytes()),
+                new RateLimit(config.getRateLimitUsernameMessages(), config.getRateLimitUsernameBytes()),
+                PublishRateLimiter.parseTopicPrefixes(config.getRateLimitTopicPrefixes()),
+                config.getRateLimitBurstSeconds(), RateLimitAction.fromValue(config.getRateLimitAction()));
+        this.overloadDetector = new OverloadDetector(config.getOverloadBufferUsage(), config.getOverloadPendingTasks(),
+                config.getOverloadAckLatencyMs(), config.getOverloadEscalationMs(),
+                config.isOverloadEnabled() ? config.getOverloadIntervalMs() : 0, new OverloadDetector.Probe() {
+                    @Override
+                    public double bufferUsage() {
+                        return kafkaBridgeProducer.getBufferUsage();
+                    }
+
+                    @Override
+                    public int pendingTasks() {
+                        return maxPendingTasks();
+                    }
+
+                    @Override
+                    public double ackLatencyMs() {
+                        return kafkaBridgeProducer.getAckLatencyMs();
+                    }
+                });
+        this.changeFilter = new ChangeFilter(config.getReportByExceptionMaxTopics());
+        // the summaries go through the retries and the dead letter topic, as the folded messages are already acknowledged
+        this.downsampler = new Downsampler(this.kafkaBridgeProducer::send, config.getDownsamplingSweepIntervalMs());
+        this.sampler = new Sampler(config.getSamplingMaxTopics());
+        BridgeComponents components = new BridgeComponents(this.kafkaBridgeProducer, this.partitioner, this.envelopeAggregator,
+                this.duplicateDetector, this.clientRegistry, this.keepAliveMonitor, this.connectionLimiter, this.metrics, this.heavyHitters,
+                this.publishRateLimiter, this.overloadDetector, this.changeFilter, this.downsampler, this.sampler);
         this.serverBootstrap = new ServerBootstrap();
         this.serverBootstrap.group(masterGroup, workerGroup)
                 .channel(NioServerSocketChannel.class)
                 .handler(new LoggingHandler(LogLevel.INFO))
-                .childHandler(new MqttServerInitializer(this.kafkaBridgeProducer, config.getBridgeDefaultTopic(), this.mqttConfig.getMaxBytesMessage()))
+                .childHandler(new MqttServerInitializer(components, this.mqttConfig, config.getBridgeDefaultTopic(), this.channels))
                 .childOption(option, true);
     }
 
@@ -60,6 +157,7 @@ public class MqttServer implements Liveness, Readiness {
         try {
             // bind the Netty server and wait synchronously
             this.channelFuture = this.serverBootstrap.bind(this.mqttConfig.getHost(), this.mqttConfig.getPort()).sync();
+            this.overloadDetector.start();
         } catch (Exception e) {
             LOGGER.error("Failed to start the MQTT server", e);
             throw new RuntimeException(e);
@@ -68,25 +166,62 @@ public class MqttServer implements Liveness, Readiness {
 
     /**
      * Stop the server.
+     * The server is drained first: it stops accepting connections and reading from the connected clients,
+     * then waits for the in-flight Kafka sends, still sending the PUBACKs, before closing the connections.
      */
     public void stop() {
         try {
             LOGGER.info("Shutting down Netty server...");
+            // not ready anymore, so no new traffic is routed to this bridge
+            this.draining = true;
+            // stop accepting new connections
             this.channelFuture.channel().close().sync();
-            this.channelFuture.channel().closeFuture().sync();
+            // stop reading from the connected clients, the channels stay open for writing the PUBACKs;
+            // the clients paused by the rate limits are not resumed anymore
+            this.publishRateLimiter.stop();
+            this.channels.forEach(channel -> channel.config().setAutoRead(false));
+            this.drain();
+            this.channels.close().awaitUninterruptibly();
+            this.keepAliveMonitor.stop();
+            this.overloadDetector.stop();
             this.masterGroup.shutdownGracefully().sync();
             this.workerGroup.shutdownGracefully().sync();
             LOGGER.info("Netty server shut down");
 
+            // the partitions count lookups read the producer metadata
+            this.partitioner.close();
             LOGGER.info("Closing Kafka producers...");
             this.kafkaBridgeProducer.close();
             LOGGER.info("Kafka producers closed");
+
+            this.clientRegistry.close();
         } catch (Exception e) {
             LOGGER.error("Failed to stop the MQTT server", e);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Wait for the in-flight Kafka sends to complete, up to the drain timeout.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void drain() throws InterruptedException {
+        long start = System.nanoTime();
+        // send the messages still buffered in the envelopes and the downsampling windows, so they are part of the in-flight sends
+        this.envelopeAggregator.flushAll();
+        this.downsampler.flushAll();
+        this.drainInFlight = this.kafkaBridgeProducer.getInFlight();
+        LOGGER.info("Draining {} in-flight Kafka sends from {} connections", this.drainInFlight, this.channels.size());
+        this.drainNotCompleted = this.kafkaBridgeProducer.awaitInFlight(this.drainTimeoutMs);
+        this.drainDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (this.drainNotCompleted > 0) {
+            LOGGER.warn("Drain timed out after {} ms with {} Kafka sends still in-flight", this.drainDurationMs, this.drainNotCompleted);
+        } else {
+            LOGGER.info("Drain completed in {} ms", this.drainDurationMs);
+        }
+    }
+
     @Override
     public boolean isAlive() {
         return !this.workerGroup.isTerminated() && !this.masterGroup.isTerminated();
@@ -94,6 +229,67 @@ public class MqttServer implements Liveness, Readiness {
 
     @Override
     public boolean isReady() {
-        return !this.workerGroup.isTerminated() && !this.masterGroup.isTerminated();
+        return !this.draining && !this.workerGroup.isTerminated() && !this.masterGroup.isTerminated();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("kafkaSend", this.kafkaBridgeProducer.getStats().toMap());
+        stats.put("circuitBreakers", this.kafkaBridgeProducer.getCircuitBreakersState());
+        stats.put("clients", this.clientRegistry.toMap());
+        stats.put("connections", this.connectionLimiter.toMap());
+        stats.put("rateLimits", this.publishRateLimiter.toMap());
+        stats.put("overload", this.overloadDetector.toMap());
+        stats.put("dedup", this.duplicateDetector.toMap());
+        stats.put("reportByException", this.changeFilter.toMap());
+        stats.put("downsampling", this.downsampler.toMap());
+        stats.put("sampling", this.sampler.toMap());
+        stats.put("keepAlive", this.keepAliveMonitor.toMap());
+        stats.put("heavyHitters", this.heavyHitters.toMap());
+        stats.put("drain", this.getDrainStats());
+        return stats;
+    }
+
+    @Override
+    public String getMetrics() {
+        PrometheusWriter writer = new PrometheusWriter();
+        this.metrics.write(writer);
+        writer.family("mqtt_bridge_connected_clients", PrometheusWriter.GAUGE, "MQTT clients connected");
+        writer.sample("mqtt_bridge_connected_clients", this.clientRegistry.size());
+        KafkaSendStats sendStats = this.kafkaBridgeProducer.getStats();
+        BridgeMetrics.writeKafkaSends(writer, sendStats.getSuccesses(), sendStats.getFailuresByCause(),
+                sendStats.getExpiredDropped(), sendStats.getExpiredRedirected());
+        BridgeMetrics.writeKafkaProducers(writer, this.kafkaBridgeProducer.getProducerMetrics());
+        // the allocator used by the client channels
+        BridgeMetrics.writeAllocator(writer, ByteBufAllocator.DEFAULT);
+        return writer.toString();
+    }
+
+    /**
+     * @return the highest number of tasks pending among the event loops handling the client connections
+     */
+    private int maxPendingTasks() {
+        int max = 0;
+        for (EventExecutor executor : this.workerGroup) {
+            if (executor instanceof SingleThreadEventExecutor eventLoop) {
+                max = Math.max(max, eventLoop.pendingTasks());
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the state of the drain on shutdown
+     */
+    private Map<String, Object> getDrainStats() {
+        Map<String, Object> drain = new LinkedHashMap<>();
+        drain.put("draining", this.draining);
+        drain.put("connections", this.channels.size());
+        drain.put("inFlight", this.kafkaBridgeProducer.getInFlight());
+        drain.put("inFlightAtDrain", this.drainInFlight);
+        drain.put("notCompleted", this.drainNotCompleted);
+        drain.put("durationMs", this.drainDurationMs);
+        return drain;
     }
 }
@@ -4,8 +4,12 @@
  */
 package io.strimzi.kafka.bridge.mqtt.core;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
 import io.netty.handler.codec.mqtt.MqttConnectMessage;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttMessageBuilders;
@@ -15,24 +19,60 @@ import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.handler.codec.mqtt.MqttProperties.MqttPropertyType;
+import io.netty.handler.codec.mqtt.MqttPubReplyMessageVariableHeader;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import io.strimzi.kafka.bridge.mqtt.codec.MappedPublishMessage;
+import io.strimzi.kafka.bridge.mqtt.config.MqttConfig;
+import io.strimzi.kafka.bridge.mqtt.envelope.EnvelopeAggregator;
+import io.strimzi.kafka.bridge.mqtt.kafka.FanOut;
+import io.strimzi.kafka.bridge.mqtt.kafka.HeaderEnricher;
 import io.strimzi.kafka.bridge.mqtt.kafka.KafkaBridgeProducer;
+import io.strimzi.kafka.bridge.mqtt.kafka.MessageExpiredException;
+import io.strimzi.kafka.bridge.mqtt.kafka.MqttTopicPartitioner;
+import io.strimzi.kafka.bridge.mqtt.limit.ConnectionLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.OverloadDetector;
+import io.strimzi.kafka.bridge.mqtt.limit.PublishRateLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.RateLimitAction;
+import io.strimzi.kafka.bridge.mqtt.mapper.Aggregation;
+import io.strimzi.kafka.bridge.mqtt.mapper.Downsampling;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
 import io.strimzi.kafka.bridge.mqtt.mapper.MqttKafkaMapper;
 import io.strimzi.kafka.bridge.mqtt.mapper.MqttKafkaRegexMapper;
 import io.strimzi.kafka.bridge.mqtt.mapper.MappingRule;
 import io.strimzi.kafka.bridge.mqtt.mapper.MappingResult;
 import io.strimzi.kafka.bridge.mqtt.mapper.MappingRulesLoader;
+import io.strimzi.kafka.bridge.mqtt.mapper.Partitioning;
+import io.strimzi.kafka.bridge.mqtt.mapper.ReportByException;
+import io.strimzi.kafka.bridge.mqtt.mapper.Sampling;
+import io.strimzi.kafka.bridge.mqtt.metrics.BridgeMetrics;
+import io.strimzi.kafka.bridge.mqtt.metrics.HeavyHitters;
+import io.strimzi.kafka.bridge.mqtt.metrics.LatencyMetrics;
+import io.strimzi.kafka.bridge.mqtt.metrics.LatencyMetrics.Stage;
+import io.strimzi.kafka.bridge.mqtt.session.ClientSession;
+import io.strimzi.kafka.bridge.mqtt.session.DuplicateDetector;
+import io.strimzi.kafka.bridge.mqtt.session.KeepAliveMonitor;
+import io.strimzi.kafka.bridge.mqtt.session.ClientRegistry;
+import io.strimzi.kafka.bridge.mqtt.session.TopicAliasTable;
+import io.strimzi.kafka.bridge.mqtt.telemetry.ChangeFilter;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Downsampler;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Sampler;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.header.Headers;
-import org.apache.kafka.common.header.internals.RecordHeader;
-import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 import static io.netty.channel.ChannelHandler.Sharable;
 
@@ -43,30 +83,82 @@ import static io.netty.channel.ChannelHandler.Sharable;
  *
  * @see io.netty.channel.SimpleChannelInboundHandler
  */
-@SuppressWarnings({"checkstyle:ClassFanOutComplexity"})
+@SuppressWarnings({"checkstyle:ClassFanOutComplexity", "checkstyle:ClassDataAbstractionCoupling"})
 @Sharable
 public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage> {
     private static final Logger LOGGER = LogManager.getLogger(MqttServerHandler.class);
+    // the handler is shared across channels, so the client session is stored on the channel itself
+    private static final AttributeKey<ClientSession> SESSION = AttributeKey.valueOf("mqtt.session");
+    // counters of the event loop the channel is registered on, looked up once per connection
+    private static final AttributeKey<BridgeMetrics.EventLoopCounters> EVENT_LOOP_COUNTERS = AttributeKey.valueOf("mqtt.eventLoopCounters");
+    // rate limiters of the client and its username, looked up once per connection
+    private static final AttributeKey<PublishRateLimiter.ClientLimiters> RATE_LIMITERS = AttributeKey.valueOf("mqtt.rateLimiters");
+    // MQTT 5 DISCONNECT reason codes
+    private static final byte REASON_RECEIVE_MAXIMUM_EXCEEDED = (byte) 0x93;
+    private static final byte REASON_TOPIC_ALIAS_INVALID = (byte) 0x94;
+    private static final byte REASON_MESSAGE_RATE_TOO_HIGH = (byte) 0x96;
+    // MQTT 5 PUBACK and PUBREC reason codes
+    private static final byte REASON_QUOTA_EXCEEDED = (byte) 0x97;
     private final KafkaBridgeProducer kafkaBridgeProducer;
+    private final EnvelopeAggregator envelopeAggregator;
+    private final MqttTopicPartitioner partitioner;
+    private final DuplicateDetector duplicateDetector;
+    private final ClientRegistry clientRegistry;
+    private final KeepAliveMonitor keepAliveMonitor;
+    private final ConnectionLimiter connectionLimiter;
+    private final BridgeMetrics metrics;
+    private final LatencyMetrics latency;
+    private final HeavyHitters heavyHitters;
+    private final PublishRateLimiter publishRateLimiter;
+    private final OverloadDetector overloadDetector;
+    private final ChangeFilter changeFilter;
+    private final Downsampler downsampler;
+    private final Sampler sampler;
+    private final int topicAliasMaximum;
+    private final int receiveMaximum;
+    // by mapping rule, for the rules with headers settings
+    private final Map<MappingRule, HeaderEnricher> headerEnrichers = new IdentityHashMap<>();
     private MqttKafkaMapper mqttKafkaMapper;
 
     /**
      * Constructor
      *
-     * @param kafkaBridgeProducer   instance of the Kafka producer for sending messages
+     * @param components            the bridge components shared by all the client connections
+     * @param mqttConfig            MQTT configuration, for the MQTT 5 limits negotiated with the clients
      * @param bridgeDefaultTopic    default Kafka topic to be used if there are no matches for the MQTT topic pattern
      */
-    public MqttServerHandler(KafkaBridgeProducer kafkaBridgeProducer, String bridgeDefaultTopic) {
+    public MqttServerHandler(BridgeComponents components, MqttConfig mqttConfig, String bridgeDefaultTopic) {
         // auto release reference count to avoid memory leak
         super(true);
         try {
             MappingRulesLoader mappingRulesLoader = MappingRulesLoader.getInstance();
             List<MappingRule> rules = mappingRulesLoader.loadRules();
             this.mqttKafkaMapper = new MqttKafkaRegexMapper(rules, bridgeDefaultTopic);
+            for (MappingRule rule : rules) {
+                if (rule.getHeaders() != null) {
+                    this.headerEnrichers.put(rule, new HeaderEnricher(rule.getHeaders()));
+                }
+            }
         } catch (IOException e) {
             LOGGER.error("Error reading mapping file: ", e);
         }
-        this.kafkaBridgeProducer = kafkaBridgeProducer;
+        this.kafkaBridgeProducer = components.kafkaBridgeProducer();
+        this.envelopeAggregator = components.envelopeAggregator();
+        this.partitioner = components.partitioner();
+        this.duplicateDetector = components.duplicateDetector();
+        this.clientRegistry = components.clientRegistry();
+        this.keepAliveMonitor = components.keepAliveMonitor();
+        this.connectionLimiter = components.connectionLimiter();
+        this.metrics = components.metrics();
+        this.latency = components.metrics().latency();
+        this.heavyHitters = components.heavyHitters();
+        this.publishRateLimiter = components.publishRateLimiter();
+        this.overloadDetector = components.overloadDetector();
+        this.changeFilter = components.changeFilter();
+        this.downsampler = components.downsampler();
+        this.sampler = components.sampler();
+        this.topicAliasMaximum = mqttConfig.getTopicAliasMaximum();
+        this.receiveMaximum = mqttConfig.getReceiveMaximum();
     }
 
     /**
@@ -74,15 +166,27 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
      */
     private static byte[] payloadToBytes(MqttPublishMessage msg) {
         byte[] data = new byte[msg.payload().readableBytes()];
-        msg.payload().readBytes(data);
+        // the reader index is not changed, the payload is still hashed once the record is built
+        msg.payload().getBytes(msg.payload().readerIndex(), data);
         return data;
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
+        // called on the event loop thread of the channel
+        ctx.channel().attr(EVENT_LOOP_COUNTERS).set(this.metrics.eventLoop(Thread.currentThread().getName()));
         LOGGER.info("Client  {} is trying to connect", ctx.channel().remoteAddress());
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        if (session != null) {
+            this.clientRegistry.disconnect(session);
+        }
+        LOGGER.info("Client {} disconnected", ctx.channel().remoteAddress());
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, MqttMessage msg) {
         if (msg.decoderResult().isFailure()) {
@@ -91,6 +195,15 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
             exceptionCaught(ctx, error);
             return;
         }
+        BridgeMetrics.EventLoopCounters counters = ctx.channel().attr(EVENT_LOOP_COUNTERS).get();
+        if (counters != null) {
+            counters.record(messageSize(msg.fixedHeader().remainingLength()));
+        }
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        if (session != null) {
+            // any message from the client counts for the keep-alive
+            session.touch(System.nanoTime());
+        }
         try {
             MqttMessageType messageType = msg.fixedHeader().messageType();
             LOGGER.debug("Got {} message type", messageType.name());
@@ -98,6 +211,8 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
                 handleConnectMessage(ctx, (MqttConnectMessage) msg);
             } else if (msg instanceof MqttPublishMessage) {
                 handlePublishMessage(ctx, (MqttPublishMessage) msg);
+            } else if (messageType == MqttMessageType.PUBREL) {
+                handlePubRelMessage(ctx, (MqttMessageIdVariableHeader) msg.variableHeader());
             } else if (messageType == MqttMessageType.PINGREQ) {
                 handlePingReqMessage(ctx, msg);
             } else {
@@ -109,6 +224,18 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
         }
     }
 
+    /**
+     * Get the size of a MQTT message, from the remaining length in its fixed header
+     *
+     * @param remainingLength the remaining length
+     * @return the size of the message, in bytes
+     */
+    private static int messageSize(int remainingLength) {
+        // the fixed header is a byte followed by the remaining length, encoded on 7 bits per byte
+        int lengthBytes = remainingLength < 128 ? 1 : remainingLength < 16384 ? 2 : remainingLength < 2097152 ? 3 : 4;
+        return 1 + lengthBytes + remainingLength;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         cause.printStackTrace();
@@ -121,16 +248,67 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
      * @param ctx ChannelHandlerContext instance
      * @param connectMessage incoming MqttConnectMessage
      */
-    private void handleConnectMessage(ChannelHandlerContext ctx, MqttConnectMessage connectMessage) {
+    private void handleConnectMessage(ChannelHandlerContext ctx, MqttConnectMessage connectMessage) throws IOException {
+        boolean mqtt5 = connectMessage.variableHeader().version() == MqttVersion.MQTT_5.protocolLevel();
+        if (!this.connectionLimiter.tryConnect()) {
+            // reconnection storm, the client will retry later
+            LOGGER.debug("Client [{}] from {} rejected, CONNECT rate exceeded", connectMessage.payload().clientIdentifier(), ctx.channel().remoteAddress());
+            MqttConnAckMessage connAckMessage = MqttMessageBuilders.connAck()
+                    .sessionPresent(false)
+                    .returnCode(mqtt5 ? MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE_5 : MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE)
+                    .build();
+            ctx.writeAndFlush(connAckMessage).addListener(ChannelFutureListener.CLOSE);
+            return;
+        }
+        ClientSession session = this.clientRegistry.connect(connectMessage.payload().clientIdentifier(),
+                connectMessage.variableHeader().isCleanSession(), ctx.channel());
         MqttConnAckMessage connAckMessage = MqttMessageBuilders.connAck()
-                .sessionPresent(false)
+                .sessionPresent(session.isPresent())
                 .returnCode(MqttConnectReturnCode.CONNECTION_ACCEPTED)
+                .properties(mqtt5 ? negotiateMqtt5(session) : MqttProperties.NO_PROPERTIES)
                 .build();
 
+        ctx.channel().attr(SESSION).set(session);
+        ctx.channel().attr(RATE_LIMITERS).set(this.publishRateLimiter.connect(session.getClientId(), connectMessage.payload().userName()));
+        this.keepAliveMonitor.watch(session, connectMessage.variableHeader().keepAliveTimeSeconds());
         LOGGER.info("Client [{}] connected from {}", connectMessage.payload().clientIdentifier(), ctx.channel().remoteAddress());
         ctx.writeAndFlush(connAckMessage);
     }
 
+    /**
+     * Apply the MQTT 5 limits to the session of a client, returning them as CONNACK properties. <br>
+     * The Receive Maximum bounds the QoS 1 and QoS 2 messages the client can send without being acknowledged,
+     * and so the messages the bridge has in-flight to Kafka for the client.
+     *
+     * @param session the session of the connecting client
+     * @return the CONNACK properties
+     */
+    private MqttProperties negotiateMqtt5(ClientSession session) {
+        MqttProperties properties = new MqttProperties();
+        session.setMqtt5(true);
+        session.setReceiveMaximum(this.receiveMaximum);
+        properties.add(new MqttProperties.IntegerProperty(MqttPropertyType.RECEIVE_MAXIMUM.value(), this.receiveMaximum));
+        if (this.topicAliasMaximum > 0) {
+            session.setTopicAliases(new TopicAliasTable(this.topicAliasMaximum));
+            properties.add(new MqttProperties.IntegerProperty(MqttPropertyType.TOPIC_ALIAS_MAXIMUM.value(), this.topicAliasMaximum));
+        }
+        return properties;
+    }
+
+    /**
+     * Send a MQTT 5 DISCONNECT message to the client, for a protocol violation, and close the connection.
+     *
+     * @param ctx        ChannelHandlerContext instance
+     * @param reasonCode the DISCONNECT reason code
+     */
+    private void disconnect(ChannelHandlerContext ctx, byte reasonCode) {
+        LOGGER.warn("Client [{}] disconnected with reason code 0x{}", clientId(ctx), Integer.toHexString(reasonCode & 0xFF));
+        MqttMessage disconnectMessage = MqttMessageBuilders.disconnect()
+                .reasonCode(reasonCode)
+                .build();
+        ctx.writeAndFlush(disconnectMessage).addListener(ChannelFutureListener.CLOSE);
+    }
+
     /**
      * Handle the case when a client sent a MQTT PINGREQ message type.
      *
@@ -149,13 +327,480 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
      *
      * @param ctx      ChannelHandlerContext instance
      * @param packetId packet identifier
+     * @return the future completing when the PUBACK is written
      */
-    private void sendPubAckMessage(ChannelHandlerContext ctx, int packetId) {
+    private ChannelFuture sendPubAckMessage(ChannelHandlerContext ctx, int packetId) {
         MqttMessage pubAckMessage = MqttMessageBuilders.pubAck()
                 .packetId(packetId)
                 .build();
 
-        ctx.writeAndFlush(pubAckMessage);
+        return ctx.writeAndFlush(pubAckMessage);
+    }
+
+    /**
+     * Send a MQTT PUBREC or PUBCOMP message to the client.
+     *
+     * @param ctx         ChannelHandlerContext instance
+     * @param messageType PUBREC or PUBCOMP
+     * @param packetId    packet identifier
+     * @return the future completing when the message is written
+     */
+    private ChannelFuture sendQos2AckMessage(ChannelHandlerContext ctx, MqttMessageType messageType, int packetId) {
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(messageType, false, MqttQoS.AT_MOST_ONCE, false, 0);
+        return ctx.writeAndFlush(new MqttMessage(fixedHeader, MqttMessageIdVariableHeader.from(packetId)));
+    }
+
+    /**
+     * Handle a QoS 2 MQTT PUBLISH message: the records are sent through the idempotent Kafka producer
+     * and the PUBREC is sent once the quorum of them is acknowledged. <br>
+     * The packet identifier is tracked until the PUBREL, so a re-sent PUBLISH is not produced again.
+     *
+     * @param ctx           ChannelHandlerContext instance
+     * @param records       the Kafka records to send, one per Kafka target
+     * @param quorum        number of records to be acknowledged before the PUBREC, 0 for all of them
+     * @param packetId      packet identifier
+     * @param receivedNanos time the PUBLISH handling started, from {@link System#nanoTime()}
+     * @param mappedNanos   time the MQTT topic was mapped, from {@link System#nanoTime()}
+     * @return future completing with the result of the Kafka send, null if the records were not sent
+     */
+    private CompletionStage<RecordMetadata> handleExactlyOnce(ChannelHandlerContext ctx, List<ProducerRecord<String, byte[]>> records, int quorum, int packetId,
+                                   long receivedNanos, long mappedNanos) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        if (session == null) {
+            LOGGER.warn("QoS level EXACTLY_ONCE received before CONNECT, closing connection");
+            ctx.close();
+            return null;
+        }
+        if (session.getQos2Received().contains(packetId)) {
+            // already in Kafka, the client did not get the PUBREC
+            LOGGER.debug("Duplicate QoS 2 message {} from client {}, sending PUBREC again", packetId, session.getClientId());
+            sendQos2AckMessage(ctx, MqttMessageType.PUBREC, packetId);
+            return null;
+        }
+        if (!session.getQos2Pending().add(packetId)) {
+            // still being sent to Kafka, the PUBREC is sent when it completes
+            LOGGER.debug("Duplicate QoS 2 message {} from client {} still in-flight", packetId, session.getClientId());
+            return null;
+        }
+        CompletionStage<RecordMetadata> result = FanOut.send(records, kafkaBridgeProducer::sendExactlyOnce, quorum);
+        long enqueuedNanos = recordEnqueue(MqttQoS.EXACTLY_ONCE, mappedNanos);
+        result.whenComplete((metadata, error) -> {
+            long ackedNanos = System.nanoTime();
+            // the session is only accessed by the channel event loop
+            ctx.executor().execute(() -> {
+                session.getQos2Pending().remove(packetId);
+                if (error != null) {
+                    LOGGER.error("Error sending message to Kafka, closing connection: ", error);
+                    ctx.close();
+                } else {
+                    LOGGER.info("Message sent to Kafka on topic {} with offset {}", metadata.topic(), metadata.offset());
+                    this.latency.record(Stage.BROKER_ACK, MqttQoS.EXACTLY_ONCE.value(), ackedNanos - enqueuedNanos);
+                    this.clientRegistry.received(session, packetId);
+                    recordAckLatency(sendQos2AckMessage(ctx, MqttMessageType.PUBREC, packetId), MqttQoS.EXACTLY_ONCE, receivedNanos, ackedNanos);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Handle the case when a client sent a MQTT PUBREL message type, completing the QoS 2 flow.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param variableHeader the PUBREL variable header, with the packet identifier
+     */
+    private void handlePubRelMessage(ChannelHandlerContext ctx, MqttMessageIdVariableHeader variableHeader) {
+        int packetId = variableHeader.messageId();
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        if (session != null && session.getQos2Received().remove(packetId)) {
+            this.clientRegistry.update(session);
+        }
+        // PUBCOMP is sent even for an unknown packet identifier, as the client could be re-sending the PUBREL
+        sendQos2AckMessage(ctx, MqttMessageType.PUBCOMP, packetId);
+    }
+
+    /**
+     * Send a MQTT PUBACK message to the client once the Kafka send completes, or close the connection if it failed.
+     *
+     * @param ctx           ChannelHandlerContext instance
+     * @param result        future completing with the result of the Kafka send
+     * @param packetId      packet identifier
+     * @param hash          hash of the message topic and payload, remembered for suppressing the DUP re-sends
+     * @param receivedNanos time the PUBLISH handling started, from {@link System#nanoTime()}
+     * @param enqueuedNanos time the record was handed to the Kafka producer, from {@link System#nanoTime()}
+     */
+    private void handleSendResult(ChannelHandlerContext ctx, CompletionStage<RecordMetadata> result, int packetId, int hash,
+                                  long receivedNanos, long enqueuedNanos) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        if (session != null) {
+            session.incrementQos1InFlight();
+        }
+        // wait for the result of the send operation
+        result.whenComplete((metadata, error) -> {
+            if (session != null) {
+                session.decrementQos1InFlight();
+            }
+            if (error instanceof MessageExpiredException) {
+                // dropped because stale, the client must not re-send it
+                LOGGER.debug("Message {} expired before being sent to Kafka, dropped", packetId);
+                this.duplicateDetector.record(clientId(ctx), packetId, hash);
+                sendPubAckMessage(ctx, packetId);
+            } else if (error != null) {
+                // the message could neither be delivered nor routed to the dead letter topic,
+                // closing the connection lets the client re-send it on reconnection
+                LOGGER.error("Error sending message to Kafka, closing connection: ", error);
+                ctx.close();
+            } else {
+                long ackedNanos = System.nanoTime();
+                LOGGER.info("Message sent to Kafka on topic {} with offset {}", metadata.topic(), metadata.offset());
+                this.latency.record(Stage.BROKER_ACK, MqttQoS.AT_LEAST_ONCE.value(), ackedNanos - enqueuedNanos);
+                this.duplicateDetector.record(clientId(ctx), packetId, hash);
+                // send PUBACK message to the client
+                recordAckLatency(sendPubAckMessage(ctx, packetId), MqttQoS.AT_LEAST_ONCE, receivedNanos, ackedNanos);
+            }
+        });
+    }
+
+    /**
+     * Record the latency of a message handed to the Kafka producer, or to an envelope
+     *
+     * @param qos         QoS level of the message
+     * @param mappedNanos time the MQTT topic was mapped, from {@link System#nanoTime()}
+     * @return the time the message was handed to the Kafka producer, from {@link System#nanoTime()}
+     */
+    private long recordEnqueue(MqttQoS qos, long mappedNanos) {
+        long enqueuedNanos = System.nanoTime();
+        this.latency.record(Stage.ENQUEUE, qos.value(), enqueuedNanos - mappedNanos);
+        return enqueuedNanos;
+    }
+
+    /**
+     * Record the latencies of a PUBACK, or PUBREC, once it is written to the client
+     *
+     * @param future        future completing when the PUBACK is written
+     * @param qos           QoS level of the message
+     * @param receivedNanos time the PUBLISH handling started, from {@link System#nanoTime()}
+     * @param ackedNanos    time the Kafka send was acknowledged, from {@link System#nanoTime()}
+     */
+    private void recordAckLatency(ChannelFuture future, MqttQoS qos, long receivedNanos, long ackedNanos) {
+        future.addListener(f -> {
+            if (f.isSuccess()) {
+                long writtenNanos = System.nanoTime();
+                this.latency.record(Stage.PUBACK, qos.value(), writtenNanos - ackedNanos);
+                this.latency.record(Stage.TOTAL, qos.value(), writtenNanos - receivedNanos);
+            }
+        });
+    }
+
+    /**
+     * Check if a PUBLISH message is shed because the bridge is overloaded. <br>
+     * The QoS 0 messages are dropped, while the QoS 1 and QoS 2 messages of the low priority mapping rules are refused
+     * with the "quota exceeded" reason code, so only for MQTT 5 clients: the MQTT 3.1.1 clients can't be told
+     * the message was not accepted, so their messages are never refused.
+     *
+     * @param ctx      ChannelHandlerContext instance
+     * @param qos      QoS level of the message
+     * @param rule     the matching mapping rule, null if the message was mapped to the default topic
+     * @param packetId packet identifier
+     * @return true if the message can be handled, false if it was shed
+     */
+    private boolean admitLoad(ChannelHandlerContext ctx, MqttQoS qos, MappingRule rule, int packetId) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        boolean lowPriority = rule != null && rule.isLowPriority() && session != null && session.isMqtt5();
+        if (!this.overloadDetector.shed(qos.value(), lowPriority)) {
+            return true;
+        }
+        if (qos == MqttQoS.AT_LEAST_ONCE) {
+            ctx.writeAndFlush(MqttMessageBuilders.pubAck()
+                    .packetId(packetId)
+                    .reasonCode(REASON_QUOTA_EXCEEDED)
+                    .build());
+        } else if (qos == MqttQoS.EXACTLY_ONCE) {
+            MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBREC, false, MqttQoS.AT_MOST_ONCE, false, 0);
+            ctx.writeAndFlush(new MqttMessage(fixedHeader, new MqttPubReplyMessageVariableHeader(packetId, REASON_QUOTA_EXCEEDED, MqttProperties.NO_PROPERTIES)));
+        }
+        return false;
+    }
+
+    /**
+     * Take a PUBLISH message from the rate limits of the client, its username and its topic. <br>
+     * A client above the rates is either disconnected, dropping the message, or paused, by not reading from it
+     * until the rates are respected again.
+     *
+     * @param ctx       ChannelHandlerContext instance
+     * @param mqttTopic the MQTT topic of the message
+     * @param size      the payload size, in bytes
+     * @return true if the message can be handled, false if the client was disconnected
+     */
+    private boolean admitRate(ChannelHandlerContext ctx, String mqttTopic, int size) {
+        if (!this.publishRateLimiter.isEnabled()) {
+            return true;
+        }
+        long waitNanos = this.publishRateLimiter.consume(ctx.channel().attr(RATE_LIMITERS).get(), mqttTopic, size);
+        if (waitNanos == 0) {
+            return true;
+        }
+        if (this.publishRateLimiter.getAction() == RateLimitAction.DISCONNECT) {
+            this.publishRateLimiter.recordDisconnected();
+            ClientSession session = ctx.channel().attr(SESSION).get();
+            if (session != null && session.isMqtt5()) {
+                disconnect(ctx, REASON_MESSAGE_RATE_TOO_HIGH);
+            } else {
+                LOGGER.warn("Client [{}] disconnected, message rate too high", clientId(ctx));
+                ctx.close();
+            }
+            return false;
+        }
+        Channel channel = ctx.channel();
+        // the messages already read are still handled, adding to the wait, while the client is paused
+        if (channel.config().isAutoRead()) {
+            this.publishRateLimiter.recordPaused();
+            LOGGER.debug("Client [{}] paused for {} ms, message rate too high", clientId(ctx), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            channel.config().setAutoRead(false);
+            ctx.executor().schedule(() -> {
+                // not resumed when the bridge is draining
+                if (!this.publishRateLimiter.isStopped()) {
+                    channel.config().setAutoRead(true);
+                }
+            }, waitNanos, TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Check if a PUBLISH message is sent to Kafka, according to the sampling and then the report-by-exception settings of its mapping rule. <br>
+     * The sampling goes first, so that the last payload remembered by the report-by-exception is always one which was sent.
+     * A re-sent message is never filtered, as it was already sampled in and checked for changes when first received.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param qos            QoS level of the message
+     * @param rule           the matching mapping rule, null if the message was mapped to the default topic
+     * @param mqttTopic      the MQTT topic of the message
+     * @param publishMessage represents a MqttPublishMessage
+     * @return true if the message has to be sent, false if it was skipped
+     */
+    private boolean admitRuleFilters(ChannelHandlerContext ctx, MqttQoS qos, MappingRule rule, String mqttTopic, MqttPublishMessage publishMessage) {
+        if (rule == null || isResend(ctx, qos, publishMessage)) {
+            return true;
+        }
+        return admitSample(ctx, qos, rule, mqttTopic, publishMessage) && admitChange(ctx, qos, rule, mqttTopic, publishMessage);
+    }
+
+    /**
+     * Check if a PUBLISH message is a re-send of a message already received: a message with the DUP flag,
+     * or a QoS 2 message whose packet identifier is still being sent to Kafka or waiting for the PUBREL.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param qos            QoS level of the message
+     * @param publishMessage represents a MqttPublishMessage
+     * @return true if the message is a re-send
+     */
+    private static boolean isResend(ChannelHandlerContext ctx, MqttQoS qos, MqttPublishMessage publishMessage) {
+        if (publishMessage.fixedHeader().isDup()) {
+            return true;
+        }
+        return isQos2Known(ctx, qos, publishMessage.variableHeader().packetId());
+    }
+
+    /**
+     * Check if a QoS 2 message was already received from the client, being sent to Kafka or waiting for the PUBREL
+     *
+     * @param ctx      ChannelHandlerContext instance
+     * @param qos      QoS level of the message
+     * @param packetId packet identifier
+     * @return true if the QoS 2 packet identifier is in-flight
+     */
+    private static boolean isQos2Known(ChannelHandlerContext ctx, MqttQoS qos, int packetId) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        return qos == MqttQoS.EXACTLY_ONCE && session != null
+                && (session.getQos2Pending().contains(packetId) || session.getQos2Received().contains(packetId));
+    }
+
+    /**
+     * Check if a PUBLISH message is part of the sample sent to Kafka, for the sampling mapping rules. <br>
+     * A sampled out message is acknowledged as if it was sent, so that the client does not re-send it.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param qos            QoS level of the message
+     * @param rule           the matching mapping rule
+     * @param mqttTopic      the MQTT topic of the message
+     * @param publishMessage represents a MqttPublishMessage
+     * @return true if the message has to be sent, false if it was sampled out
+     */
+    private boolean admitSample(ChannelHandlerContext ctx, MqttQoS qos, MappingRule rule, String mqttTopic, MqttPublishMessage publishMessage) {
+        Sampling sampling = rule.getSampling();
+        if (sampling == null || this.sampler.sample(mqttTopic, sampling)) {
+            return true;
+        }
+        LOGGER.debug("Message on MQTT topic {} sampled out", mqttTopic);
+        sendAcknowledgement(ctx, qos, publishMessage.variableHeader().packetId());
+        return false;
+    }
+
+    /**
+     * Check if a PUBLISH message is sent to Kafka, for the report-by-exception mapping rules: a payload unchanged since
+     * the previous message on the same MQTT topic is skipped, unless the heartbeat is elapsed. <br>
+     * A skipped message is acknowledged as if it was sent, so that the client does not re-send it.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param qos            QoS level of the message
+     * @param rule           the matching mapping rule
+     * @param mqttTopic      the MQTT topic of the message
+     * @param publishMessage represents a MqttPublishMessage
+     * @return true if the message has to be sent, false if it was skipped
+     */
+    private boolean admitChange(ChannelHandlerContext ctx, MqttQoS qos, MappingRule rule, String mqttTopic, MqttPublishMessage publishMessage) {
+        ReportByException reportByException = rule.getReportByException();
+        if (reportByException == null
+                || this.changeFilter.isChanged(mqttTopic, publishMessage.payload(), reportByException.getHeartbeatSeconds())) {
+            return true;
+        }
+        LOGGER.debug("Unchanged payload on MQTT topic {} skipped", mqttTopic);
+        sendAcknowledgement(ctx, qos, publishMessage.variableHeader().packetId());
+        return false;
+    }
+
+    /**
+     * Forget the payload remembered by the report-by-exception for the MQTT topic of a message if its send to Kafka fails,
+     * so that the client re-send, or the next message, is not skipped as unchanged.
+     *
+     * @param result         future completing with the result of the Kafka send, null if the message was not sent
+     * @param rule           the matching mapping rule, null if the message was mapped to the default topic
+     * @param mqttTopic      the MQTT topic of the message
+     * @param publishMessage represents a MqttPublishMessage
+     */
+    private void forgetChangeOnFailure(CompletionStage<RecordMetadata> result, MappingRule rule, String mqttTopic, MqttPublishMessage publishMessage) {
+        if (result == null || rule == null || rule.getReportByException() == null) {
+            return;
+        }
+        // hashed now, the payload is released once the message is handled
+        long hash = ChangeFilter.hash(publishMessage.payload());
+        result.whenComplete((metadata, error) -> {
+            if (error != null) {
+                this.changeFilter.forget(mqttTopic, hash);
+            }
+        });
+    }
+
+    /**
+     * Fold the value of a PUBLISH message into the window of its MQTT topic, for the downsampling mapping rules. <br>
+     * A folded message is acknowledged right away, the summary of the window being sent to Kafka when the window ends.
+     * A QoS 2 message re-sent after a lost PUBREC is not folded again, the PUBREC being sent again instead.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param qos            QoS level of the message
+     * @param mappingResult  the mapping result of the MQTT topic
+     * @param mqttTopic      the MQTT topic of the message
+     * @param publishMessage represents a MqttPublishMessage
+     * @return true if the message was folded, false if it has to be sent as it is
+     */
+    private boolean downsample(ChannelHandlerContext ctx, MqttQoS qos, MappingResult mappingResult, String mqttTopic, MqttPublishMessage publishMessage) {
+        Downsampling downsampling = mappingResult.rule() != null ? mappingResult.rule().getDownsampling() : null;
+        if (downsampling == null || isQos2Known(ctx, qos, publishMessage.variableHeader().packetId())
+                || !this.downsampler.add(ctx.executor(), mappingResult, downsampling, mqttTopic, publishMessage.payload())) {
+            return false;
+        }
+        sendAcknowledgement(ctx, qos, publishMessage.variableHeader().packetId());
+        return true;
+    }
+
+    /**
+     * Acknowledge a PUBLISH message which is not sent to Kafka on its own, with a PUBACK or a PUBREC depending on its QoS level. <br>
+     * A QoS 2 packet identifier is remembered as received until the PUBREL, so that a re-send is only acknowledged again.
+     *
+     * @param ctx      ChannelHandlerContext instance
+     * @param qos      QoS level of the message
+     * @param packetId packet identifier
+     */
+    private void sendAcknowledgement(ChannelHandlerContext ctx, MqttQoS qos, int packetId) {
+        if (qos == MqttQoS.AT_LEAST_ONCE) {
+            sendPubAckMessage(ctx, packetId);
+        } else if (qos == MqttQoS.EXACTLY_ONCE) {
+            ClientSession session = ctx.channel().attr(SESSION).get();
+            if (session != null) {
+                this.clientRegistry.received(session, packetId);
+            }
+            sendQos2AckMessage(ctx, MqttMessageType.PUBREC, packetId);
+        }
+    }
+
+    /**
+     * Get the identifier of the client connected on the channel
+     *
+     * @param ctx ChannelHandlerContext instance
+     * @return the MQTT client identifier, null if the client did not send the CONNECT yet
+     */
+    private static String clientId(ChannelHandlerContext ctx) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        return session != null ? session.getClientId() : null;
+    }
+
+    /**
+     * Resolve the MQTT topic of a PUBLISH message and check the MQTT 5 limits, disconnecting the client if it violates them. <br>
+     * A message with a topic alias and an empty topic name gets the topic, already mapped, the alias was set to,
+     * while a message with both a topic alias and a topic name sets the alias.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param publishMessage represents a MqttPublishMessage
+     * @param qos            QoS level of the message
+     * @return the mapped MQTT topic, null if the client was disconnected
+     */
+    private MappedTopic admitPublish(ChannelHandlerContext ctx, MqttPublishMessage publishMessage, MqttQoS qos) {
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        if (exceedsReceiveMaximum(session, qos, publishMessage.variableHeader().packetId())) {
+            disconnect(ctx, REASON_RECEIVE_MAXIMUM_EXCEEDED);
+            return null;
+        }
+        if (publishMessage instanceof MappedPublishMessage mappedPublishMessage) {
+            // already mapped by the PUBLISH fast path decoder
+            return mappedPublishMessage.mappedTopic();
+        }
+        String topicName = publishMessage.variableHeader().topicName();
+        MqttProperties.MqttProperty<?> aliasProperty = publishMessage.variableHeader().properties().getProperty(MqttPropertyType.TOPIC_ALIAS.value());
+        if (aliasProperty == null) {
+            return mapTopic(topicName);
+        }
+        int alias = (Integer) aliasProperty.value();
+        TopicAliasTable topicAliases = session != null ? session.getTopicAliases() : null;
+        if (topicAliases == null || !topicAliases.isValid(alias) || (topicName.isEmpty() && topicAliases.get(alias) == null)) {
+            disconnect(ctx, REASON_TOPIC_ALIAS_INVALID);
+            return null;
+        }
+        if (topicName.isEmpty()) {
+            return topicAliases.get(alias);
+        }
+        MappedTopic mappedTopic = mapTopic(topicName);
+        topicAliases.put(alias, mappedTopic);
+        return mappedTopic;
+    }
+
+    /**
+     * Check if a QoS 1 or QoS 2 message from a MQTT 5 client exceeds the Receive Maximum negotiated on connection. <br>
+     * A QoS 2 message re-sent while in-flight is not a new message, so it never exceeds it.
+     *
+     * @param session  the session of the client
+     * @param qos      QoS level of the message
+     * @param packetId packet identifier
+     * @return true if the message exceeds the Receive Maximum
+     */
+    private static boolean exceedsReceiveMaximum(ClientSession session, MqttQoS qos, int packetId) {
+        if (session == null || session.getReceiveMaximum() == 0 || qos == MqttQoS.AT_MOST_ONCE) {
+            return false;
+        }
+        if (qos == MqttQoS.EXACTLY_ONCE && (session.getQos2Pending().contains(packetId) || session.getQos2Received().contains(packetId))) {
+            return false;
+        }
+        return session.getInFlight() >= session.getReceiveMaximum();
+    }
+
+    /**
+     * Map a MQTT topic to Kafka
+     *
+     * @param mqttTopic the MQTT topic
+     * @return the mapped MQTT topic
+     */
+    MappedTopic mapTopic(String mqttTopic) {
+        return new MappedTopic(mqttTopic, mqttTopic.getBytes(StandardCharsets.UTF_8), mqttKafkaMapper.map(mqttTopic));
     }
 
     /**
@@ -165,46 +810,190 @@ public class MqttServerHandler extends SimpleChannelInboundHandler<MqttMessage>
      * @param publishMessage represents a MqttPublishMessage
      */
     private void handlePublishMessage(ChannelHandlerContext ctx, MqttPublishMessage publishMessage) {
+        long receivedNanos = System.nanoTime();
         // get QoS level from the MqttPublishMessage
         MqttQoS qos = MqttQoS.valueOf(publishMessage.fixedHeader().qosLevel().value());
 
-        // get the MQTT topic from the MqttPublishMessage
-        String mqttTopic = publishMessage.variableHeader().topicName();
+        // get the MQTT topic, mapped to Kafka, from the MqttPublishMessage
+        MappedTopic mappedTopic = admitPublish(ctx, publishMessage, qos);
+        if (mappedTopic == null) {
+            return;
+        }
+        long mappedNanos = System.nanoTime();
+        this.latency.record(Stage.MAP, qos.value(), mappedNanos - receivedNanos);
+        String mqttTopic = mappedTopic.mqttTopic();
+        MappingResult mappingResult = mappedTopic.mappingResult();
 
-        // perform topic mapping
-        MappingResult mappingResult = mqttKafkaMapper.map(mqttTopic);
+        this.metrics.recordPublish(qos.value());
+        this.metrics.recordMapping(mappingResult.rule());
+        this.heavyHitters.record(clientId(ctx), mqttTopic, publishMessage.payload().readableBytes());
+        if (!admitLoad(ctx, qos, mappingResult.rule(), publishMessage.variableHeader().packetId())
+                || !admitRate(ctx, mqttTopic, publishMessage.payload().readableBytes())
+                || !admitRuleFilters(ctx, qos, mappingResult.rule(), mqttTopic, publishMessage)) {
+            return;
+        }
 
         // log the topic mapping
         LOGGER.info("MQTT topic {} mapped to Kafka Topic {} with Key {}", mqttTopic, mappingResult.kafkaTopic(), mappingResult.kafkaKey());
 
-        byte[] data = payloadToBytes(publishMessage);
-        Headers headers = new RecordHeaders();
-        headers.add(new RecordHeader("mqtt-topic", mqttTopic.getBytes(StandardCharsets.UTF_8)));
-        // build the Kafka record
-        ProducerRecord<String, byte[]> record = new ProducerRecord<>(mappingResult.kafkaTopic(), null, mappingResult.kafkaKey(),
-                data, headers);
+        int packetId = publishMessage.variableHeader().packetId();
+        int hash = 0;
+        if (qos == MqttQoS.AT_LEAST_ONCE && this.duplicateDetector.isEnabled()) {
+            hash = DuplicateDetector.hash(mqttTopic, publishMessage.payload());
+            if (publishMessage.fixedHeader().isDup() && this.duplicateDetector.isDuplicate(clientId(ctx), packetId, hash)) {
+                // already produced, the client just did not get the PUBACK
+                LOGGER.debug("Duplicate message {} on MQTT topic {} suppressed", packetId, mqttTopic);
+                sendPubAckMessage(ctx, packetId);
+                return;
+            }
+        }
+
+        sendToKafka(ctx, publishMessage, qos, mappedTopic, hash, receivedNanos, mappedNanos);
+    }
+
+    /**
+     * Send a MQTT PUBLISH message to Kafka, on its own (fanned out to the rule Kafka targets), packed into an envelope
+     * or folded into a downsampling window, depending on its QoS level and mapping rule.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param publishMessage represents a MqttPublishMessage
+     * @param qos            QoS level of the message
+     * @param mappedTopic    the MQTT topic, mapped to Kafka
+     * @param hash           hash of the message topic and payload, remembered for suppressing the DUP re-sends
+     * @param receivedNanos  time the PUBLISH handling started, from {@link System#nanoTime()}
+     * @param mappedNanos    time the MQTT topic was mapped, from {@link System#nanoTime()}
+     */
+    private void sendToKafka(ChannelHandlerContext ctx, MqttPublishMessage publishMessage, MqttQoS qos, MappedTopic mappedTopic,
+                             int hash, long receivedNanos, long mappedNanos) {
+        MappingResult mappingResult = mappedTopic.mappingResult();
+        if (downsample(ctx, qos, mappingResult, mappedTopic.mqttTopic(), publishMessage)) {
+            return;
+        }
+        int packetId = publishMessage.variableHeader().packetId();
+        long expiresAt = expiresAt(mappingResult.rule(), publishMessage);
+        Aggregation aggregation = mappingResult.rule() != null ? mappingResult.rule().getAggregation() : null;
+        if (aggregation != null && qos != MqttQoS.EXACTLY_ONCE) {
+            // pack the message into the envelope for its Kafka topic and key, the PUBACK is sent when the envelope is acknowledged;
+            // QoS 2 messages are sent on their own through the idempotent producer
+            CompletionStage<RecordMetadata> result = this.envelopeAggregator.add(mappingResult, aggregation, mappedTopic.mqttTopicBytes(), publishMessage.payload(),
+                    expiresAt, ctx.executor());
+            forgetChangeOnFailure(result, mappingResult.rule(), mappedTopic.mqttTopic(), publishMessage);
+            long enqueuedNanos = recordEnqueue(qos, mappedNanos);
+            if (qos == MqttQoS.AT_LEAST_ONCE) {
+                handleSendResult(ctx, result, packetId, hash, receivedNanos, enqueuedNanos);
+            }
+            return;
+        }
 
-        // send the record to the Kafka topic
+        List<ProducerRecord<String, byte[]>> records = buildRecords(ctx, mappedTopic, publishMessage);
+
+        // send the records to the Kafka topics, the client is acknowledged when the quorum of them is
         switch (qos) {
             case AT_MOST_ONCE -> {
-                kafkaBridgeProducer.sendNoAck(record);
-                LOGGER.info("Message sent to Kafka on topic {}", record.topic());
+                records.forEach(kafkaBridgeProducer::sendNoAck);
+                recordEnqueue(qos, mappedNanos);
+                LOGGER.info("Message sent to Kafka on topic {}", mappingResult.kafkaTopic());
             }
             case AT_LEAST_ONCE -> {
-                CompletionStage<RecordMetadata> result = kafkaBridgeProducer.send(record);
-                // wait for the result of the send operation
-                result.whenComplete((metadata, error) -> {
-                    if (error != null) {
-                        LOGGER.error("Error sending message to Kafka: ", error);
-                    } else {
-                        LOGGER.info("Message sent to Kafka on topic {} with offset {}", metadata.topic(), metadata.offset());
-                        // send PUBACK message to the client
-                        sendPubAckMessage(ctx, publishMessage.variableHeader().packetId());
-                    }
-                });
+                CompletionStage<RecordMetadata> result = FanOut.send(records, record -> kafkaBridgeProducer.send(record, expiresAt), ackQuorum(mappingResult));
+                forgetChangeOnFailure(result, mappingResult.rule(), mappedTopic.mqttTopic(), publishMessage);
+                handleSendResult(ctx, result, packetId, hash, receivedNanos, recordEnqueue(qos, mappedNanos));
             }
-            case EXACTLY_ONCE -> LOGGER.warn("QoS level EXACTLY_ONCE is not supported");
+            case EXACTLY_ONCE -> forgetChangeOnFailure(handleExactlyOnce(ctx, records, ackQuorum(mappingResult), packetId, receivedNanos, mappedNanos),
+                    mappingResult.rule(), mappedTopic.mqttTopic(), publishMessage);
             default -> throw new IllegalArgumentException("QoS level " + qos + "not supported");
         }
     }
+
+    /**
+     * Compute the time a MQTT PUBLISH message expires at, from the maximum age of its mapping rule
+     * and the MQTT 5 message expiry interval, the shortest one winning.
+     * The expiry is checked every time the message is handed to the Kafka producer, including the retries.
+     *
+     * @param rule           the matching mapping rule, null if the message was mapped to the default topic
+     * @param publishMessage represents a MqttPublishMessage
+     * @return the time the message expires at, in milliseconds since the epoch, {@link KafkaBridgeProducer#NO_EXPIRY} if it never expires
+     */
+    private static long expiresAt(MappingRule rule, MqttPublishMessage publishMessage) {
+        long maxAgeMs = rule != null ? rule.getMaxAgeMs() : 0;
+        MqttProperties.MqttProperty<?> expiryInterval = publishMessage.variableHeader().properties().getProperty(MqttPropertyType.PUBLICATION_EXPIRY_INTERVAL.value());
+        if (expiryInterval instanceof MqttProperties.IntegerProperty interval && interval.value() != 0) {
+            // four bytes unsigned integer, in seconds
+            long expiryMs = TimeUnit.SECONDS.toMillis(Integer.toUnsignedLong(interval.value()));
+            maxAgeMs = maxAgeMs > 0 ? Math.min(maxAgeMs, expiryMs) : expiryMs;
+        }
+        return maxAgeMs > 0 ? System.currentTimeMillis() + maxAgeMs : KafkaBridgeProducer.NO_EXPIRY;
+    }
+
+    /**
+     * Get the number of Kafka targets acknowledging a message before the client is acknowledged.
+     *
+     * @param mappingResult the result of the MQTT topic mapping
+     * @return the number of Kafka targets acknowledging a message, 0 for all of them
+     */
+    private static int ackQuorum(MappingResult mappingResult) {
+        return mappingResult.rule() != null ? mappingResult.rule().getAckQuorum() : 0;
+    }
+
+    /**
+     * Build the Kafka records for a MQTT PUBLISH message, one for the mapped Kafka topic and one per additional Kafka target
+     * of the mapping rule. <br>
+     * The records share the payload bytes and the headers, which are built once and never copied per target.
+     * The partition is picked for each Kafka topic, as they can have different partitions counts.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param mappedTopic    the MQTT topic, mapped to Kafka
+     * @param publishMessage represents a MqttPublishMessage
+     * @return the Kafka records
+     */
+    private List<ProducerRecord<String, byte[]>> buildRecords(ChannelHandlerContext ctx, MappedTopic mappedTopic, MqttPublishMessage publishMessage) {
+        ProducerRecord<String, byte[]> record = buildRecord(ctx, mappedTopic, publishMessage);
+        List<MappingResult.Target> targets = mappedTopic.mappingResult().targets();
+        if (targets.isEmpty()) {
+            return List.of(record);
+        }
+        // the rule is never null when there are additional targets
+        Partitioning partitioning = mappedTopic.mappingResult().rule().getPartitioning();
+        List<ProducerRecord<String, byte[]>> records = new ArrayList<>(targets.size() + 1);
+        records.add(record);
+        for (MappingResult.Target target : targets) {
+            Integer partition = partitioning != null ?
+                    this.partitioner.partition(target.kafkaTopic(), partitioning, mappedTopic.mqttTopic(), clientId(ctx)) : null;
+            records.add(new ProducerRecord<>(target.kafkaTopic(), partition, target.kafkaKey(), record.value(), record.headers()));
+        }
+        return records;
+    }
+
+    /**
+     * Build the Kafka record for a MQTT PUBLISH message. <br>
+     * The headers are added as configured by the mapping rule, by default only the MQTT topic one,
+     * and the MQTT 5 user properties are added as headers as well.
+     *
+     * @param ctx            ChannelHandlerContext instance
+     * @param mappedTopic    the MQTT topic, mapped to Kafka
+     * @param publishMessage represents a MqttPublishMessage
+     * @return the Kafka record
+     */
+    private ProducerRecord<String, byte[]> buildRecord(ChannelHandlerContext ctx, MappedTopic mappedTopic, MqttPublishMessage publishMessage) {
+        MappingResult mappingResult = mappedTopic.mappingResult();
+        // pick the partition from the MQTT topic levels or client identifier, if the rule asks for it
+        Partitioning partitioning = mappingResult.rule() != null ? mappingResult.rule().getPartitioning() : null;
+        Integer partition = partitioning != null ?
+                this.partitioner.partition(mappingResult.kafkaTopic(), partitioning, mappedTopic.mqttTopic(), clientId(ctx)) : null;
+
+        byte[] data = payloadToBytes(publishMessage);
+        ClientSession session = ctx.channel().attr(SESSION).get();
+        HeaderEnricher headerEnricher = mappingResult.rule() != null ?
+                this.headerEnrichers.getOrDefault(mappingResult.rule(), HeaderEnricher.DEFAULT) : HeaderEnricher.DEFAULT;
+        Headers headers = headerEnricher.enrich(mappedTopic.mqttTopicBytes(), session != null ? session.getClientIdBytes() : null,
+                publishMessage.fixedHeader().qosLevel().value(), publishMessage.fixedHeader().isRetain(), System.currentTimeMillis());
+        MqttProperties.MqttProperty<?> userProperties = publishMessage.variableHeader().properties().getProperty(MqttPropertyType.USER_PROPERTY.value());
+        if (userProperties instanceof MqttProperties.UserProperties properties) {
+            for (MqttProperties.StringPair pair : properties.value()) {
+                headers.add(pair.key, pair.value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        // build the Kafka record
+        return new ProducerRecord<>(mappingResult.kafkaTopic(), partition, mappingResult.kafkaKey(), data, headers);
+    }
 }
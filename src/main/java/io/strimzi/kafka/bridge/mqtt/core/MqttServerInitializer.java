@@ -5,33 +5,60 @@
 package io.strimzi.kafka.bridge.mqtt.core;
 
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
-import io.strimzi.kafka.bridge.mqtt.kafka.KafkaBridgeProducer;
+import io.strimzi.kafka.bridge.mqtt.codec.MqttPublishDecoder;
+import io.strimzi.kafka.bridge.mqtt.config.MqttConfig;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
+import io.strimzi.kafka.bridge.mqtt.limit.ConnectionLimiter;
+
+import java.util.function.Function;
 
 /**
  * This helper class help us add necessary Netty pipelines handlers. <br>
  * During the {@link #initChannel(SocketChannel)}, we use MqttDecoder() and MqttEncoder to decode and encode Mqtt messages respectively. <br>
+ * The MQTT version, 3.1.1 or 5, is detected by the decoder from the CONNECT and used by both for the rest of the connection. <br>
+ * In front of the MqttDecoder, the {@link MqttPublishDecoder} decodes the MQTT 3.1.1 PUBLISH messages on a fast path. <br>
  */
 public class MqttServerInitializer extends ChannelInitializer<SocketChannel> {
     private final MqttServerHandler mqttServerHandler;
     private final int decoderMaxBytesInMessage;
+    private final int topicCacheSize;
+    private final Function<String, MappedTopic> topicMapper;
+    private final ChannelGroup channels;
+    private final ConnectionLimiter connectionLimiter;
 
     /**
      * Constructor
      *
-     * @param kafkaBridgeProducer   instance of the Kafka producer for sending messages
+     * @param components            the bridge components shared by all the client connections
+     * @param mqttConfig            MQTT configuration, for the decoder and the MQTT 5 limits
      * @param bridgeDefaultTopic    default Kafka topic to be used if there are no matches for the MQTT topic pattern
-     * @param decoderMaxBytesInMessage  maximum number of bytes for the MQTT request during decoding
+     * @param channels  group tracking the client channels, used for draining them on shutdown
      */
-    public MqttServerInitializer(KafkaBridgeProducer kafkaBridgeProducer, String bridgeDefaultTopic, int decoderMaxBytesInMessage) {
-        this.mqttServerHandler = new MqttServerHandler(kafkaBridgeProducer, bridgeDefaultTopic);
-        this.decoderMaxBytesInMessage = decoderMaxBytesInMessage;
+    public MqttServerInitializer(BridgeComponents components, MqttConfig mqttConfig, String bridgeDefaultTopic, ChannelGroup channels) {
+        this.mqttServerHandler = new MqttServerHandler(components, mqttConfig, bridgeDefaultTopic);
+        this.decoderMaxBytesInMessage = mqttConfig.getMaxBytesMessage();
+        this.topicCacheSize = mqttConfig.getTopicCacheSize();
+        this.topicMapper = this.mqttServerHandler::mapTopic;
+        this.channels = channels;
+        this.connectionLimiter = components.connectionLimiter();
     }
 
     @Override
     protected void initChannel(SocketChannel ch) {
+        if (!this.connectionLimiter.tryAccept(ch)) {
+            // closed before decoding anything, to spare the event loops during a reconnection storm
+            ch.close();
+            return;
+        }
+        // the channel is removed from the group automatically when closed
+        this.channels.add(ch);
+        if (this.topicCacheSize > 0) {
+            ch.pipeline().addLast("publishDecoder", new MqttPublishDecoder(decoderMaxBytesInMessage, topicCacheSize, topicMapper));
+        }
         ch.pipeline().addLast("decoder", new MqttDecoder(decoderMaxBytesInMessage));
         ch.pipeline().addLast("encoder", MqttEncoder.INSTANCE);
         ch.pipeline().addLast("handler", this.mqttServerHandler);
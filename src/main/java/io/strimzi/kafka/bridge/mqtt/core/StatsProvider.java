@@ -0,0 +1,19 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.core;
+
+import java.util.Map;
+
+/**
+ * A statistics provider implemented by an application and called by the
+ * {@link HttpServer} when handling a statistics request.
+ */
+public interface StatsProvider {
+
+    /**
+     * @return  The application statistics as key-value pairs, values can be nested maps
+     */
+    Map<String, Object> getStats();
+}
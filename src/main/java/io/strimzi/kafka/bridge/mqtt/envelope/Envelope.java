@@ -0,0 +1,31 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.envelope;
+
+/**
+ * Describes the envelope format used for packing many MQTT messages into a single Kafka record. <br>
+ * The format is compact and length-prefixed, all the lengths are unsigned varints (LEB128):
+ * <pre>
+ * envelope := MAGIC VERSION count entry*
+ * entry    := topicLength topic(UTF-8) payloadLength payload
+ * </pre>
+ * The Kafka records carrying an envelope have the {@link #HEADER} header set to the envelope version.
+ *
+ * @see EnvelopeDecoder
+ */
+public final class Envelope {
+
+    // first byte of every envelope
+    public static final byte MAGIC = 0x4D;
+
+    // current version of the envelope format
+    public static final byte VERSION = 1;
+
+    // Kafka record header marking the records carrying an envelope
+    public static final String HEADER = "mqtt-envelope";
+
+    private Envelope() {
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.envelope;
+
+import io.netty.buffer.ByteBuf;
+import io.strimzi.kafka.bridge.mqtt.kafka.KafkaBridgeProducer;
+import io.strimzi.kafka.bridge.mqtt.mapper.Aggregation;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingResult;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the MQTT messages mapped to the same Kafka topic and key and sends them as a single Kafka record
+ * carrying an envelope, when the envelope is full (messages or bytes) or the maximum delay is elapsed. <br>
+ * The future returned for each MQTT message completes when the envelope is acknowledged by Kafka,
+ * so that the QoS 1 PUBACKs are sent only then.
+ */
+public class EnvelopeAggregator {
+    private static final Logger LOGGER = LogManager.getLogger(EnvelopeAggregator.class);
+
+    // value of the envelope header on the Kafka records
+    private static final byte[] ENVELOPE_HEADER_VALUE = {Envelope.VERSION};
+
+    private final KafkaBridgeProducer kafkaBridgeProducer;
+    private final Map<EnvelopeKey, PendingEnvelope> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param kafkaBridgeProducer instance of the Kafka producer for sending the envelopes
+     */
+    public EnvelopeAggregator(KafkaBridgeProducer kafkaBridgeProducer) {
+        this.kafkaBridgeProducer = kafkaBridgeProducer;
+    }
+
+    /**
+     * Add a MQTT message to the envelope for its Kafka topic and key
+     *
+     * @param mappingResult the mapping result of the MQTT topic
+     * @param aggregation   the aggregation settings of the mapping rule
+     * @param mqttTopic     the MQTT topic, UTF-8 encoded
+     * @param payload       the MQTT message payload, its reader index is not changed
+     * @param expiresAt     time the message expires at, in milliseconds since the epoch, {@link KafkaBridgeProducer#NO_EXPIRY} if it never expires
+     * @param timer         executor used for sending the envelope when the maximum delay is elapsed
+     * @return a future which completes when the envelope containing the message is acknowledged
+     */
+    public CompletionStage<RecordMetadata> add(MappingResult mappingResult, Aggregation aggregation, byte[] mqttTopic, ByteBuf payload,
+                                               long expiresAt, ScheduledExecutorService timer) {
+        CompletableFuture<RecordMetadata> promise = new CompletableFuture<>();
+        EnvelopeKey key = new EnvelopeKey(mappingResult.kafkaTopic(), mappingResult.kafkaKey());
+        PendingEnvelope[] full = new PendingEnvelope[1];
+
+        this.pending.compute(key, (k, envelope) -> {
+            PendingEnvelope current = envelope;
+            if (current == null) {
+                current = new PendingEnvelope(Math.min(aggregation.getMaxBytes(), 4096), expiresAt);
+                PendingEnvelope scheduled = current;
+                current.timer = timer.schedule(() -> this.flush(k, scheduled), aggregation.getMaxDelayMs(), TimeUnit.MILLISECONDS);
+            } else {
+                current.extendExpiry(expiresAt);
+            }
+            current.writer.append(mqttTopic, payload);
+            current.completions.add(promise);
+            if (current.writer.count() >= aggregation.getMaxMessages() || current.writer.size() >= aggregation.getMaxBytes()) {
+                full[0] = current;
+                return null;
+            }
+            return current;
+        });
+
+        if (full[0] != null) {
+            full[0].timer.cancel(false);
+            this.send(key, full[0]);
+        }
+        return promise;
+    }
+
+    /**
+     * Send all the pending envelopes, used when shutting down
+     */
+    public void flushAll() {
+        this.pending.keySet().forEach(key -> {
+            PendingEnvelope envelope = this.pending.remove(key);
+            if (envelope != null) {
+                envelope.timer.cancel(false);
+                this.send(key, envelope);
+            }
+        });
+    }
+
+    /**
+     * Send the envelope when its maximum delay is elapsed, if it was not already sent because full
+     */
+    private void flush(EnvelopeKey key, PendingEnvelope envelope) {
+        if (this.pending.remove(key, envelope)) {
+            this.send(key, envelope);
+        }
+    }
+
+    private void send(EnvelopeKey key, PendingEnvelope envelope) {
+        Headers headers = new RecordHeaders();
+        headers.add(Envelope.HEADER, ENVELOPE_HEADER_VALUE);
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(key.topic(), null, key.key(), envelope.writer.toByteArray(), headers);
+        int count = envelope.writer.count();
+
+        this.kafkaBridgeProducer.send(record, envelope.expiresAt).whenComplete((metadata, error) -> {
+            if (error != null) {
+                LOGGER.error("Error sending envelope with {} messages to Kafka on topic {}", count, key.topic());
+                envelope.completions.forEach(completion -> completion.completeExceptionally(error));
+            } else {
+                LOGGER.debug("Envelope with {} messages sent to Kafka on topic {} with offset {}", count, metadata.topic(), metadata.offset());
+                envelope.completions.forEach(completion -> completion.complete(metadata));
+            }
+        });
+    }
+
+    /**
+     * Kafka topic and key the MQTT messages are aggregated by
+     */
+    private record EnvelopeKey(String topic, String key) {
+    }
+
+    /**
+     * Envelope being filled, with the completions of the MQTT messages it contains
+     */
+    private static class PendingEnvelope {
+        private final EnvelopeWriter writer;
+        private final List<CompletableFuture<RecordMetadata>> completions = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+        // the envelope expires when all the MQTT messages it contains are expired
+        private long expiresAt;
+
+        PendingEnvelope(int initialCapacity, long expiresAt) {
+            this.writer = new EnvelopeWriter(initialCapacity);
+            this.expiresAt = expiresAt;
+        }
+
+        void extendExpiry(long messageExpiresAt) {
+            if (this.expiresAt != KafkaBridgeProducer.NO_EXPIRY) {
+                this.expiresAt = messageExpiresAt == KafkaBridgeProducer.NO_EXPIRY ? KafkaBridgeProducer.NO_EXPIRY : Math.max(this.expiresAt, messageExpiresAt);
+            }
+        }
+    }
+}
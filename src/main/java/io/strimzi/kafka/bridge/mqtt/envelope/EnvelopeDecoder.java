@@ -0,0 +1,91 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.envelope;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Utility for the Kafka consumers to unpack the MQTT messages from the envelope carried by a Kafka record.
+ *
+ * @see Envelope
+ */
+public final class EnvelopeDecoder {
+
+    private EnvelopeDecoder() {
+    }
+
+    /**
+     * Check if the given bytes are an envelope
+     *
+     * @param value the Kafka record value
+     * @return true if the value starts with the envelope magic byte and a supported version
+     */
+    public static boolean isEnvelope(byte[] value) {
+        return value != null && value.length >= 2 && value[0] == Envelope.MAGIC && value[1] == Envelope.VERSION;
+    }
+
+    /**
+     * Decode the MQTT messages packed in the given envelope
+     *
+     * @param envelope the Kafka record value carrying the envelope
+     * @return the list of MQTT messages, in the order they were received by the bridge
+     * @throws IllegalArgumentException if the envelope is malformed
+     */
+    public static List<EnvelopeEntry> decode(byte[] envelope) {
+        if (!isEnvelope(envelope)) {
+            throw new IllegalArgumentException("Not an envelope or unsupported envelope version");
+        }
+        int[] position = {2};
+        int count = readVarint(envelope, position);
+        // each entry takes at least two bytes (the topic and payload lengths), so a hostile count cannot
+        // size the list beyond the envelope itself
+        if (count > (envelope.length - position[0]) / 2) {
+            throw new IllegalArgumentException("Invalid messages count in the envelope");
+        }
+        List<EnvelopeEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int topicLength = readVarint(envelope, position);
+            checkAvailable(envelope, position[0], topicLength);
+            String mqttTopic = new String(envelope, position[0], topicLength, StandardCharsets.UTF_8);
+            position[0] += topicLength;
+
+            int payloadLength = readVarint(envelope, position);
+            checkAvailable(envelope, position[0], payloadLength);
+            byte[] payload = Arrays.copyOfRange(envelope, position[0], position[0] + payloadLength);
+            position[0] += payloadLength;
+
+            entries.add(new EnvelopeEntry(mqttTopic, payload));
+        }
+        if (position[0] != envelope.length) {
+            throw new IllegalArgumentException("Unexpected trailing bytes in the envelope");
+        }
+        return entries;
+    }
+
+    private static int readVarint(byte[] envelope, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            checkAvailable(envelope, position[0], 1);
+            byte b = envelope[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Invalid length in the envelope");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint in the envelope");
+    }
+
+    private static void checkAvailable(byte[] envelope, int position, int length) {
+        if (length < 0 || position + length > envelope.length) {
+            throw new IllegalArgumentException("Truncated envelope");
+        }
+    }
+}
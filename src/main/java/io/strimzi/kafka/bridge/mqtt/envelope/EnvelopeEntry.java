@@ -0,0 +1,22 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.envelope;
+
+/**
+ * Represents a single MQTT message packed into an envelope.
+ *
+ * @param mqttTopic the original MQTT topic.
+ * @param payload   the MQTT message payload.
+ */
+public record EnvelopeEntry(String mqttTopic, byte[] payload) {
+
+    @Override
+    public String toString() {
+        return "EnvelopeEntry(" +
+                "mqttTopic=" + mqttTopic +
+                ", payloadLength=" + payload.length +
+                ")";
+    }
+}
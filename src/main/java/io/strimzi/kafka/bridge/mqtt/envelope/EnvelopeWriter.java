@@ -0,0 +1,106 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.envelope;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+
+/**
+ * Builds an envelope by appending MQTT messages, copying each payload only once into the envelope buffer.
+ * It is not thread safe.
+ *
+ * @see Envelope
+ */
+public class EnvelopeWriter {
+
+    // room reserved at the beginning of the buffer for the magic, the version and the count as varint
+    private static final int PREAMBLE_MAX_SIZE = 2 + 5;
+
+    private byte[] buffer;
+    private int position = PREAMBLE_MAX_SIZE;
+    private int count;
+
+    /**
+     * Constructor
+     *
+     * @param initialCapacity initial size of the envelope buffer
+     */
+    public EnvelopeWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, PREAMBLE_MAX_SIZE + 16)];
+    }
+
+    /**
+     * Append a MQTT message to the envelope
+     *
+     * @param mqttTopic the MQTT topic, UTF-8 encoded
+     * @param payload   the MQTT message payload, its reader index is not changed
+     */
+    public void append(byte[] mqttTopic, ByteBuf payload) {
+        int payloadLength = payload.readableBytes();
+        this.ensureCapacity(10 + mqttTopic.length + payloadLength);
+        this.writeVarint(mqttTopic.length);
+        System.arraycopy(mqttTopic, 0, this.buffer, this.position, mqttTopic.length);
+        this.position += mqttTopic.length;
+        this.writeVarint(payloadLength);
+        payload.getBytes(payload.readerIndex(), this.buffer, this.position, payloadLength);
+        this.position += payloadLength;
+        this.count++;
+    }
+
+    /**
+     * @return the number of MQTT messages in the envelope
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * @return the current size in bytes of the envelope
+     */
+    public int size() {
+        return this.position - PREAMBLE_MAX_SIZE + varintSize(this.count) + 2;
+    }
+
+    /**
+     * @return the envelope bytes
+     */
+    public byte[] toByteArray() {
+        int countSize = varintSize(this.count);
+        int start = PREAMBLE_MAX_SIZE - countSize - 2;
+        this.buffer[start] = Envelope.MAGIC;
+        this.buffer[start + 1] = Envelope.VERSION;
+        int end = this.position;
+        this.position = start + 2;
+        this.writeVarint(this.count);
+        this.position = end;
+        return Arrays.copyOfRange(this.buffer, start, end);
+    }
+
+    private void writeVarint(int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            this.buffer[this.position++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        this.buffer[this.position++] = (byte) v;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (this.position + additional > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + additional));
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        int v = value >>> 7;
+        while (v != 0) {
+            size++;
+            v >>>= 7;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Periodically tunes the Kafka producers linger.ms and batch.size, within the operator bounds, to meet a latency SLO. <br>
+ * It watches the produce rate, the batch fill ratio and the ack latency (queue time plus request latency) and:
+ * - when the latency is above the SLO, it reduces the linger first and then, if the batches are full, increases the batch size;<br>
+ * - when the latency is well below the SLO, it increases the linger to improve batching and adapts the batch size to the fill ratio.<br>
+ * The Kafka producer does not support changing these settings at runtime, so the producers are rebuilt on every adjustment.
+ */
+public class AdaptiveProducerTuner {
+    private static final Logger LOGGER = LogManager.getLogger(AdaptiveProducerTuner.class);
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    // batches considered full or almost empty compared to the batch size
+    private static final double HIGH_FILL_RATIO = 0.9;
+    private static final double LOW_FILL_RATIO = 0.25;
+
+    /**
+     * Callback used for rebuilding the producers with the new settings
+     */
+    @FunctionalInterface
+    public interface Reconfigurer {
+
+        /**
+         * Rebuild the producers with the given settings
+         *
+         * @param lingerMs  the new linger.ms
+         * @param batchSize the new batch.size
+         */
+        void reconfigure(long lingerMs, int batchSize);
+    }
+
+    private final long latencySloMs;
+    private final long lingerMsMin;
+    private final long lingerMsMax;
+    private final int batchSizeMin;
+    private final int batchSizeMax;
+    private final long intervalMs;
+    private final Supplier<Map<MetricName, ? extends Metric>> metrics;
+    private final Reconfigurer reconfigurer;
+    private final ScheduledExecutorService executor;
+
+    private long lingerMs;
+    private int batchSize;
+
+    /**
+     * Constructor
+     *
+     * @param latencySloMs  target ack latency in milliseconds
+     * @param lingerMsMin   minimum linger.ms
+     * @param lingerMsMax   maximum linger.ms
+     * @param batchSizeMin  minimum batch.size
+     * @param batchSizeMax  maximum batch.size
+     * @param intervalMs    interval in milliseconds between evaluations
+     * @param lingerMs      initial linger.ms
+     * @param batchSize     initial batch.size
+     * @param metrics       supplier of the metrics of the producer to watch
+     * @param reconfigurer  callback used for rebuilding the producers
+     */
+    @SuppressWarnings({"checkstyle:ParameterNumber"})
+    public AdaptiveProducerTuner(long latencySloMs, long lingerMsMin, long lingerMsMax, int batchSizeMin, int batchSizeMax, long intervalMs,
+                                 long lingerMs, int batchSize, Supplier<Map<MetricName, ? extends Metric>> metrics, Reconfigurer reconfigurer) {
+        this.latencySloMs = latencySloMs;
+        this.lingerMsMin = lingerMsMin;
+        this.lingerMsMax = lingerMsMax;
+        this.batchSizeMin = batchSizeMin;
+        this.batchSizeMax = batchSizeMax;
+        this.intervalMs = intervalMs;
+        this.lingerMs = Math.max(lingerMsMin, Math.min(lingerMsMax, lingerMs));
+        this.batchSize = Math.max(batchSizeMin, Math.min(batchSizeMax, batchSize));
+        this.metrics = metrics;
+        this.reconfigurer = reconfigurer;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kafka-bridge-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start the periodic evaluation
+     */
+    public void start() {
+        LOGGER.info("Adaptive producer tuning started with linger.ms={} batch.size={} latency SLO={} ms", this.lingerMs, this.batchSize, this.latencySloMs);
+        this.executor.scheduleWithFixedDelay(this::evaluate, this.intervalMs, this.intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the periodic evaluation
+     */
+    public void stop() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return the current linger.ms
+     */
+    public long getLingerMs() {
+        return this.lingerMs;
+    }
+
+    /**
+     * @return the current batch.size
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Evaluate the producer metrics and rebuild the producers if the settings need to change
+     */
+    private void evaluate() {
+        try {
+            Map<MetricName, ? extends Metric> producerMetrics = this.metrics.get();
+            double sendRate = metricValue(producerMetrics, "record-send-rate");
+            double batchSizeAvg = metricValue(producerMetrics, "batch-size-avg");
+            double latencyMs = metricValue(producerMetrics, "record-queue-time-avg") + metricValue(producerMetrics, "request-latency-avg");
+
+            long previousLingerMs = this.lingerMs;
+            int previousBatchSize = this.batchSize;
+            if (this.adjust(sendRate, batchSizeAvg, latencyMs)) {
+                LOGGER.info("Adjusting Kafka producers linger.ms {} -> {}, batch.size {} -> {} (send rate {}/s, batch fill {}%, ack latency {} ms, SLO {} ms)",
+                        previousLingerMs, this.lingerMs, previousBatchSize, this.batchSize,
+                        String.format("%.1f", sendRate), String.format("%.1f", 100 * batchSizeAvg / previousBatchSize),
+                        String.format("%.1f", latencyMs), this.latencySloMs);
+                this.reconfigurer.reconfigure(this.lingerMs, this.batchSize);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error tuning the Kafka producers: ", e);
+        }
+    }
+
+    /**
+     * Compute the new settings from the observed metrics
+     *
+     * @param sendRate      records sent per second
+     * @param batchSizeAvg  average batch size in bytes
+     * @param latencyMs     average ack latency in milliseconds
+     * @return true if the settings changed
+     */
+    boolean adjust(double sendRate, double batchSizeAvg, double latencyMs) {
+        if (Double.isNaN(sendRate) || sendRate <= 0 || Double.isNaN(latencyMs)) {
+            // no traffic, nothing to learn from
+            return false;
+        }
+
+        long newLingerMs = this.lingerMs;
+        int newBatchSize = this.batchSize;
+        double fillRatio = Double.isNaN(batchSizeAvg) ? 0 : batchSizeAvg / this.batchSize;
+
+        if (latencyMs > this.latencySloMs) {
+            if (this.lingerMs > this.lingerMsMin) {
+                newLingerMs = Math.max(this.lingerMsMin, this.lingerMs / 2);
+            } else if (fillRatio > HIGH_FILL_RATIO) {
+                // full batches are queueing, larger batches improve the throughput
+                newBatchSize = (int) Math.min(this.batchSizeMax, 2L * this.batchSize);
+            }
+        } else if (latencyMs < this.latencySloMs / 2.0) {
+            // latency headroom, trade some of it for better batching
+            newLingerMs = Math.min(this.lingerMsMax, Math.max(1, this.lingerMs * 2));
+            if (fillRatio > HIGH_FILL_RATIO) {
+                newBatchSize = (int) Math.min(this.batchSizeMax, 2L * this.batchSize);
+            } else if (fillRatio < LOW_FILL_RATIO) {
+                newBatchSize = Math.max(this.batchSizeMin, this.batchSize / 2);
+            }
+        }
+
+        boolean changed = newLingerMs != this.lingerMs || newBatchSize != this.batchSize;
+        this.lingerMs = newLingerMs;
+        this.batchSize = newBatchSize;
+        return changed;
+    }
+
+    private static double metricValue(Map<MetricName, ? extends Metric> metrics, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+            if (PRODUCER_METRICS_GROUP.equals(entry.getKey().group()) && name.equals(entry.getKey().name())) {
+                Object value = entry.getValue().metricValue();
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+/**
+ * Represents the action taken for a record when the circuit breaker of its Kafka topic is open
+ */
+public enum CircuitBreakerAction {
+    // The send fails fast, as a non retriable failure
+    FAIL("fail"),
+    // The record is diverted to the bridge default topic
+    DIVERT("divert");
+
+    private final String value;
+
+    /**
+     * Constructor
+     *
+     * @param value the value of the action
+     */
+    CircuitBreakerAction(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the action from the value
+     *
+     * @param value the value of the action
+     * @return the action
+     */
+    public static CircuitBreakerAction fromValue(String value) {
+        return switch (value) {
+            case "fail" -> FAIL;
+            case "divert" -> DIVERT;
+            default -> throw new IllegalArgumentException("Unknown CircuitBreakerAction value: " + value);
+        };
+    }
+
+    /**
+     * @return the value of the action
+     */
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.apache.kafka.common.KafkaException;
+
+/**
+ * Raised when a record is not sent because the circuit breaker of its Kafka topic is open
+ */
+public class CircuitBreakerOpenException extends KafkaException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor
+     *
+     * @param topic the Kafka topic whose circuit breaker is open
+     */
+    public CircuitBreakerOpenException(String topic) {
+        super("Circuit breaker open for topic " + topic);
+    }
+}
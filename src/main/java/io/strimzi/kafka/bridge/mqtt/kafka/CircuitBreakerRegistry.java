@@ -0,0 +1,56 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the circuit breakers of the mapped Kafka topics, created lazily on the first send to each topic.
+ */
+public class CircuitBreakerRegistry {
+
+    private final Map<String, TopicCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long windowMs;
+    private final long openMs;
+
+    /**
+     * Constructor
+     *
+     * @param failureThreshold  number of errors within the window which trips a breaker
+     * @param windowMs          sliding window duration in milliseconds
+     * @param openMs            duration in milliseconds a breaker stays open before probing
+     */
+    public CircuitBreakerRegistry(int failureThreshold, long windowMs, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.windowMs = windowMs;
+        this.openMs = openMs;
+    }
+
+    /**
+     * Get the circuit breaker for the given Kafka topic
+     *
+     * @param topic the Kafka topic
+     * @return the circuit breaker for the topic
+     */
+    public TopicCircuitBreaker get(String topic) {
+        TopicCircuitBreaker breaker = this.breakers.get(topic);
+        if (breaker == null) {
+            breaker = this.breakers.computeIfAbsent(topic, t -> new TopicCircuitBreaker(t, this.failureThreshold, this.windowMs, this.openMs));
+        }
+        return breaker;
+    }
+
+    /**
+     * @return the state of all the circuit breakers, by Kafka topic
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new TreeMap<>();
+        this.breakers.forEach((topic, breaker) -> map.put(topic, breaker.toMap()));
+        return map;
+    }
+}
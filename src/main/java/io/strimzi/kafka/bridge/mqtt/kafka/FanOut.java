@@ -0,0 +1,59 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Sends the records of a MQTT message fanned out to multiple Kafka targets, completing when a quorum of them is acknowledged. <br>
+ * The records share the same payload bytes and headers, which are never copied per target.
+ */
+public final class FanOut {
+
+    private FanOut() {
+    }
+
+    /**
+     * Send the given records, one per Kafka target
+     *
+     * @param records   records to be sent, all sharing the same payload
+     * @param sender    function sending a single record, e.g. {@link KafkaBridgeProducer#send(ProducerRecord, long)}
+     * @param quorum    number of records to be acknowledged, 0 (or more than the records) for all of them
+     * @return a future which completes with the metadata of the record reaching the quorum,
+     *         or exceptionally with the error of the record making the quorum unreachable
+     */
+    public static CompletionStage<RecordMetadata> send(List<ProducerRecord<String, byte[]>> records,
+                                                       Function<ProducerRecord<String, byte[]>, CompletionStage<RecordMetadata>> sender,
+                                                       int quorum) {
+        if (records.size() == 1) {
+            return sender.apply(records.get(0));
+        }
+        int required = quorum <= 0 ? records.size() : Math.min(quorum, records.size());
+        // once this number of records failed, the quorum cannot be reached anymore
+        int tolerated = records.size() - required;
+        AtomicInteger acknowledged = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CompletableFuture<RecordMetadata> promise = new CompletableFuture<>();
+        for (ProducerRecord<String, byte[]> record : records) {
+            sender.apply(record).whenComplete((metadata, error) -> {
+                if (error == null) {
+                    if (acknowledged.incrementAndGet() == required) {
+                        promise.complete(metadata);
+                    }
+                } else if (failed.incrementAndGet() == tolerated + 1) {
+                    promise.completeExceptionally(error);
+                }
+            });
+        }
+        return promise;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.HeaderEnrichment;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Builds the headers of the Kafka records for a mapping rule, as configured by its {@link HeaderEnrichment}. <br>
+ * The headers with constant values (QoS level, retain flag and the static ones) are encoded once, when the
+ * enricher is created, and the same instances are shared by all the records.
+ */
+public class HeaderEnricher {
+
+    public static final String MQTT_TOPIC_HEADER = "mqtt-topic";
+    public static final String MQTT_CLIENT_ID_HEADER = "mqtt-client-id";
+    public static final String MQTT_QOS_HEADER = "mqtt-qos";
+    public static final String MQTT_RETAIN_HEADER = "mqtt-retain";
+    public static final String MQTT_RECEIVED_AT_HEADER = "mqtt-received-at";
+
+    /**
+     * Enricher for the records not matching a mapping rule, or matching one without headers settings:
+     * it only adds the MQTT topic header.
+     */
+    public static final HeaderEnricher DEFAULT = new HeaderEnricher(new HeaderEnrichment());
+
+    // indexed by the QoS level
+    private static final Header[] QOS_HEADERS = {
+        header(MQTT_QOS_HEADER, "0"), header(MQTT_QOS_HEADER, "1"), header(MQTT_QOS_HEADER, "2")
+    };
+    private static final Header RETAIN_HEADER = header(MQTT_RETAIN_HEADER, "true");
+    private static final Header NOT_RETAIN_HEADER = header(MQTT_RETAIN_HEADER, "false");
+
+    private final boolean mqttTopic;
+    private final boolean clientId;
+    private final boolean qos;
+    private final boolean retain;
+    private final boolean receivedAt;
+    private final Header[] staticHeaders;
+
+    /**
+     * Constructor
+     *
+     * @param enrichment the headers settings of the mapping rule
+     */
+    public HeaderEnricher(HeaderEnrichment enrichment) {
+        this.mqttTopic = enrichment.isMqttTopic();
+        this.clientId = enrichment.isClientId();
+        this.qos = enrichment.isQos();
+        this.retain = enrichment.isRetain();
+        this.receivedAt = enrichment.isReceivedAt();
+        Map<String, String> headers = enrichment.getStaticHeaders();
+        this.staticHeaders = headers != null ?
+                headers.entrySet().stream().map(e -> header(e.getKey(), e.getValue())).toArray(Header[]::new) : new Header[0];
+    }
+
+    /**
+     * Build the headers of a Kafka record
+     *
+     * @param mqttTopicBytes the MQTT topic, encoded in UTF-8
+     * @param clientIdBytes  the MQTT client identifier, encoded in UTF-8, null if not known
+     * @param qosLevel       the MQTT QoS level
+     * @param retainFlag     the MQTT retain flag
+     * @param receivedAtMs   the time the MQTT message was received, in milliseconds since the epoch
+     * @return the headers of the Kafka record
+     */
+    public Headers enrich(byte[] mqttTopicBytes, byte[] clientIdBytes, int qosLevel, boolean retainFlag, long receivedAtMs) {
+        Headers headers = new RecordHeaders();
+        if (this.mqttTopic) {
+            headers.add(new RecordHeader(MQTT_TOPIC_HEADER, mqttTopicBytes));
+        }
+        if (this.clientId && clientIdBytes != null) {
+            headers.add(new RecordHeader(MQTT_CLIENT_ID_HEADER, clientIdBytes));
+        }
+        if (this.qos) {
+            headers.add(QOS_HEADERS[qosLevel]);
+        }
+        if (this.retain) {
+            headers.add(retainFlag ? RETAIN_HEADER : NOT_RETAIN_HEADER);
+        }
+        if (this.receivedAt) {
+            headers.add(new RecordHeader(MQTT_RECEIVED_AT_HEADER, Long.toString(receivedAtMs).getBytes(StandardCharsets.US_ASCII)));
+        }
+        for (Header header : this.staticHeaders) {
+            headers.add(header);
+        }
+        return headers;
+    }
+
+    private static Header header(String key, String value) {
+        return new RecordHeader(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,51 +4,218 @@
  */
 package io.strimzi.kafka.bridge.mqtt.kafka;
 
+import io.strimzi.kafka.bridge.mqtt.config.BridgeConfig;
 import io.strimzi.kafka.bridge.mqtt.config.KafkaConfig;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a Kafka producer for the Bridge.
  */
 public class KafkaBridgeProducer {
+    private static final Logger LOGGER = LogManager.getLogger(KafkaBridgeProducer.class);
 
-    private final Producer<String, byte[]> noAckProducer;
-    private final Producer<String, byte[]> ackOneProducer;
+    // headers added to the records routed to the dead letter topic
+    public static final String FAILURE_CAUSE_HEADER = "failure-cause";
+    public static final String FAILURE_MESSAGE_HEADER = "failure-message";
+    public static final String FAILURE_TOPIC_HEADER = "failure-topic";
+    public static final String FAILURE_ATTEMPTS_HEADER = "failure-attempts";
+    // headers added to the records routed to the expired topic
+    public static final String EXPIRED_TOPIC_HEADER = "expired-topic";
+    public static final String EXPIRED_AGE_HEADER = "expired-age-ms";
+
+    // deadline of the records which never expire
+    public static final long NO_EXPIRY = 0;
+
+    // Kafka producer defaults, used as starting point for the adaptive tuning
+    private static final long DEFAULT_LINGER_MS = 5;
+    private static final int DEFAULT_BATCH_SIZE = 16384;
+    // time given to the sends racing with a producers swap to complete before closing the old producers
+    private static final long PRODUCER_CLOSE_GRACE_MS = 1000;
+    // maximum time waited, on close, for the replaced producers to be flushed and closed
+    private static final long PRODUCER_CLOSE_TIMEOUT_MS = 10000;
+    // interval between two checks of the in-flight sends while waiting for them
+    private static final long IN_FLIGHT_POLL_MS = 10;
+    // Kafka producer metrics, from the producer-metrics group, exposed by the bridge
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    private static final List<String> EXPOSED_PRODUCER_METRICS = List.of(
+            "record-send-total", "record-error-total", "record-retry-total", "byte-total",
+            "batch-size-avg", "records-per-request-avg", "compression-rate-avg",
+            "record-queue-time-avg", "request-latency-avg", "requests-in-flight",
+            "buffer-available-bytes", "waiting-threads");
+
+    // swapped when the producers are rebuilt by the adaptive tuning
+    private volatile Producer<String, byte[]> noAckProducer;
+    private volatile Producer<String, byte[]> ackOneProducer;
+    // idempotent producer, used for QoS 2 messages and not rebuilt by the adaptive tuning
+    private final Producer<String, byte[]> exactlyOnceProducer;
+    private final KafkaConfig kafkaConfig;
+    private AdaptiveProducerTuner tuner;
+
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final long retryBackoffMaxMs;
+    private final String deadLetterTopic;
+    private final String expiredTopic;
+    private final RetryBudget retryBudget;
+    private final KafkaSendStats stats = new KafkaSendStats();
+    // sends whose outcome (acknowledged, dead lettered or failed) is not known yet
+    private final AtomicLong inFlight = new AtomicLong();
+    // null when the circuit breakers are disabled
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final CircuitBreakerAction circuitBreakerAction;
+    private final String defaultTopic;
+    // scheduler used for delaying the retries,
+    // it never runs on the Netty event loops or on the Kafka I/O thread
+    private final ScheduledExecutorService scheduler;
+    // scheduler used for flushing and closing the replaced producers, so that a slow flush does not delay the retries
+    private final ScheduledExecutorService producerCloser;
 
     /**
      * Constructor
+     *
+     * @param config bridge configuration, including the Kafka one
      */
-    public KafkaBridgeProducer(KafkaConfig config) {
-        this.noAckProducer = createProducer(config, KafkaProducerAckLevel.ZERO);
-        this.ackOneProducer = createProducer(config, KafkaProducerAckLevel.ONE);
+    public KafkaBridgeProducer(BridgeConfig config) {
+        this(config,
+                createProducer(config.getKafkaConfig(), KafkaProducerAckLevel.ZERO, Map.of()),
+                createProducer(config.getKafkaConfig(), KafkaProducerAckLevel.ONE, Map.of()),
+                createProducer(config.getKafkaConfig(), KafkaProducerAckLevel.ALL, Map.of(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true")));
+
+        if (config.isAdaptiveEnabled()) {
+            Map<String, Object> producerConfig = config.getKafkaConfig().getProducerConfig().getConfig();
+            this.tuner = new AdaptiveProducerTuner(config.getAdaptiveLatencySloMs(),
+                    config.getAdaptiveLingerMsMin(), config.getAdaptiveLingerMsMax(),
+                    config.getAdaptiveBatchSizeMin(), config.getAdaptiveBatchSizeMax(),
+                    config.getAdaptiveIntervalMs(),
+                    Long.parseLong(producerConfig.getOrDefault(ProducerConfig.LINGER_MS_CONFIG, DEFAULT_LINGER_MS).toString()),
+                    Integer.parseInt(producerConfig.getOrDefault(ProducerConfig.BATCH_SIZE_CONFIG, DEFAULT_BATCH_SIZE).toString()),
+                    () -> this.ackOneProducer.metrics(),
+                    this::rebuildProducers);
+            this.tuner.start();
+        }
     }
 
     /**
-     * Send the given record to the Kafka topic
+     * Constructor
+     *
+     * @param config            bridge configuration
+     * @param noAckProducer     Kafka producer used for sending messages without waiting for an ack
+     * @param ackOneProducer    Kafka producer used for sending messages waiting for the leader ack
+     */
+    KafkaBridgeProducer(BridgeConfig config, Producer<String, byte[]> noAckProducer, Producer<String, byte[]> ackOneProducer) {
+        this(config, noAckProducer, ackOneProducer, ackOneProducer);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param config                bridge configuration
+     * @param noAckProducer         Kafka producer used for sending messages without waiting for an ack
+     * @param ackOneProducer        Kafka producer used for sending messages waiting for the leader ack
+     * @param exactlyOnceProducer   idempotent Kafka producer used for sending messages waiting for all the replicas ack
+     */
+    KafkaBridgeProducer(BridgeConfig config, Producer<String, byte[]> noAckProducer, Producer<String, byte[]> ackOneProducer,
+                        Producer<String, byte[]> exactlyOnceProducer) {
+        this.noAckProducer = noAckProducer;
+        this.ackOneProducer = ackOneProducer;
+        this.exactlyOnceProducer = exactlyOnceProducer;
+        this.kafkaConfig = config.getKafkaConfig();
+        this.maxRetries = config.getSendRetries();
+        this.retryBackoffMs = config.getSendRetryBackoffMs();
+        this.retryBackoffMaxMs = config.getSendRetryBackoffMaxMs();
+        this.deadLetterTopic = config.getDeadLetterTopic();
+        this.expiredTopic = config.getExpiredTopic();
+        this.retryBudget = new RetryBudget(config.getSendRetryBudgetRatio(), config.getSendRetryBudgetReserve());
+        this.circuitBreakers = config.isCircuitBreakerEnabled() ?
+                new CircuitBreakerRegistry(config.getCircuitBreakerFailureThreshold(), config.getCircuitBreakerWindowMs(), config.getCircuitBreakerOpenMs()) :
+                null;
+        this.circuitBreakerAction = CircuitBreakerAction.fromValue(config.getCircuitBreakerAction());
+        this.defaultTopic = config.getBridgeDefaultTopic();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kafka-bridge-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.producerCloser = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kafka-bridge-producer-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Send the given record to the Kafka topic.
+     * If the send fails with a retriable error, it is retried with a jittered backoff as long as the retry budget allows it.
+     * If it still fails, the record is routed to the dead letter topic, if configured.
      *
      * @param record record to be sent
-     * @return a future which completes when the record is acknowledged
+     * @return a future which completes when the record is acknowledged, or exceptionally if it could not be delivered
      */
     public CompletionStage<RecordMetadata> send(ProducerRecord<String, byte[]> record) {
-        CompletableFuture<RecordMetadata> promise = new CompletableFuture<>();
+        return this.send(record, NO_EXPIRY);
+    }
 
-        this.ackOneProducer.send(record, (metadata, exception) -> {
-            if (exception != null) {
-                promise.completeExceptionally(exception);
-            } else {
-                promise.complete(metadata);
-            }
-        });
+    /**
+     * Send the given record to the Kafka topic, as {@link #send(ProducerRecord)}, unless it expired. <br>
+     * The deadline is checked every time the record is handed to the Kafka producer, so a record waiting for a retry
+     * while Kafka is slow is not sent once it is stale. An expired record is routed to the expired topic, if configured,
+     * otherwise it is dropped and the returned future completes exceptionally with a {@link MessageExpiredException}.
+     *
+     * @param record    record to be sent
+     * @param expiresAt time the record expires at, in milliseconds since the epoch, {@link #NO_EXPIRY} if it never expires
+     * @return a future which completes when the record is acknowledged, or exceptionally if it could not be delivered
+     */
+    public CompletionStage<RecordMetadata> send(ProducerRecord<String, byte[]> record, long expiresAt) {
+        return this.send(record, KafkaProducerAckLevel.ONE, expiresAt);
+    }
+
+    /**
+     * Send the given record to the Kafka topic through the idempotent producer, waiting for all the replicas ack.
+     * The Kafka producer retries internally without duplicating the record, so the bridge does not retry it.
+     * If it fails, the record is routed to the dead letter topic, if configured.
+     *
+     * @param record record to be sent
+     * @return a future which completes when the record is acknowledged, or exceptionally if it could not be delivered
+     */
+    public CompletionStage<RecordMetadata> sendExactlyOnce(ProducerRecord<String, byte[]> record) {
+        return this.send(record, KafkaProducerAckLevel.ALL, NO_EXPIRY);
+    }
+
+    private CompletionStage<RecordMetadata> send(ProducerRecord<String, byte[]> record, KafkaProducerAckLevel ackLevel, long expiresAt) {
+        CompletableFuture<RecordMetadata> promise = new CompletableFuture<>();
+        this.inFlight.incrementAndGet();
+        promise.whenComplete((metadata, error) -> this.inFlight.decrementAndGet());
+        this.retryBudget.deposit();
+        this.send(record, ackLevel, 0, expiresAt, promise);
         return promise;
     }
 
@@ -58,33 +225,449 @@ public class KafkaBridgeProducer {
      * @param record record to be sent
      */
     public void sendNoAck(ProducerRecord<String, byte[]> record) {
-        this.noAckProducer.send(record);
+        if (this.circuitBreakers == null) {
+            this.produce(record, KafkaProducerAckLevel.ZERO, null);
+            return;
+        }
+
+        Allowed allowed = this.applyCircuitBreaker(record);
+        if (allowed == null) {
+            LOGGER.debug("Message for topic {} dropped, circuit breaker open", record.topic());
+            this.stats.recordFailure(new CircuitBreakerOpenException(record.topic()));
+            return;
+        }
+        this.produce(allowed.record(), KafkaProducerAckLevel.ZERO, (metadata, exception) -> this.updateCircuitBreaker(allowed, exception));
+    }
+
+    /**
+     * @return the number of sends whose outcome is not known yet
+     */
+    public long getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Wait for the in-flight sends to complete, up to the given timeout
+     *
+     * @param timeoutMs maximum time to wait, in milliseconds
+     * @return the number of sends still in-flight when returning
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long awaitInFlight(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long pending;
+        while ((pending = this.inFlight.get()) > 0 && System.nanoTime() < deadline) {
+            // not flushing the producer here, because flush() blocks until the records are acknowledged, ignoring the timeout
+            Thread.sleep(IN_FLIGHT_POLL_MS);
+        }
+        return pending;
+    }
+
+    /**
+     * Get the number of partitions of the given Kafka topic, from the producer metadata
+     *
+     * @param topic the Kafka topic
+     * @return the number of partitions
+     */
+    public int partitionCount(String topic) {
+        return this.ackOneProducer.partitionsFor(topic).size();
+    }
+
+    /**
+     * @return the counters about the failed sends
+     */
+    public KafkaSendStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return the main metrics of the Kafka producers, by producer (ack-zero, ack-one and exactly-once) and metric name
+     */
+    public Map<String, Map<String, Double>> getProducerMetrics() {
+        Map<String, Map<String, Double>> metrics = new LinkedHashMap<>();
+        metrics.put("ack-zero", producerMetrics(this.noAckProducer));
+        metrics.put("ack-one", producerMetrics(this.ackOneProducer));
+        if (this.exactlyOnceProducer != this.ackOneProducer) {
+            metrics.put("exactly-once", producerMetrics(this.exactlyOnceProducer));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the highest fraction of the buffer memory used among the Kafka producers, between 0 and 1
+     */
+    public double getBufferUsage() {
+        double usage = bufferUsage(this.noAckProducer);
+        usage = Math.max(usage, bufferUsage(this.ackOneProducer));
+        return Math.max(usage, bufferUsage(this.exactlyOnceProducer));
+    }
+
+    /**
+     * @return the average ack latency, queue time plus request latency, in milliseconds, of the producer waiting for the leader ack
+     */
+    public double getAckLatencyMs() {
+        Producer<String, byte[]> producer = this.ackOneProducer;
+        double latencyMs = producerMetric(producer, "record-queue-time-avg") + producerMetric(producer, "request-latency-avg");
+        return Double.isNaN(latencyMs) ? 0 : latencyMs;
+    }
+
+    private static double bufferUsage(Producer<String, byte[]> producer) {
+        double total = producerMetric(producer, "buffer-total-bytes");
+        double available = producerMetric(producer, "buffer-available-bytes");
+        return total > 0 && !Double.isNaN(available) ? 1 - available / total : 0;
+    }
+
+    private static double producerMetric(Producer<String, byte[]> producer, String metric) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            MetricName name = entry.getKey();
+            if (PRODUCER_METRICS_GROUP.equals(name.group()) && metric.equals(name.name())) {
+                return entry.getValue().metricValue() instanceof Number value ? value.doubleValue() : Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static Map<String, Double> producerMetrics(Producer<String, byte[]> producer) {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            MetricName name = entry.getKey();
+            if (PRODUCER_METRICS_GROUP.equals(name.group()) && EXPOSED_PRODUCER_METRICS.contains(name.name())
+                    && entry.getValue().metricValue() instanceof Number value) {
+                values.put(name.name(), value.doubleValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the state of the circuit breakers, by Kafka topic, empty if they are disabled
+     */
+    public Map<String, Object> getCircuitBreakersState() {
+        return this.circuitBreakers != null ? this.circuitBreakers.toMap() : Map.of();
+    }
+
+    /**
+     * Send attempt of the given record
+     *
+     * @param record    record to be sent
+     * @param ackLevel  ack level of the producer to use, ONE or ALL (idempotent)
+     * @param attempt   number of the attempt, starting from 0
+     * @param expiresAt time the record expires at, in milliseconds since the epoch, {@link #NO_EXPIRY} if it never expires
+     * @param promise   future to complete with the outcome of the send
+     */
+    private void send(ProducerRecord<String, byte[]> record, KafkaProducerAckLevel ackLevel, int attempt, long expiresAt,
+                      CompletableFuture<RecordMetadata> promise) {
+        long now = System.currentTimeMillis();
+        if (expiresAt != NO_EXPIRY && now >= expiresAt) {
+            this.expire(record, now - expiresAt, promise);
+            return;
+        }
+        Allowed allowed = this.circuitBreakers != null ? this.applyCircuitBreaker(record) : new Allowed(record, null, 0);
+        if (allowed == null) {
+            this.handleFailure(record, ackLevel, attempt, expiresAt, new CircuitBreakerOpenException(record.topic()), promise);
+            return;
+        }
+
+        try {
+            this.produce(allowed.record(), ackLevel, (metadata, exception) -> {
+                this.updateCircuitBreaker(allowed, exception);
+                if (exception != null) {
+                    this.handleFailure(allowed.record(), ackLevel, attempt, expiresAt, exception, promise);
+                } else {
+                    this.stats.recordSuccess();
+                    promise.complete(metadata);
+                }
+            });
+        } catch (RuntimeException e) {
+            this.updateCircuitBreaker(allowed, e);
+            this.handleFailure(allowed.record(), ackLevel, attempt, expiresAt, e, promise);
+        }
+    }
+
+    /**
+     * Hand the given record to the Kafka producer for the ack level. <br>
+     * A producer replaced by the adaptive tuning is closed after a grace period, so a send racing with the close gets
+     * an {@link IllegalStateException}: the record is then handed to the current producer, instead of failing as not retriable.
+     *
+     * @param record    record to be sent
+     * @param ackLevel  ack level of the producer to use
+     * @param callback  callback invoked with the outcome of the send, null if none
+     */
+    private void produce(ProducerRecord<String, byte[]> record, KafkaProducerAckLevel ackLevel, Callback callback) {
+        Producer<String, byte[]> producer = this.producer(ackLevel);
+        try {
+            producer.send(record, callback);
+        } catch (IllegalStateException e) {
+            Producer<String, byte[]> current = this.producer(ackLevel);
+            if (current == producer) {
+                throw e;
+            }
+            LOGGER.debug("Kafka producer replaced while sending message on topic {}, sending through the current one", record.topic());
+            current.send(record, callback);
+        }
+    }
+
+    /**
+     * @param ackLevel the ack level
+     * @return the current Kafka producer for the ack level
+     */
+    private Producer<String, byte[]> producer(KafkaProducerAckLevel ackLevel) {
+        return switch (ackLevel) {
+            case ZERO -> this.noAckProducer;
+            case ONE -> this.ackOneProducer;
+            case ALL -> this.exactlyOnceProducer;
+        };
+    }
+
+    /**
+     * Check the circuit breaker of the record topic, diverting the record to the default topic if configured so
+     *
+     * @param record record to be sent
+     * @return the record to send, which could be the diverted one, or null if it has to fail fast
+     */
+    private Allowed applyCircuitBreaker(ProducerRecord<String, byte[]> record) {
+        TopicCircuitBreaker breaker = this.circuitBreakers.get(record.topic());
+        long generation = breaker.tryAcquire();
+        if (generation != TopicCircuitBreaker.REJECTED) {
+            return new Allowed(record, breaker, generation);
+        }
+        if (this.circuitBreakerAction == CircuitBreakerAction.DIVERT && !record.topic().equals(this.defaultTopic)) {
+            TopicCircuitBreaker defaultBreaker = this.circuitBreakers.get(this.defaultTopic);
+            long defaultGeneration = defaultBreaker.tryAcquire();
+            if (defaultGeneration != TopicCircuitBreaker.REJECTED) {
+                LOGGER.debug("Message for topic {} diverted to the default topic {}, circuit breaker open", record.topic(), this.defaultTopic);
+                return new Allowed(new ProducerRecord<>(this.defaultTopic, null, record.key(), record.value(), record.headers()),
+                        defaultBreaker, defaultGeneration);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Feed the circuit breaker with the outcome of a send
+     *
+     * @param allowed   the record sent, with the circuit breaker which allowed it
+     * @param exception the error raised by the Kafka producer, null if the send succeeded
+     */
+    private void updateCircuitBreaker(Allowed allowed, Exception exception) {
+        if (allowed.breaker() == null) {
+            return;
+        }
+        if (exception != null) {
+            allowed.breaker().onFailure(allowed.generation());
+        } else {
+            allowed.breaker().onSuccess(allowed.generation());
+        }
+    }
+
+    /**
+     * Handle a failed send by retrying it or routing the record to the dead letter topic
+     *
+     * @param record    record which failed to be sent
+     * @param ackLevel  ack level of the producer used
+     * @param attempt   number of the failed attempt, starting from 0
+     * @param expiresAt time the record expires at, in milliseconds since the epoch, {@link #NO_EXPIRY} if it never expires
+     * @param exception the error raised by the Kafka producer
+     * @param promise   future to complete with the outcome of the send
+     */
+    private void handleFailure(ProducerRecord<String, byte[]> record, KafkaProducerAckLevel ackLevel, int attempt, long expiresAt,
+                               Exception exception, CompletableFuture<RecordMetadata> promise) {
+        this.stats.recordFailure(exception);
+        // re-sending through the idempotent producer would be a new record, so it would break the exactly once delivery
+        if (exception instanceof RetriableException && attempt < this.maxRetries && ackLevel != KafkaProducerAckLevel.ALL) {
+            if (this.retryBudget.tryWithdraw()) {
+                long backoff = this.backoff(attempt);
+                LOGGER.warn("Failed to send message to Kafka on topic {}, retrying in {} ms ({}/{}): {}",
+                        record.topic(), backoff, attempt + 1, this.maxRetries, exception.getMessage());
+                this.stats.recordRetry();
+                try {
+                    this.scheduler.schedule(() -> this.send(record, ackLevel, attempt + 1, expiresAt, promise), backoff, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warn("Retry not possible because the Kafka producer is closing");
+                }
+            } else {
+                this.stats.recordRetryBudgetExhausted();
+                LOGGER.warn("Retry budget exhausted, not retrying message on topic {}", record.topic());
+            }
+        }
+        this.deadLetter(record, attempt + 1, exception, promise);
+    }
+
+    /**
+     * Route a record which expired before being sent to the expired topic, or drop it
+     *
+     * @param record  record which expired
+     * @param lateMs  time elapsed since the record expired, in milliseconds
+     * @param promise future to complete with the outcome of the send
+     */
+    private void expire(ProducerRecord<String, byte[]> record, long lateMs, CompletableFuture<RecordMetadata> promise) {
+        if (this.expiredTopic == null) {
+            LOGGER.debug("Message for topic {} expired {} ms ago, dropped", record.topic(), lateMs);
+            this.stats.recordExpiredDropped();
+            promise.completeExceptionally(new MessageExpiredException(record.topic()));
+            return;
+        }
+
+        Headers headers = new RecordHeaders(record.headers().toArray());
+        headers.add(EXPIRED_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(EXPIRED_AGE_HEADER, String.valueOf(lateMs).getBytes(StandardCharsets.UTF_8));
+        ProducerRecord<String, byte[]> expiredRecord = new ProducerRecord<>(this.expiredTopic, null, record.key(), record.value(), headers);
+
+        try {
+            this.produce(expiredRecord, KafkaProducerAckLevel.ONE, (metadata, exception) -> {
+                if (exception != null) {
+                    LOGGER.warn("Failed to route expired message from topic {} to the expired topic {}, dropped: {}",
+                            record.topic(), this.expiredTopic, exception.getMessage());
+                    this.stats.recordExpiredDropped();
+                    promise.completeExceptionally(new MessageExpiredException(record.topic()));
+                } else {
+                    this.stats.recordExpiredRedirected();
+                    promise.complete(metadata);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to route expired message from topic {} to the expired topic {}, dropped: {}",
+                    record.topic(), this.expiredTopic, e.getMessage());
+            this.stats.recordExpiredDropped();
+            promise.completeExceptionally(new MessageExpiredException(record.topic()));
+        }
+    }
+
+    /**
+     * Route a record which could not be delivered to the dead letter topic, adding headers describing the failure
+     *
+     * @param record    record which could not be delivered
+     * @param attempts  number of attempts done
+     * @param exception the last error raised by the Kafka producer
+     * @param promise   future to complete with the outcome of the send
+     */
+    private void deadLetter(ProducerRecord<String, byte[]> record, int attempts, Exception exception, CompletableFuture<RecordMetadata> promise) {
+        if (this.deadLetterTopic == null) {
+            this.stats.recordUndelivered();
+            promise.completeExceptionally(exception);
+            return;
+        }
+
+        Headers headers = new RecordHeaders(record.headers().toArray());
+        headers.add(FAILURE_CAUSE_HEADER, exception.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        headers.add(FAILURE_MESSAGE_HEADER, String.valueOf(exception.getMessage()).getBytes(StandardCharsets.UTF_8));
+        headers.add(FAILURE_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(FAILURE_ATTEMPTS_HEADER, String.valueOf(attempts).getBytes(StandardCharsets.UTF_8));
+        ProducerRecord<String, byte[]> deadLetterRecord = new ProducerRecord<>(this.deadLetterTopic, null, record.key(), record.value(), headers);
+
+        try {
+            this.produce(deadLetterRecord, KafkaProducerAckLevel.ONE, (metadata, deadLetterException) -> {
+                if (deadLetterException != null) {
+                    LOGGER.error("Failed to route message from topic {} to the dead letter topic {}: ", record.topic(), this.deadLetterTopic, deadLetterException);
+                    this.stats.recordDeadLetterFailure();
+                    this.stats.recordUndelivered();
+                    promise.completeExceptionally(exception);
+                } else {
+                    LOGGER.warn("Message for topic {} routed to the dead letter topic {} after {} attempts", record.topic(), this.deadLetterTopic, attempts);
+                    this.stats.recordDeadLettered();
+                    promise.complete(metadata);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to route message from topic {} to the dead letter topic {}: ", record.topic(), this.deadLetterTopic, e);
+            this.stats.recordDeadLetterFailure();
+            this.stats.recordUndelivered();
+            promise.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Compute the backoff before the next retry, exponential with jitter to avoid clients retrying all together
+     *
+     * @param attempt number of the failed attempt, starting from 0
+     * @return the backoff in milliseconds
+     */
+    private long backoff(int attempt) {
+        long max = Math.min(this.retryBackoffMaxMs, this.retryBackoffMs << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+    }
+
+    /**
+     * Rebuild the producers with the given linger.ms and batch.size, used by the adaptive tuning
+     *
+     * @param lingerMs  the new linger.ms
+     * @param batchSize the new batch.size
+     */
+    private void rebuildProducers(long lingerMs, int batchSize) {
+        Map<String, Object> overrides = Map.of(
+                ProducerConfig.LINGER_MS_CONFIG, String.valueOf(lingerMs),
+                ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(batchSize));
+        Producer<String, byte[]> oldNoAckProducer = this.noAckProducer;
+        Producer<String, byte[]> oldAckOneProducer = this.ackOneProducer;
+        this.noAckProducer = createProducer(this.kafkaConfig, KafkaProducerAckLevel.ZERO, overrides);
+        this.ackOneProducer = createProducer(this.kafkaConfig, KafkaProducerAckLevel.ONE, overrides);
+
+        this.producerCloser.schedule(() -> {
+            closeProducer(oldNoAckProducer);
+            closeProducer(oldAckOneProducer);
+        }, PRODUCER_CLOSE_GRACE_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Create the Kafka producer client with the given configuration
      */
-    private Producer<String, byte[]> createProducer(KafkaConfig kafkaConfig, KafkaProducerAckLevel producerAckLevel) {
+    private static Producer<String, byte[]> createProducer(KafkaConfig kafkaConfig, KafkaProducerAckLevel producerAckLevel, Map<String, Object> overrides) {
         Properties props = new Properties();
         props.putAll(kafkaConfig.getConfig());
         props.putAll(kafkaConfig.getProducerConfig().getConfig());
+        props.putAll(overrides);
         props.put(ProducerConfig.ACKS_CONFIG, String.valueOf(producerAckLevel.getValue()));
         return new KafkaProducer<>(props, new StringSerializer(), new ByteArraySerializer());
     }
 
+    /**
+     * Flush and close the given producer
+     */
+    private static void closeProducer(Producer<String, byte[]> producer) {
+        if (producer != null) {
+            producer.flush();
+            producer.close();
+        }
+    }
+
     /**
      * Close the producer
      */
     public void close() {
+        if (this.tuner != null) {
+            this.tuner.stop();
+        }
 
-        if (this.noAckProducer != null) {
-            this.noAckProducer.flush();
-            this.noAckProducer.close();
+        // let the already scheduled retries run before flushing the producers
+        this.scheduler.shutdown();
+        try {
+            if (!this.scheduler.awaitTermination(this.retryBackoffMaxMs, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Pending retries not completed before closing the Kafka producers");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the replaced producers are closed after their grace period, even if shut down
+        this.producerCloser.shutdown();
+        try {
+            if (!this.producerCloser.awaitTermination(PRODUCER_CLOSE_GRACE_MS + PRODUCER_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Replaced Kafka producers not closed in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
-        if (this.ackOneProducer != null) {
-            this.ackOneProducer.flush();
-            this.ackOneProducer.close();
+        closeProducer(this.noAckProducer);
+        closeProducer(this.ackOneProducer);
+        if (this.exactlyOnceProducer != this.ackOneProducer) {
+            closeProducer(this.exactlyOnceProducer);
         }
     }
+
+    /**
+     * Record allowed by a circuit breaker, with the generation of the breaker it was allowed in, null if disabled
+     */
+    private record Allowed(ProducerRecord<String, byte[]> record, TopicCircuitBreaker breaker, long generation) {
+    }
 }
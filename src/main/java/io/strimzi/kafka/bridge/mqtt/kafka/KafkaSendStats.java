@@ -0,0 +1,139 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters about the outcome of the Kafka sends, mostly the ones which needed the bridge to handle a failure.
+ */
+public class KafkaSendStats {
+
+    private final LongAdder successes = new LongAdder();
+    private final Map<String, LongAdder> failuresByCause = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retryBudgetExhausted = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder deadLetterFailures = new LongAdder();
+    private final LongAdder undelivered = new LongAdder();
+    private final LongAdder expiredDropped = new LongAdder();
+    private final LongAdder expiredRedirected = new LongAdder();
+
+    /**
+     * Record a send acknowledged by Kafka
+     */
+    public void recordSuccess() {
+        this.successes.increment();
+    }
+
+    /**
+     * @return the number of sends acknowledged by Kafka
+     */
+    public long getSuccesses() {
+        return this.successes.sum();
+    }
+
+    /**
+     * @return the number of failed send attempts, by cause
+     */
+    public Map<String, Long> getFailuresByCause() {
+        Map<String, Long> causes = new TreeMap<>();
+        this.failuresByCause.forEach((cause, counter) -> causes.put(cause, counter.sum()));
+        return causes;
+    }
+
+    /**
+     * Record a failed send attempt
+     *
+     * @param cause the exception raised by the Kafka producer
+     */
+    public void recordFailure(Throwable cause) {
+        this.failuresByCause.computeIfAbsent(cause.getClass().getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Record a retry of a failed send
+     */
+    public void recordRetry() {
+        this.retries.increment();
+    }
+
+    /**
+     * Record a retry which was not done because the retry budget was exhausted
+     */
+    public void recordRetryBudgetExhausted() {
+        this.retryBudgetExhausted.increment();
+    }
+
+    /**
+     * Record a record successfully routed to the dead letter topic
+     */
+    public void recordDeadLettered() {
+        this.deadLettered.increment();
+    }
+
+    /**
+     * Record a record which failed to be routed to the dead letter topic
+     */
+    public void recordDeadLetterFailure() {
+        this.deadLetterFailures.increment();
+    }
+
+    /**
+     * Record a record which was not delivered at all, so the connection has to be closed
+     */
+    public void recordUndelivered() {
+        this.undelivered.increment();
+    }
+
+    /**
+     * Record a record dropped because it expired before being sent
+     */
+    public void recordExpiredDropped() {
+        this.expiredDropped.increment();
+    }
+
+    /**
+     * @return the number of records dropped because they expired before being sent
+     */
+    public long getExpiredDropped() {
+        return this.expiredDropped.sum();
+    }
+
+    /**
+     * Record a record routed to the expired topic because it expired before being sent
+     */
+    public void recordExpiredRedirected() {
+        this.expiredRedirected.increment();
+    }
+
+    /**
+     * @return the number of records routed to the expired topic because they expired before being sent
+     */
+    public long getExpiredRedirected() {
+        return this.expiredRedirected.sum();
+    }
+
+    /**
+     * @return the counters as key-value pairs
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("successes", this.successes.sum());
+        map.put("failuresByCause", this.getFailuresByCause());
+        map.put("retries", this.retries.sum());
+        map.put("retryBudgetExhausted", this.retryBudgetExhausted.sum());
+        map.put("deadLettered", this.deadLettered.sum());
+        map.put("deadLetterFailures", this.deadLetterFailures.sum());
+        map.put("undelivered", this.undelivered.sum());
+        map.put("expiredDropped", this.expiredDropped.sum());
+        map.put("expiredRedirected", this.expiredRedirected.sum());
+        return map;
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.apache.kafka.common.KafkaException;
+
+/**
+ * Raised when a record is dropped because it expired before being sent, so it must not be re-sent by the client
+ */
+public class MessageExpiredException extends KafkaException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor
+     *
+     * @param topic the Kafka topic the expired record was for
+     */
+    public MessageExpiredException(String topic) {
+        super("Message for topic " + topic + " expired before being sent");
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.Partitioning;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Picks the Kafka partition by hashing the chosen MQTT topic levels or the MQTT client identifier. <br>
+ * The hash is computed directly on the MQTT topic characters, without building any key String, and the partitions count
+ * of each Kafka topic is cached. The same MQTT topic levels (or client) always land on the same partition,
+ * preserving the ordering without the need of a Kafka record key. <br>
+ * The partitions count is looked up in the background, because reading the producer metadata can block up to
+ * max.block.ms, so the partition is left to the Kafka producer until the first lookup completes or while it keeps failing. <br>
+ * The partition is set on the record by the bridge because the Kafka partitioner API does not have access to the headers
+ * carrying the MQTT topic. It has to be closed before the Kafka producer, stopping the lookups.
+ */
+public class MqttTopicPartitioner implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(MqttTopicPartitioner.class);
+
+    // how often the partitions count of a Kafka topic is read again from the producer metadata
+    private static final long PARTITION_COUNT_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(1);
+    // how long a failed lookup is cached before trying again, so that a missing topic is not looked up on every message
+    private static final long PARTITION_COUNT_RETRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // FNV-1a 32 bits constants
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final ToIntFunction<String> partitionCountLookup;
+    private final Executor lookupExecutor;
+    private final Map<String, PartitionCount> partitionCounts = new ConcurrentHashMap<>();
+    private final Set<String> pendingLookups = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor
+     *
+     * @param kafkaBridgeProducer instance of the Kafka producer used for getting the partitions count
+     */
+    public MqttTopicPartitioner(KafkaBridgeProducer kafkaBridgeProducer) {
+        this(kafkaBridgeProducer::partitionCount, Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mqtt-topic-partitioner");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param partitionCountLookup  function returning the partitions count of a Kafka topic
+     * @param lookupExecutor        executor running the partitions count lookups, outside of the Netty event loop
+     */
+    MqttTopicPartitioner(ToIntFunction<String> partitionCountLookup, Executor lookupExecutor) {
+        this.partitionCountLookup = partitionCountLookup;
+        this.lookupExecutor = lookupExecutor;
+    }
+
+    /**
+     * Stop the partitions count lookups, interrupting the running one which may be blocked reading the producer metadata.
+     * The partition of the next messages is left to the Kafka producer.
+     */
+    @Override
+    public void close() {
+        if (this.lookupExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Pick the partition for a MQTT message
+     *
+     * @param kafkaTopic    the mapped Kafka topic
+     * @param partitioning  the partitioning settings of the mapping rule
+     * @param mqttTopic     the MQTT topic
+     * @param clientId      the MQTT client identifier
+     * @return the partition, or null to let the Kafka producer pick it
+     */
+    public Integer partition(String kafkaTopic, Partitioning partitioning, String mqttTopic, String clientId) {
+        int partitions = this.partitionCount(kafkaTopic);
+        if (partitions <= 0) {
+            return null;
+        }
+        int hash;
+        if (partitioning.isByClientId()) {
+            if (clientId == null) {
+                return null;
+            }
+            hash = hash(clientId, 0, clientId.length(), FNV_OFFSET_BASIS);
+        } else {
+            hash = hashLevels(mqttTopic, partitioning.getLevels());
+        }
+        return (hash & 0x7FFFFFFF) % partitions;
+    }
+
+    /**
+     * Hash the given MQTT topic levels, or the whole topic if no levels are specified
+     *
+     * @param mqttTopic the MQTT topic
+     * @param levels    the MQTT topic levels (0-based)
+     * @return the hash
+     */
+    static int hashLevels(String mqttTopic, int[] levels) {
+        if (levels == null || levels.length == 0) {
+            return hash(mqttTopic, 0, mqttTopic.length(), FNV_OFFSET_BASIS);
+        }
+        int hash = FNV_OFFSET_BASIS;
+        for (int level : levels) {
+            // find the boundaries of the level without splitting the topic
+            int start = 0;
+            for (int i = 0; i < level && start >= 0; i++) {
+                start = mqttTopic.indexOf('/', start);
+                start = start >= 0 ? start + 1 : -1;
+            }
+            if (start < 0) {
+                // missing level, it contributes as an empty one
+                hash = (hash ^ '/') * FNV_PRIME;
+                continue;
+            }
+            int end = mqttTopic.indexOf('/', start);
+            hash = hash(mqttTopic, start, end >= 0 ? end : mqttTopic.length(), hash);
+            // separator between levels, so that "a/bc" and "ab/c" differ
+            hash = (hash ^ '/') * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int hash(String value, int start, int end, int seed) {
+        int hash = seed;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private int partitionCount(String kafkaTopic) {
+        PartitionCount cached = this.partitionCounts.get(kafkaTopic);
+        if (cached == null || System.nanoTime() - cached.refreshAt() >= 0) {
+            this.lookup(kafkaTopic);
+            // the lookup may have already completed when the executor runs it in the caller thread
+            cached = this.partitionCounts.get(kafkaTopic);
+        }
+        return cached != null ? cached.count() : -1;
+    }
+
+    private void lookup(String kafkaTopic) {
+        if (!this.pendingLookups.add(kafkaTopic)) {
+            return;
+        }
+        try {
+            this.lookupExecutor.execute(() -> {
+                try {
+                    int count = this.partitionCountLookup.applyAsInt(kafkaTopic);
+                    this.partitionCounts.put(kafkaTopic, new PartitionCount(count, System.nanoTime() + PARTITION_COUNT_REFRESH_NANOS));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to get the partitions count for topic {}: {}", kafkaTopic, e.getMessage());
+                    // cache the failure, keeping the last known count if any
+                    PartitionCount previous = this.partitionCounts.get(kafkaTopic);
+                    this.partitionCounts.put(kafkaTopic, new PartitionCount(previous != null ? previous.count() : -1,
+                            System.nanoTime() + PARTITION_COUNT_RETRY_NANOS));
+                } finally {
+                    this.pendingLookups.remove(kafkaTopic);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.pendingLookups.remove(kafkaTopic);
+        }
+    }
+
+    /**
+     * Partitions count of a Kafka topic, -1 if unknown, and when it has to be looked up again
+     */
+    private record PartitionCount(int count, long refreshAt) {
+    }
+}
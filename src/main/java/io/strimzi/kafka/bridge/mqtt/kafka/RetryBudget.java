@@ -0,0 +1,95 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global budget limiting how many retries the bridge performs for failed Kafka sends. <br>
+ * Every send deposits a fraction of a retry token (the configured ratio) and every retry withdraws a whole token,
+ * so retries cannot exceed the ratio of the overall traffic. A small reserve is added every second
+ * to allow retries when the traffic is low.
+ */
+public class RetryBudget {
+
+    // a single retry token expressed in milli-tokens to avoid floating point arithmetic
+    private static final long TOKEN = 1000;
+    // number of sends whose deposits can be accumulated, so that the budget reflects the recent traffic
+    private static final long SEND_WINDOW = 1000;
+    // number of seconds of reserve that can be accumulated, to avoid bursts after idle periods
+    private static final long RESERVE_WINDOW_SECONDS = 10;
+
+    private final long depositPerSend;
+    private final long reservePerSecond;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+    private final AtomicLong lastReserveSecond;
+
+    /**
+     * Constructor
+     *
+     * @param ratio             ratio of retries allowed compared to the number of sends (i.e. 0.1 means 10%)
+     * @param reservePerSecond  number of retries always allowed per second, regardless of the traffic
+     */
+    public RetryBudget(double ratio, int reservePerSecond) {
+        this.depositPerSend = (long) (ratio * TOKEN);
+        this.reservePerSecond = reservePerSecond * TOKEN;
+        // the ratio deposits and the reserve are capped separately, so that a zero reserve does not cap the deposits
+        this.maxTokens = Math.max(this.depositPerSend * SEND_WINDOW + this.reservePerSecond * RESERVE_WINDOW_SECONDS, TOKEN);
+        this.tokens = new AtomicLong(this.reservePerSecond);
+        this.lastReserveSecond = new AtomicLong(currentSecond());
+    }
+
+    /**
+     * Deposit the share of retry tokens earned by a send
+     */
+    public void deposit() {
+        if (this.depositPerSend > 0) {
+            this.tokens.accumulateAndGet(this.depositPerSend, (current, delta) -> Math.min(current + delta, this.maxTokens));
+        }
+    }
+
+    /**
+     * Try to withdraw a retry token from the budget
+     *
+     * @return true if the retry is allowed, false if the budget is exhausted
+     */
+    public boolean tryWithdraw() {
+        this.refillReserve();
+        while (true) {
+            long current = this.tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (this.tokens.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of retries currently available
+     */
+    public long available() {
+        this.refillReserve();
+        return this.tokens.get() / TOKEN;
+    }
+
+    /**
+     * Add the per second reserve lazily, the first time the budget is used within a new second
+     */
+    private void refillReserve() {
+        long now = currentSecond();
+        long last = this.lastReserveSecond.get();
+        if (now > last && this.lastReserveSecond.compareAndSet(last, now)) {
+            long reserve = (now - last) * this.reservePerSecond;
+            this.tokens.accumulateAndGet(reserve, (current, delta) -> Math.min(current + delta, this.maxTokens));
+        }
+    }
+
+    private static long currentSecond() {
+        return System.nanoTime() / 1_000_000_000L;
+    }
+}
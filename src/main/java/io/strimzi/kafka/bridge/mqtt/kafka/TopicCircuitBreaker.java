@@ -0,0 +1,209 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for a single Kafka topic, fed by the outcome of the sends. <br>
+ * It trips (OPEN) when the number of errors within the sliding window reaches the threshold.
+ * After the open duration, it lets a single probe record through (HALF_OPEN): if the probe succeeds the breaker
+ * closes again, otherwise it goes back to OPEN. <br>
+ * Each state change starts a new generation and the outcome of a send only counts for the generation it was allowed in,
+ * so a late callback of a send from before the trip cannot close (or trip again) the breaker in place of the probe.
+ */
+public class TopicCircuitBreaker {
+
+    /**
+     * State of the circuit breaker
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Returned instead of a generation when a record has to fail fast
+     */
+    public static final long REJECTED = -1;
+
+    // number of buckets the sliding window is split into
+    private static final int BUCKETS = 10;
+
+    private final String topic;
+    private final int failureThreshold;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final long origin = System.nanoTime();
+
+    private final int[] bucketErrors = new int[BUCKETS];
+    private final long[] bucketIds = new long[BUCKETS];
+
+    // read without locking on the hot path, to let records through when closed
+    private volatile State state = State.CLOSED;
+    private volatile long generation;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    /**
+     * Constructor
+     *
+     * @param topic             the Kafka topic
+     * @param failureThreshold  number of errors within the window which trips the breaker
+     * @param windowMs          sliding window duration in milliseconds
+     * @param openMs            duration in milliseconds the breaker stays open before probing
+     */
+    public TopicCircuitBreaker(String topic, int failureThreshold, long windowMs, long openMs) {
+        this.topic = topic;
+        this.failureThreshold = failureThreshold;
+        this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMs) / BUCKETS);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.resetWindow();
+    }
+
+    /**
+     * Check if a record can be sent to the topic
+     *
+     * @return the generation the send belongs to, to be passed back with its outcome, or {@link #REJECTED} if it has to fail fast
+     */
+    public long tryAcquire() {
+        long generation = this.generation;
+        return this.state == State.CLOSED ? generation : this.tryAcquire(this.now());
+    }
+
+    /**
+     * Record a successful send to the topic
+     *
+     * @param generation the generation returned by {@link #tryAcquire()} when the send was allowed
+     */
+    public void onSuccess(long generation) {
+        if (this.state != State.CLOSED) {
+            this.onSuccess(generation, this.now());
+        }
+    }
+
+    /**
+     * Record a failed send to the topic
+     *
+     * @param generation the generation returned by {@link #tryAcquire()} when the send was allowed
+     */
+    public void onFailure(long generation) {
+        this.onFailure(generation, this.now());
+    }
+
+    /**
+     * @return the current state of the circuit breaker
+     */
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return the state of the circuit breaker as key-value pairs
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("state", this.state.name());
+        map.put("errorsInWindow", this.errorsInWindow(this.now()));
+        return map;
+    }
+
+    synchronized long tryAcquire(long now) {
+        return switch (this.state) {
+            case CLOSED -> this.generation;
+            case OPEN -> {
+                if (now - this.openedAt < this.openNanos) {
+                    yield REJECTED;
+                }
+                // open duration elapsed, let a probe through
+                this.transition(State.HALF_OPEN);
+                this.probeInFlight = true;
+                yield this.generation;
+            }
+            case HALF_OPEN -> {
+                // only one probe at a time
+                if (this.probeInFlight) {
+                    yield REJECTED;
+                }
+                this.transition(State.HALF_OPEN);
+                this.probeInFlight = true;
+                yield this.generation;
+            }
+        };
+    }
+
+    synchronized void onSuccess(long generation, long now) {
+        // only the probe closes the breaker, not the sends allowed before it tripped
+        if (this.state == State.HALF_OPEN && generation == this.generation) {
+            this.transition(State.CLOSED);
+            this.probeInFlight = false;
+            this.resetWindow();
+        }
+    }
+
+    synchronized void onFailure(long generation, long now) {
+        if (generation != this.generation) {
+            return;
+        }
+        if (this.state == State.HALF_OPEN) {
+            this.trip(now);
+            return;
+        }
+        long bucketId = now / this.bucketNanos;
+        int index = (int) (bucketId % BUCKETS);
+        if (this.bucketIds[index] != bucketId) {
+            this.bucketIds[index] = bucketId;
+            this.bucketErrors[index] = 0;
+        }
+        this.bucketErrors[index]++;
+        if (this.state == State.CLOSED && this.errorsInWindow(now) >= this.failureThreshold) {
+            this.trip(now);
+        }
+    }
+
+    long now() {
+        return System.nanoTime() - this.origin;
+    }
+
+    private void trip(long now) {
+        this.transition(State.OPEN);
+        this.openedAt = now;
+        this.probeInFlight = false;
+    }
+
+    private void transition(State state) {
+        this.generation++;
+        this.state = state;
+    }
+
+    private int errorsInWindow(long now) {
+        long currentBucketId = now / this.bucketNanos;
+        int errors = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (currentBucketId - this.bucketIds[i] < BUCKETS) {
+                errors += this.bucketErrors[i];
+            }
+        }
+        return errors;
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.bucketIds[i] = -BUCKETS;
+            this.bucketErrors[i] = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TopicCircuitBreaker(" +
+                "topic=" + this.topic +
+                ", state=" + this.state +
+                ")";
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import io.netty.channel.Channel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control of the client connections, smoothing the reconnection storms. <br>
+ * At accept, a new TCP connection is closed straight away if the maximum number of connections is reached
+ * or the accept rate is exceeded, before decoding anything. <br>
+ * At CONNECT, the client is rejected if the CONNECT rate is exceeded, before any session processing. <br>
+ * The rates are enforced by token buckets shared by all the event loops.
+ */
+public class ConnectionLimiter {
+
+    private final int maxConnections;
+    // null if the rate is unlimited
+    private final TokenBucket acceptBucket;
+    private final TokenBucket connectBucket;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder rejectedMaxConnections = new LongAdder();
+    private final LongAdder rejectedAcceptRate = new LongAdder();
+    private final LongAdder rejectedConnectRate = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param maxConnections    maximum number of connections, 0 for no limit
+     * @param acceptRate        new TCP connections accepted per second, 0 for no limit
+     * @param acceptBurst       new TCP connections accepted in a burst
+     * @param connectRate       CONNECTs accepted per second, 0 for no limit
+     * @param connectBurst      CONNECTs accepted in a burst
+     */
+    public ConnectionLimiter(int maxConnections, double acceptRate, double acceptBurst, double connectRate, double connectBurst) {
+        this.maxConnections = maxConnections;
+        this.acceptBucket = acceptRate > 0 ? new TokenBucket(acceptRate, Math.max(1, acceptBurst)) : null;
+        this.connectBucket = connectRate > 0 ? new TokenBucket(connectRate, Math.max(1, connectBurst)) : null;
+    }
+
+    /**
+     * Check if a new TCP connection can be accepted, tracking it until closed if so
+     *
+     * @param channel the channel of the new connection
+     * @return true if the connection is accepted
+     */
+    public boolean tryAccept(Channel channel) {
+        if (!this.reserveConnection()) {
+            this.rejectedMaxConnections.increment();
+            return false;
+        }
+        // the accept token is only taken once the connection slot is reserved
+        if (this.acceptBucket != null && !this.acceptBucket.tryAcquire(1)) {
+            this.connections.decrementAndGet();
+            this.rejectedAcceptRate.increment();
+            return false;
+        }
+        channel.closeFuture().addListener(future -> this.connections.decrementAndGet());
+        return true;
+    }
+
+    /**
+     * Reserve a connection slot, atomically with the check of the maximum number of connections,
+     * as the connections are accepted concurrently by the event loops
+     *
+     * @return true if the slot is reserved, false if the maximum number of connections is reached
+     */
+    private boolean reserveConnection() {
+        while (true) {
+            int current = this.connections.get();
+            if (this.maxConnections > 0 && current >= this.maxConnections) {
+                return false;
+            }
+            if (this.connections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Check if a CONNECT can be processed
+     *
+     * @return true if the CONNECT can be processed
+     */
+    public boolean tryConnect() {
+        if (this.connectBucket != null && !this.connectBucket.tryAcquire(1)) {
+            this.rejectedConnectRate.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the statistics about the connections and the rejections
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("connections", this.connections.get());
+        map.put("rejectedMaxConnections", this.rejectedMaxConnections.sum());
+        map.put("rejectedAcceptRate", this.rejectedAcceptRate.sum());
+        map.put("rejectedConnectRate", this.rejectedConnectRate.sum());
+        return map;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+/**
+ * Enforces a {@link RateLimit} through a token bucket for the messages and one for the bytes.
+ */
+public class MessageRateLimiter {
+
+    // null if not limited
+    private final TokenBucket messages;
+    private final TokenBucket bytes;
+
+    /**
+     * Constructor
+     *
+     * @param rateLimit    the rate limit
+     * @param burstSeconds the burst allowed above the rate, in seconds of the rate
+     * @param nowNanos     the current time, from {@link System#nanoTime()}
+     */
+    MessageRateLimiter(RateLimit rateLimit, double burstSeconds, long nowNanos) {
+        this.messages = rateLimit.messagesPerSecond() > 0 ? new TokenBucket(rateLimit.messagesPerSecond(),
+                Math.max(1, rateLimit.messagesPerSecond() * burstSeconds), nowNanos) : null;
+        this.bytes = rateLimit.bytesPerSecond() > 0 ? new TokenBucket(rateLimit.bytesPerSecond(),
+                Math.max(1, rateLimit.bytesPerSecond() * burstSeconds), nowNanos) : null;
+    }
+
+    /**
+     * Take a message from the buckets, even if above the rate
+     *
+     * @param size     the message size, in bytes
+     * @param nowNanos the current time, from {@link System#nanoTime()}
+     * @return the time, in nanoseconds, until the rate is respected again, 0 if it is respected
+     */
+    long consume(int size, long nowNanos) {
+        long waitNanos = this.messages != null ? this.messages.consume(1, nowNanos) : 0;
+        return this.bytes != null ? Math.max(waitNanos, this.bytes.consume(size, nowNanos)) : waitNanos;
+    }
+
+    /**
+     * Check if the buckets are full, so they are in the same state as new ones
+     *
+     * @param nowNanos the current time, from {@link System#nanoTime()}
+     * @return true if the buckets are full
+     */
+    boolean isIdle(long nowNanos) {
+        return (this.messages == null || this.messages.isFull(nowNanos)) && (this.bytes == null || this.bytes.isFull(nowNanos));
+    }
+}
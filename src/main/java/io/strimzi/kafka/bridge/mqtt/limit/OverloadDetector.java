@@ -0,0 +1,202 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically detects the overload of the bridge, from the Kafka producers buffer usage, the event loops task queues
+ * and the Kafka ack latency, and sets how the PUBLISH messages are shed to degrade gracefully: <br>
+ * - when overloaded, the QoS 0 messages are dropped;<br>
+ * - when still overloaded after the escalation delay, the QoS 1 and QoS 2 messages of the low priority mapping rules
+ * are refused as well.<br>
+ * The QoS 1 and QoS 2 messages of the other mapping rules are never shed. <br>
+ * The handler only reads the current level for each message, the signals are sampled off the event loops.
+ */
+public class OverloadDetector {
+    private static final Logger LOGGER = LogManager.getLogger(OverloadDetector.class);
+
+    /**
+     * The overload level, setting which messages are shed
+     */
+    public enum Level {
+        // no messages shed
+        NONE,
+        // the QoS 0 messages are shed
+        SHED_QOS0,
+        // the QoS 0 messages and the messages of the low priority mapping rules are shed
+        SHED_LOW_PRIORITY
+    }
+
+    /**
+     * Samples the overload signals
+     */
+    public interface Probe {
+
+        /**
+         * @return the highest fraction of the buffer memory used among the Kafka producers, between 0 and 1
+         */
+        double bufferUsage();
+
+        /**
+         * @return the highest number of tasks pending among the event loops
+         */
+        int pendingTasks();
+
+        /**
+         * @return the average Kafka ack latency, in milliseconds
+         */
+        double ackLatencyMs();
+    }
+
+    private final double maxBufferUsage;
+    private final int maxPendingTasks;
+    private final long maxAckLatencyMs;
+    private final long escalationMs;
+    private final long intervalMs;
+    private final Probe probe;
+    // null if disabled
+    private final ScheduledExecutorService executor;
+    private final LongAdder shedQos0 = new LongAdder();
+    private final LongAdder shedLowPriority = new LongAdder();
+
+    private volatile Level level = Level.NONE;
+    // time the overload started, -1 if not overloaded
+    private long overloadedSinceMs = -1;
+    // last sampled signals, for the stats
+    private volatile double bufferUsage;
+    private volatile int pendingTasks;
+    private volatile double ackLatencyMs;
+
+    /**
+     * Constructor
+     *
+     * @param maxBufferUsage    fraction of the Kafka producers buffer used above which the bridge is overloaded, 0 to ignore
+     * @param maxPendingTasks   number of tasks pending in an event loop above which the bridge is overloaded, 0 to ignore
+     * @param maxAckLatencyMs   Kafka ack latency, in milliseconds, above which the bridge is overloaded, 0 to ignore
+     * @param escalationMs      time, in milliseconds, the bridge stays overloaded before shedding the low priority messages
+     * @param intervalMs        interval, in milliseconds, between two samples of the signals, 0 to disable the detection
+     * @param probe             the probe sampling the signals
+     */
+    public OverloadDetector(double maxBufferUsage, int maxPendingTasks, long maxAckLatencyMs, long escalationMs, long intervalMs, Probe probe) {
+        this.maxBufferUsage = maxBufferUsage;
+        this.maxPendingTasks = maxPendingTasks;
+        this.maxAckLatencyMs = maxAckLatencyMs;
+        this.escalationMs = escalationMs;
+        this.intervalMs = intervalMs;
+        this.probe = probe;
+        this.executor = intervalMs > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mqtt-bridge-overload");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Start the periodic detection, if enabled
+     */
+    public void start() {
+        if (this.executor != null) {
+            this.executor.scheduleWithFixedDelay(this::evaluate, this.intervalMs, this.intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the periodic detection
+     */
+    public void stop() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the current overload level
+     */
+    public Level getLevel() {
+        return this.level;
+    }
+
+    /**
+     * Check if a PUBLISH message is shed, counting it if so
+     *
+     * @param qos         QoS level of the message
+     * @param lowPriority true if the message matches a low priority mapping rule
+     * @return true if the message is shed
+     */
+    public boolean shed(int qos, boolean lowPriority) {
+        Level current = this.level;
+        if (current == Level.NONE) {
+            return false;
+        }
+        if (qos == 0) {
+            this.shedQos0.increment();
+            return true;
+        }
+        if (current == Level.SHED_LOW_PRIORITY && lowPriority) {
+            this.shedLowPriority.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void evaluate() {
+        try {
+            this.evaluate(System.currentTimeMillis());
+        } catch (Exception e) {
+            LOGGER.error("Error detecting the overload: ", e);
+        }
+    }
+
+    /**
+     * Sample the signals and update the overload level
+     *
+     * @param nowMs the current time, in milliseconds
+     */
+    void evaluate(long nowMs) {
+        this.bufferUsage = this.probe.bufferUsage();
+        this.pendingTasks = this.probe.pendingTasks();
+        this.ackLatencyMs = this.probe.ackLatencyMs();
+        boolean overloaded = (this.maxBufferUsage > 0 && this.bufferUsage >= this.maxBufferUsage)
+                || (this.maxPendingTasks > 0 && this.pendingTasks >= this.maxPendingTasks)
+                || (this.maxAckLatencyMs > 0 && this.ackLatencyMs >= this.maxAckLatencyMs);
+        Level previous = this.level;
+        if (!overloaded) {
+            this.overloadedSinceMs = -1;
+            this.level = Level.NONE;
+        } else {
+            if (this.overloadedSinceMs < 0) {
+                this.overloadedSinceMs = nowMs;
+            }
+            this.level = nowMs - this.overloadedSinceMs >= this.escalationMs ? Level.SHED_LOW_PRIORITY : Level.SHED_QOS0;
+        }
+        if (this.level != previous) {
+            LOGGER.warn("Overload level {} -> {} (producer buffer usage {}%, event loop pending tasks {}, ack latency {} ms)",
+                    previous, this.level, String.format("%.1f", 100 * this.bufferUsage), this.pendingTasks, String.format("%.1f", this.ackLatencyMs));
+        }
+    }
+
+    /**
+     * @return the overload state, as a map
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("level", this.level.name());
+        map.put("bufferUsage", this.bufferUsage);
+        map.put("pendingTasks", this.pendingTasks);
+        map.put("ackLatencyMs", this.ackLatencyMs);
+        map.put("shedQos0", this.shedQos0.sum());
+        map.put("shedLowPriority", this.shedLowPriority.sum());
+        return map;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limiting of the PUBLISH messages, in messages and bytes per second, per client, per username
+ * and per MQTT topic prefix. <br>
+ * The limits are enforced by token buckets refilled lazily when a message is received, so no timer is needed.
+ * The buckets of a client identifier or of a username are looked up on CONNECT, so a client reconnecting does not get
+ * a new burst, while the buckets of a topic prefix are shared by all the clients, across the event loops. <br>
+ * A message above the rate is still taken from the buckets, leaving them in debt, and the time until the rate
+ * is respected again is returned, for the caller to stop reading from the client until then or to disconnect it.
+ */
+public class PublishRateLimiter {
+
+    // above this number of client identifiers or usernames, the ones with full buckets, so same as new ones, are removed
+    private static final int MAX_KEYS = 100_000;
+    // the removal of the full buckets scans the whole map, so it is run at most once per interval
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final RateLimit clientRate;
+    private final RateLimit usernameRate;
+    private final double burstSeconds;
+    private final Limiters clients;
+    private final Limiters usernames;
+    private final RateLimitAction action;
+    // sorted by length, the longest prefix matching a topic applies
+    private final String[] topicPrefixes;
+    private final MessageRateLimiter[] topicLimiters;
+    private final LongAdder paused = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private volatile boolean stopped;
+
+    /**
+     * The rate limiters of a client connection, looked up once on CONNECT
+     *
+     * @param client   the rate limiter of the client, null if not limited
+     * @param username the rate limiter of the client username, null if not limited
+     */
+    public record ClientLimiters(MessageRateLimiter client, MessageRateLimiter username) {
+    }
+
+    /**
+     * Constructor
+     *
+     * @param clientRate    the rate limit of each client
+     * @param usernameRate  the rate limit of each username, shared by all the clients with that username
+     * @param topicPrefixes the rate limit of each MQTT topic prefix, shared by all the clients
+     * @param burstSeconds  the burst allowed above the rates, in seconds of the rates
+     * @param action        the action taken for the clients above the rates
+     */
+    public PublishRateLimiter(RateLimit clientRate, RateLimit usernameRate, Map<String, RateLimit> topicPrefixes, double burstSeconds, RateLimitAction action) {
+        this.clientRate = clientRate;
+        this.usernameRate = usernameRate;
+        this.burstSeconds = burstSeconds;
+        this.action = action;
+        long nowNanos = System.nanoTime();
+        this.clients = new Limiters(clientRate, burstSeconds, nowNanos);
+        this.usernames = new Limiters(usernameRate, burstSeconds, nowNanos);
+        this.topicPrefixes = topicPrefixes.keySet().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .toArray(String[]::new);
+        this.topicLimiters = new MessageRateLimiter[this.topicPrefixes.length];
+        for (int i = 0; i < this.topicPrefixes.length; i++) {
+            this.topicLimiters[i] = new MessageRateLimiter(topicPrefixes.get(this.topicPrefixes[i]), burstSeconds, nowNanos);
+        }
+    }
+
+    /**
+     * @return true if any rate limit is configured
+     */
+    public boolean isEnabled() {
+        return !this.clientRate.isUnlimited() || !this.usernameRate.isUnlimited() || this.topicPrefixes.length > 0;
+    }
+
+    /**
+     * @return the action taken for the clients above the rates
+     */
+    public RateLimitAction getAction() {
+        return this.action;
+    }
+
+    /**
+     * Get the rate limiters of a client connecting
+     *
+     * @param clientId the client identifier, empty if assigned by the bridge
+     * @param username the username of the client, null if none
+     * @return the rate limiters of the client
+     */
+    public ClientLimiters connect(String clientId, String username) {
+        return this.connect(clientId, username, System.nanoTime());
+    }
+
+    /**
+     * Get the rate limiters of a client connecting
+     *
+     * @param clientId the client identifier, empty if assigned by the bridge
+     * @param username the username of the client, null if none
+     * @param nowNanos the current time, from {@link System#nanoTime()}
+     * @return the rate limiters of the client
+     */
+    ClientLimiters connect(String clientId, String username, long nowNanos) {
+        MessageRateLimiter client = null;
+        if (!this.clientRate.isUnlimited()) {
+            // a client without identifier can't be recognized when reconnecting
+            client = clientId.isEmpty() ? new MessageRateLimiter(this.clientRate, this.burstSeconds, nowNanos) : this.clients.get(clientId, nowNanos);
+        }
+        if (username == null || this.usernameRate.isUnlimited()) {
+            return new ClientLimiters(client, null);
+        }
+        return new ClientLimiters(client, this.usernames.get(username, nowNanos));
+    }
+
+    /**
+     * Take a PUBLISH message from the rate limits of the client, its username and its topic
+     *
+     * @param limiters  the rate limiters of the client, null if the client did not send the CONNECT
+     * @param mqttTopic the MQTT topic of the message
+     * @param size      the payload size, in bytes
+     * @return the time, in nanoseconds, until the rates are respected again, 0 if they are respected
+     */
+    public long consume(ClientLimiters limiters, String mqttTopic, int size) {
+        return this.consume(limiters, mqttTopic, size, System.nanoTime());
+    }
+
+    /**
+     * Take a PUBLISH message from the rate limits of the client, its username and its topic
+     *
+     * @param limiters  the rate limiters of the client, null if the client did not send the CONNECT
+     * @param mqttTopic the MQTT topic of the message
+     * @param size      the payload size, in bytes
+     * @param nowNanos  the current time, from {@link System#nanoTime()}
+     * @return the time, in nanoseconds, until the rates are respected again, 0 if they are respected
+     */
+    long consume(ClientLimiters limiters, String mqttTopic, int size, long nowNanos) {
+        long waitNanos = 0;
+        if (limiters != null && limiters.client() != null) {
+            waitNanos = limiters.client().consume(size, nowNanos);
+        }
+        if (limiters != null && limiters.username() != null) {
+            waitNanos = Math.max(waitNanos, limiters.username().consume(size, nowNanos));
+        }
+        for (int i = 0; i < this.topicPrefixes.length; i++) {
+            if (mqttTopic.startsWith(this.topicPrefixes[i])) {
+                return Math.max(waitNanos, this.topicLimiters[i].consume(size, nowNanos));
+            }
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Record a client paused for being above the rates
+     */
+    public void recordPaused() {
+        this.paused.increment();
+    }
+
+    /**
+     * Record a client disconnected for being above the rates
+     */
+    public void recordDisconnected() {
+        this.disconnected.increment();
+    }
+
+    /**
+     * Stop resuming the paused clients, when the bridge is shutting down
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * @return true if the paused clients must not be resumed anymore
+     */
+    public boolean isStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Parse the rate limits of the MQTT topic prefixes, as comma separated prefix=rate entries,
+     * with the rate in messages per second optionally followed by bytes per second (i.e. sensors/=100:65536,alerts/=10)
+     *
+     * @param topicPrefixes the rate limits of the MQTT topic prefixes, null or empty for none
+     * @return the rate limit of each MQTT topic prefix
+     */
+    public static Map<String, RateLimit> parseTopicPrefixes(String topicPrefixes) {
+        Map<String, RateLimit> rates = new LinkedHashMap<>();
+        if (topicPrefixes == null || topicPrefixes.isBlank()) {
+            return rates;
+        }
+        for (String entry : topicPrefixes.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid MQTT topic prefix rate limit " + entry + ", expected prefix=rate");
+            }
+            rates.put(entry.substring(0, separator).trim(), RateLimit.parse(entry.substring(separator + 1)));
+        }
+        return rates;
+    }
+
+    /**
+     * @return the rate limiting state, as a map
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("clients", this.clients.limiters.size());
+        map.put("usernames", this.usernames.limiters.size());
+        map.put("paused", this.paused.sum());
+        map.put("disconnected", this.disconnected.sum());
+        return map;
+    }
+
+    /**
+     * The rate limiters of the client identifiers or of the usernames, bounded by removing the ones with full buckets
+     */
+    private static class Limiters {
+        private final Map<String, MessageRateLimiter> limiters = new ConcurrentHashMap<>();
+        private final RateLimit rate;
+        private final double burstSeconds;
+        private final AtomicLong nextSweepNanos;
+
+        Limiters(RateLimit rate, double burstSeconds, long nowNanos) {
+            this.rate = rate;
+            this.burstSeconds = burstSeconds;
+            this.nextSweepNanos = new AtomicLong(nowNanos);
+        }
+
+        MessageRateLimiter get(String key, long nowNanos) {
+            long nextSweep = this.nextSweepNanos.get();
+            if (this.limiters.size() >= MAX_KEYS && nowNanos - nextSweep >= 0
+                    && this.nextSweepNanos.compareAndSet(nextSweep, nowNanos + SWEEP_INTERVAL_NANOS)) {
+                this.limiters.values().removeIf(limiter -> limiter.isIdle(nowNanos));
+            }
+            return this.limiters.computeIfAbsent(key, k -> new MessageRateLimiter(this.rate, this.burstSeconds, nowNanos));
+        }
+    }
+}
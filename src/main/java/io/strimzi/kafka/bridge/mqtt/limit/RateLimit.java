@@ -0,0 +1,35 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+/**
+ * Rate limit of the PUBLISH messages, in messages and bytes per second.
+ *
+ * @param messagesPerSecond the messages per second, 0 for no limit
+ * @param bytesPerSecond    the payload bytes per second, 0 for no limit
+ */
+public record RateLimit(double messagesPerSecond, double bytesPerSecond) {
+
+    /**
+     * @return true if neither the messages nor the bytes are limited
+     */
+    public boolean isUnlimited() {
+        return this.messagesPerSecond <= 0 && this.bytesPerSecond <= 0;
+    }
+
+    /**
+     * Parse a rate limit, as messages per second optionally followed by bytes per second (i.e. 100 or 100:65536)
+     *
+     * @param rate the rate limit
+     * @return the rate limit
+     */
+    public static RateLimit parse(String rate) {
+        int separator = rate.indexOf(':');
+        if (separator < 0) {
+            return new RateLimit(Double.parseDouble(rate.trim()), 0);
+        }
+        return new RateLimit(Double.parseDouble(rate.substring(0, separator).trim()), Double.parseDouble(rate.substring(separator + 1).trim()));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+/**
+ * Represents the action taken for a client sending PUBLISH messages above its rate limits
+ */
+public enum RateLimitAction {
+    // The bridge stops reading from the client until the rate is respected again
+    PAUSE("pause"),
+    // The client is disconnected
+    DISCONNECT("disconnect");
+
+    private final String value;
+
+    /**
+     * Constructor
+     *
+     * @param value the value of the action
+     */
+    RateLimitAction(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the action from the value
+     *
+     * @param value the value of the action
+     * @return the action
+     */
+    public static RateLimitAction fromValue(String value) {
+        return switch (value) {
+            case "pause" -> PAUSE;
+            case "disconnect" -> DISCONNECT;
+            default -> throw new IllegalArgumentException("Unknown RateLimitAction value: " + value);
+        };
+    }
+
+    /**
+     * @return the value of the action
+     */
+    public String getValue() {
+        return value;
+    }
+}
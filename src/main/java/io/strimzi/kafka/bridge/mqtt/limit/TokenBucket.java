@@ -0,0 +1,122 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+/**
+ * Token bucket rate limiter. <br>
+ * The bucket is refilled lazily, when tokens are requested, based on the time elapsed since the last refill,
+ * so it doesn't need any timer.
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Constructor, the bucket starts full
+     *
+     * @param ratePerSecond tokens added per second
+     * @param burst         maximum number of tokens in the bucket
+     */
+    public TokenBucket(double ratePerSecond, double burst) {
+        this(ratePerSecond, burst, System.nanoTime());
+    }
+
+    /**
+     * Constructor, the bucket starts full
+     *
+     * @param ratePerSecond tokens added per second
+     * @param burst         maximum number of tokens in the bucket
+     * @param nowNanos      the current time, from {@link System#nanoTime()}
+     */
+    TokenBucket(double ratePerSecond, double burst, long nowNanos) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst of a token bucket must be positive");
+        }
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.capacity = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Take the given number of tokens from the bucket, if available
+     *
+     * @param permits number of tokens to take
+     * @return true if the tokens were taken, false if there are not enough tokens
+     */
+    public boolean tryAcquire(double permits) {
+        return this.tryAcquire(permits, System.nanoTime());
+    }
+
+    /**
+     * Take the given number of tokens from the bucket, if available
+     *
+     * @param permits   number of tokens to take
+     * @param nowNanos  the current time, from {@link System#nanoTime()}
+     * @return true if the tokens were taken, false if there are not enough tokens
+     */
+    synchronized boolean tryAcquire(double permits, long nowNanos) {
+        this.refill(nowNanos);
+        if (this.tokens < permits) {
+            return false;
+        }
+        this.tokens -= permits;
+        return true;
+    }
+
+    /**
+     * Take the given number of tokens from the bucket, even if not available, leaving the bucket in debt. <br>
+     * It is meant for the work already done, which the caller throttles by waiting before doing more.
+     *
+     * @param permits number of tokens to take
+     * @return the time, in nanoseconds, until the bucket is not in debt anymore, 0 if it is not in debt
+     */
+    public long consume(double permits) {
+        return this.consume(permits, System.nanoTime());
+    }
+
+    /**
+     * Take the given number of tokens from the bucket, even if not available, leaving the bucket in debt.
+     *
+     * @param permits   number of tokens to take
+     * @param nowNanos  the current time, from {@link System#nanoTime()}
+     * @return the time, in nanoseconds, until the bucket is not in debt anymore, 0 if it is not in debt
+     */
+    synchronized long consume(double permits, long nowNanos) {
+        this.refill(nowNanos);
+        this.tokens -= permits;
+        return this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens / this.tokensPerNano);
+    }
+
+    /**
+     * Check if the bucket is full, so it is in the same state as a new bucket
+     *
+     * @param nowNanos  the current time, from {@link System#nanoTime()}
+     * @return true if the bucket is full
+     */
+    synchronized boolean isFull(long nowNanos) {
+        this.refill(nowNanos);
+        return this.tokens >= this.capacity;
+    }
+
+    /**
+     * @return the number of tokens currently in the bucket
+     */
+    public synchronized double available() {
+        this.refill(System.nanoTime());
+        return this.tokens;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - this.lastRefillNanos;
+        if (elapsed > 0) {
+            this.tokens = Math.min(this.capacity, this.tokens + elapsed * this.tokensPerNano);
+            this.lastRefillNanos = nowNanos;
+        }
+    }
+}
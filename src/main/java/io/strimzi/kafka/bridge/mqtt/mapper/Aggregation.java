@@ -0,0 +1,80 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the aggregation settings of a Mapping Rule. When set, the MQTT messages mapped to the same Kafka topic and key
+ * are packed into a single Kafka record, as an envelope, within a size/time window.
+ * E.g.: in the ToMaR file:
+ * "aggregation": {
+ *      "maxMessages": 100,
+ *      "maxBytes": 65536,
+ *      "maxDelayMs": 100
+ * }
+ */
+public class Aggregation {
+
+    public static final int DEFAULT_MAX_MESSAGES = 100;
+    public static final int DEFAULT_MAX_BYTES = 65536;
+    public static final long DEFAULT_MAX_DELAY_MS = 100;
+
+    @JsonProperty("maxMessages")
+    private int maxMessages = DEFAULT_MAX_MESSAGES;
+    @JsonProperty("maxBytes")
+    private int maxBytes = DEFAULT_MAX_BYTES;
+    @JsonProperty("maxDelayMs")
+    private long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+
+    /**
+     * Default constructor for Aggregation. Used for deserialization.
+     */
+    public Aggregation() {
+    }
+
+    /**
+     * Constructor for Aggregation.
+     *
+     * @param maxMessages   the maximum number of MQTT messages in an envelope.
+     * @param maxBytes      the maximum size in bytes of an envelope.
+     * @param maxDelayMs    the maximum time in milliseconds a MQTT message waits before the envelope is sent.
+     */
+    public Aggregation(int maxMessages, int maxBytes, long maxDelayMs) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @return the maximum number of MQTT messages in an envelope.
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * @return the maximum size in bytes of an envelope.
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the maximum time in milliseconds a MQTT message waits before the envelope is sent.
+     */
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    @Override
+    public String toString() {
+        return "Aggregation(" +
+                "maxMessages=" + this.maxMessages +
+                ", maxBytes=" + this.maxBytes +
+                ", maxDelayMs=" + this.maxDelayMs +
+                ")";
+    }
+}
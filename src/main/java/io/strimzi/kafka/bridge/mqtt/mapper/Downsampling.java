@@ -0,0 +1,66 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the downsampling settings of a Mapping Rule. When set, the numeric values of the MQTT messages are folded,
+ * per MQTT topic, into tumbling windows and a single Kafka record with their minimum, maximum, average and count is sent per window.
+ * The value is either the whole payload, as a plain number, or a top level field of a JSON payload.
+ * E.g.: in the ToMaR file:
+ * "downsampling": {
+ *      "windowMs": 60000,
+ *      "field": "temperature"
+ * }
+ */
+public class Downsampling {
+
+    public static final long DEFAULT_WINDOW_MS = 60000;
+
+    @JsonProperty("windowMs")
+    private long windowMs = DEFAULT_WINDOW_MS;
+    @JsonProperty("field")
+    private String field;
+
+    /**
+     * Default constructor for Downsampling. Used for deserialization.
+     */
+    public Downsampling() {
+    }
+
+    /**
+     * Constructor for Downsampling.
+     *
+     * @param windowMs  the duration in milliseconds of the windows.
+     * @param field     the JSON field holding the value, null if the payload is a plain number.
+     */
+    public Downsampling(long windowMs, String field) {
+        this.windowMs = windowMs;
+        this.field = field;
+    }
+
+    /**
+     * @return the duration in milliseconds of the windows.
+     */
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * @return the JSON field holding the value, null if the payload is a plain number.
+     */
+    public String getField() {
+        return field;
+    }
+
+    @Override
+    public String toString() {
+        return "Downsampling(" +
+                "windowMs=" + this.windowMs +
+                ", field=" + this.field +
+                ")";
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Represents the Kafka headers settings of a Mapping Rule, choosing which MQTT message metadata is added
+ * as headers to the Kafka records, along with headers with constant values.
+ * E.g.: in the ToMaR file:
+ * "headers": {
+ *      "mqttTopic": false,
+ *      "clientId": true,
+ *      "qos": true,
+ *      "static": {
+ *          "site": "plant-1"
+ *      }
+ * }
+ */
+public class HeaderEnrichment {
+
+    @JsonProperty("mqttTopic")
+    private boolean mqttTopic = true;
+    @JsonProperty("clientId")
+    private boolean clientId;
+    @JsonProperty("qos")
+    private boolean qos;
+    @JsonProperty("retain")
+    private boolean retain;
+    @JsonProperty("receivedAt")
+    private boolean receivedAt;
+    @JsonProperty("static")
+    private Map<String, String> staticHeaders;
+
+    /**
+     * Default constructor for HeaderEnrichment. Used for deserialization.
+     */
+    public HeaderEnrichment() {
+    }
+
+    /**
+     * Constructor for HeaderEnrichment.
+     *
+     * @param mqttTopic     true to add the MQTT topic header.
+     * @param clientId      true to add the MQTT client identifier header.
+     * @param qos           true to add the MQTT QoS level header.
+     * @param retain        true to add the MQTT retain flag header.
+     * @param receivedAt    true to add the header with the time the MQTT message was received.
+     * @param staticHeaders the headers with constant values, null if none.
+     */
+    public HeaderEnrichment(boolean mqttTopic, boolean clientId, boolean qos, boolean retain, boolean receivedAt, Map<String, String> staticHeaders) {
+        this.mqttTopic = mqttTopic;
+        this.clientId = clientId;
+        this.qos = qos;
+        this.retain = retain;
+        this.receivedAt = receivedAt;
+        this.staticHeaders = staticHeaders;
+    }
+
+    /**
+     * @return true to add the MQTT topic header.
+     */
+    public boolean isMqttTopic() {
+        return mqttTopic;
+    }
+
+    /**
+     * @return true to add the MQTT client identifier header.
+     */
+    public boolean isClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return true to add the MQTT QoS level header.
+     */
+    public boolean isQos() {
+        return qos;
+    }
+
+    /**
+     * @return true to add the MQTT retain flag header.
+     */
+    public boolean isRetain() {
+        return retain;
+    }
+
+    /**
+     * @return true to add the header with the time the MQTT message was received.
+     */
+    public boolean isReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return the headers with constant values, null if none.
+     */
+    public Map<String, String> getStaticHeaders() {
+        return staticHeaders;
+    }
+
+    @Override
+    public String toString() {
+        return "HeaderEnrichment(" +
+                "mqttTopic=" + this.mqttTopic +
+                ", clientId=" + this.clientId +
+                ", qos=" + this.qos +
+                ", retain=" + this.retain +
+                ", receivedAt=" + this.receivedAt +
+                ", staticHeaders=" + this.staticHeaders +
+                ")";
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents an additional Kafka target of a Mapping Rule. The MQTT messages matching the rule are sent to its
+ * Kafka topic as well, sharing the same payload. The templates use the same placeholders as the rule ones.
+ * E.g.: in the ToMaR file:
+ * "targets": [
+ *      {
+ *          "kafkaTopic": "archive_{building}",
+ *          "kafkaKey": "{room}"
+ *      }
+ * ]
+ */
+public class KafkaTarget {
+
+    @JsonProperty("kafkaTopic")
+    private String kafkaTopicTemplate;
+    @JsonProperty("kafkaKey")
+    private String kafkaKeyTemplate;
+
+    /**
+     * Default constructor for KafkaTarget. Used for deserialization.
+     */
+    public KafkaTarget() {
+    }
+
+    /**
+     * Constructor for KafkaTarget.
+     *
+     * @param kafkaTopicTemplate    the Kafka topic template.
+     * @param kafkaKeyTemplate      the Kafka key template, null for records without key.
+     */
+    public KafkaTarget(String kafkaTopicTemplate, String kafkaKeyTemplate) {
+        this.kafkaTopicTemplate = kafkaTopicTemplate;
+        this.kafkaKeyTemplate = kafkaKeyTemplate;
+    }
+
+    /**
+     * @return the Kafka topic template.
+     */
+    public String getKafkaTopicTemplate() {
+        return kafkaTopicTemplate;
+    }
+
+    /**
+     * @return the Kafka key template, null for records without key.
+     */
+    public String getKafkaKeyTemplate() {
+        return kafkaKeyTemplate;
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaTarget(" +
+                "kafkaTopicTemplate=" + this.kafkaTopicTemplate +
+                ", kafkaKeyTemplate=" + this.kafkaKeyTemplate +
+                ")";
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+/**
+ * Represents a MQTT topic along with its UTF-8 bytes and its mapping to Kafka,
+ * so that they can be reused across the messages published on the same topic.
+ *
+ * @param mqttTopic      the MQTT topic
+ * @param mqttTopicBytes the MQTT topic encoded in UTF-8
+ * @param mappingResult  the result of mapping the MQTT topic to Kafka
+ */
+public record MappedTopic(String mqttTopic, byte[] mqttTopicBytes, MappingResult mappingResult) {
+
+    @Override
+    public String toString() {
+        return "MappedTopic(" +
+                "mqttTopic=" + mqttTopic +
+                ", mappingResult=" + mappingResult +
+                ")";
+    }
+}
@@ -4,20 +4,55 @@
  */
 package io.strimzi.kafka.bridge.mqtt.mapper;
 
+import java.util.List;
+
 /**
  * Represents the result of a mapping operation.
- * It contains the mapped Kafka topic and the Kafka key.
+ * It contains the mapped Kafka topic, the Kafka key, the matching mapping rule and its additional Kafka targets.
  *
  * @param kafkaTopic the mapped Kafka topic.
  * @param kafkaKey   the Kafka key.
+ * @param rule       the matching mapping rule, null when the default topic is used.
+ * @param targets    the mapped additional Kafka targets of the rule, empty when there are none.
  */
-public record MappingResult(String kafkaTopic, String kafkaKey) {
+public record MappingResult(String kafkaTopic, String kafkaKey, MappingRule rule, List<Target> targets) {
+
+    /**
+     * Constructor for a mapping result without additional Kafka targets.
+     *
+     * @param kafkaTopic the mapped Kafka topic.
+     * @param kafkaKey   the Kafka key.
+     * @param rule       the matching mapping rule, null when the default topic is used.
+     */
+    public MappingResult(String kafkaTopic, String kafkaKey, MappingRule rule) {
+        this(kafkaTopic, kafkaKey, rule, List.of());
+    }
+
+    /**
+     * Constructor for a mapping result without a matching mapping rule.
+     *
+     * @param kafkaTopic the mapped Kafka topic.
+     * @param kafkaKey   the Kafka key.
+     */
+    public MappingResult(String kafkaTopic, String kafkaKey) {
+        this(kafkaTopic, kafkaKey, null);
+    }
 
     @Override
     public String toString() {
         return "MappingResult(" +
                 "kafkaTopic=" + kafkaTopic +
                 ", kafkaKey=" + kafkaKey +
+                ", targets=" + targets +
                 ")";
     }
+
+    /**
+     * A mapped additional Kafka target, the MQTT message is sent to as well.
+     *
+     * @param kafkaTopic the mapped Kafka topic.
+     * @param kafkaKey   the Kafka key.
+     */
+    public record Target(String kafkaTopic, String kafkaKey) {
+    }
 }
@@ -6,6 +6,8 @@ package io.strimzi.kafka.bridge.mqtt.mapper;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
+
 /**
  * Represents a Mapping Rule in the Topic Mapping Rules(ToMaR). Mapping rules are used to define how MQTT topics should be mapped to Kafka topics, and additionally define the record key.
  * E.g.: a valid mapping rule would look like this in the ToMaR file:
@@ -18,6 +20,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * MappingRule(mqttTopicPattern=sensors/(^[0-9])/type/([^/]+)/data, kafkaTopicTemplate=sensors_$1_data, kafkaKey=sensor_$2)
  */
 public class MappingRule {
+
+    public static final String PRIORITY_NORMAL = "normal";
+    public static final String PRIORITY_LOW = "low";
+
     @JsonProperty("mqttTopic")
     private String mqttTopicPattern;
     @JsonProperty("kafkaTopic")
@@ -26,6 +32,36 @@ public class MappingRule {
     @JsonProperty("kafkaKey")
     private String kafkaKeyTemplate;
 
+    @JsonProperty("aggregation")
+    private Aggregation aggregation;
+
+    @JsonProperty("partitionBy")
+    private Partitioning partitioning;
+
+    @JsonProperty("headers")
+    private HeaderEnrichment headers;
+
+    @JsonProperty("priority")
+    private String priority = PRIORITY_NORMAL;
+
+    @JsonProperty("maxAgeMs")
+    private long maxAgeMs;
+
+    @JsonProperty("reportByException")
+    private ReportByException reportByException;
+
+    @JsonProperty("downsampling")
+    private Downsampling downsampling;
+
+    @JsonProperty("sampling")
+    private Sampling sampling;
+
+    @JsonProperty("targets")
+    private List<KafkaTarget> targets;
+
+    @JsonProperty("ackQuorum")
+    private int ackQuorum;
+
     /**
      * Default constructor for MappingRule. Used for deserialization.
      */
@@ -72,6 +108,193 @@ public class MappingRule {
         return kafkaKeyTemplate;
     }
 
+    /**
+     * Get the aggregation settings.
+     *
+     * @return the aggregation settings, null if the MQTT messages are not aggregated.
+     */
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * Set the aggregation settings.
+     *
+     * @param aggregation the aggregation settings.
+     */
+    public void setAggregation(Aggregation aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    /**
+     * Get the partitioning settings.
+     *
+     * @return the partitioning settings, null if the Kafka producer picks the partition.
+     */
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * Set the partitioning settings.
+     *
+     * @param partitioning the partitioning settings.
+     */
+    public void setPartitioning(Partitioning partitioning) {
+        this.partitioning = partitioning;
+    }
+
+    /**
+     * Get the Kafka headers settings.
+     *
+     * @return the Kafka headers settings, null if only the MQTT topic header is added.
+     */
+    public HeaderEnrichment getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Set the Kafka headers settings.
+     *
+     * @param headers the Kafka headers settings.
+     */
+    public void setHeaders(HeaderEnrichment headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * Get the priority, for shedding the MQTT messages under overload.
+     *
+     * @return the priority, normal or low.
+     */
+    public String getPriority() {
+        return priority;
+    }
+
+    /**
+     * Set the priority.
+     *
+     * @param priority the priority, normal or low.
+     */
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return true if the MQTT messages matching the rule are shed under overload, after the QoS 0 ones.
+     */
+    public boolean isLowPriority() {
+        return PRIORITY_LOW.equals(this.priority);
+    }
+
+    /**
+     * Get the maximum age of the MQTT messages when handed to the Kafka producer.
+     *
+     * @return the maximum age, in milliseconds, 0 if the MQTT messages never expire.
+     */
+    public long getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    /**
+     * Set the maximum age of the MQTT messages when handed to the Kafka producer.
+     *
+     * @param maxAgeMs the maximum age, in milliseconds, 0 if the MQTT messages never expire.
+     */
+    public void setMaxAgeMs(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Get the report-by-exception settings.
+     *
+     * @return the report-by-exception settings, null if the unchanged payloads are sent to Kafka as well.
+     */
+    public ReportByException getReportByException() {
+        return reportByException;
+    }
+
+    /**
+     * Set the report-by-exception settings.
+     *
+     * @param reportByException the report-by-exception settings.
+     */
+    public void setReportByException(ReportByException reportByException) {
+        this.reportByException = reportByException;
+    }
+
+    /**
+     * Get the downsampling settings.
+     *
+     * @return the downsampling settings, null if every MQTT message is sent to Kafka.
+     */
+    public Downsampling getDownsampling() {
+        return downsampling;
+    }
+
+    /**
+     * Set the downsampling settings.
+     *
+     * @param downsampling the downsampling settings.
+     */
+    public void setDownsampling(Downsampling downsampling) {
+        this.downsampling = downsampling;
+    }
+
+    /**
+     * Get the sampling settings.
+     *
+     * @return the sampling settings, null if every MQTT message is sent to Kafka.
+     */
+    public Sampling getSampling() {
+        return sampling;
+    }
+
+    /**
+     * Set the sampling settings.
+     *
+     * @param sampling the sampling settings.
+     */
+    public void setSampling(Sampling sampling) {
+        this.sampling = sampling;
+    }
+
+    /**
+     * Get the additional Kafka targets.
+     *
+     * @return the Kafka targets the MQTT messages are sent to as well, null if only sent to the rule Kafka topic.
+     */
+    public List<KafkaTarget> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Set the additional Kafka targets.
+     *
+     * @param targets the Kafka targets the MQTT messages are sent to as well.
+     */
+    public void setTargets(List<KafkaTarget> targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * Get the number of Kafka targets acknowledging a message before it is acknowledged to the client.
+     *
+     * @return the number of Kafka targets acknowledging a message, 0 if all of them.
+     */
+    public int getAckQuorum() {
+        return ackQuorum;
+    }
+
+    /**
+     * Set the number of Kafka targets acknowledging a message before it is acknowledged to the client.
+     *
+     * @param ackQuorum the number of Kafka targets acknowledging a message, 0 if all of them.
+     */
+    public void setAckQuorum(int ackQuorum) {
+        this.ackQuorum = ackQuorum;
+    }
+
     /**
      * String representation of a MappingRule.
      *
@@ -83,6 +306,16 @@ public class MappingRule {
                 "mqttTopicPattern= " + this.mqttTopicPattern +
                 ", kafkaTopicTemplate=" + this.kafkaTopicTemplate +
                 ", kafkaKeyTemplate=" + this.kafkaKeyTemplate +
+                ", aggregation=" + this.aggregation +
+                ", partitioning=" + this.partitioning +
+                ", headers=" + this.headers +
+                ", priority=" + this.priority +
+                ", maxAgeMs=" + this.maxAgeMs +
+                ", reportByException=" + this.reportByException +
+                ", downsampling=" + this.downsampling +
+                ", sampling=" + this.sampling +
+                ", targets=" + this.targets +
+                ", ackQuorum=" + this.ackQuorum +
                 ")";
     }
 }
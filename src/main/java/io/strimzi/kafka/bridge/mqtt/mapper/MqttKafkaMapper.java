@@ -6,6 +6,7 @@ package io.strimzi.kafka.bridge.mqtt.mapper;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 /**
@@ -40,4 +41,25 @@ public abstract class MqttKafkaMapper {
      * @return a MappingResult object containing the mapped Kafka topic and Kafka key.
      */
     public abstract MappingResult map(String mqttTopic);
+
+    /**
+     * Maps the additional Kafka targets of a matching mapping rule, resolving the placeholders in their templates.
+     *
+     * @param rule the matching mapping rule.
+     * @param resolver function replacing the placeholders in a template with the values from the MQTT topic.
+     * @return the mapped additional Kafka targets, empty when the rule has none or has aggregation or downsampling.
+     */
+    protected List<MappingResult.Target> mapTargets(MappingRule rule, UnaryOperator<String> resolver) {
+        List<KafkaTarget> targets = rule.getTargets();
+        // the targets are ignored even for the messages of such rules sent on their own (i.e. QoS 2 or non numeric)
+        if (targets == null || targets.isEmpty() || rule.getAggregation() != null || rule.getDownsampling() != null) {
+            return List.of();
+        }
+        List<MappingResult.Target> mappedTargets = new ArrayList<>(targets.size());
+        for (KafkaTarget target : targets) {
+            String kafkaKey = target.getKafkaKeyTemplate() != null ? resolver.apply(target.getKafkaKeyTemplate()) : null;
+            mappedTargets.add(new MappingResult.Target(resolver.apply(target.getKafkaTopicTemplate()), kafkaKey));
+        }
+        return List.copyOf(mappedTargets);
+    }
 }
@@ -47,7 +47,7 @@ public class MqttKafkaRegexMapper extends MqttKafkaMapper {
                 }
 
                 // return the first match
-                return new MappingResult(mappedKafkaTopic, kafkaKey);
+                return new MappingResult(mappedKafkaTopic, kafkaKey, rule, mapTargets(rule, template -> resolve(template, matcher)));
             }
         }
         return new MappingResult(bridgeDefaultTopic, null);
@@ -60,6 +60,22 @@ public class MqttKafkaRegexMapper extends MqttKafkaMapper {
         this.rules.forEach(rule -> this.patterns.add(Pattern.compile(rule.getMqttTopicPattern())));
     }
 
+    /**
+     * Replaces the placeholders in a template of an additional Kafka target with the matched groups.
+     *
+     * @param template the Kafka topic or Kafka key template.
+     * @param matcher the matcher of the MQTT topic against the rule pattern.
+     * @return the template with the placeholders replaced.
+     */
+    private String resolve(String template, Matcher matcher) {
+        String resolved = template;
+        for (int i = 1; i < matcher.groupCount() + 1; i++) {
+            resolved = resolved.replace("$" + i, matcher.group(i));
+        }
+        checkPlaceholder(resolved);
+        return resolved;
+    }
+
     /**
      * Checks if there are any pending placeholders in the Kafka topic or Kafka key template.
      *
@@ -92,7 +92,7 @@ public class MqttKafkaSimpleMapper extends MqttKafkaMapper {
                         }
                     }
                 }
-                return new MappingResult(mappedKafkaTopic, kafkaKey);
+                return new MappingResult(mappedKafkaTopic, kafkaKey, rule, mapTargets(rule, template -> resolve(template, matcher)));
             }
         }
         return new MappingResult(bridgeDefaultTopic, null);
@@ -135,6 +135,30 @@ public class MqttKafkaSimpleMapper extends MqttKafkaMapper {
         }
     }
 
+    /**
+     * Replaces the placeholders in a template of an additional Kafka target with the values from the MQTT topic.
+     *
+     * @param template the Kafka topic or Kafka key template.
+     * @param matcher the matcher of the MQTT topic against the rule pattern.
+     * @return the template with the placeholders replaced.
+     */
+    private String resolve(String template, Matcher matcher) {
+        Matcher placeholderMatcher = this.placeholderPattern.matcher(template);
+        StringBuilder resolved = new StringBuilder();
+        while (placeholderMatcher.find()) {
+            String placeholderKey = placeholderMatcher.group();
+            String placeholderValue;
+            try {
+                placeholderValue = matcher.group(removeBrackets(placeholderKey));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("The placeholder " + placeholderKey + " was not found assigned any value.", e);
+            }
+            placeholderMatcher.appendReplacement(resolved, Matcher.quoteReplacement(placeholderValue));
+        }
+        placeholderMatcher.appendTail(resolved);
+        return resolved.toString();
+    }
+
     /**
      * Helper method for building a named regex expression.
      * A named regex expression is a regex expression that contains a named capturing group.
@@ -0,0 +1,91 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+
+/**
+ * Represents the partitioning settings of a Mapping Rule. When set, the Kafka partition is picked by hashing
+ * the chosen MQTT topic levels (0-based) or the MQTT client identifier, without the need of a Kafka record key.
+ * E.g.: in the ToMaR file:
+ * "partitionBy": {
+ *      "source": "topic-levels",
+ *      "levels": [1]
+ * }
+ * or
+ * "partitionBy": {
+ *      "source": "client-id"
+ * }
+ */
+public class Partitioning {
+
+    public static final String SOURCE_TOPIC_LEVELS = "topic-levels";
+    public static final String SOURCE_CLIENT_ID = "client-id";
+
+    private String source = SOURCE_TOPIC_LEVELS;
+    @JsonProperty("levels")
+    private int[] levels;
+
+    /**
+     * Default constructor for Partitioning. Used for deserialization.
+     */
+    public Partitioning() {
+    }
+
+    /**
+     * Constructor for Partitioning.
+     *
+     * @param source    the source of the hash, topic-levels or client-id.
+     * @param levels    the MQTT topic levels (0-based) to hash, when the source is topic-levels.
+     */
+    public Partitioning(String source, int[] levels) {
+        this.setSource(source);
+        this.levels = levels;
+    }
+
+    /**
+     * Set the source of the hash, rejecting an unknown one so that a typo does not silently fall back to topic-levels.
+     *
+     * @param source    the source of the hash, topic-levels or client-id.
+     */
+    @JsonProperty("source")
+    private void setSource(String source) {
+        if (!SOURCE_TOPIC_LEVELS.equals(source) && !SOURCE_CLIENT_ID.equals(source)) {
+            throw new IllegalArgumentException("Unknown partitioning source: " + source);
+        }
+        this.source = source;
+    }
+
+    /**
+     * @return true if the partition is picked by hashing the MQTT client identifier.
+     */
+    public boolean isByClientId() {
+        return SOURCE_CLIENT_ID.equals(this.source);
+    }
+
+    /**
+     * @return the source of the hash, topic-levels or client-id.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the MQTT topic levels (0-based) to hash, null to hash the whole MQTT topic.
+     */
+    public int[] getLevels() {
+        return levels;
+    }
+
+    @Override
+    public String toString() {
+        return "Partitioning(" +
+                "source=" + this.source +
+                ", levels=" + Arrays.toString(this.levels) +
+                ")";
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the report-by-exception settings of a Mapping Rule. When set, a MQTT message with the same payload
+ * as the previous one on the same MQTT topic is not sent to Kafka, unless the heartbeat is elapsed.
+ * E.g.: in the ToMaR file:
+ * "reportByException": {
+ *      "heartbeatSeconds": 60
+ * }
+ */
+public class ReportByException {
+
+    public static final long DEFAULT_HEARTBEAT_SECONDS = 60;
+
+    @JsonProperty("heartbeatSeconds")
+    private long heartbeatSeconds = DEFAULT_HEARTBEAT_SECONDS;
+
+    /**
+     * Default constructor for ReportByException. Used for deserialization.
+     */
+    public ReportByException() {
+    }
+
+    /**
+     * Constructor for ReportByException.
+     *
+     * @param heartbeatSeconds  the time in seconds after which an unchanged payload is sent anyway, 0 to never send it.
+     */
+    public ReportByException(long heartbeatSeconds) {
+        this.heartbeatSeconds = heartbeatSeconds;
+    }
+
+    /**
+     * @return the time in seconds after which an unchanged payload is sent anyway, 0 to never send it.
+     */
+    public long getHeartbeatSeconds() {
+        return heartbeatSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "ReportByException(" +
+                "heartbeatSeconds=" + this.heartbeatSeconds +
+                ")";
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.mapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the sampling settings of a Mapping Rule. When set, only a sample of the MQTT messages is sent to Kafka:
+ * every Nth message per MQTT topic or a random percentage of them.
+ * E.g.: in the ToMaR file:
+ * "sampling": {
+ *      "every": 10
+ * }
+ * or
+ * "sampling": {
+ *      "percentage": 5
+ * }
+ */
+public class Sampling {
+
+    @JsonProperty("every")
+    private int every;
+    @JsonProperty("percentage")
+    private double percentage = 100;
+
+    /**
+     * Default constructor for Sampling. Used for deserialization.
+     */
+    public Sampling() {
+    }
+
+    /**
+     * Constructor for Sampling.
+     *
+     * @param every         send one MQTT message every this number, per MQTT topic, 0 to sample by percentage.
+     * @param percentage    the percentage of MQTT messages randomly sent, when not sampling by number.
+     */
+    public Sampling(int every, double percentage) {
+        this.every = every;
+        this.percentage = percentage;
+    }
+
+    /**
+     * @return send one MQTT message every this number, per MQTT topic, 0 to sample by percentage.
+     */
+    public int getEvery() {
+        return every;
+    }
+
+    /**
+     * @return the percentage of MQTT messages randomly sent, when not sampling by number.
+     */
+    public double getPercentage() {
+        return percentage;
+    }
+
+    @Override
+    public String toString() {
+        return "Sampling(" +
+                "every=" + this.every +
+                ", percentage=" + this.percentage +
+                ")";
+    }
+}
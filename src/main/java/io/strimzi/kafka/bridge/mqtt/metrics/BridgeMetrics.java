@@ -0,0 +1,183 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingRule;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the MQTT traffic handled by the bridge, exposed in the Prometheus format. <br>
+ * They are updated for every message by the event loops, so they are {@link LongAdder} based, not contended
+ * across the event loops, and looked up once per connection or per mapping rule, not per message.
+ */
+public class BridgeMetrics {
+
+    private static final String PREFIX = "mqtt_bridge_";
+
+    private final Map<String, EventLoopCounters> eventLoops = new ConcurrentHashMap<>();
+    // indexed by the QoS level
+    private final LongAdder[] publishByQos = {new LongAdder(), new LongAdder(), new LongAdder()};
+    // MappingRule doesn't override equals and hashCode, so the rules are compared by identity
+    private final Map<MappingRule, LongAdder> ruleMatches = new ConcurrentHashMap<>();
+    private final LongAdder defaultTopicMatches = new LongAdder();
+    private final LatencyMetrics latency = new LatencyMetrics();
+
+    /**
+     * Counters of the messages received by an event loop
+     *
+     * @param messages the number of MQTT messages received
+     * @param bytes    the number of MQTT bytes received
+     */
+    public record EventLoopCounters(LongAdder messages, LongAdder bytes) {
+
+        /**
+         * Record a received MQTT message
+         *
+         * @param size the size of the message, in bytes
+         */
+        public void record(int size) {
+            this.messages.increment();
+            this.bytes.add(size);
+        }
+    }
+
+    /**
+     * Get the counters of an event loop, to be looked up once per connection
+     *
+     * @param name the name of the event loop thread
+     * @return the counters of the event loop
+     */
+    public EventLoopCounters eventLoop(String name) {
+        return this.eventLoops.computeIfAbsent(name, k -> new EventLoopCounters(new LongAdder(), new LongAdder()));
+    }
+
+    /**
+     * Record a received PUBLISH message
+     *
+     * @param qos the QoS level of the message
+     */
+    public void recordPublish(int qos) {
+        this.publishByQos[qos].increment();
+    }
+
+    /**
+     * Record the mapping of a MQTT topic
+     *
+     * @param rule the matching mapping rule, null if the message was mapped to the default topic
+     */
+    public void recordMapping(MappingRule rule) {
+        if (rule == null) {
+            this.defaultTopicMatches.increment();
+            return;
+        }
+        LongAdder matches = this.ruleMatches.get(rule);
+        if (matches == null) {
+            matches = this.ruleMatches.computeIfAbsent(rule, k -> new LongAdder());
+        }
+        matches.increment();
+    }
+
+    /**
+     * @return the latencies of the PUBLISH messages handling
+     */
+    public LatencyMetrics latency() {
+        return this.latency;
+    }
+
+    /**
+     * Write the counters and the latencies
+     *
+     * @param writer the Prometheus writer
+     */
+    public void write(PrometheusWriter writer) {
+        writer.family(PREFIX + "messages_received_total", PrometheusWriter.COUNTER, "MQTT messages received, by event loop");
+        this.eventLoops.forEach((name, counters) -> writer.sample(PREFIX + "messages_received_total", "event_loop", name, counters.messages().sum()));
+        writer.family(PREFIX + "bytes_received_total", PrometheusWriter.COUNTER, "MQTT bytes received, by event loop");
+        this.eventLoops.forEach((name, counters) -> writer.sample(PREFIX + "bytes_received_total", "event_loop", name, counters.bytes().sum()));
+
+        writer.family(PREFIX + "publish_messages_total", PrometheusWriter.COUNTER, "MQTT PUBLISH messages received, by QoS level");
+        for (int qos = 0; qos < this.publishByQos.length; qos++) {
+            writer.sample(PREFIX + "publish_messages_total", "qos", String.valueOf(qos), this.publishByQos[qos].sum());
+        }
+
+        writer.family(PREFIX + "mapping_rule_matches_total", PrometheusWriter.COUNTER, "MQTT topics matching a mapping rule, by rule");
+        this.ruleMatches.forEach((rule, matches) -> writer.sample(PREFIX + "mapping_rule_matches_total", "rule", rule.getMqttTopicPattern(), matches.sum()));
+        writer.family(PREFIX + "mapping_default_topic_total", PrometheusWriter.COUNTER, "MQTT topics matching no mapping rule, mapped to the default topic");
+        writer.sample(PREFIX + "mapping_default_topic_total", this.defaultTopicMatches.sum());
+
+        this.latency.write(writer);
+    }
+
+    /**
+     * Write the Kafka send counters
+     *
+     * @param writer          the Prometheus writer
+     * @param successes       the number of sends acknowledged by Kafka
+     * @param failuresByCause the number of failed sends, by cause
+     * @param expiredDropped    the number of records dropped because expired before being sent
+     * @param expiredRedirected the number of records routed to the expired topic because expired before being sent
+     */
+    public static void writeKafkaSends(PrometheusWriter writer, long successes, Map<String, Long> failuresByCause,
+                                       long expiredDropped, long expiredRedirected) {
+        writer.family(PREFIX + "kafka_send_success_total", PrometheusWriter.COUNTER, "Kafka sends acknowledged");
+        writer.sample(PREFIX + "kafka_send_success_total", successes);
+        writer.family(PREFIX + "kafka_send_failures_total", PrometheusWriter.COUNTER, "Kafka send attempts failed, by cause");
+        failuresByCause.forEach((cause, failures) -> writer.sample(PREFIX + "kafka_send_failures_total", "cause", cause, failures));
+        writer.family(PREFIX + "kafka_send_expired_total", PrometheusWriter.COUNTER, "Records expired before being sent, by action");
+        writer.sample(PREFIX + "kafka_send_expired_total", "action", "dropped", expiredDropped);
+        writer.sample(PREFIX + "kafka_send_expired_total", "action", "redirected", expiredRedirected);
+    }
+
+    /**
+     * Write the metrics of the Kafka producers, as gauges
+     *
+     * @param writer          the Prometheus writer
+     * @param producerMetrics the metrics of each producer, by producer name
+     */
+    public static void writeKafkaProducers(PrometheusWriter writer, Map<String, Map<String, Double>> producerMetrics) {
+        Map<String, Map<String, Double>> byMetric = new TreeMap<>();
+        producerMetrics.forEach((producer, metrics) ->
+                metrics.forEach((metric, value) -> byMetric.computeIfAbsent(metric, k -> new TreeMap<>()).put(producer, value)));
+        byMetric.forEach((metric, values) -> {
+            String name = PREFIX + "kafka_producer_" + PrometheusWriter.sanitize(metric);
+            writer.family(name, PrometheusWriter.GAUGE, "Kafka producer metric " + metric);
+            values.forEach((producer, value) -> writer.sample(name, "producer", producer, value));
+        });
+    }
+
+    /**
+     * Write the metrics of the Netty buffer allocator
+     *
+     * @param writer    the Prometheus writer
+     * @param allocator the Netty buffer allocator
+     */
+    public static void writeAllocator(PrometheusWriter writer, ByteBufAllocator allocator) {
+        if (!(allocator instanceof ByteBufAllocatorMetricProvider provider)) {
+            return;
+        }
+        ByteBufAllocatorMetric metric = provider.metric();
+        writer.family(PREFIX + "netty_allocator_used_heap_bytes", PrometheusWriter.GAUGE, "Heap memory used by the Netty buffer allocator");
+        writer.sample(PREFIX + "netty_allocator_used_heap_bytes", metric.usedHeapMemory());
+        writer.family(PREFIX + "netty_allocator_used_direct_bytes", PrometheusWriter.GAUGE, "Direct memory used by the Netty buffer allocator");
+        writer.sample(PREFIX + "netty_allocator_used_direct_bytes", metric.usedDirectMemory());
+        if (metric instanceof PooledByteBufAllocatorMetric pooled) {
+            writer.family(PREFIX + "netty_allocator_arenas", PrometheusWriter.GAUGE, "Arenas of the Netty pooled buffer allocator");
+            writer.sample(PREFIX + "netty_allocator_arenas", "type", "heap", pooled.numHeapArenas());
+            writer.sample(PREFIX + "netty_allocator_arenas", "type", "direct", pooled.numDirectArenas());
+            writer.family(PREFIX + "netty_allocator_thread_local_caches", PrometheusWriter.GAUGE, "Thread local caches of the Netty pooled buffer allocator");
+            writer.sample(PREFIX + "netty_allocator_thread_local_caches", pooled.numThreadLocalCaches());
+            writer.family(PREFIX + "netty_allocator_chunk_size_bytes", PrometheusWriter.GAUGE, "Chunk size of the Netty pooled buffer allocator");
+            writer.sample(PREFIX + "netty_allocator_chunk_size_bytes", pooled.chunkSize());
+        }
+    }
+}
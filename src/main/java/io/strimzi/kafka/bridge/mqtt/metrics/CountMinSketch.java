@@ -0,0 +1,96 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch, estimating the count of a key in a fixed amount of memory. <br>
+ * The estimate is never lower than the actual count, and higher by at most 2 / width of the total count
+ * with a probability of at least 1 - 1 / 2^depth. <br>
+ * It is not thread safe.
+ */
+class CountMinSketch {
+
+    static final int DEPTH = 4;
+
+    private final long[] counters;
+    private final int mask;
+
+    /**
+     * Constructor
+     *
+     * @param width the number of counters per row, rounded up to a power of two
+     */
+    CountMinSketch(int width) {
+        int rowWidth = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.counters = new long[DEPTH * rowWidth];
+        this.mask = rowWidth - 1;
+    }
+
+    /**
+     * Add to the count of a key
+     *
+     * @param hash  the hash of the key
+     * @param count the count to add
+     * @return the new estimated count of the key
+     */
+    long add(int hash, long count) {
+        int h1 = mix(hash);
+        int h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * (this.mask + 1) + ((h1 + row * h2) & this.mask);
+            this.counters[index] += count;
+            estimate = Math.min(estimate, this.counters[index]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Get the estimated count of a key
+     *
+     * @param hash the hash of the key
+     * @return the estimated count of the key
+     */
+    long estimate(int hash) {
+        int h1 = mix(hash);
+        int h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, this.counters[row * (this.mask + 1) + ((h1 + row * h2) & this.mask)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Add the counts of another sketch, with the same width
+     *
+     * @param other the other sketch
+     */
+    void merge(CountMinSketch other) {
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] += other.counters[i];
+        }
+    }
+
+    /**
+     * Reset all the counts
+     */
+    void clear() {
+        Arrays.fill(this.counters, 0);
+    }
+
+    // the finalizer of the MurmurHash3 32 bits, spreading the key hash on all the bits
+    private static int mix(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
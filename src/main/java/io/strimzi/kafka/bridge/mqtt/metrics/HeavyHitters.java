@@ -0,0 +1,239 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the top clients and MQTT topics, by messages and by bytes, over fixed time windows. <br>
+ * The counts are estimated by count-min sketches and only the top keys are kept, in small heaps, so the memory
+ * is bounded regardless of the number of clients and topics. <br>
+ * Each thread records into its own sketches, so the event loops are not contended, and the sketches of all
+ * the threads are merged when the top keys of the last completed window are read.
+ */
+public class HeavyHitters {
+    private static final Logger LOGGER = LogManager.getLogger(HeavyHitters.class);
+
+    private final int top;
+    private final int sketchWidth;
+    private final long windowMs;
+    private final long clientWarnMessages;
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final FastThreadLocal<Recorder> recorder = new FastThreadLocal<>() {
+        @Override
+        protected Recorder initialValue() {
+            Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            return recorder;
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param top                the number of top clients and MQTT topics tracked, by messages and by bytes, 0 to disable
+     * @param sketchWidth        the number of counters per row of the count-min sketches
+     * @param windowMs           the window, in milliseconds, the top clients and MQTT topics are tracked over
+     * @param clientWarnMessages the number of messages within a window above which a client is logged, 0 to disable
+     */
+    public HeavyHitters(int top, int sketchWidth, long windowMs, long clientWarnMessages) {
+        this.top = top;
+        this.sketchWidth = sketchWidth;
+        this.windowMs = windowMs;
+        this.clientWarnMessages = clientWarnMessages;
+    }
+
+    /**
+     * Record a PUBLISH message
+     *
+     * @param clientId  the MQTT client identifier, null if unknown
+     * @param mqttTopic the MQTT topic
+     * @param bytes     the payload size, in bytes
+     */
+    public void record(String clientId, String mqttTopic, int bytes) {
+        if (this.top > 0) {
+            this.record(clientId, mqttTopic, bytes, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Record a PUBLISH message
+     *
+     * @param clientId  the MQTT client identifier, null if unknown
+     * @param mqttTopic the MQTT topic
+     * @param bytes     the payload size, in bytes
+     * @param nowMs     the current time, in milliseconds
+     * @return true if the client has been logged for sending too many messages within the current window
+     */
+    boolean record(String clientId, String mqttTopic, int bytes, long nowMs) {
+        Recorder recorder = this.recorder.get();
+        long clientMessages;
+        boolean warn;
+        // only contended by the reader
+        synchronized (recorder) {
+            clientMessages = recorder.record(nowMs - nowMs % this.windowMs, clientId, mqttTopic, bytes);
+            // the estimate can jump past the threshold because of the collisions with other clients,
+            // so the client is logged the first time it is found at or above the threshold within the window
+            warn = this.clientWarnMessages > 0 && clientMessages >= this.clientWarnMessages && recorder.current.warnedClients.add(clientId);
+        }
+        if (warn) {
+            LOGGER.warn("Client {} sent {} messages within the current {} ms window", clientId, clientMessages, this.windowMs);
+        }
+        return warn;
+    }
+
+    /**
+     * @return the top clients and MQTT topics of the last completed window
+     */
+    public Map<String, Object> toMap() {
+        return this.toMap(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the top clients and MQTT topics of the last completed window
+     *
+     * @param nowMs the current time, in milliseconds
+     * @return the top clients and MQTT topics
+     */
+    Map<String, Object> toMap(long nowMs) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("top", this.top);
+        map.put("windowMs", this.windowMs);
+        if (this.top == 0) {
+            return map;
+        }
+        long lastWindow = nowMs - nowMs % this.windowMs - this.windowMs;
+        Merged clients = new Merged();
+        Merged topics = new Merged();
+        for (Recorder recorder : this.recorders) {
+            synchronized (recorder) {
+                Window window = recorder.window(lastWindow);
+                if (window != null) {
+                    clients.merge(window.clients);
+                    topics.merge(window.topics);
+                }
+            }
+        }
+        map.put("windowStart", lastWindow);
+        map.put("clients", clients.toMap("clientId"));
+        map.put("topics", topics.toMap("topic"));
+        return map;
+    }
+
+    /**
+     * The counts recorded by a thread, for the current and the previous windows
+     */
+    private final class Recorder {
+        private Window current = new Window();
+        private Window previous = new Window();
+
+        long record(long windowStart, String clientId, String mqttTopic, int bytes) {
+            if (this.current.start != windowStart) {
+                Window window = this.previous;
+                this.previous = this.current;
+                this.current = window;
+                this.current.reset(windowStart);
+            }
+            this.current.topics.add(mqttTopic, bytes);
+            return clientId != null ? this.current.clients.add(clientId, bytes) : 0;
+        }
+
+        Window window(long windowStart) {
+            if (this.current.start == windowStart) {
+                return this.current;
+            }
+            return this.previous.start == windowStart ? this.previous : null;
+        }
+    }
+
+    /**
+     * The counts of the clients and MQTT topics within a window
+     */
+    private final class Window {
+        private final Counts clients = new Counts();
+        private final Counts topics = new Counts();
+        private final Set<String> warnedClients = new HashSet<>();
+        private long start = -1;
+
+        void reset(long start) {
+            this.start = start;
+            this.clients.clear();
+            this.topics.clear();
+            this.warnedClients.clear();
+        }
+    }
+
+    /**
+     * The messages and bytes counts of a type of keys, with the top keys
+     */
+    private class Counts {
+        protected final CountMinSketch messages = new CountMinSketch(sketchWidth);
+        protected final CountMinSketch bytes = new CountMinSketch(sketchWidth);
+        private final TopK topMessages = new TopK(top);
+        private final TopK topBytes = new TopK(top);
+
+        long add(String key, int size) {
+            int hash = key.hashCode();
+            long messagesCount = this.messages.add(hash, 1);
+            this.topMessages.offer(key, messagesCount);
+            this.topBytes.offer(key, this.bytes.add(hash, size));
+            return messagesCount;
+        }
+
+        void clear() {
+            this.messages.clear();
+            this.bytes.clear();
+            this.topMessages.clear();
+            this.topBytes.clear();
+        }
+    }
+
+    /**
+     * The counts of a type of keys merged from all the threads
+     */
+    private final class Merged extends Counts {
+        private final Set<String> candidates = new HashSet<>();
+
+        void merge(Counts counts) {
+            this.messages.merge(counts.messages);
+            this.bytes.merge(counts.bytes);
+            this.candidates.addAll(List.of(counts.topMessages.keys()));
+            this.candidates.addAll(List.of(counts.topBytes.keys()));
+        }
+
+        Map<String, Object> toMap(String keyName) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("byMessages", this.top(keyName, this.messages));
+            map.put("byBytes", this.top(keyName, this.bytes));
+            return map;
+        }
+
+        private List<Map<String, Object>> top(String keyName, CountMinSketch sketch) {
+            List<Map<String, Object>> entries = new ArrayList<>(top);
+            this.candidates.stream()
+                    .sorted(Comparator.comparingLong((String key) -> sketch.estimate(key.hashCode())).reversed())
+                    .limit(top)
+                    .forEach(key -> {
+                        Map<String, Object> entry = new LinkedHashMap<>();
+                        entry.put(keyName, key);
+                        entry.put("messages", this.messages.estimate(key.hashCode()));
+                        entry.put("bytes", this.bytes.estimate(key.hashCode()));
+                        entries.add(entry);
+                    });
+            return entries;
+        }
+    }
+}
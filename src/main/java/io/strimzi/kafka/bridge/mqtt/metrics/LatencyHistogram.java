@@ -0,0 +1,138 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with log-linear buckets, in the style of HdrHistogram: each power of two is split into
+ * 32 linear sub-buckets, so a recorded value is known within about 3%, from 1 nanosecond up to about 18 minutes
+ * (longer values are counted in the last bucket). <br>
+ * Each thread records into its own recorder, with no contention nor compare-and-set, and the recorders
+ * are merged when a snapshot is taken.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // highest power of two of the recorded values, in nanoseconds
+    private static final int MAX_MAGNITUDE = 40;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    // the recorder slots after the buckets
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+
+    private final List<AtomicLongArray> recorders = new CopyOnWriteArrayList<>();
+    private final FastThreadLocal<AtomicLongArray> recorder = new FastThreadLocal<>() {
+        @Override
+        protected AtomicLongArray initialValue() {
+            AtomicLongArray recorder = new AtomicLongArray(BUCKETS + 2);
+            recorders.add(recorder);
+            return recorder;
+        }
+    };
+
+    /**
+     * Record a latency
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        AtomicLongArray counts = this.recorder.get();
+        // only the owner thread writes, so a release store is enough for the readers to see the update
+        int index = bucketIndex(value);
+        counts.setRelease(index, counts.getPlain(index) + 1);
+        counts.setRelease(COUNT, counts.getPlain(COUNT) + 1);
+        counts.setRelease(SUM, counts.getPlain(SUM) + value);
+    }
+
+    /**
+     * @return a snapshot of the latencies recorded by all the threads
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        for (AtomicLongArray recorder : this.recorders) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += recorder.getAcquire(i);
+            }
+            count += recorder.getAcquire(COUNT);
+            sum += recorder.getAcquire(SUM);
+        }
+        return new Snapshot(counts, count, sum);
+    }
+
+    /**
+     * Get the bucket of a value
+     *
+     * @param value the value, not negative
+     * @return the index of the bucket
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+        if (magnitude == MAX_MAGNITUDE && value >= 1L << (MAX_MAGNITUDE + 1)) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the highest value counted in a bucket
+     *
+     * @param index the index of the bucket
+     * @return the highest value of the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = SUB_BUCKET_BITS + (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Represents the latencies recorded up to a point in time
+     *
+     * @param counts the count of each bucket
+     * @param count  the number of recorded latencies
+     * @param sum    the sum of the recorded latencies, in nanoseconds
+     */
+    public record Snapshot(long[] counts, long count, long sum) {
+
+        /**
+         * Get a percentile of the recorded latencies
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the highest latency, in nanoseconds, of the bucket holding the percentile, 0 if nothing was recorded
+         */
+        public long percentile(double percentile) {
+            // the total is taken from the buckets, which could be updated after the count when read
+            long total = 0;
+            for (long c : this.counts) {
+                total += c;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
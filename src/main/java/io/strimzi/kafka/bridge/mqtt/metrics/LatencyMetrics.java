@@ -0,0 +1,105 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+/**
+ * Latencies of the MQTT PUBLISH messages, from their handling on the event loop to the Kafka acknowledgment
+ * and the PUBACK (or PUBREC for QoS 2) write, by stage and QoS level. <br>
+ * Each QoS level is sent through its own Kafka producer, so the QoS level also identifies the producer.
+ */
+public class LatencyMetrics {
+
+    private static final String NAME = "mqtt_bridge_publish_latency_seconds";
+    private static final String[] LABEL_NAMES = {"stage", "qos", "producer"};
+    private static final String[] QUANTILE_LABEL_NAMES = {"stage", "qos", "producer", "quantile"};
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    // the producers names, indexed by the QoS level
+    private static final String[] PRODUCERS = {"ack-zero", "ack-one", "exactly-once"};
+
+    /**
+     * The stages of a PUBLISH message handling
+     */
+    public enum Stage {
+        // from the PUBLISH handling to the Kafka topic mapped
+        MAP("map", 0),
+        // from the Kafka topic mapped to the record handed to the Kafka producer, or to the envelope
+        ENQUEUE("enqueue", 0),
+        // from the record handed to the Kafka producer to its acknowledgment
+        BROKER_ACK("broker_ack", 1),
+        // from the Kafka acknowledgment to the PUBACK, or PUBREC, written to the client
+        PUBACK("puback", 1),
+        // from the PUBLISH handling to the PUBACK, or PUBREC, written to the client
+        TOTAL("total", 1);
+
+        private final String label;
+        private final int minQos;
+
+        Stage(String label, int minQos) {
+            this.label = label;
+            this.minQos = minQos;
+        }
+    }
+
+    // indexed by stage and QoS level
+    private final LatencyHistogram[][] histograms = new LatencyHistogram[Stage.values().length][PRODUCERS.length];
+
+    /**
+     * Constructor
+     */
+    public LatencyMetrics() {
+        for (Stage stage : Stage.values()) {
+            for (int qos = stage.minQos; qos < PRODUCERS.length; qos++) {
+                this.histograms[stage.ordinal()][qos] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Record the latency of a stage
+     *
+     * @param stage the stage
+     * @param qos   the QoS level of the message
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(Stage stage, int qos, long nanos) {
+        this.histograms[stage.ordinal()][qos].record(nanos);
+    }
+
+    /**
+     * Get the latencies recorded for a stage
+     *
+     * @param stage the stage
+     * @param qos   the QoS level of the messages
+     * @return the snapshot of the latencies
+     */
+    public LatencyHistogram.Snapshot snapshot(Stage stage, int qos) {
+        return this.histograms[stage.ordinal()][qos].snapshot();
+    }
+
+    /**
+     * Write the latencies as summaries, with the quantiles since the bridge started
+     *
+     * @param writer the Prometheus writer
+     */
+    public void write(PrometheusWriter writer) {
+        writer.family(NAME, PrometheusWriter.SUMMARY, "Latency of the MQTT PUBLISH messages handling, by stage and QoS level");
+        for (Stage stage : Stage.values()) {
+            for (int qos = stage.minQos; qos < PRODUCERS.length; qos++) {
+                LatencyHistogram.Snapshot snapshot = this.snapshot(stage, qos);
+                String[] labels = {stage.label, String.valueOf(qos), PRODUCERS[qos]};
+                for (double quantile : QUANTILES) {
+                    double value = snapshot.count() > 0 ? seconds(snapshot.percentile(quantile * 100)) : Double.NaN;
+                    writer.sample(NAME, QUANTILE_LABEL_NAMES, new String[] {labels[0], labels[1], labels[2], String.valueOf(quantile)}, value);
+                }
+                writer.sample(NAME + "_sum", LABEL_NAMES, labels, seconds(snapshot.sum()));
+                writer.sample(NAME + "_count", LABEL_NAMES, labels, snapshot.count());
+            }
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}
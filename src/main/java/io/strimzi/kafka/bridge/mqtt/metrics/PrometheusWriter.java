@@ -0,0 +1,133 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4). <br>
+ * Each metric family is started by {@link #family(String, String, String)}, followed by its samples.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String COUNTER = "counter";
+    public static final String GAUGE = "gauge";
+    public static final String SUMMARY = "summary";
+
+    private final StringBuilder sb = new StringBuilder(4096);
+
+    /**
+     * Start a metric family
+     *
+     * @param name the metric name
+     * @param type the metric type, counter, gauge or summary
+     * @param help the metric description
+     * @return this writer
+     */
+    public PrometheusWriter family(String name, String type, String help) {
+        this.sb.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        this.sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Write a sample without labels
+     *
+     * @param name  the metric name
+     * @param value the sample value
+     * @return this writer
+     */
+    public PrometheusWriter sample(String name, double value) {
+        this.sb.append(name).append(' ');
+        appendValue(value);
+        return this;
+    }
+
+    /**
+     * Write a sample with one label
+     *
+     * @param name       the metric name
+     * @param labelName  the label name
+     * @param labelValue the label value
+     * @param value      the sample value
+     * @return this writer
+     */
+    public PrometheusWriter sample(String name, String labelName, String labelValue, double value) {
+        this.sb.append(name).append('{').append(labelName).append("=\"");
+        appendLabelValue(labelValue);
+        this.sb.append("\"} ");
+        appendValue(value);
+        return this;
+    }
+
+    /**
+     * Write a sample with many labels
+     *
+     * @param name        the metric name
+     * @param labelNames  the label names
+     * @param labelValues the label values, in the same order as the names
+     * @param value       the sample value
+     * @return this writer
+     */
+    public PrometheusWriter sample(String name, String[] labelNames, String[] labelValues, double value) {
+        this.sb.append(name).append('{');
+        for (int i = 0; i < labelNames.length; i++) {
+            if (i > 0) {
+                this.sb.append(',');
+            }
+            this.sb.append(labelNames[i]).append("=\"");
+            appendLabelValue(labelValues[i]);
+            this.sb.append('"');
+        }
+        this.sb.append("} ");
+        appendValue(value);
+        return this;
+    }
+
+    private void appendLabelValue(String labelValue) {
+        for (int i = 0; i < labelValue.length(); i++) {
+            char c = labelValue.charAt(i);
+            switch (c) {
+                case '\\' -> this.sb.append("\\\\");
+                case '"' -> this.sb.append("\\\"");
+                case '\n' -> this.sb.append("\\n");
+                default -> this.sb.append(c);
+            }
+        }
+    }
+
+    private void appendValue(double value) {
+        if (value == (long) value) {
+            this.sb.append((long) value);
+        } else if (Double.isNaN(value)) {
+            this.sb.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            this.sb.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            this.sb.append(value);
+        }
+        this.sb.append('\n');
+    }
+
+    /**
+     * Convert a name to a valid Prometheus metric name, replacing the invalid characters with underscores
+     *
+     * @param name the name
+     * @return the metric name
+     */
+    public static String sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (i > 0 && c >= '0' && c <= '9');
+            sanitized.append(valid ? c : '_');
+        }
+        return sanitized.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.sb.toString();
+    }
+}
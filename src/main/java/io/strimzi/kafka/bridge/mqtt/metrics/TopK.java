@@ -0,0 +1,116 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the keys with the highest counts, in a min-heap bounded to k keys. <br>
+ * The counts of a key only grow, so a key leaves the heap only when replaced by a key with a higher count. <br>
+ * It is not thread safe.
+ */
+class TopK {
+
+    private final String[] keys;
+    private final long[] counts;
+    // position of each key in the heap
+    private final Map<String, Integer> positions;
+    private int size;
+
+    /**
+     * Constructor
+     *
+     * @param k the maximum number of keys
+     */
+    TopK(int k) {
+        this.keys = new String[k];
+        this.counts = new long[k];
+        this.positions = new HashMap<>(k * 2);
+    }
+
+    /**
+     * Offer a key with its new count, kept if it is among the k highest counts
+     *
+     * @param key   the key
+     * @param count the count of the key
+     */
+    void offer(String key, long count) {
+        Integer position = this.positions.get(key);
+        if (position != null) {
+            this.counts[position] = count;
+            siftDown(position);
+        } else if (this.size < this.keys.length) {
+            set(this.size, key, count);
+            siftUp(this.size++);
+        } else if (this.size > 0 && count > this.counts[0]) {
+            this.positions.remove(this.keys[0]);
+            set(0, key, count);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return the keys in the heap, in no specific order
+     */
+    String[] keys() {
+        return Arrays.copyOf(this.keys, this.size);
+    }
+
+    /**
+     * Remove all the keys
+     */
+    void clear() {
+        Arrays.fill(this.keys, null);
+        this.positions.clear();
+        this.size = 0;
+    }
+
+    private void siftUp(int position) {
+        int child = position;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (this.counts[parent] <= this.counts[child]) {
+                return;
+            }
+            swap(parent, child);
+            child = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        int parent = position;
+        while (true) {
+            int smallest = parent;
+            int left = 2 * parent + 1;
+            int right = left + 1;
+            if (left < this.size && this.counts[left] < this.counts[smallest]) {
+                smallest = left;
+            }
+            if (right < this.size && this.counts[right] < this.counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == parent) {
+                return;
+            }
+            swap(parent, smallest);
+            parent = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String key = this.keys[i];
+        long count = this.counts[i];
+        set(i, this.keys[j], this.counts[j]);
+        set(j, key, count);
+    }
+
+    private void set(int position, String key, long count) {
+        this.keys[position] = key;
+        this.counts[position] = count;
+        this.positions.put(key, position);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.channel.Channel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the connected clients, by client identifier. <br>
+ * When a client connects with the identifier of an already connected one, the existing connection is closed
+ * and the new one takes over, as required by the MQTT specification. <br>
+ * The registry also opens and updates the persistent sessions through the session store, if configured. <br>
+ * Each entry is the client session itself, keyed by the same client identifier String it holds,
+ * so that a connection costs a map node and a small session object.
+ */
+public class ClientRegistry implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ClientRegistry.class);
+
+    private final Map<String, ClientSession> clients = new ConcurrentHashMap<>();
+    // null if persistent sessions are not supported
+    private final SessionStore sessionStore;
+    private final LongAdder takeovers = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param sessionStore store of the persistent sessions, null if not supported
+     */
+    public ClientRegistry(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    /**
+     * Register a connecting client, taking over the existing connection with the same client identifier, if any. <br>
+     * The session is restored from the session store for clean session = false, or the stored one is discarded for clean session = true.
+     *
+     * @param clientId      the MQTT client identifier
+     * @param cleanSession  the clean session flag of the CONNECT
+     * @param channel       the channel the client is connected on
+     * @return the client session
+     * @throws IOException if the session store cannot be grown
+     */
+    public ClientSession connect(String clientId, boolean cleanSession, Channel channel) throws IOException {
+        ClientSession session = new ClientSession(clientId, channel);
+        // clients with an empty identifier are not tracked, as they can't be taken over
+        if (clientId.isEmpty()) {
+            return session;
+        }
+
+        ClientSession previous = this.clients.put(clientId, session);
+        if (previous != null) {
+            this.takeovers.increment();
+            LOGGER.info("Client [{}] connected from {}, closing its previous connection from {}",
+                    clientId, channel.remoteAddress(), previous.getChannel().remoteAddress());
+            previous.getChannel().close();
+        }
+        this.openSession(session, cleanSession);
+        return session;
+    }
+
+    /**
+     * Unregister a disconnected client, unless it was already taken over by a new connection
+     *
+     * @param session the client session
+     */
+    public void disconnect(ClientSession session) {
+        if (!session.getClientId().isEmpty()) {
+            this.clients.remove(session.getClientId(), session);
+        }
+    }
+
+    /**
+     * Update the session in the session store, if persistent, after a change of the QoS 2 messages waiting for PUBREL. <br>
+     * A session taken over by a new connection is not stored anymore, so it can't overwrite the new one.
+     *
+     * @param session the client session
+     */
+    public void update(ClientSession session) {
+        if (!session.isPersistent() || this.clients.get(session.getClientId()) != session) {
+            return;
+        }
+        try {
+            this.sessionStore.save(session.getClientId(), session.getQos2Received());
+        } catch (IOException e) {
+            LOGGER.error("Failed to store the session of client {}: ", session.getClientId(), e);
+        }
+    }
+
+    /**
+     * Record a QoS 2 message acknowledged with a PUBREC, waiting for the PUBREL, and update the session in the session store. <br>
+     * It has to be called by the event loop of the session. If the session was taken over while the message was being sent
+     * to Kafka, the packet identifier is handed over to the new persistent session, on its event loop, so that the re-send
+     * on the new connection is not sent to Kafka again.
+     *
+     * @param session   the client session the message was received on
+     * @param packetId  the packet identifier of the QoS 2 message
+     */
+    public void received(ClientSession session, int packetId) {
+        if (!session.getQos2Received().add(packetId) || !session.isPersistent()) {
+            return;
+        }
+        ClientSession current = this.clients.get(session.getClientId());
+        if (current == session) {
+            this.update(session);
+        } else if (current != null && current.isPersistent()) {
+            LOGGER.debug("Client [{}] taken over while sending QoS 2 message {}, handing it over to the new connection",
+                    session.getClientId(), packetId);
+            current.getChannel().eventLoop().execute(() -> {
+                if (current.getQos2Received().add(packetId)) {
+                    this.update(current);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int size() {
+        return this.clients.size();
+    }
+
+    /**
+     * @return the statistics about the connected clients
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("connected", this.clients.size());
+        map.put("takeovers", this.takeovers.sum());
+        map.put("persistentSessions", this.sessionStore != null ? this.sessionStore.size() : 0);
+        return map;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.sessionStore != null) {
+            this.sessionStore.close();
+        }
+    }
+
+    private void openSession(ClientSession session, boolean cleanSession) throws IOException {
+        if (this.sessionStore == null) {
+            return;
+        }
+        String clientId = session.getClientId();
+        if (cleanSession) {
+            this.sessionStore.remove(clientId);
+            return;
+        }
+        int[] packetIds = this.sessionStore.load(clientId);
+        if (packetIds != null) {
+            for (int packetId : packetIds) {
+                session.getQos2Received().add(packetId);
+            }
+            session.setPresent(true);
+        }
+        session.setPersistent(this.sessionStore.save(clientId, session.getQos2Received()));
+        if (!session.isPersistent()) {
+            LOGGER.warn("Client identifier {} too long to be stored, the session is not persistent", clientId);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.channel.Channel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents the state of a connected MQTT client. <br>
+ * This class is not thread safe, it is meant to be accessed by the event loop thread of the client channel,
+ * except for the count of the in-flight QoS 1 messages which is decremented when Kafka acknowledges them.
+ */
+public class ClientSession {
+
+    private final String clientId;
+    private final Channel channel;
+    // encoded on first use, for the Kafka record headers
+    private byte[] clientIdBytes;
+    // QoS 2 messages being sent to Kafka, not acknowledged with a PUBREC yet
+    private final PacketIdSet qos2Pending = new PacketIdSet();
+    // QoS 2 messages acknowledged with a PUBREC, waiting for the PUBREL from the client
+    private final PacketIdSet qos2Received = new PacketIdSet();
+    // stored in the session store, for clients connecting with clean session = false
+    private boolean persistent;
+    // restored from the session store on connection
+    private boolean present;
+    // time of the last message received from the client, for the keep-alive enforcement
+    private long lastActivityNanos;
+    // QoS 1 messages being sent to Kafka, not acknowledged with a PUBACK yet
+    private final AtomicInteger qos1InFlight = new AtomicInteger();
+    // connected with the MQTT 5 protocol
+    private boolean mqtt5;
+    // max QoS 1 and QoS 2 messages not acknowledged yet, negotiated with MQTT 5 clients only (0 = no limit)
+    private int receiveMaximum;
+    // topic aliases, for MQTT 5 clients only
+    private TopicAliasTable topicAliases;
+
+    /**
+     * Constructor
+     *
+     * @param clientId the MQTT client identifier
+     * @param channel  the channel the client is connected on
+     */
+    public ClientSession(String clientId, Channel channel) {
+        this.clientId = clientId;
+        this.channel = channel;
+    }
+
+    /**
+     * @return the MQTT client identifier
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return the MQTT client identifier encoded in UTF-8
+     */
+    public byte[] getClientIdBytes() {
+        if (this.clientIdBytes == null) {
+            this.clientIdBytes = this.clientId.getBytes(StandardCharsets.UTF_8);
+        }
+        return this.clientIdBytes;
+    }
+
+    /**
+     * @return the channel the client is connected on
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the packet identifiers of the QoS 2 messages being sent to Kafka
+     */
+    public PacketIdSet getQos2Pending() {
+        return qos2Pending;
+    }
+
+    /**
+     * @return the packet identifiers of the QoS 2 messages waiting for the PUBREL
+     */
+    public PacketIdSet getQos2Received() {
+        return qos2Received;
+    }
+
+    /**
+     * @return true if the session is stored in the session store
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Set if the session is stored in the session store
+     *
+     * @param persistent true if the session is stored in the session store
+     */
+    public void setPersistent(boolean persistent) {
+        this.persistent = persistent;
+    }
+
+    /**
+     * @return true if the session was restored from the session store on connection
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * Set if the session was restored from the session store on connection
+     *
+     * @param present true if the session was restored from the session store
+     */
+    public void setPresent(boolean present) {
+        this.present = present;
+    }
+
+    /**
+     * @return the time, from {@link System#nanoTime()}, of the last message received from the client
+     */
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Record activity from the client
+     *
+     * @param nowNanos the current time, from {@link System#nanoTime()}
+     */
+    public void touch(long nowNanos) {
+        this.lastActivityNanos = nowNanos;
+    }
+
+    /**
+     * Count a QoS 1 message being sent to Kafka
+     */
+    public void incrementQos1InFlight() {
+        this.qos1InFlight.incrementAndGet();
+    }
+
+    /**
+     * Count a QoS 1 message acknowledged, or failed, by Kafka
+     */
+    public void decrementQos1InFlight() {
+        this.qos1InFlight.decrementAndGet();
+    }
+
+    /**
+     * @return the QoS 1 and QoS 2 messages received from the client and not fully acknowledged yet
+     */
+    public int getInFlight() {
+        return this.qos1InFlight.get() + this.qos2Pending.size() + this.qos2Received.size();
+    }
+
+    /**
+     * @return true if the client is connected with the MQTT 5 protocol
+     */
+    public boolean isMqtt5() {
+        return mqtt5;
+    }
+
+    /**
+     * Set if the client is connected with the MQTT 5 protocol
+     *
+     * @param mqtt5 true for the MQTT 5 protocol
+     */
+    public void setMqtt5(boolean mqtt5) {
+        this.mqtt5 = mqtt5;
+    }
+
+    /**
+     * @return the max QoS 1 and QoS 2 messages not acknowledged yet the client can send, 0 for no limit
+     */
+    public int getReceiveMaximum() {
+        return receiveMaximum;
+    }
+
+    /**
+     * Set the max QoS 1 and QoS 2 messages not acknowledged yet the client can send
+     *
+     * @param receiveMaximum the max messages not acknowledged yet, 0 for no limit
+     */
+    public void setReceiveMaximum(int receiveMaximum) {
+        this.receiveMaximum = receiveMaximum;
+    }
+
+    /**
+     * @return the topic aliases set by the client, null if the client can't use topic aliases
+     */
+    public TopicAliasTable getTopicAliases() {
+        return topicAliases;
+    }
+
+    /**
+     * Set the topic aliases of the client
+     *
+     * @param topicAliases the topic aliases, null if the client can't use topic aliases
+     */
+    public void setTopicAliases(TopicAliasTable topicAliases) {
+        this.topicAliases = topicAliases;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientSession(" +
+                "clientId=" + this.clientId +
+                ", persistent=" + this.persistent +
+                ", qos2Pending=" + this.qos2Pending.size() +
+                ", qos2Received=" + this.qos2Received.size() +
+                ")";
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects the QoS 1 messages re-sent by the clients with the DUP flag, after they were already produced to Kafka
+ * but the PUBACK did not reach the client (i.e. because of a reconnection). <br>
+ * For each client, a small window of the recently produced messages is kept as (packet identifier, hash of topic and payload)
+ * pairs packed into a primitive long ring. The windows survive the client reconnections and the least recently used clients are evicted
+ * when the maximum number is reached. The windows are split across stripes to reduce the contention between event loops. <br>
+ * The clients with an empty identifier are not tracked, as they can't be told apart. A client reusing a packet identifier
+ * for a message with the same topic and payload as a recently produced one can get its re-send suppressed even if its first attempt
+ * was never produced, so the detection is disabled by default.
+ */
+public class DuplicateDetector {
+
+    private static final int STRIPES = 16;
+
+    private final int windowSize;
+    private final Stripe[] stripes;
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param windowSize    number of recently produced messages remembered per client, 0 to disable the detection
+     * @param maxClients    maximum number of clients tracked
+     */
+    public DuplicateDetector(int windowSize, int maxClients) {
+        this.windowSize = windowSize;
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe(Math.max(1, maxClients / STRIPES));
+        }
+    }
+
+    /**
+     * @return true if the detection is enabled
+     */
+    public boolean isEnabled() {
+        return this.windowSize > 0;
+    }
+
+    /**
+     * Compute the hash identifying a message, without copying the payload
+     *
+     * @param mqttTopic the MQTT topic
+     * @param payload   the message payload, its reader index is not changed
+     * @return the hash of the topic and payload
+     */
+    public static int hash(String mqttTopic, ByteBuf payload) {
+        return 31 * mqttTopic.hashCode() + ByteBufUtil.hashCode(payload);
+    }
+
+    /**
+     * Check if a message re-sent with the DUP flag was already produced, counting it as suppressed if so
+     *
+     * @param clientId  the MQTT client identifier, not tracked if null or empty
+     * @param packetId  the packet identifier
+     * @param hash      the hash of the message topic and payload
+     * @return true if the message was already produced
+     */
+    public boolean isDuplicate(String clientId, int packetId, int hash) {
+        if (!this.isEnabled() || clientId == null || clientId.isEmpty()) {
+            return false;
+        }
+        Stripe stripe = this.stripe(clientId);
+        boolean duplicate;
+        synchronized (stripe) {
+            long[] window = stripe.windows.get(clientId);
+            duplicate = window != null && contains(window, entry(packetId, hash));
+        }
+        if (duplicate) {
+            this.suppressed.increment();
+        }
+        return duplicate;
+    }
+
+    /**
+     * Remember a message acknowledged by Kafka, evicting the oldest one of the client window if full
+     *
+     * @param clientId  the MQTT client identifier, not tracked if null or empty
+     * @param packetId  the packet identifier
+     * @param hash      the hash of the message topic and payload
+     */
+    public void record(String clientId, int packetId, int hash) {
+        if (!this.isEnabled() || clientId == null || clientId.isEmpty()) {
+            return;
+        }
+        Stripe stripe = this.stripe(clientId);
+        synchronized (stripe) {
+            // the last slot holds the position where the next entry is written
+            long[] window = stripe.windows.computeIfAbsent(clientId, id -> new long[this.windowSize + 1]);
+            int next = (int) window[this.windowSize];
+            window[next] = entry(packetId, hash);
+            window[this.windowSize] = (next + 1) % this.windowSize;
+        }
+    }
+
+    /**
+     * @return the statistics about the suppressed duplicates
+     */
+    public Map<String, Object> toMap() {
+        int clients = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                clients += stripe.windows.size();
+            }
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("suppressed", this.suppressed.sum());
+        map.put("clients", clients);
+        return map;
+    }
+
+    private Stripe stripe(String clientId) {
+        int hash = clientId.hashCode();
+        return this.stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private boolean contains(long[] window, long entry) {
+        for (int i = 0; i < this.windowSize; i++) {
+            if (window[i] == entry) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long entry(int packetId, int hash) {
+        // packet identifiers are never 0, so an empty slot never matches
+        return ((long) packetId << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Windows of a subset of the clients, in least recently used order
+     */
+    private static class Stripe {
+        private final Map<String, long[]> windows;
+
+        Stripe(int maxClients) {
+            this.windows = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                    return size() > maxClients;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the keep-alive of the connected clients, closing the connections with no activity for 1.5 times the keep-alive
+ * requested in the CONNECT, as required by the MQTT specification. <br>
+ * All the connections share a single hashed wheel timer, with at most one timeout per connection:
+ * receiving a message just updates the last activity time of the session, and when the timeout expires
+ * it is re-armed for the remaining time if there was activity in the meantime. <br>
+ * The check runs on the event loop of the connection, the only thread accessing the session.
+ */
+public class KeepAliveMonitor {
+    private static final Logger LOGGER = LogManager.getLogger(KeepAliveMonitor.class);
+
+    // the keep-alive is expressed in seconds, so a 100 ms tick is precise enough
+    private static final long TICK_MS = 100;
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private final Timer timer;
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Constructor
+     */
+    public KeepAliveMonitor() {
+        this(new HashedWheelTimer(new DefaultThreadFactory("mqtt-keep-alive", true), TICK_MS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param timer the timer used for checking the connections
+     */
+    KeepAliveMonitor(Timer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Start watching the keep-alive of a connected client
+     *
+     * @param session           the client session
+     * @param keepAliveSeconds  the keep-alive requested in the CONNECT, 0 to disable it
+     */
+    public void watch(ClientSession session, int keepAliveSeconds) {
+        if (keepAliveSeconds <= 0) {
+            return;
+        }
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveSeconds * 1500L);
+        session.touch(System.nanoTime());
+        this.schedule(session, timeoutNanos, timeoutNanos);
+    }
+
+    /**
+     * @return the statistics about the keep-alive enforcement
+     */
+    public Map<String, Object> toMap() {
+        return Map.of("expired", this.expired.sum());
+    }
+
+    /**
+     * Stop the timer
+     */
+    public void stop() {
+        this.timer.stop();
+    }
+
+    private void schedule(ClientSession session, long timeoutNanos, long delayNanos) {
+        Channel channel = session.getChannel();
+        this.timer.newTimeout(timeout -> {
+            if (channel.isActive()) {
+                channel.eventLoop().execute(() -> this.check(session, timeoutNanos));
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void check(ClientSession session, long timeoutNanos) {
+        Channel channel = session.getChannel();
+        if (!channel.isActive()) {
+            return;
+        }
+        long idle = System.nanoTime() - session.getLastActivityNanos();
+        if (idle >= timeoutNanos) {
+            this.expired.increment();
+            LOGGER.info("Client [{}] from {} inactive for {} ms, closing connection",
+                    session.getClientId(), channel.remoteAddress(), TimeUnit.NANOSECONDS.toMillis(idle));
+            channel.close();
+        } else {
+            this.schedule(session, timeoutNanos, timeoutNanos - idle);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+/**
+ * Compact set of MQTT packet identifiers (1-65535), stored as primitive chars in an open addressing hash table,
+ * without boxing and with 2 bytes per slot. <br>
+ * The packet identifier 0 is not valid in MQTT, so it is used as the empty slot marker.
+ * The table is allocated on the first addition, so that an empty set, the most common case, is small. <br>
+ * This class is not thread safe, it is meant to be accessed by the event loop thread of the client channel.
+ */
+public class PacketIdSet {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final char EMPTY = 0;
+    private static final char[] NO_SLOTS = new char[0];
+
+    private char[] slots = NO_SLOTS;
+    private int size;
+
+    /**
+     * Add a packet identifier to the set
+     *
+     * @param packetId the packet identifier
+     * @return true if it was added, false if it was already in the set
+     */
+    public boolean add(int packetId) {
+        char id = checkPacketId(packetId);
+        if (this.slots.length == 0) {
+            this.slots = new char[INITIAL_CAPACITY];
+        }
+        int mask = this.slots.length - 1;
+        int i = index(id, mask);
+        while (this.slots[i] != EMPTY) {
+            if (this.slots[i] == id) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        this.slots[i] = id;
+        // keep the load factor at most 0.5
+        if (++this.size * 2 > this.slots.length) {
+            this.resize(this.slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Check if a packet identifier is in the set
+     *
+     * @param packetId the packet identifier
+     * @return true if the packet identifier is in the set
+     */
+    public boolean contains(int packetId) {
+        return this.find(checkPacketId(packetId)) >= 0;
+    }
+
+    /**
+     * Remove a packet identifier from the set
+     *
+     * @param packetId the packet identifier
+     * @return true if it was removed, false if it was not in the set
+     */
+    public boolean remove(int packetId) {
+        int i = this.find(checkPacketId(packetId));
+        if (i < 0) {
+            return false;
+        }
+        // backward shift deletion, so that there are no tombstones and lookups stay short
+        int mask = this.slots.length - 1;
+        int hole = i;
+        int next = (hole + 1) & mask;
+        while (this.slots[next] != EMPTY) {
+            int home = index(this.slots[next], mask);
+            // move the entry into the hole if its home slot is not between the hole and its current position
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.slots[hole] = this.slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.slots[hole] = EMPTY;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * @return the number of packet identifiers in the set
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if the set is empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return the packet identifiers in the set, in no particular order
+     */
+    public int[] toArray() {
+        int[] ids = new int[this.size];
+        int j = 0;
+        for (char slot : this.slots) {
+            if (slot != EMPTY) {
+                ids[j++] = slot;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Remove all the packet identifiers, releasing the table
+     */
+    public void clear() {
+        this.slots = NO_SLOTS;
+        this.size = 0;
+    }
+
+    private int find(char id) {
+        if (this.size == 0) {
+            return -1;
+        }
+        int mask = this.slots.length - 1;
+        int i = index(id, mask);
+        while (this.slots[i] != EMPTY) {
+            if (this.slots[i] == id) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        char[] old = this.slots;
+        this.slots = new char[capacity];
+        int mask = capacity - 1;
+        for (char id : old) {
+            if (id != EMPTY) {
+                int i = index(id, mask);
+                while (this.slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                this.slots[i] = id;
+            }
+        }
+    }
+
+    private static int index(char id, int mask) {
+        // spread the sequential packet identifiers across the table
+        int hash = id * 0x9E3779B1;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static char checkPacketId(int packetId) {
+        if (packetId < 1 || packetId > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid MQTT packet identifier: " + packetId);
+        }
+        return (char) packetId;
+    }
+}
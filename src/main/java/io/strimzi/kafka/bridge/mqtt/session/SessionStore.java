@@ -0,0 +1,330 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the persistent sessions (clean session = false) in a memory-mapped file, so that they survive a bridge restart. <br>
+ * The file is made of fixed size slots, one per session, holding the client identifier and the packet identifiers
+ * of the QoS 2 messages waiting for the PUBREL. The slots are mapped in segments, added when the store grows. <br>
+ * The index from client identifier to slot is an off-heap open addressing hash table, rebuilt on startup by scanning the slots
+ * without creating any object per session. <br>
+ * The writes go to the page cache, so they survive a bridge crash; they are forced to disk on close.
+ */
+public class SessionStore implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(SessionStore.class);
+
+    // file header, stored in the first slot
+    private static final int MAGIC = 0x4D515353;
+    private static final int VERSION = 1;
+
+    static final int SLOT_SIZE = 256;
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_SHIFT;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_SLOTS * SLOT_SIZE;
+
+    // slot layout: state, client identifier length, packet identifiers count, client identifier, packet identifiers
+    private static final int STATE_OFFSET = 0;
+    private static final int CLIENT_ID_LENGTH_OFFSET = 1;
+    private static final int COUNT_OFFSET = 2;
+    private static final int CLIENT_ID_OFFSET = 4;
+    private static final int PACKET_IDS_OFFSET = 128;
+    private static final byte STATE_FREE = 0;
+    private static final byte STATE_USED = 1;
+
+    /**
+     * Maximum length, in UTF-8 bytes, of a client identifier which can be stored
+     */
+    public static final int MAX_CLIENT_ID_BYTES = PACKET_IDS_OFFSET - CLIENT_ID_OFFSET;
+
+    /**
+     * Maximum number of packet identifiers stored per session
+     */
+    public static final int MAX_PACKET_IDS = (SLOT_SIZE - PACKET_IDS_OFFSET) / Character.BYTES;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    // entries are (hash << 32 | slot), 0 marks an empty entry as the slot 0 is the file header
+    private ByteBuffer index;
+    private int indexMask;
+    private int size;
+
+    /**
+     * Constructor, opening or creating the store file and loading the index
+     *
+     * @param path path of the store file
+     * @throws IOException if the file cannot be opened or is not a valid store file
+     */
+    public SessionStore(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = this.channel.size();
+        boolean created = fileSize == 0;
+        int segmentCount = (int) Math.max(1, (fileSize + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+        this.resizeIndex(Math.max(1024, Integer.highestOneBit(segmentCount * SEGMENT_SLOTS) * 2));
+        for (int i = 0; i < segmentCount; i++) {
+            this.mapSegment();
+        }
+
+        MappedByteBuffer header = this.segments.get(0);
+        if (created) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, SLOT_SIZE);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != SLOT_SIZE) {
+            this.channel.close();
+            throw new IOException("Invalid session store file " + path);
+        }
+        LOGGER.info("Session store {} opened with {} sessions", path, this.size);
+    }
+
+    /**
+     * Load the packet identifiers of the QoS 2 messages waiting for the PUBREL of a session
+     *
+     * @param clientId the MQTT client identifier
+     * @return the packet identifiers, or null if there is no session for the client
+     */
+    public synchronized int[] load(String clientId) {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        int slot = this.find(id, hash(id));
+        if (slot < 0) {
+            return null;
+        }
+        ByteBuffer segment = this.segment(slot);
+        int offset = offset(slot);
+        int[] packetIds = new int[segment.getShort(offset + COUNT_OFFSET)];
+        for (int i = 0; i < packetIds.length; i++) {
+            packetIds[i] = segment.getChar(offset + PACKET_IDS_OFFSET + i * Character.BYTES);
+        }
+        return packetIds;
+    }
+
+    /**
+     * Store a session, creating it if it does not exist
+     *
+     * @param clientId  the MQTT client identifier
+     * @param packetIds the packet identifiers of the QoS 2 messages waiting for the PUBREL
+     * @return true if stored, false if the client identifier is too long to be stored
+     * @throws IOException if the store file cannot be grown
+     */
+    public synchronized boolean save(String clientId, PacketIdSet packetIds) throws IOException {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_CLIENT_ID_BYTES) {
+            return false;
+        }
+        int hash = hash(id);
+        int slot = this.find(id, hash);
+        if (slot < 0) {
+            slot = this.allocate();
+            ByteBuffer segment = this.segment(slot);
+            int offset = offset(slot);
+            segment.put(offset + CLIENT_ID_LENGTH_OFFSET, (byte) id.length);
+            segment.put(offset + CLIENT_ID_OFFSET, id);
+            this.writePacketIds(segment, offset, packetIds, clientId);
+            // marked as used only when completely written
+            segment.put(offset + STATE_OFFSET, STATE_USED);
+            this.insert(hash, slot);
+        } else {
+            this.writePacketIds(this.segment(slot), offset(slot), packetIds, clientId);
+        }
+        return true;
+    }
+
+    /**
+     * Remove a session, if it exists
+     *
+     * @param clientId the MQTT client identifier
+     * @return true if the session was removed
+     */
+    public synchronized boolean remove(String clientId) {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(id);
+        int slot = this.find(id, hash);
+        if (slot < 0) {
+            return false;
+        }
+        this.segment(slot).put(offset(slot) + STATE_OFFSET, STATE_FREE);
+        this.delete(hash, slot);
+        this.freeSlots[this.freeCount++] = slot;
+        return true;
+    }
+
+    /**
+     * @return the number of stored sessions
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+        this.channel.close();
+    }
+
+    private void writePacketIds(ByteBuffer segment, int offset, PacketIdSet packetIds, String clientId) {
+        int[] ids = packetIds.toArray();
+        int count = Math.min(ids.length, MAX_PACKET_IDS);
+        if (count < ids.length) {
+            LOGGER.warn("Session of client {} has {} QoS 2 messages waiting for PUBREL, only {} are stored", clientId, ids.length, count);
+        }
+        for (int i = 0; i < count; i++) {
+            segment.putChar(offset + PACKET_IDS_OFFSET + i * Character.BYTES, (char) ids[i]);
+        }
+        segment.putShort(offset + COUNT_OFFSET, (short) count);
+    }
+
+    /**
+     * Map a new segment at the end of the file, indexing its used slots and collecting the free ones
+     */
+    private void mapSegment() throws IOException {
+        int first = this.segments.size() * SEGMENT_SLOTS;
+        MappedByteBuffer segment = this.channel.map(FileChannel.MapMode.READ_WRITE, (long) first * SLOT_SIZE, SEGMENT_BYTES);
+        this.segments.add(segment);
+
+        int[] free = new int[this.freeSlots.length + SEGMENT_SLOTS];
+        System.arraycopy(this.freeSlots, 0, free, 0, this.freeCount);
+        this.freeSlots = free;
+        // pushed in reverse order, so that the lowest slots are used first
+        for (int slot = first + SEGMENT_SLOTS - 1; slot >= first; slot--) {
+            if (slot == 0) {
+                continue;
+            }
+            int offset = offset(slot);
+            if (segment.get(offset + STATE_OFFSET) == STATE_USED) {
+                int length = segment.get(offset + CLIENT_ID_LENGTH_OFFSET) & 0xFF;
+                this.insert(hash(segment, offset + CLIENT_ID_OFFSET, length), slot);
+            } else {
+                this.freeSlots[this.freeCount++] = slot;
+            }
+        }
+    }
+
+    private int allocate() throws IOException {
+        if (this.freeCount == 0) {
+            this.mapSegment();
+        }
+        return this.freeSlots[--this.freeCount];
+    }
+
+    private ByteBuffer segment(int slot) {
+        return this.segments.get(slot >>> SEGMENT_SHIFT);
+    }
+
+    private static int offset(int slot) {
+        return (slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    private int find(byte[] id, int hash) {
+        int i = hash & this.indexMask;
+        long entry;
+        while ((entry = this.index.getLong(i * Long.BYTES)) != 0) {
+            int slot = (int) entry;
+            if ((int) (entry >>> 32) == hash && this.matches(slot, id)) {
+                return slot;
+            }
+            i = (i + 1) & this.indexMask;
+        }
+        return -1;
+    }
+
+    private boolean matches(int slot, byte[] id) {
+        ByteBuffer segment = this.segment(slot);
+        int offset = offset(slot);
+        if ((segment.get(offset + CLIENT_ID_LENGTH_OFFSET) & 0xFF) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (segment.get(offset + CLIENT_ID_OFFSET + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int hash, int slot) {
+        // keep the load factor at most 0.5
+        if ((this.size + 1) * 2 > this.indexMask + 1) {
+            this.resizeIndex((this.indexMask + 1) * 2);
+        }
+        this.put(hash, slot);
+        this.size++;
+    }
+
+    private void put(int hash, int slot) {
+        int i = hash & this.indexMask;
+        while (this.index.getLong(i * Long.BYTES) != 0) {
+            i = (i + 1) & this.indexMask;
+        }
+        this.index.putLong(i * Long.BYTES, ((long) hash << 32) | slot);
+    }
+
+    private void delete(int hash, int slot) {
+        int hole = hash & this.indexMask;
+        while (this.index.getLong(hole * Long.BYTES) != (((long) hash << 32) | slot)) {
+            hole = (hole + 1) & this.indexMask;
+        }
+        // backward shift deletion, so that there are no tombstones
+        int next = (hole + 1) & this.indexMask;
+        long entry;
+        while ((entry = this.index.getLong(next * Long.BYTES)) != 0) {
+            int home = (int) (entry >>> 32) & this.indexMask;
+            if (((next - home) & this.indexMask) >= ((next - hole) & this.indexMask)) {
+                this.index.putLong(hole * Long.BYTES, entry);
+                hole = next;
+            }
+            next = (next + 1) & this.indexMask;
+        }
+        this.index.putLong(hole * Long.BYTES, 0);
+        this.size--;
+    }
+
+    private void resizeIndex(int capacity) {
+        ByteBuffer old = this.index;
+        this.index = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        this.indexMask = capacity - 1;
+        if (old != null) {
+            for (int i = 0; i < old.capacity() / Long.BYTES; i++) {
+                long entry = old.getLong(i * Long.BYTES);
+                if (entry != 0) {
+                    this.put((int) (entry >>> 32), (int) entry);
+                }
+            }
+        }
+    }
+
+    // FNV-1a over the client identifier UTF-8 bytes
+    private static int hash(byte[] id) {
+        int hash = 0x811C9DC5;
+        for (byte b : id) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (buffer.get(offset + i) & 0xFF)) * 0x01000193;
+        }
+        return hash;
+    }
+}
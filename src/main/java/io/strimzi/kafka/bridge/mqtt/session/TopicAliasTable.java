@@ -0,0 +1,84 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
+
+import java.util.Arrays;
+
+/**
+ * Represents the MQTT 5 topic aliases set by a client on its connection. <br>
+ * Each alias maps directly to the already mapped topic, so the messages published with an alias
+ * neither carry nor decode the topic name and skip the mapping rules. <br>
+ * The table grows with the highest alias used, up to the maximum advertised in the CONNACK. <br>
+ * This class is not thread safe, it is meant to be accessed by the event loop thread of the client channel.
+ */
+public class TopicAliasTable {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int maximum;
+    // indexed by alias - 1, allocated on the first alias set
+    private MappedTopic[] topics;
+
+    /**
+     * Constructor
+     *
+     * @param maximum the max topic alias accepted from the client
+     */
+    public TopicAliasTable(int maximum) {
+        if (maximum < 1 || maximum > 0xFFFF) {
+            throw new IllegalArgumentException("Topic alias maximum must be between 1 and 65535");
+        }
+        this.maximum = maximum;
+    }
+
+    /**
+     * @return the max topic alias accepted from the client
+     */
+    public int getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Check if a topic alias is in the range accepted from the client
+     *
+     * @param alias the topic alias
+     * @return true if the topic alias is between 1 and the maximum
+     */
+    public boolean isValid(int alias) {
+        return alias >= 1 && alias <= this.maximum;
+    }
+
+    /**
+     * Get the topic an alias was set to
+     *
+     * @param alias the topic alias, in the accepted range
+     * @return the topic the alias was set to, null if the alias was never set
+     */
+    public MappedTopic get(int alias) {
+        int index = alias - 1;
+        return this.topics != null && index < this.topics.length ? this.topics[index] : null;
+    }
+
+    /**
+     * Set, or replace, the topic of an alias
+     *
+     * @param alias the topic alias, in the accepted range
+     * @param topic the topic
+     */
+    public void put(int alias, MappedTopic topic) {
+        if (!isValid(alias)) {
+            throw new IllegalArgumentException("Topic alias " + alias + " out of range");
+        }
+        int index = alias - 1;
+        if (this.topics == null) {
+            this.topics = new MappedTopic[Math.min(this.maximum, Math.max(INITIAL_CAPACITY, alias))];
+        } else if (index >= this.topics.length) {
+            this.topics = Arrays.copyOf(this.topics, Math.min(this.maximum, Math.max(this.topics.length * 2, alias)));
+        }
+        this.topics[index] = topic;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Report-by-exception filter, skipping the MQTT messages whose payload did not change since the previous one on the same MQTT topic,
+ * except for a heartbeat forwarded every configured number of seconds. <br>
+ * For each MQTT topic, only a 64-bit hash of the last forwarded payload and the time it was forwarded at are kept.
+ * The least recently used MQTT topics are evicted when the maximum number is reached, so an evicted topic just forwards its next message.
+ * The topics are split across stripes to reduce the contention between event loops.
+ */
+public class ChangeFilter {
+
+    private static final int STRIPES = 16;
+    // multipliers of the 64-bit MurmurHash3, mixing every bit of a payload word into the whole hash
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final Stripe[] stripes;
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param maxTopics maximum number of MQTT topics tracked
+     */
+    public ChangeFilter(int maxTopics) {
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe(Math.max(1, maxTopics / STRIPES));
+        }
+    }
+
+    /**
+     * Check if a MQTT message has to be forwarded, because its payload changed or the heartbeat is elapsed,
+     * counting it as suppressed otherwise
+     *
+     * @param mqttTopic         the MQTT topic
+     * @param payload           the message payload, its reader index is not changed
+     * @param heartbeatSeconds  the time in seconds after which an unchanged payload is forwarded anyway, 0 to never forward it
+     * @return true if the message has to be forwarded
+     */
+    public boolean isChanged(String mqttTopic, ByteBuf payload, long heartbeatSeconds) {
+        return this.isChanged(mqttTopic, payload, heartbeatSeconds, System.nanoTime());
+    }
+
+    /**
+     * Check if a MQTT message has to be forwarded, at the given time
+     *
+     * @param mqttTopic         the MQTT topic
+     * @param payload           the message payload, its reader index is not changed
+     * @param heartbeatSeconds  the time in seconds after which an unchanged payload is forwarded anyway, 0 to never forward it
+     * @param nowNanos          the current time, from {@link System#nanoTime()}
+     * @return true if the message has to be forwarded
+     */
+    boolean isChanged(String mqttTopic, ByteBuf payload, long heartbeatSeconds, long nowNanos) {
+        long hash = hash(payload);
+        Stripe stripe = this.stripe(mqttTopic);
+        synchronized (stripe) {
+            // the hash of the last forwarded payload and the time it was forwarded at
+            long[] state = stripe.topics.get(mqttTopic);
+            if (state == null) {
+                stripe.topics.put(mqttTopic, new long[] {hash, nowNanos});
+                return true;
+            }
+            if (state[0] != hash) {
+                state[0] = hash;
+                state[1] = nowNanos;
+                return true;
+            }
+            if (heartbeatSeconds > 0 && nowNanos - state[1] >= TimeUnit.SECONDS.toNanos(heartbeatSeconds)) {
+                state[1] = nowNanos;
+                this.heartbeats.increment();
+                return true;
+            }
+        }
+        this.suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Forget the payload forwarded on a MQTT topic, because its send to Kafka failed, so that the next message on the topic
+     * is forwarded even if unchanged. The state is kept if a different payload was forwarded in the meantime.
+     *
+     * @param mqttTopic the MQTT topic
+     * @param hash      the hash of the payload whose send failed, from {@link #hash(ByteBuf)}
+     */
+    public void forget(String mqttTopic, long hash) {
+        Stripe stripe = this.stripe(mqttTopic);
+        synchronized (stripe) {
+            long[] state = stripe.topics.get(mqttTopic);
+            if (state != null && state[0] == hash) {
+                stripe.topics.remove(mqttTopic);
+            }
+        }
+    }
+
+    /**
+     * Compute the hash of a payload, as remembered for its MQTT topic, without copying it. <br>
+     * The payload is read by 64-bit words, each one mixed into the whole hash as in MurmurHash3, so that a small edit
+     * of a structured payload (a digit, a flag) changes the hash unlike with a linear hash.
+     *
+     * @param payload the message payload, its reader index is not changed
+     * @return the hash of the payload
+     */
+    public static long hash(ByteBuf payload) {
+        int index = payload.readerIndex();
+        int end = payload.writerIndex();
+        long hash = payload.readableBytes();
+        for (; index + Long.BYTES <= end; index += Long.BYTES) {
+            hash = mix(hash, payload.getLongLE(index));
+        }
+        long tail = 0;
+        for (int shift = 0; index < end; index++, shift += Byte.SIZE) {
+            tail |= (payload.getByte(index) & 0xFFL) << shift;
+        }
+        return finalMix(mix(hash, tail));
+    }
+
+    /**
+     * @return the statistics about the suppressed messages
+     */
+    public Map<String, Object> toMap() {
+        int topics = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                topics += stripe.topics.size();
+            }
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("suppressed", this.suppressed.sum());
+        map.put("heartbeats", this.heartbeats.sum());
+        map.put("topics", topics);
+        return map;
+    }
+
+    private Stripe stripe(String mqttTopic) {
+        int hash = mqttTopic.hashCode();
+        return this.stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static long mix(long hash, long word) {
+        hash ^= Long.rotateLeft(word * C1, 31) * C2;
+        return Long.rotateLeft(hash, 27) * 5 + 0x52dce729;
+    }
+
+    private static long finalMix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb53fe1a85ec9L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * State of a subset of the MQTT topics, in least recently used order
+     */
+    private static class Stripe {
+        private final Map<String, long[]> topics;
+
+        Stripe(int maxTopics) {
+            this.topics = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                    return size() > maxTopics;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.Future;
+import io.strimzi.kafka.bridge.mqtt.kafka.HeaderEnricher;
+import io.strimzi.kafka.bridge.mqtt.mapper.Downsampling;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingResult;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Downsampling stage between the topic mapping and the Kafka producer, for the mapping rules with downsampling. <br>
+ * The numeric value of each MQTT message, the payload as a plain number or a field of a JSON payload read by a streaming parser,
+ * is folded into the tumbling window of its MQTT topic, and a summary record with the minimum, maximum, average and count
+ * is sent to Kafka when the window ends. <br>
+ * Each event loop has its own windows, only accessed by the event loop itself, including the periodic sweep emitting the ended windows,
+ * so there is no locking. The MQTT topics published through connections handled by different event loops get a summary per event loop. <br>
+ * The folded messages are acknowledged before their summary is sent, so a summary which cannot be delivered, even to the dead letter
+ * topic, loses them: the downsampling rules lower the delivery guarantee of the QoS 1 and QoS 2 messages to at most once.
+ */
+public class Downsampler {
+    private static final Logger LOGGER = LogManager.getLogger(Downsampler.class);
+
+    private static final JsonFactory JSON = new JsonFactory();
+    // time given to the event loops to emit their windows when shutting down
+    private static final long FLUSH_TIMEOUT_MS = 1000;
+
+    private final Function<ProducerRecord<String, byte[]>, CompletionStage<RecordMetadata>> sender;
+    private final long sweepIntervalMs;
+    private final List<EventLoopWindows> eventLoops = new CopyOnWriteArrayList<>();
+    private final FastThreadLocal<EventLoopWindows> windows = new FastThreadLocal<>() {
+        @Override
+        protected EventLoopWindows initialValue() {
+            return new EventLoopWindows();
+        }
+    };
+    private final DownsamplingWindows.Emitter emitter = this::emit;
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder unparsable = new LongAdder();
+    private final LongAdder summaries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param sender            sends the summary records to Kafka, retrying and routing them to the dead letter topic on failure
+     * @param sweepIntervalMs   interval, in milliseconds, between two checks of the ended windows
+     */
+    public Downsampler(Function<ProducerRecord<String, byte[]>, CompletionStage<RecordMetadata>> sender, long sweepIntervalMs) {
+        this.sender = sender;
+        this.sweepIntervalMs = sweepIntervalMs;
+    }
+
+    /**
+     * Fold the value of a MQTT message into the window of its MQTT topic. It has to be called by the event loop handling the message.
+     *
+     * @param executor      the event loop handling the message, running the sweep of its windows
+     * @param mappingResult the mapping result of the MQTT topic
+     * @param downsampling  the downsampling settings of the mapping rule
+     * @param mqttTopic     the MQTT topic
+     * @param payload       the MQTT message payload, its reader index is not changed
+     * @return true if the value was folded, false if the payload is not numeric and the message has to be sent as it is
+     */
+    public boolean add(EventExecutor executor, MappingResult mappingResult, Downsampling downsampling, String mqttTopic, ByteBuf payload) {
+        double value = parse(payload, downsampling.getField());
+        if (Double.isNaN(value)) {
+            this.unparsable.increment();
+            return false;
+        }
+        EventLoopWindows eventLoop = this.windows.get();
+        if (eventLoop.executor == null) {
+            eventLoop.executor = executor;
+            executor.scheduleAtFixedRate(() -> eventLoop.windows.sweep(System.currentTimeMillis(), this.emitter),
+                    this.sweepIntervalMs, this.sweepIntervalMs, TimeUnit.MILLISECONDS);
+            this.eventLoops.add(eventLoop);
+        }
+        eventLoop.windows.add(mqttTopic, mappingResult.kafkaTopic(), mappingResult.kafkaKey(), downsampling.getWindowMs(), value,
+                System.currentTimeMillis(), this.emitter);
+        this.samples.increment();
+        return true;
+    }
+
+    /**
+     * Send the summaries of all the windows with values, even if they did not end, used when shutting down
+     */
+    public void flushAll() {
+        List<Future<?>> flushes = new ArrayList<>();
+        for (EventLoopWindows eventLoop : this.eventLoops) {
+            flushes.add(eventLoop.executor.submit(() -> eventLoop.windows.flushAll(this.emitter)));
+        }
+        for (Future<?> flush : flushes) {
+            if (!flush.awaitUninterruptibly(FLUSH_TIMEOUT_MS)) {
+                LOGGER.warn("Timed out emitting the downsampling windows");
+            }
+        }
+    }
+
+    /**
+     * Read the numeric value of a payload, without changing its reader index
+     *
+     * @param payload the MQTT message payload
+     * @param field   the top level JSON field holding the value, null if the payload is a plain number
+     * @return the value, NaN if the payload is not numeric or has no such numeric field
+     */
+    static double parse(ByteBuf payload, String field) {
+        try (JsonParser parser = payload.hasArray() ?
+                JSON.createParser(payload.array(), payload.arrayOffset() + payload.readerIndex(), payload.readableBytes()) :
+                JSON.createParser((InputStream) new ByteBufInputStream(payload.duplicate()))) {
+            return readValue(parser, field);
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static double readValue(JsonParser parser, String field) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (field == null) {
+            return token != null && token.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return Double.NaN;
+        }
+        // stops at the field, without reading the rest of the payload
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            token = parser.nextToken();
+            if (field.equals(name)) {
+                return token.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+            }
+            parser.skipChildren();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Send the summary record of a window
+     */
+    private void emit(String mqttTopic, String kafkaTopic, String kafkaKey, long windowStart, long windowMs,
+                      long count, double min, double max, double sum) {
+        Headers headers = new RecordHeaders();
+        headers.add(HeaderEnricher.MQTT_TOPIC_HEADER, mqttTopic.getBytes(StandardCharsets.UTF_8));
+        byte[] summary = summary(mqttTopic, windowStart, windowMs, count, min, max, sum);
+        this.summaries.increment();
+        this.sender.apply(new ProducerRecord<>(kafkaTopic, null, kafkaKey, summary, headers)).whenComplete((metadata, error) -> {
+            if (error != null) {
+                this.failures.increment();
+                LOGGER.error("Downsampling summary of MQTT topic {} not delivered to Kafka on topic {}, {} folded values lost: {}",
+                        mqttTopic, kafkaTopic, count, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Encode the summary of a window as JSON
+     */
+    static byte[] summary(String mqttTopic, long windowStart, long windowMs, long count, double min, double max, double sum) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(160);
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("mqttTopic", mqttTopic);
+            generator.writeNumberField("windowStart", windowStart);
+            generator.writeNumberField("windowEnd", windowStart + windowMs);
+            generator.writeNumberField("count", count);
+            generator.writeNumberField("min", min);
+            generator.writeNumberField("max", max);
+            generator.writeNumberField("avg", sum / count);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the statistics about the downsampling
+     */
+    public Map<String, Object> toMap() {
+        int topics = 0;
+        for (EventLoopWindows eventLoop : this.eventLoops) {
+            topics += eventLoop.windows.size();
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("samples", this.samples.sum());
+        map.put("unparsable", this.unparsable.sum());
+        map.put("summaries", this.summaries.sum());
+        map.put("failures", this.failures.sum());
+        map.put("topics", topics);
+        return map;
+    }
+
+    /**
+     * Windows of an event loop
+     */
+    private static class EventLoopWindows {
+        private final DownsamplingWindows windows = new DownsamplingWindows();
+        // set by the event loop on first use
+        private EventExecutor executor;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tumbling windows of the numeric values received on the MQTT topics handled by an event loop. <br>
+ * Each MQTT topic gets a slot, and the window start, minimum, maximum, sum and count of the slots are kept in primitive arrays,
+ * grown when full. A slot with no values for a whole window is freed and reused. <br>
+ * It is only accessed by its event loop, so it is not thread safe.
+ */
+class DownsamplingWindows {
+
+    private static final int INITIAL_SLOTS = 64;
+
+    /**
+     * Receives the summary of a window when it ends
+     */
+    interface Emitter {
+
+        /**
+         * Emit the summary of a window
+         *
+         * @param mqttTopic   the MQTT topic
+         * @param kafkaTopic  the Kafka topic the MQTT topic is mapped to
+         * @param kafkaKey    the Kafka key the MQTT topic is mapped to
+         * @param windowStart the start of the window, in milliseconds since the epoch
+         * @param windowMs    the duration of the window, in milliseconds
+         * @param count       the number of values
+         * @param min         the minimum value
+         * @param max         the maximum value
+         * @param sum         the sum of the values
+         */
+        void emit(String mqttTopic, String kafkaTopic, String kafkaKey, long windowStart, long windowMs,
+                  long count, double min, double max, double sum);
+    }
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] mqttTopics = new String[INITIAL_SLOTS];
+    private String[] kafkaTopics = new String[INITIAL_SLOTS];
+    private String[] kafkaKeys = new String[INITIAL_SLOTS];
+    private long[] windowStarts = new long[INITIAL_SLOTS];
+    private long[] windowMs = new long[INITIAL_SLOTS];
+    private long[] counts = new long[INITIAL_SLOTS];
+    private double[] mins = new double[INITIAL_SLOTS];
+    private double[] maxs = new double[INITIAL_SLOTS];
+    private double[] sums = new double[INITIAL_SLOTS];
+    // freed slots, reused before the unused ones
+    private int[] free = new int[INITIAL_SLOTS];
+    private int freeCount;
+    // slots in use or freed, the next ones were never used
+    private int used;
+    // read by the stats, from another thread
+    private volatile int topics;
+
+    /**
+     * Add a value to the window of its MQTT topic, emitting the previous window first if it ended
+     *
+     * @param mqttTopic  the MQTT topic
+     * @param kafkaTopic the Kafka topic the MQTT topic is mapped to
+     * @param kafkaKey   the Kafka key the MQTT topic is mapped to
+     * @param windowMs   the duration of the windows, in milliseconds
+     * @param value      the value
+     * @param nowMs      the current time, in milliseconds since the epoch
+     * @param emitter    receives the summary of the ended window
+     */
+    void add(String mqttTopic, String kafkaTopic, String kafkaKey, long windowMs, double value, long nowMs, Emitter emitter) {
+        Integer index = this.slots.get(mqttTopic);
+        int slot;
+        if (index == null) {
+            slot = this.allocate();
+            this.slots.put(mqttTopic, slot);
+            this.topics = this.slots.size();
+            // a MQTT topic is always mapped by the same rule, so the mapping and the window duration are set once
+            this.mqttTopics[slot] = mqttTopic;
+            this.kafkaTopics[slot] = kafkaTopic;
+            this.kafkaKeys[slot] = kafkaKey;
+            this.windowMs[slot] = windowMs;
+            this.windowStarts[slot] = nowMs - nowMs % windowMs;
+            this.counts[slot] = 0;
+        } else {
+            slot = index;
+            if (nowMs >= this.windowStarts[slot] + this.windowMs[slot]) {
+                this.emit(slot, emitter);
+                this.windowStarts[slot] = nowMs - nowMs % this.windowMs[slot];
+            }
+        }
+        if (this.counts[slot] == 0) {
+            this.mins[slot] = value;
+            this.maxs[slot] = value;
+            this.sums[slot] = 0;
+        } else {
+            this.mins[slot] = Math.min(this.mins[slot], value);
+            this.maxs[slot] = Math.max(this.maxs[slot], value);
+        }
+        this.sums[slot] += value;
+        this.counts[slot]++;
+    }
+
+    /**
+     * Emit the windows which ended and free the slots without values for a whole window
+     *
+     * @param nowMs   the current time, in milliseconds since the epoch
+     * @param emitter receives the summaries of the ended windows
+     */
+    void sweep(long nowMs, Emitter emitter) {
+        for (int slot = 0; slot < this.used; slot++) {
+            if (this.mqttTopics[slot] == null || nowMs < this.windowStarts[slot] + this.windowMs[slot]) {
+                continue;
+            }
+            if (this.counts[slot] == 0) {
+                this.release(slot);
+            } else {
+                this.emit(slot, emitter);
+                this.windowStarts[slot] = nowMs - nowMs % this.windowMs[slot];
+            }
+        }
+    }
+
+    /**
+     * Emit all the windows with values, even if they did not end, used when shutting down
+     *
+     * @param emitter receives the summaries of the windows
+     */
+    void flushAll(Emitter emitter) {
+        for (int slot = 0; slot < this.used; slot++) {
+            if (this.mqttTopics[slot] != null && this.counts[slot] > 0) {
+                this.emit(slot, emitter);
+            }
+        }
+    }
+
+    /**
+     * @return the number of MQTT topics with a window
+     */
+    int size() {
+        return this.topics;
+    }
+
+    private void emit(int slot, Emitter emitter) {
+        if (this.counts[slot] > 0) {
+            emitter.emit(this.mqttTopics[slot], this.kafkaTopics[slot], this.kafkaKeys[slot], this.windowStarts[slot], this.windowMs[slot],
+                    this.counts[slot], this.mins[slot], this.maxs[slot], this.sums[slot]);
+            this.counts[slot] = 0;
+        }
+    }
+
+    private int allocate() {
+        if (this.freeCount > 0) {
+            return this.free[--this.freeCount];
+        }
+        if (this.used == this.mqttTopics.length) {
+            int capacity = this.used * 2;
+            this.mqttTopics = Arrays.copyOf(this.mqttTopics, capacity);
+            this.kafkaTopics = Arrays.copyOf(this.kafkaTopics, capacity);
+            this.kafkaKeys = Arrays.copyOf(this.kafkaKeys, capacity);
+            this.windowStarts = Arrays.copyOf(this.windowStarts, capacity);
+            this.windowMs = Arrays.copyOf(this.windowMs, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.mins = Arrays.copyOf(this.mins, capacity);
+            this.maxs = Arrays.copyOf(this.maxs, capacity);
+            this.sums = Arrays.copyOf(this.sums, capacity);
+            this.free = Arrays.copyOf(this.free, capacity);
+        }
+        return this.used++;
+    }
+
+    private void release(int slot) {
+        this.slots.remove(this.mqttTopics[slot]);
+        this.topics = this.slots.size();
+        this.mqttTopics[slot] = null;
+        this.kafkaTopics[slot] = null;
+        this.kafkaKeys[slot] = null;
+        this.free[this.freeCount++] = slot;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.strimzi.kafka.bridge.mqtt.mapper.Sampling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks the sample of the MQTT messages sent to Kafka, for the mapping rules with sampling: every Nth message per MQTT topic,
+ * or a random percentage drawn from the thread local PRNG. <br>
+ * The per MQTT topic counters are kept by each event loop, so they need no locking, in maps evicting the least recently used topics
+ * when the maximum number is reached. An MQTT topic published through connections handled by different event loops is counted
+ * by each of them.
+ */
+public class Sampler {
+
+    private final int maxTopics;
+    private final FastThreadLocal<Map<String, int[]>> counters = new FastThreadLocal<>() {
+        @Override
+        protected Map<String, int[]> initialValue() {
+            return new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                    return size() > maxTopics;
+                }
+            };
+        }
+    };
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param maxTopics maximum number of MQTT topics counted by each event loop
+     */
+    public Sampler(int maxTopics) {
+        this.maxTopics = maxTopics;
+    }
+
+    /**
+     * Check if a MQTT message is part of the sample sent to Kafka, counting it as sampled out otherwise
+     *
+     * @param mqttTopic the MQTT topic
+     * @param sampling  the sampling settings of the mapping rule
+     * @return true if the message has to be sent
+     */
+    public boolean sample(String mqttTopic, Sampling sampling) {
+        boolean sampled;
+        if (sampling.getEvery() > 1) {
+            Map<String, int[]> topics = this.counters.get();
+            int[] counter = topics.get(mqttTopic);
+            if (counter == null) {
+                counter = new int[1];
+                topics.put(mqttTopic, counter);
+            }
+            // the first message of a topic is sent
+            sampled = counter[0] == 0;
+            counter[0] = (counter[0] + 1) % sampling.getEvery();
+        } else {
+            sampled = ThreadLocalRandom.current().nextDouble(100) < sampling.getPercentage();
+        }
+        (sampled ? this.forwarded : this.sampledOut).increment();
+        return sampled;
+    }
+
+    /**
+     * @return the statistics about the sampled messages
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("forwarded", this.forwarded.sum());
+        map.put("sampledOut", this.sampledOut.sum());
+        return map;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingResult;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link MqttPublishDecoder}
+ */
+public class MqttPublishDecoderTest {
+
+    private final AtomicInteger mapped = new AtomicInteger();
+
+    /**
+     * Test that the PUBLISH messages of a MQTT 3.1.1 connection are decoded on the fast path,
+     * mapping the topic only once
+     */
+    @Test
+    public void testPublishFastPath() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MqttPublishDecoder(8092, 16, this::map));
+        channel.writeInbound(connect(4));
+        assertPassedThrough(channel.readInbound(), connect(4));
+
+        channel.writeInbound(publish("sensors/1/temperature", 1, 10, "21.5"));
+        MappedPublishMessage first = channel.readInbound();
+        assertThat(first.variableHeader().topicName(), is("sensors/1/temperature"));
+        assertThat(first.variableHeader().packetId(), is(10));
+        assertThat(first.fixedHeader().qosLevel(), is(MqttQoS.AT_LEAST_ONCE));
+        assertThat(first.payload().toString(StandardCharsets.UTF_8), is("21.5"));
+        first.release();
+
+        channel.writeInbound(publish("sensors/1/temperature", 0, 0, "22.0"));
+        MappedPublishMessage second = channel.readInbound();
+        assertThat(second.mappedTopic(), is(sameInstance(first.mappedTopic())));
+        assertThat(second.variableHeader().packetId(), is(-1));
+        assertThat(second.payload().toString(StandardCharsets.UTF_8), is("22.0"));
+        second.release();
+
+        assertThat(this.mapped.get(), is(1));
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Test that a frame received in fragments is decoded once complete
+     */
+    @Test
+    public void testFragmentedFrame() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MqttPublishDecoder(8092, 16, this::map));
+        channel.writeInbound(connect(4));
+        ((ByteBuf) channel.readInbound()).release();
+
+        ByteBuf publish = publish("sensors/2/humidity", 2, 20, "45");
+        channel.writeInbound(publish.readRetainedSlice(5));
+        assertThat(channel.readInbound(), is(nullValue()));
+        channel.writeInbound(publish);
+        MappedPublishMessage message = channel.readInbound();
+        assertThat(message.variableHeader().topicName(), is("sensors/2/humidity"));
+        assertThat(message.fixedHeader().qosLevel(), is(MqttQoS.EXACTLY_ONCE));
+        assertThat(message.payload().toString(StandardCharsets.UTF_8), is("45"));
+        message.release();
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Test that the frames not handled by the fast path are passed through as they are
+     */
+    @Test
+    public void testPassThrough() {
+        // PUBLISH with a wildcard
+        EmbeddedChannel channel = new EmbeddedChannel(new MqttPublishDecoder(8092, 16, this::map));
+        channel.writeInbound(connect(4));
+        ((ByteBuf) channel.readInbound()).release();
+        channel.writeInbound(publish("sensors/+/temperature", 0, 0, "21.5"));
+        assertPassedThrough(channel.readInbound(), publish("sensors/+/temperature", 0, 0, "21.5"));
+        channel.finishAndReleaseAll();
+
+        // PUBLISH on a MQTT 5 connection
+        channel = new EmbeddedChannel(new MqttPublishDecoder(8092, 16, this::map));
+        channel.writeInbound(connect(5));
+        ((ByteBuf) channel.readInbound()).release();
+        channel.writeInbound(publish("sensors/1/temperature", 0, 0, "21.5"));
+        assertThat(channel.readInbound(), instanceOf(ByteBuf.class));
+        channel.finishAndReleaseAll();
+
+        // PUBLISH longer than the max bytes
+        channel = new EmbeddedChannel(new MqttPublishDecoder(16, 16, this::map));
+        channel.writeInbound(connect(4));
+        ((ByteBuf) channel.readInbound()).release();
+        channel.writeInbound(publish("sensors/1/temperature", 0, 0, "21.5"));
+        assertPassedThrough(channel.readInbound(), publish("sensors/1/temperature", 0, 0, "21.5"));
+        channel.finishAndReleaseAll();
+
+        assertThat(this.mapped.get(), is(0));
+    }
+
+    private MappedTopic map(String mqttTopic) {
+        this.mapped.incrementAndGet();
+        return new MappedTopic(mqttTopic, mqttTopic.getBytes(StandardCharsets.UTF_8), new MappingResult("kafka-topic", null));
+    }
+
+    private static void assertPassedThrough(Object message, ByteBuf expected) {
+        assertThat(message, instanceOf(ByteBuf.class));
+        assertThat(message, is(expected));
+        ((ByteBuf) message).release();
+        expected.release();
+    }
+
+    private static ByteBuf connect(int protocolLevel) {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(0x10);
+        buf.writeByte(13);
+        buf.writeShort(4);
+        buf.writeBytes("MQTT".getBytes(StandardCharsets.UTF_8));
+        buf.writeByte(protocolLevel);
+        // clean session
+        buf.writeByte(0x02);
+        buf.writeShort(60);
+        buf.writeShort(1);
+        buf.writeByte('c');
+        return buf;
+    }
+
+    private static ByteBuf publish(String topic, int qos, int packetId, String payload) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(0x30 | (qos << 1));
+        buf.writeByte(2 + topicBytes.length + (qos > 0 ? 2 : 0) + payloadBytes.length);
+        buf.writeShort(topicBytes.length);
+        buf.writeBytes(topicBytes);
+        if (qos > 0) {
+            buf.writeShort(packetId);
+        }
+        buf.writeBytes(payloadBytes);
+        return buf;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Some config related classes unit tests
@@ -85,5 +86,11 @@ public class ConfigTest {
         assertThat(bridgeConfig.getMqttConfig().getPort(), is(1883));
         assertThat(bridgeConfig.getMqttConfig().getMaxBytesMessage(), is(8092));
     }
-}
 
+    @Test
+    public void testReceiveMaximumRange() {
+        assertThat(BridgeConfig.fromMap(Map.of("mqtt.receive.maximum", "65535")).getMqttConfig().getReceiveMaximum(), is(65535));
+        assertThrows(IllegalArgumentException.class, () -> BridgeConfig.fromMap(Map.of("mqtt.receive.maximum", "0")));
+        assertThrows(IllegalArgumentException.class, () -> BridgeConfig.fromMap(Map.of("mqtt.receive.maximum", "65536")));
+    }
+}
@@ -4,32 +4,85 @@
  */
 package io.strimzi.kafka.bridge.mqtt.core;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttConnectMessage;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
 import io.netty.handler.codec.mqtt.MqttMessageFactory;
+import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import io.strimzi.kafka.bridge.mqtt.config.MqttConfig;
+import io.strimzi.kafka.bridge.mqtt.envelope.EnvelopeAggregator;
 import io.strimzi.kafka.bridge.mqtt.kafka.KafkaBridgeProducer;
+import io.strimzi.kafka.bridge.mqtt.kafka.MqttTopicPartitioner;
+import io.strimzi.kafka.bridge.mqtt.limit.ConnectionLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.OverloadDetector;
+import io.strimzi.kafka.bridge.mqtt.limit.PublishRateLimiter;
+import io.strimzi.kafka.bridge.mqtt.limit.RateLimit;
+import io.strimzi.kafka.bridge.mqtt.limit.RateLimitAction;
 import io.strimzi.kafka.bridge.mqtt.mapper.MappingRulesLoader;
+import io.strimzi.kafka.bridge.mqtt.metrics.BridgeMetrics;
+import io.strimzi.kafka.bridge.mqtt.metrics.HeavyHitters;
+import io.strimzi.kafka.bridge.mqtt.session.ClientRegistry;
+import io.strimzi.kafka.bridge.mqtt.session.DuplicateDetector;
+import io.strimzi.kafka.bridge.mqtt.session.KeepAliveMonitor;
+import io.strimzi.kafka.bridge.mqtt.telemetry.ChangeFilter;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Downsampler;
+import io.strimzi.kafka.bridge.mqtt.telemetry.Sampler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 public class MqttServerHandlerTest {
 
-    @Test
-    public void testReadMessageWithDecodingError() {
+    @BeforeAll
+    public static void initMappingRules() {
+        // the loader can be initialized only once
         String mappingRulesPath =
-            Objects.requireNonNull(getClass().getClassLoader().getResource("mapping-rules-regex.json"))
+            Objects.requireNonNull(MqttServerHandlerTest.class.getClassLoader().getResource("mapping-rules-handler.json"))
                 .getPath();
         MappingRulesLoader.getInstance().init(mappingRulesPath);
+    }
 
+    @Test
+    public void testReadMessageWithDecodingError() {
         KafkaBridgeProducer producer = mock(KafkaBridgeProducer.class);
+        EnvelopeAggregator envelopeAggregator = mock(EnvelopeAggregator.class);
         ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
         Throwable error = mock(Throwable.class);
 
-        MqttServerHandler handler = new MqttServerHandler(producer, "default-topic");
+        BridgeComponents components = new BridgeComponents(producer, new MqttTopicPartitioner(producer), envelopeAggregator, new DuplicateDetector(0, 0),
+                new ClientRegistry(null), new KeepAliveMonitor(), new ConnectionLimiter(0, 0, 0, 0, 0), new BridgeMetrics(),
+                new HeavyHitters(0, 0, 0, 0),
+                new PublishRateLimiter(new RateLimit(0, 0), new RateLimit(0, 0), Map.of(), 1, RateLimitAction.PAUSE),
+                new OverloadDetector(0, 0, 0, 0, 0, null), new ChangeFilter(0),
+                new Downsampler(null, 0), new Sampler(0));
+        MqttServerHandler handler = new MqttServerHandler(components, MqttConfig.fromMap(Map.of()), "default-topic");
         handler.channelRead0(ctx, MqttMessageFactory.newInvalidMessage(error));
 
         verify(error, times(1)).getMessage();
@@ -37,7 +90,171 @@ public class MqttServerHandlerTest {
         verify(ctx, times(1)).close();
 
         verifyNoMoreInteractions(producer);
+        verifyNoMoreInteractions(envelopeAggregator);
         verifyNoMoreInteractions(error);
         verifyNoMoreInteractions(ctx);
     }
+
+    /**
+     * Test a QoS 1 message whose send failed is not skipped as unchanged when the client re-sends it with the DUP flag
+     */
+    @Test
+    public void testReportByExceptionResendAfterFailure() {
+        KafkaBridgeProducer producer = mock(KafkaBridgeProducer.class);
+        when(producer.send(any(), anyLong()))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaException("send failed")))
+                .thenReturn(CompletableFuture.completedFuture(metadata("sensor_temperature")));
+        MqttServerHandler handler = handler(producer);
+
+        EmbeddedChannel channel = connect(handler, "sensor-1");
+        channel.writeInbound(publish("sensors/1/temperature", MqttQoS.AT_LEAST_ONCE, false, 1, "21.5"));
+        channel.runPendingTasks();
+        // the connection is closed, for the client to re-send the message
+        assertThat(channel.isOpen(), is(false));
+
+        channel = connect(handler, "sensor-1");
+        channel.writeInbound(publish("sensors/1/temperature", MqttQoS.AT_LEAST_ONCE, true, 1, "21.5"));
+        channel.runPendingTasks();
+        verify(producer, times(2)).send(any(), anyLong());
+        assertThat(outbound(channel), is(List.of(MqttMessageType.CONNACK, MqttMessageType.PUBACK)));
+
+        // the failed payload was forgotten, so the next message is sent and remembered, then the same payload is skipped
+        channel.writeInbound(publish("sensors/1/temperature", MqttQoS.AT_LEAST_ONCE, false, 2, "21.5"));
+        channel.writeInbound(publish("sensors/1/temperature", MqttQoS.AT_LEAST_ONCE, false, 3, "21.5"));
+        channel.runPendingTasks();
+        verify(producer, times(3)).send(any(), anyLong());
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBACK, MqttMessageType.PUBACK)));
+    }
+
+    /**
+     * Test a QoS 2 message re-sent while its send is in-flight is not acknowledged as unchanged before the send completes
+     */
+    @Test
+    public void testReportByExceptionQos2ResendInFlight() {
+        KafkaBridgeProducer producer = mock(KafkaBridgeProducer.class);
+        CompletableFuture<RecordMetadata> inFlight = new CompletableFuture<>();
+        when(producer.sendExactlyOnce(any()))
+                .thenReturn(inFlight)
+                .thenReturn(CompletableFuture.completedFuture(metadata("sensor_temperature")));
+        MqttServerHandler handler = handler(producer);
+
+        EmbeddedChannel channel = connect(handler, "sensor-2");
+        channel.writeInbound(publish("sensors/2/temperature", MqttQoS.EXACTLY_ONCE, false, 1, "19.0"));
+        channel.writeInbound(publish("sensors/2/temperature", MqttQoS.EXACTLY_ONCE, true, 1, "19.0"));
+        channel.runPendingTasks();
+        // no PUBREC until the send completes
+        assertThat(outbound(channel), is(List.of(MqttMessageType.CONNACK)));
+
+        inFlight.completeExceptionally(new KafkaException("send failed"));
+        channel.runPendingTasks();
+        assertThat(channel.isOpen(), is(false));
+        assertThat(outbound(channel), is(List.of()));
+
+        // the same payload, in a new message, is not skipped either
+        channel = connect(handler, "sensor-2");
+        channel.writeInbound(publish("sensors/2/temperature", MqttQoS.EXACTLY_ONCE, false, 2, "19.0"));
+        channel.runPendingTasks();
+        verify(producer, times(2)).sendExactlyOnce(any());
+        assertThat(outbound(channel), is(List.of(MqttMessageType.CONNACK, MqttMessageType.PUBREC)));
+    }
+
+    /**
+     * Test a QoS 2 message re-sent while in-flight is neither sampled out nor counted by the sampling
+     */
+    @Test
+    public void testSamplingQos2ResendInFlight() {
+        KafkaBridgeProducer producer = mock(KafkaBridgeProducer.class);
+        CompletableFuture<RecordMetadata> inFlight = new CompletableFuture<>();
+        when(producer.sendExactlyOnce(any())).thenReturn(inFlight);
+        MqttServerHandler handler = handler(producer);
+
+        EmbeddedChannel channel = connect(handler, "device-1");
+        channel.writeInbound(publish("devices/1/debug", MqttQoS.EXACTLY_ONCE, false, 1, "trace"));
+        channel.writeInbound(publish("devices/1/debug", MqttQoS.EXACTLY_ONCE, true, 1, "trace"));
+        channel.runPendingTasks();
+        // no PUBREC until the send completes
+        assertThat(outbound(channel), is(List.of(MqttMessageType.CONNACK)));
+
+        inFlight.complete(metadata("devices_debug"));
+        channel.runPendingTasks();
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBREC)));
+
+        // the re-send was not counted, the second message is the one sampled out
+        channel.writeInbound(publish("devices/1/debug", MqttQoS.EXACTLY_ONCE, false, 2, "trace"));
+        verify(producer, times(1)).sendExactlyOnce(any());
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBREC)));
+    }
+
+    /**
+     * Test a QoS 2 message re-sent after a lost PUBREC is not folded twice into the downsampling window
+     */
+    @Test
+    public void testDownsamplingQos2ResendAfterLostPubRec() {
+        KafkaBridgeProducer producer = mock(KafkaBridgeProducer.class);
+        Downsampler downsampler = new Downsampler(record -> new CompletableFuture<>(), 60_000);
+        MqttServerHandler handler = handler(producer, downsampler);
+
+        EmbeddedChannel channel = connect(handler, "meter-1");
+        outbound(channel);
+        channel.writeInbound(publish("meters/1/power", MqttQoS.EXACTLY_ONCE, false, 1, "5"));
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBREC)));
+        assertThat(downsampler.toMap().get("samples"), is(1L));
+
+        // the PUBREC was lost, the re-send is acknowledged again without being folded twice
+        channel.writeInbound(publish("meters/1/power", MqttQoS.EXACTLY_ONCE, true, 1, "5"));
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBREC)));
+        assertThat(downsampler.toMap().get("samples"), is(1L));
+        verify(producer, times(0)).sendExactlyOnce(any());
+
+        // once released, the packet identifier carries a new message
+        channel.writeInbound(MqttMessageFactory.newMessage(new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                MqttMessageIdVariableHeader.from(1), null));
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBCOMP)));
+        channel.writeInbound(publish("meters/1/power", MqttQoS.EXACTLY_ONCE, false, 1, "6"));
+        assertThat(outbound(channel), is(List.of(MqttMessageType.PUBREC)));
+        assertThat(downsampler.toMap().get("samples"), is(2L));
+    }
+
+    private static MqttServerHandler handler(KafkaBridgeProducer producer) {
+        return handler(producer, new Downsampler(null, 0));
+    }
+
+    private static MqttServerHandler handler(KafkaBridgeProducer producer, Downsampler downsampler) {
+        BridgeComponents components = new BridgeComponents(producer, new MqttTopicPartitioner(producer), mock(EnvelopeAggregator.class), new DuplicateDetector(0, 0),
+                new ClientRegistry(null), new KeepAliveMonitor(), new ConnectionLimiter(0, 0, 0, 0, 0), new BridgeMetrics(),
+                new HeavyHitters(0, 0, 0, 0),
+                new PublishRateLimiter(new RateLimit(0, 0), new RateLimit(0, 0), Map.of(), 1, RateLimitAction.PAUSE),
+                new OverloadDetector(0, 0, 0, 0, 0, null), new ChangeFilter(100),
+                downsampler, new Sampler(100));
+        return new MqttServerHandler(components, MqttConfig.fromMap(Map.of()), "default-topic");
+    }
+
+    private static EmbeddedChannel connect(MqttServerHandler handler, String clientId) {
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        MqttConnectMessage connectMessage = MqttMessageBuilders.connect()
+                .clientId(clientId)
+                .protocolVersion(MqttVersion.MQTT_3_1_1)
+                .cleanSession(true)
+                .build();
+        channel.writeInbound(connectMessage);
+        return channel;
+    }
+
+    private static MqttPublishMessage publish(String topic, MqttQoS qos, boolean dup, int packetId, String payload) {
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, dup, qos, false, 0);
+        return new MqttPublishMessage(fixedHeader, new MqttPublishVariableHeader(topic, packetId),
+                Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8));
+    }
+
+    private static List<MqttMessageType> outbound(EmbeddedChannel channel) {
+        List<MqttMessageType> types = new ArrayList<>();
+        for (MqttMessage message = channel.readOutbound(); message != null; message = channel.readOutbound()) {
+            types.add(message.fixedHeader().messageType());
+        }
+        return types;
+    }
+
+    private static RecordMetadata metadata(String topic) {
+        return new RecordMetadata(new TopicPartition(topic, 0), 0, 0, 0, 0, 0);
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.envelope;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link EnvelopeWriter} and {@link EnvelopeDecoder}
+ */
+public class EnvelopeDecoderTest {
+
+    /**
+     * Test the MQTT messages written into an envelope are decoded in order
+     */
+    @Test
+    public void testRoundTrip() {
+        EnvelopeWriter writer = new EnvelopeWriter(16);
+        // a payload larger than 127 bytes needs a multi-byte varint length
+        byte[] largePayload = new byte[300];
+        largePayload[299] = 42;
+
+        ByteBuf payload = Unpooled.wrappedBuffer("21.5".getBytes(StandardCharsets.UTF_8));
+        writer.append("sensors/1/temperature".getBytes(StandardCharsets.UTF_8), payload);
+        writer.append("sensors/2/temperature".getBytes(StandardCharsets.UTF_8), Unpooled.wrappedBuffer(largePayload));
+        writer.append("sensors/3/temperature".getBytes(StandardCharsets.UTF_8), Unpooled.EMPTY_BUFFER);
+
+        // the payload reader index is not changed
+        assertThat(payload.readableBytes(), is(4));
+
+        byte[] envelope = writer.toByteArray();
+        assertThat(envelope.length, is(writer.size()));
+        assertThat(EnvelopeDecoder.isEnvelope(envelope), is(true));
+
+        List<EnvelopeEntry> entries = EnvelopeDecoder.decode(envelope);
+        assertThat(entries.size(), is(3));
+        assertThat(entries.get(0).mqttTopic(), is("sensors/1/temperature"));
+        assertThat(new String(entries.get(0).payload(), StandardCharsets.UTF_8), is("21.5"));
+        assertThat(entries.get(1).mqttTopic(), is("sensors/2/temperature"));
+        assertThat(entries.get(1).payload().length, is(300));
+        assertThat(entries.get(1).payload()[299], is((byte) 42));
+        assertThat(entries.get(2).payload().length, is(0));
+    }
+
+    /**
+     * Test malformed envelopes are rejected
+     */
+    @Test
+    public void testMalformedEnvelope() {
+        assertThat(EnvelopeDecoder.isEnvelope("plain".getBytes(StandardCharsets.UTF_8)), is(false));
+        assertThrows(IllegalArgumentException.class, () -> EnvelopeDecoder.decode("plain".getBytes(StandardCharsets.UTF_8)));
+
+        EnvelopeWriter writer = new EnvelopeWriter(16);
+        writer.append("sensors/1".getBytes(StandardCharsets.UTF_8), Unpooled.wrappedBuffer(new byte[10]));
+        byte[] envelope = writer.toByteArray();
+        byte[] truncated = new byte[envelope.length - 1];
+        System.arraycopy(envelope, 0, truncated, 0, truncated.length);
+        assertThrows(IllegalArgumentException.class, () -> EnvelopeDecoder.decode(truncated));
+
+        // a huge messages count is rejected before allocating anything for it
+        byte[] hugeCount = {Envelope.MAGIC, Envelope.VERSION, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0x00, 0x00};
+        assertThrows(IllegalArgumentException.class, () -> EnvelopeDecoder.decode(hugeCount));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link AdaptiveProducerTuner}
+ */
+public class AdaptiveProducerTunerTest {
+
+    private static AdaptiveProducerTuner tuner(long lingerMs, int batchSize) {
+        return new AdaptiveProducerTuner(100, 0, 200, 16384, 131072, 60000,
+                lingerMs, batchSize, Map::of, (linger, batch) -> { });
+    }
+
+    /**
+     * Test the linger is reduced first when the latency is above the SLO
+     */
+    @Test
+    public void testLatencyAboveSlo() {
+        AdaptiveProducerTuner tuner = tuner(40, 16384);
+
+        assertThat(tuner.adjust(1000, 16384, 150), is(true));
+        assertThat(tuner.getLingerMs(), is(20L));
+        assertThat(tuner.getBatchSize(), is(16384));
+
+        // linger already at the minimum, full batches are queueing so the batch size grows
+        tuner = tuner(0, 16384);
+        assertThat(tuner.adjust(1000, 16000, 150), is(true));
+        assertThat(tuner.getLingerMs(), is(0L));
+        assertThat(tuner.getBatchSize(), is(32768));
+    }
+
+    /**
+     * Test the linger grows, within the bounds, when there is latency headroom
+     */
+    @Test
+    public void testLatencyBelowSlo() {
+        AdaptiveProducerTuner tuner = tuner(150, 65536);
+
+        assertThat(tuner.adjust(1000, 1000, 10), is(true));
+        assertThat(tuner.getLingerMs(), is(200L));
+        // almost empty batches, the batch size shrinks
+        assertThat(tuner.getBatchSize(), is(32768));
+
+        assertThat(tuner.adjust(1000, 16384, 10), is(false));
+    }
+
+    /**
+     * Test nothing changes without traffic or within the SLO band
+     */
+    @Test
+    public void testNoChange() {
+        AdaptiveProducerTuner tuner = tuner(10, 16384);
+
+        assertThat(tuner.adjust(0, Double.NaN, Double.NaN), is(false));
+        assertThat(tuner.adjust(1000, 8000, 70), is(false));
+        assertThat(tuner.getLingerMs(), is(10L));
+        assertThat(tuner.getBatchSize(), is(16384));
+    }
+}
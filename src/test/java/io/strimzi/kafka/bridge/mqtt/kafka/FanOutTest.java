@@ -0,0 +1,137 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link FanOut}
+ */
+public class FanOutTest {
+
+    private static final byte[] PAYLOAD = "23.5".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Test a single record is sent as it is, with the outcome of its own send
+     */
+    @Test
+    public void testSingleRecord() {
+        Map<String, CompletableFuture<RecordMetadata>> sends = new LinkedHashMap<>();
+        CompletionStage<RecordMetadata> result = FanOut.send(records("archive"), record -> send(sends, record), 0);
+
+        assertThat(result, sameInstance(sends.get("archive")));
+    }
+
+    /**
+     * Test the records share the payload and the client is acknowledged only when all of them are, by default
+     */
+    @Test
+    public void testAllAcknowledged() {
+        Map<String, CompletableFuture<RecordMetadata>> sends = new LinkedHashMap<>();
+        List<ProducerRecord<String, byte[]>> records = records("archive", "realtime", "audit");
+        CompletableFuture<RecordMetadata> result = FanOut.send(records, record -> send(sends, record), 0).toCompletableFuture();
+
+        assertThat(records.get(1).value(), sameInstance(records.get(0).value()));
+        assertThat(sends.size(), is(3));
+
+        sends.get("archive").complete(metadata("archive"));
+        sends.get("realtime").complete(metadata("realtime"));
+        assertThat(result.isDone(), is(false));
+
+        sends.get("audit").complete(metadata("audit"));
+        assertThat(result.join().topic(), is("audit"));
+    }
+
+    /**
+     * Test the client is acknowledged when the quorum of records is, even if the others fail later
+     */
+    @Test
+    public void testQuorumAcknowledged() {
+        Map<String, CompletableFuture<RecordMetadata>> sends = new LinkedHashMap<>();
+        CompletableFuture<RecordMetadata> result = FanOut.send(records("archive", "realtime", "audit"), record -> send(sends, record), 2)
+                .toCompletableFuture();
+
+        sends.get("realtime").completeExceptionally(new TimeoutException("realtime"));
+        sends.get("archive").complete(metadata("archive"));
+        assertThat(result.isDone(), is(false));
+
+        sends.get("audit").complete(metadata("audit"));
+        assertThat(result.join().topic(), is("audit"));
+        assertThat(result.isCompletedExceptionally(), is(false));
+    }
+
+    /**
+     * Test the send fails as soon as the quorum cannot be reached anymore
+     */
+    @Test
+    public void testQuorumUnreachable() {
+        Map<String, CompletableFuture<RecordMetadata>> sends = new LinkedHashMap<>();
+        CompletableFuture<RecordMetadata> result = FanOut.send(records("archive", "realtime", "audit"), record -> send(sends, record), 2)
+                .toCompletableFuture();
+
+        sends.get("archive").completeExceptionally(new TimeoutException("archive"));
+        assertThat(result.isDone(), is(false));
+
+        sends.get("audit").completeExceptionally(new TimeoutException("audit"));
+        assertThat(result.isCompletedExceptionally(), is(true));
+
+        // a late acknowledgment does not change the outcome
+        sends.get("realtime").complete(metadata("realtime"));
+        assertThat(result.isCompletedExceptionally(), is(true));
+    }
+
+    /**
+     * Test a quorum larger than the number of records requires all of them
+     */
+    @Test
+    public void testQuorumLargerThanRecords() {
+        Map<String, CompletableFuture<RecordMetadata>> sends = new LinkedHashMap<>();
+        CompletableFuture<RecordMetadata> result = FanOut.send(records("archive", "realtime"), record -> send(sends, record), 5)
+                .toCompletableFuture();
+
+        sends.get("archive").complete(metadata("archive"));
+        assertThat(result.isDone(), is(false));
+
+        sends.get("realtime").completeExceptionally(new TimeoutException("realtime"));
+        assertThat(result.isCompletedExceptionally(), is(true));
+    }
+
+    private static CompletionStage<RecordMetadata> send(Map<String, CompletableFuture<RecordMetadata>> sends, ProducerRecord<String, byte[]> record) {
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        sends.put(record.topic(), future);
+        return future;
+    }
+
+    private static List<ProducerRecord<String, byte[]>> records(String... topics) {
+        ProducerRecord<String, byte[]> first = new ProducerRecord<>(topics[0], null, PAYLOAD);
+        List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
+        records.add(first);
+        for (int i = 1; i < topics.length; i++) {
+            String key = null;
+            records.add(new ProducerRecord<>(topics[i], first.partition(), key, first.value(), first.headers()));
+        }
+        return records;
+    }
+
+    private static RecordMetadata metadata(String topic) {
+        return new RecordMetadata(new TopicPartition(topic, 0), 0, 0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.HeaderEnrichment;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.record.DefaultRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link HeaderEnricher}
+ */
+public class HeaderEnricherTest {
+
+    private static final byte[] MQTT_TOPIC = "building/12/floor/3/room/42/temperature".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLIENT_ID = "device-42".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Test that only the MQTT topic header is added by default
+     */
+    @Test
+    public void testDefault() {
+        Headers headers = HeaderEnricher.DEFAULT.enrich(MQTT_TOPIC, CLIENT_ID, 1, false, 1000L);
+        assertThat(headers.toArray().length, is(1));
+        assertThat(headers.lastHeader(HeaderEnricher.MQTT_TOPIC_HEADER).value(), is(MQTT_TOPIC));
+    }
+
+    /**
+     * Test adding all the headers, with the constant ones shared across the records
+     */
+    @Test
+    public void testEnrich() {
+        HeaderEnricher enricher = new HeaderEnricher(new HeaderEnrichment(false, true, true, true, true, Map.of("site", "plant-1")));
+        Headers headers = enricher.enrich(MQTT_TOPIC, CLIENT_ID, 2, true, 1700000000000L);
+        assertThat(headers.lastHeader(HeaderEnricher.MQTT_TOPIC_HEADER), is(nullValue()));
+        assertThat(headers.lastHeader(HeaderEnricher.MQTT_CLIENT_ID_HEADER).value(), is(CLIENT_ID));
+        assertThat(value(headers, HeaderEnricher.MQTT_QOS_HEADER), is("2"));
+        assertThat(value(headers, HeaderEnricher.MQTT_RETAIN_HEADER), is("true"));
+        assertThat(value(headers, HeaderEnricher.MQTT_RECEIVED_AT_HEADER), is("1700000000000"));
+        assertThat(value(headers, "site"), is("plant-1"));
+
+        Headers other = enricher.enrich(MQTT_TOPIC, null, 2, false, 1700000000001L);
+        assertThat(other.lastHeader(HeaderEnricher.MQTT_CLIENT_ID_HEADER), is(nullValue()));
+        assertThat(value(other, HeaderEnricher.MQTT_RETAIN_HEADER), is("false"));
+        assertThat(other.lastHeader(HeaderEnricher.MQTT_QOS_HEADER), is(sameInstance(headers.lastHeader(HeaderEnricher.MQTT_QOS_HEADER))));
+        assertThat(other.lastHeader("site"), is(sameInstance(headers.lastHeader("site"))));
+    }
+
+    /**
+     * Test the bytes saved in each Kafka record by dropping the MQTT topic header:
+     * the header key and value, each with its varint length, and here one byte of the record length varint
+     */
+    @Test
+    public void testRecordSizeWithoutMqttTopic() {
+        HeaderEnricher enricher = new HeaderEnricher(new HeaderEnrichment(false, false, false, false, false, null));
+        int withTopic = DefaultRecord.sizeInBytes(0, 0L, 0, 8, HeaderEnricher.DEFAULT.enrich(MQTT_TOPIC, CLIENT_ID, 1, false, 0L).toArray());
+        int withoutTopic = DefaultRecord.sizeInBytes(0, 0L, 0, 8, enricher.enrich(MQTT_TOPIC, CLIENT_ID, 1, false, 0L).toArray());
+        assertThat(withTopic - withoutTopic, is(1 + HeaderEnricher.MQTT_TOPIC_HEADER.length() + 1 + MQTT_TOPIC.length + 1));
+    }
+
+    private static String value(Headers headers, String key) {
+        return new String(headers.lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+}
@@ -4,15 +4,28 @@
  */
 package io.strimzi.kafka.bridge.mqtt.kafka;
 
+import io.strimzi.kafka.bridge.mqtt.config.BridgeConfig;
+import org.apache.kafka.clients.producer.MockProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.TopicAuthorizationException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -75,4 +88,161 @@ public class KafkaBridgeProducerTest {
                     metadata.serializedValueSize(), is("test".getBytes().length));
         });
     }
+
+    /**
+     * Test that a send failing with a retriable error is retried by the bridge
+     */
+    @Test
+    public void testSendRetry() throws Exception {
+        MockProducer<String, byte[]> mockProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        BridgeConfig config = BridgeConfig.fromMap(Map.of(BridgeConfig.BRIDGE_SEND_RETRY_BACKOFF_MS, "1"));
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(config, new MockProducer<>(), mockProducer);
+
+        CompletionStage<RecordMetadata> result = producer.send(new ProducerRecord<>("test-topic", "test".getBytes()));
+        mockProducer.errorNext(new TimeoutException("timeout"));
+        waitForHistory(mockProducer, 2);
+        mockProducer.completeNext();
+
+        RecordMetadata metadata = result.toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(metadata.topic(), is("test-topic"));
+        assertThat(producer.getStats().toMap().get("retries"), is(1L));
+        assertThat(((Map<?, ?>) producer.getStats().toMap().get("failuresByCause")).get("TimeoutException"), is(1L));
+        producer.close();
+    }
+
+    /**
+     * Test that a record failing with a non retriable error is routed to the dead letter topic
+     */
+    @Test
+    public void testSendDeadLetter() throws Exception {
+        MockProducer<String, byte[]> mockProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        BridgeConfig config = BridgeConfig.fromMap(Map.of(BridgeConfig.BRIDGE_DEAD_LETTER_TOPIC, "dead-letter"));
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(config, new MockProducer<>(), mockProducer);
+
+        CompletionStage<RecordMetadata> result = producer.send(new ProducerRecord<>("test-topic", "test".getBytes()));
+        mockProducer.errorNext(new TopicAuthorizationException("not authorized"));
+        waitForHistory(mockProducer, 2);
+        mockProducer.completeNext();
+
+        RecordMetadata metadata = result.toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(metadata.topic(), is("dead-letter"));
+
+        ProducerRecord<String, byte[]> deadLetterRecord = mockProducer.history().get(1);
+        assertThat(new String(deadLetterRecord.headers().lastHeader(KafkaBridgeProducer.FAILURE_TOPIC_HEADER).value(), StandardCharsets.UTF_8), is("test-topic"));
+        assertThat(new String(deadLetterRecord.headers().lastHeader(KafkaBridgeProducer.FAILURE_ATTEMPTS_HEADER).value(), StandardCharsets.UTF_8), is("1"));
+        assertThat(producer.getStats().toMap().get("deadLettered"), is(1L));
+        producer.close();
+    }
+
+    /**
+     * Test that a record is not delivered when the send fails and there is no dead letter topic
+     */
+    @Test
+    public void testSendUndelivered() {
+        MockProducer<String, byte[]> mockProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        BridgeConfig config = BridgeConfig.fromMap(Map.of());
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(config, new MockProducer<>(), mockProducer);
+
+        CompletionStage<RecordMetadata> result = producer.send(new ProducerRecord<>("test-topic", "test".getBytes()));
+        mockProducer.errorNext(new TopicAuthorizationException("not authorized"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(TopicAuthorizationException.class));
+        assertThat(producer.getStats().toMap().get("undelivered"), is(1L));
+        producer.close();
+    }
+
+    /**
+     * Test that a send through the idempotent producer is not retried by the bridge, to not duplicate the record
+     */
+    @Test
+    public void testSendExactlyOnceNotRetried() {
+        MockProducer<String, byte[]> ackOneProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        MockProducer<String, byte[]> exactlyOnceProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        BridgeConfig config = BridgeConfig.fromMap(Map.of(BridgeConfig.BRIDGE_SEND_RETRY_BACKOFF_MS, "1"));
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(config, new MockProducer<>(), ackOneProducer, exactlyOnceProducer);
+
+        CompletionStage<RecordMetadata> result = producer.sendExactlyOnce(new ProducerRecord<>("test-topic", "test".getBytes()));
+        assertThat(exactlyOnceProducer.history().size(), is(1));
+        assertThat(ackOneProducer.history().size(), is(0));
+        exactlyOnceProducer.errorNext(new TimeoutException("timeout"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        assertThat(exactlyOnceProducer.history().size(), is(1));
+        assertThat(producer.getStats().toMap().get("retries"), is(0L));
+        producer.close();
+    }
+
+    /**
+     * Test that a record already expired when handed to the Kafka producer is dropped
+     */
+    @Test
+    public void testSendExpiredDropped() {
+        MockProducer<String, byte[]> mockProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(BridgeConfig.fromMap(Map.of()), new MockProducer<>(), mockProducer);
+
+        CompletionStage<RecordMetadata> result = producer.send(new ProducerRecord<>("test-topic", "test".getBytes()), System.currentTimeMillis() - 1);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(MessageExpiredException.class));
+        assertThat(mockProducer.history().size(), is(0));
+        assertThat(producer.getStats().toMap().get("expiredDropped"), is(1L));
+        assertThat(producer.getInFlight(), is(0L));
+        producer.close();
+    }
+
+    /**
+     * Test that a record expiring while waiting for a retry is routed to the expired topic instead of being sent again
+     */
+    @Test
+    public void testSendExpiredOnRetry() throws Exception {
+        MockProducer<String, byte[]> mockProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        BridgeConfig config = BridgeConfig.fromMap(Map.of(
+                BridgeConfig.BRIDGE_SEND_RETRY_BACKOFF_MS, "1000",
+                BridgeConfig.BRIDGE_EXPIRED_TOPIC, "expired"));
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(config, new MockProducer<>(), mockProducer);
+
+        // the backoff of the first retry is at least 500 ms
+        CompletionStage<RecordMetadata> result = producer.send(new ProducerRecord<>("test-topic", "test".getBytes()), System.currentTimeMillis() + 200);
+        mockProducer.errorNext(new TimeoutException("timeout"));
+        waitForHistory(mockProducer, 2);
+        mockProducer.completeNext();
+
+        RecordMetadata metadata = result.toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(metadata.topic(), is("expired"));
+        ProducerRecord<String, byte[]> expiredRecord = mockProducer.history().get(1);
+        assertThat(new String(expiredRecord.headers().lastHeader(KafkaBridgeProducer.EXPIRED_TOPIC_HEADER).value(), StandardCharsets.UTF_8), is("test-topic"));
+        assertThat(producer.getStats().toMap().get("expiredRedirected"), is(1L));
+        assertThat(producer.getStats().toMap().get("expiredDropped"), is(0L));
+        producer.close();
+    }
+
+    /**
+     * Test waiting for the in-flight sends, as done when draining on shutdown
+     */
+    @Test
+    public void testAwaitInFlight() throws Exception {
+        MockProducer<String, byte[]> mockProducer = new MockProducer<>(false, null, new StringSerializer(), new ByteArraySerializer());
+        KafkaBridgeProducer producer = new KafkaBridgeProducer(BridgeConfig.fromMap(Map.of()), new MockProducer<>(), mockProducer);
+
+        producer.send(new ProducerRecord<>("test-topic", "test-1".getBytes()));
+        producer.send(new ProducerRecord<>("test-topic", "test-2".getBytes()));
+        assertThat(producer.getInFlight(), is(2L));
+        // timing out with the sends not acknowledged yet
+        assertThat(producer.awaitInFlight(20), is(2L));
+
+        mockProducer.completeNext();
+        mockProducer.completeNext();
+        assertThat(producer.awaitInFlight(1000), is(0L));
+        producer.close();
+    }
+
+    private static void waitForHistory(MockProducer<String, byte[]> mockProducer, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mockProducer.history().size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(mockProducer.history().size(), is(size));
+    }
 }
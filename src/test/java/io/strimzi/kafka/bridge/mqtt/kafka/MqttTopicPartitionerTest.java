@@ -0,0 +1,115 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.Partitioning;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link MqttTopicPartitioner}
+ */
+public class MqttTopicPartitionerTest {
+
+    /**
+     * Test that only the chosen MQTT topic levels drive the partition
+     */
+    @Test
+    public void testPartitionByTopicLevels() {
+        MqttTopicPartitioner partitioner = new MqttTopicPartitioner(topic -> 12, Runnable::run);
+        Partitioning byDevice = new Partitioning(Partitioning.SOURCE_TOPIC_LEVELS, new int[]{1});
+
+        Integer partition = partitioner.partition("devices", byDevice, "building/device-1/temperature", null);
+        assertThat(partition, not(nullValue()));
+        assertThat(partitioner.partition("devices", byDevice, "building/device-1/humidity", null), is(partition));
+        assertThat(partitioner.partition("devices", byDevice, "factory/device-1", null), is(partition));
+
+        // the hash over the level matches the hash over the same String as a whole topic
+        assertThat(MqttTopicPartitioner.hashLevels("building/device-1/temperature", new int[]{1}),
+                is(MqttTopicPartitioner.hashLevels("x/device-1", new int[]{1})));
+        // levels boundaries are part of the hash
+        assertThat(MqttTopicPartitioner.hashLevels("a/bc", new int[]{0, 1}) == MqttTopicPartitioner.hashLevels("ab/c", new int[]{0, 1}), is(false));
+    }
+
+    /**
+     * Test partitioning by client identifier and missing client identifier
+     */
+    @Test
+    public void testPartitionByClientId() {
+        MqttTopicPartitioner partitioner = new MqttTopicPartitioner(topic -> 6, Runnable::run);
+        Partitioning byClient = new Partitioning(Partitioning.SOURCE_CLIENT_ID, null);
+
+        Integer partition = partitioner.partition("devices", byClient, "a/b", "client-1");
+        assertThat(partition >= 0 && partition < 6, is(true));
+        assertThat(partitioner.partition("devices", byClient, "c/d", "client-1"), is(partition));
+        assertThat(partitioner.partition("devices", byClient, "a/b", null), is(nullValue()));
+    }
+
+    /**
+     * Test that the partitions count and the lookup failures are cached and a failure lets the producer pick the partition
+     */
+    @Test
+    public void testPartitionCountLookup() {
+        AtomicInteger lookups = new AtomicInteger();
+        MqttTopicPartitioner partitioner = new MqttTopicPartitioner(topic -> {
+            lookups.incrementAndGet();
+            if ("missing".equals(topic)) {
+                throw new IllegalStateException("no metadata");
+            }
+            return 3;
+        }, Runnable::run);
+        Partitioning partitioning = new Partitioning(Partitioning.SOURCE_TOPIC_LEVELS, null);
+
+        partitioner.partition("devices", partitioning, "a/b", null);
+        partitioner.partition("devices", partitioning, "a/c", null);
+        assertThat(lookups.get(), is(1));
+        assertThat(partitioner.partition("missing", partitioning, "a/b", null), is(nullValue()));
+        assertThat(partitioner.partition("missing", partitioning, "a/c", null), is(nullValue()));
+        assertThat(lookups.get(), is(2));
+    }
+
+    /**
+     * Test that the partition is left to the producer while the partitions count lookup is running
+     */
+    @Test
+    public void testPartitionCountLookupInBackground() {
+        List<Runnable> lookups = new ArrayList<>();
+        MqttTopicPartitioner partitioner = new MqttTopicPartitioner(topic -> 3, lookups::add);
+        Partitioning partitioning = new Partitioning(Partitioning.SOURCE_TOPIC_LEVELS, null);
+
+        assertThat(partitioner.partition("devices", partitioning, "a/b", null), is(nullValue()));
+        assertThat(partitioner.partition("devices", partitioning, "a/b", null), is(nullValue()));
+        // only one lookup at a time for the same topic
+        assertThat(lookups.size(), is(1));
+
+        lookups.get(0).run();
+        Integer partition = partitioner.partition("devices", partitioning, "a/b", null);
+        assertThat(partition >= 0 && partition < 3, is(true));
+    }
+
+    /**
+     * Test that closing the partitioner stops the lookups, leaving the partition to the producer
+     */
+    @Test
+    public void testClose() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        MqttTopicPartitioner partitioner = new MqttTopicPartitioner(topic -> 3, executor);
+        partitioner.close();
+        assertThat(executor.isShutdown(), is(true));
+
+        Partitioning partitioning = new Partitioning(Partitioning.SOURCE_TOPIC_LEVELS, null);
+        assertThat(partitioner.partition("devices", partitioning, "a/b", null), is(nullValue()));
+    }
+}
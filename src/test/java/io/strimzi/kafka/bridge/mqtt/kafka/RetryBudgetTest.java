@@ -0,0 +1,48 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link RetryBudget}
+ */
+public class RetryBudgetTest {
+
+    /**
+     * Test that the sends deposit retry tokens even without any reserve
+     */
+    @Test
+    public void testDepositWithoutReserve() {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        assertThat(budget.tryWithdraw(), is(false));
+
+        for (int i = 0; i < 50; i++) {
+            budget.deposit();
+        }
+        assertThat(budget.available(), is(5L));
+        for (int i = 0; i < 5; i++) {
+            assertThat(budget.tryWithdraw(), is(true));
+        }
+        assertThat(budget.tryWithdraw(), is(false));
+    }
+
+    /**
+     * Test that the deposits are capped to the ratio of a window of sends plus the reserve
+     */
+    @Test
+    public void testCap() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+
+        for (int i = 0; i < 10_000; i++) {
+            budget.deposit();
+        }
+        // 10% of the 1000 sends window plus ten seconds of reserve
+        assertThat(budget.available(), is(120L));
+    }
+}
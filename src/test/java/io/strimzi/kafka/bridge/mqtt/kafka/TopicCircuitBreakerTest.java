@@ -0,0 +1,111 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link TopicCircuitBreaker}
+ */
+public class TopicCircuitBreakerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Test the breaker trips after the threshold and closes again after a successful probe
+     */
+    @Test
+    public void testTripAndRecover() {
+        TopicCircuitBreaker breaker = new TopicCircuitBreaker("test-topic", 3, 1000, 5000);
+        long generation = breaker.tryAcquire(0);
+
+        breaker.onFailure(generation, 10 * MS);
+        breaker.onFailure(generation, 20 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.CLOSED));
+        assertThat(breaker.tryAcquire(30 * MS), is(generation));
+
+        breaker.onFailure(generation, 40 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.OPEN));
+        assertThat(breaker.tryAcquire(50 * MS), is(TopicCircuitBreaker.REJECTED));
+
+        // open duration elapsed, only one probe is allowed
+        long probe = breaker.tryAcquire(5100 * MS);
+        assertThat(probe == TopicCircuitBreaker.REJECTED, is(false));
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.HALF_OPEN));
+        assertThat(breaker.tryAcquire(5110 * MS), is(TopicCircuitBreaker.REJECTED));
+
+        breaker.onSuccess(probe, 5200 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.CLOSED));
+        assertThat(breaker.tryAcquire(5210 * MS) == TopicCircuitBreaker.REJECTED, is(false));
+    }
+
+    /**
+     * Test a failed probe opens the breaker again
+     */
+    @Test
+    public void testFailedProbe() {
+        TopicCircuitBreaker breaker = new TopicCircuitBreaker("test-topic", 1, 1000, 5000);
+
+        breaker.onFailure(breaker.tryAcquire(0), 10 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.OPEN));
+
+        long probe = breaker.tryAcquire(5100 * MS);
+        assertThat(probe == TopicCircuitBreaker.REJECTED, is(false));
+        breaker.onFailure(probe, 5200 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.OPEN));
+        assertThat(breaker.tryAcquire(5300 * MS), is(TopicCircuitBreaker.REJECTED));
+    }
+
+    /**
+     * Test the late outcomes of the sends allowed before the trip neither close nor trip again the breaker in place of the probe
+     */
+    @Test
+    public void testLateOutcomesIgnored() {
+        TopicCircuitBreaker breaker = new TopicCircuitBreaker("test-topic", 1, 1000, 5000);
+        long beforeTrip = breaker.tryAcquire(0);
+        long alsoBeforeTrip = breaker.tryAcquire(0);
+
+        breaker.onFailure(beforeTrip, 10 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.OPEN));
+
+        long probe = breaker.tryAcquire(5100 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.HALF_OPEN));
+        // a late success does not close the breaker, a late failure does not trip it again
+        breaker.onSuccess(alsoBeforeTrip, 5150 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.HALF_OPEN));
+        breaker.onFailure(alsoBeforeTrip, 5160 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.HALF_OPEN));
+
+        breaker.onSuccess(probe, 5200 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.CLOSED));
+        // nor a late failure trips the closed breaker again
+        breaker.onFailure(alsoBeforeTrip, 5300 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.CLOSED));
+    }
+
+    /**
+     * Test errors out of the sliding window are not counted
+     */
+    @Test
+    public void testSlidingWindow() {
+        TopicCircuitBreaker breaker = new TopicCircuitBreaker("test-topic", 3, 1000, 5000);
+        long generation = breaker.tryAcquire(0);
+
+        breaker.onFailure(generation, 10 * MS);
+        breaker.onFailure(generation, 20 * MS);
+        // the first two errors are out of the window
+        breaker.onFailure(generation, 1500 * MS);
+        breaker.onFailure(generation, 1600 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.CLOSED));
+
+        breaker.onFailure(generation, 1700 * MS);
+        assertThat(breaker.getState(), is(TopicCircuitBreaker.State.OPEN));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link ConnectionLimiter}
+ */
+public class ConnectionLimiterTest {
+
+    /**
+     * Test the maximum number of connections, freed when a connection is closed
+     */
+    @Test
+    public void testMaxConnections() {
+        ConnectionLimiter limiter = new ConnectionLimiter(2, 0, 0, 0, 0);
+        EmbeddedChannel first = new EmbeddedChannel();
+
+        assertThat(limiter.tryAccept(first), is(true));
+        assertThat(limiter.tryAccept(new EmbeddedChannel()), is(true));
+        assertThat(limiter.tryAccept(new EmbeddedChannel()), is(false));
+
+        first.close();
+        assertThat(limiter.tryAccept(new EmbeddedChannel()), is(true));
+        assertThat(limiter.toMap().get("connections"), is(2));
+        assertThat(limiter.toMap().get("rejectedMaxConnections"), is(1L));
+    }
+
+    /**
+     * Test the maximum number of connections is not exceeded by concurrent accepts
+     */
+    @Test
+    public void testMaxConnectionsConcurrent() throws InterruptedException {
+        ConnectionLimiter limiter = new ConnectionLimiter(10, 0, 0, 0, 0);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 100; j++) {
+                    if (limiter.tryAccept(new EmbeddedChannel())) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(accepted.get(), is(10));
+        assertThat(limiter.toMap().get("connections"), is(10));
+        assertThat(limiter.toMap().get("rejectedMaxConnections"), is(790L));
+    }
+
+    /**
+     * Test the accept rate limit does not hold a connection slot
+     */
+    @Test
+    public void testAcceptRate() {
+        ConnectionLimiter limiter = new ConnectionLimiter(5, 1, 2, 0, 0);
+        assertThat(limiter.tryAccept(new EmbeddedChannel()), is(true));
+        assertThat(limiter.tryAccept(new EmbeddedChannel()), is(true));
+        assertThat(limiter.tryAccept(new EmbeddedChannel()), is(false));
+        assertThat(limiter.toMap().get("connections"), is(2));
+        assertThat(limiter.toMap().get("rejectedAcceptRate"), is(1L));
+    }
+
+    /**
+     * Test the CONNECT rate limit
+     */
+    @Test
+    public void testConnectRate() {
+        ConnectionLimiter limiter = new ConnectionLimiter(0, 0, 0, 1, 3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryConnect(), is(true));
+        }
+        assertThat(limiter.tryConnect(), is(false));
+        assertThat(limiter.toMap().get("rejectedConnectRate"), is(1L));
+
+        // no limits
+        ConnectionLimiter unlimited = new ConnectionLimiter(0, 0, 0, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(unlimited.tryConnect(), is(true));
+            assertThat(unlimited.tryAccept(new EmbeddedChannel()), is(true));
+        }
+    }
+}
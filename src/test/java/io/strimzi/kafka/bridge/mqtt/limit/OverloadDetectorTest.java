@@ -0,0 +1,95 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link OverloadDetector}
+ */
+public class OverloadDetectorTest {
+
+    /**
+     * Probe returning the signals set by the test
+     */
+    private static class TestProbe implements OverloadDetector.Probe {
+        private double bufferUsage;
+        private int pendingTasks;
+        private double ackLatencyMs;
+
+        @Override
+        public double bufferUsage() {
+            return this.bufferUsage;
+        }
+
+        @Override
+        public int pendingTasks() {
+            return this.pendingTasks;
+        }
+
+        @Override
+        public double ackLatencyMs() {
+            return this.ackLatencyMs;
+        }
+    }
+
+    /**
+     * Test the QoS 0 messages are shed first, then the low priority ones after the escalation delay
+     */
+    @Test
+    public void testShedding() {
+        TestProbe probe = new TestProbe();
+        OverloadDetector detector = new OverloadDetector(0.9, 1000, 500, 5000, 100, probe);
+
+        detector.evaluate(0);
+        assertThat(detector.getLevel(), is(OverloadDetector.Level.NONE));
+        assertThat(detector.shed(0, true), is(false));
+
+        probe.bufferUsage = 0.95;
+        detector.evaluate(1000);
+        assertThat(detector.getLevel(), is(OverloadDetector.Level.SHED_QOS0));
+        assertThat(detector.shed(0, false), is(true));
+        assertThat(detector.shed(1, true), is(false));
+
+        // still overloaded, by another signal
+        probe.bufferUsage = 0.5;
+        probe.ackLatencyMs = 800;
+        detector.evaluate(6000);
+        assertThat(detector.getLevel(), is(OverloadDetector.Level.SHED_LOW_PRIORITY));
+        assertThat(detector.shed(1, true), is(true));
+        assertThat(detector.shed(2, true), is(true));
+        // QoS 1 and QoS 2 messages of the other rules always flow
+        assertThat(detector.shed(1, false), is(false));
+
+        probe.ackLatencyMs = 10;
+        detector.evaluate(7000);
+        assertThat(detector.getLevel(), is(OverloadDetector.Level.NONE));
+        assertThat(detector.shed(0, false), is(false));
+
+        // the escalation delay starts again
+        probe.pendingTasks = 2000;
+        detector.evaluate(8000);
+        assertThat(detector.getLevel(), is(OverloadDetector.Level.SHED_QOS0));
+        assertThat(detector.toMap().get("shedQos0"), is(1L));
+        assertThat(detector.toMap().get("shedLowPriority"), is(2L));
+        assertThat(detector.toMap().get("pendingTasks"), is(2000));
+    }
+
+    /**
+     * Test the signals with a 0 threshold are ignored
+     */
+    @Test
+    public void testIgnoredSignals() {
+        TestProbe probe = new TestProbe();
+        OverloadDetector detector = new OverloadDetector(0, 0, 500, 5000, 100, probe);
+        probe.bufferUsage = 1;
+        probe.pendingTasks = Integer.MAX_VALUE;
+        detector.evaluate(0);
+        assertThat(detector.getLevel(), is(OverloadDetector.Level.NONE));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link PublishRateLimiter}
+ */
+public class PublishRateLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Test the rate limits of each client and of the clients sharing a username
+     */
+    @Test
+    public void testClientAndUsername() {
+        PublishRateLimiter limiter = new PublishRateLimiter(new RateLimit(10, 0), new RateLimit(0, 100), Map.of(), 1, RateLimitAction.PAUSE);
+        assertThat(limiter.isEnabled(), is(true));
+        long now = System.nanoTime();
+        PublishRateLimiter.ClientLimiters client1 = limiter.connect("client1", "tenant", now);
+        PublishRateLimiter.ClientLimiters client2 = limiter.connect("client2", "tenant", now);
+        assertThat(client1.username() == client2.username(), is(true));
+        assertThat(limiter.connect("client3", null, now).username(), is(nullValue()));
+
+        // 10 messages burst per client
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.consume(client1, "sensors/1", 5, now), is(0L));
+        }
+        assertThat(limiter.consume(client1, "sensors/1", 0, now), is(100 * MS));
+        // 100 bytes burst shared with the first client, which already sent 50
+        assertThat(limiter.consume(client2, "sensors/2", 50, now), is(0L));
+        assertThat(limiter.consume(client2, "sensors/2", 10, now), is(100 * MS));
+        assertThat(limiter.toMap().get("usernames"), is(1));
+    }
+
+    /**
+     * Test that a client reconnecting keeps its buckets, so it does not get a new burst, unless it has no identifier
+     */
+    @Test
+    public void testClientReconnect() {
+        PublishRateLimiter limiter = new PublishRateLimiter(new RateLimit(10, 0), new RateLimit(0, 0), Map.of(), 1, RateLimitAction.PAUSE);
+        long now = System.nanoTime();
+        PublishRateLimiter.ClientLimiters client = limiter.connect("client1", null, now);
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.consume(client, "sensors/1", 5, now), is(0L));
+        }
+
+        PublishRateLimiter.ClientLimiters reconnected = limiter.connect("client1", null, now);
+        assertThat(reconnected.client() == client.client(), is(true));
+        assertThat(limiter.consume(reconnected, "sensors/1", 5, now), is(100 * MS));
+        // refilled over time
+        assertThat(limiter.consume(reconnected, "sensors/1", 5, now + 300 * MS), is(0L));
+
+        // no identifier to recognize the client
+        PublishRateLimiter.ClientLimiters anonymous = limiter.connect("", null, now);
+        assertThat(anonymous.client() == limiter.connect("", null, now).client(), is(false));
+        assertThat(limiter.consume(anonymous, "sensors/1", 5, now), is(0L));
+        assertThat(limiter.toMap().get("clients"), is(1));
+    }
+
+    /**
+     * Test the rate limits of the MQTT topic prefixes, the longest matching prefix applying
+     */
+    @Test
+    public void testTopicPrefixes() {
+        Map<String, RateLimit> prefixes = PublishRateLimiter.parseTopicPrefixes("sensors/=2, sensors/critical/=1000:1000000");
+        assertThat(prefixes, is(Map.of("sensors/", new RateLimit(2, 0), "sensors/critical/", new RateLimit(1000, 1000000))));
+        PublishRateLimiter limiter = new PublishRateLimiter(new RateLimit(0, 0), new RateLimit(0, 0), prefixes, 1, RateLimitAction.DISCONNECT);
+        long now = System.nanoTime();
+        PublishRateLimiter.ClientLimiters client = limiter.connect("client1", "tenant", now);
+
+        assertThat(limiter.consume(client, "sensors/1", 10, now), is(0L));
+        assertThat(limiter.consume(null, "sensors/2", 10, now), is(0L));
+        assertThat(limiter.consume(client, "sensors/3", 10, now), is(500 * MS));
+        assertThat(limiter.consume(client, "sensors/critical/1", 10, now), is(0L));
+        assertThat(limiter.consume(client, "alerts/1", 10, now), is(0L));
+    }
+
+    /**
+     * Test the parsing of the MQTT topic prefixes rate limits
+     */
+    @Test
+    public void testParseTopicPrefixes() {
+        assertThat(PublishRateLimiter.parseTopicPrefixes(null).isEmpty(), is(true));
+        assertThat(PublishRateLimiter.parseTopicPrefixes("a=b=5"), is(Map.of("a=b", new RateLimit(5, 0))));
+        assertThrows(IllegalArgumentException.class, () -> PublishRateLimiter.parseTopicPrefixes("sensors/"));
+        assertThat(new PublishRateLimiter(new RateLimit(0, 0), new RateLimit(0, 0), Map.of(), 1, RateLimitAction.PAUSE).isEnabled(), is(false));
+    }
+}
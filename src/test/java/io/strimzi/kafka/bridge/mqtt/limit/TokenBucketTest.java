@@ -0,0 +1,68 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link TokenBucket}
+ */
+public class TokenBucketTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Test that the burst is allowed and then the tokens are refilled at the configured rate
+     */
+    @Test
+    public void testRateAndBurst() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(1, 0), is(true));
+        }
+        assertThat(bucket.tryAcquire(1, 0), is(false));
+
+        // 10 tokens per second, one every 100 ms
+        assertThat(bucket.tryAcquire(1, 50 * MS), is(false));
+        assertThat(bucket.tryAcquire(1, 100 * MS), is(true));
+        assertThat(bucket.tryAcquire(1, 100 * MS), is(false));
+
+        // never more than the burst
+        assertThat(bucket.tryAcquire(5, 10_000 * MS), is(true));
+        assertThat(bucket.tryAcquire(1, 10_000 * MS), is(false));
+    }
+
+    /**
+     * Test that consuming above the rate leaves the bucket in debt, returning the time until it is repaid
+     */
+    @Test
+    public void testConsume() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+        assertThat(bucket.consume(1, 0), is(0L));
+        assertThat(bucket.consume(1, 0), is(0L));
+        assertThat(bucket.isFull(0), is(false));
+        // one token in debt, repaid in 100 ms
+        assertThat(bucket.consume(1, 0), is(100 * MS));
+        assertThat(bucket.tryAcquire(1, 100 * MS), is(false));
+        assertThat(bucket.consume(1, 150 * MS), is(50 * MS));
+        assertThat(bucket.isFull(10_000 * MS), is(true));
+    }
+
+    /**
+     * Test that a bucket without rate or burst is rejected
+     */
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 5));
+    }
+}
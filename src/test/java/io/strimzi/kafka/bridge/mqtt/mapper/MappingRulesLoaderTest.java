@@ -7,6 +7,7 @@ package io.strimzi.kafka.bridge.mqtt.mapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
@@ -91,4 +92,18 @@ public class MappingRulesLoaderTest {
 
         verify(loader, times(2)).init(filePath);
     }
+
+    /**
+     * Test that a mapping rule with an unknown partitioning source is rejected.
+     */
+    @Test
+    public void testUnknownPartitioningSource() {
+        String rules = "[{\"mqttTopic\": \"a/b\", \"kafkaTopic\": \"a\", \"partitionBy\": {\"source\": \"clientid\"}}]";
+        ObjectMapper mapper = new ObjectMapper();
+
+        Exception exception = assertThrows(IOException.class,
+                () -> mapper.readValue(rules, mapper.getTypeFactory().constructCollectionType(List.class, MappingRule.class)));
+        assertThat("Should report the unknown source",
+                exception.getMessage().contains("Unknown partitioning source: clientid"), is(true));
+    }
 }
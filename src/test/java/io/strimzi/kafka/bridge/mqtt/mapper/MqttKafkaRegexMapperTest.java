@@ -304,4 +304,47 @@ public class MqttKafkaRegexMapperTest {
                 mappingResult.kafkaKey(), is("match_1"));
 
     }
+
+    /**
+     * Test the mapping of the additional Kafka targets of a rule, using the same placeholders as the rule templates.
+     */
+    @Test
+    public void testTargets() {
+        List<MappingRule> rules = new ArrayList<>();
+
+        MappingRule rule = new MappingRule("building/(\\d+)/room/(\\d+)", "building_$1", "room_$2");
+        rule.setTargets(List.of(new KafkaTarget("archive_building_$1", "$1_$2"), new KafkaTarget("realtime", null)));
+        rules.add(rule);
+        rules.add(new MappingRule("sensors/([^/]+)/data", "sensor_$1", null));
+
+        MqttKafkaRegexMapper mapper = new MqttKafkaRegexMapper(rules, defaultTopicTest);
+
+        MappingResult mappingResult = mapper.map("building/14/room/25");
+
+        assertThat("building/(\\d+)/room/(\\d+) should be mapped to building_$1",
+                mappingResult.kafkaTopic(), is("building_14"));
+
+        assertThat("The targets of building/(\\d+)/room/(\\d+) should be expanded",
+                mappingResult.targets(), is(List.of(new MappingResult.Target("archive_building_14", "14_25"),
+                        new MappingResult.Target("realtime", null))));
+
+        assertThat("A rule without targets should not have any",
+                mapper.map("sensors/temperature/data").targets().isEmpty(), is(true));
+
+        assertThat("The default topic should not have any targets",
+                mapper.map("unknown/topic").targets().isEmpty(), is(true));
+
+        rule.setTargets(List.of(new KafkaTarget("archive_$3", null)));
+        assertThrows(IllegalArgumentException.class, () -> mapper.map("building/14/room/25"));
+
+        // the rules with aggregation or downsampling do not fan out, not even the messages sent on their own
+        rule.setTargets(List.of(new KafkaTarget("realtime", null)));
+        rule.setAggregation(new Aggregation(100, 65536, 50));
+        assertThat("A rule with aggregation should not have any targets",
+                mapper.map("building/14/room/25").targets().isEmpty(), is(true));
+        rule.setAggregation(null);
+        rule.setDownsampling(new Downsampling(60000, null));
+        assertThat("A rule with downsampling should not have any targets",
+                mapper.map("building/14/room/25").targets().isEmpty(), is(true));
+    }
 }
@@ -234,4 +234,45 @@ public class MqttKafkaSimpleMapperTest {
         assertThat("Mqtt pattern {house}/# should be mapped to {house}",
                 mapper.map("my_house/temperature/room1").kafkaTopic(), is("my_house"));
     }
+
+    /**
+     * Test the mapping of the additional Kafka targets of a rule, using the named placeholders of the MQTT pattern,
+     * even the ones not used by the rule templates.
+     */
+    @Test
+    public void testTargets() {
+        List<MappingRule> rules = new ArrayList<>();
+
+        MappingRule rule = new MappingRule("building/{building}/room/{room}", "building_{building}", null);
+        rule.setTargets(List.of(new KafkaTarget("archive_{building}", "{building}_{room}"), new KafkaTarget("realtime", null)));
+        rules.add(rule);
+        rules.add(new MappingRule("sensors/{sensor}/data", "sensor_{sensor}", null));
+
+        MqttKafkaSimpleMapper mapper = new MqttKafkaSimpleMapper(rules, "default_topic");
+
+        MappingResult mappingResult = mapper.map("building/14/room/25");
+
+        assertThat("Mqtt pattern building/{building}/room/{room} should be mapped to building_{building}",
+                mappingResult.kafkaTopic(), is("building_14"));
+
+        assertThat("The targets of building/{building}/room/{room} should be expanded",
+                mappingResult.targets(), is(List.of(new MappingResult.Target("archive_14", "14_25"),
+                        new MappingResult.Target("realtime", null))));
+
+        assertThat("A rule without targets should not have any",
+                mapper.map("sensors/temperature/data").targets().isEmpty(), is(true));
+
+        rule.setTargets(List.of(new KafkaTarget("archive_{floor}", null)));
+        assertThrows(IllegalArgumentException.class, () -> mapper.map("building/14/room/25"));
+
+        // the rules with aggregation or downsampling do not fan out, not even the messages sent on their own
+        rule.setTargets(List.of(new KafkaTarget("realtime", null)));
+        rule.setAggregation(new Aggregation(100, 65536, 50));
+        assertThat("A rule with aggregation should not have any targets",
+                mapper.map("building/14/room/25").targets().isEmpty(), is(true));
+        rule.setAggregation(null);
+        rule.setDownsampling(new Downsampling(60000, null));
+        assertThat("A rule with downsampling should not have any targets",
+                mapper.map("building/14/room/25").targets().isEmpty(), is(true));
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link BridgeMetrics}
+ */
+public class BridgeMetricsTest {
+
+    /**
+     * Test writing the counters in the Prometheus text format
+     */
+    @Test
+    public void testWrite() {
+        BridgeMetrics metrics = new BridgeMetrics();
+        BridgeMetrics.EventLoopCounters counters = metrics.eventLoop("loop-1");
+        counters.record(10);
+        counters.record(20);
+        assertThat(metrics.eventLoop("loop-1"), is(counters));
+
+        MappingRule rule = new MappingRule("sensors/([^/]+)/data", "sensor_data", null);
+        metrics.recordPublish(1);
+        metrics.recordPublish(1);
+        metrics.recordPublish(2);
+        metrics.recordMapping(rule);
+        metrics.recordMapping(rule);
+        metrics.recordMapping(null);
+
+        PrometheusWriter writer = new PrometheusWriter();
+        metrics.write(writer);
+        List<String> lines = writer.toString().lines().toList();
+        assertThat(lines, hasItem("# TYPE mqtt_bridge_messages_received_total counter"));
+        assertThat(lines, hasItem("mqtt_bridge_messages_received_total{event_loop=\"loop-1\"} 2"));
+        assertThat(lines, hasItem("mqtt_bridge_bytes_received_total{event_loop=\"loop-1\"} 30"));
+        assertThat(lines, hasItem("mqtt_bridge_publish_messages_total{qos=\"0\"} 0"));
+        assertThat(lines, hasItem("mqtt_bridge_publish_messages_total{qos=\"1\"} 2"));
+        assertThat(lines, hasItem("mqtt_bridge_publish_messages_total{qos=\"2\"} 1"));
+        assertThat(lines, hasItem("mqtt_bridge_mapping_rule_matches_total{rule=\"sensors/([^/]+)/data\"} 2"));
+        assertThat(lines, hasItem("mqtt_bridge_mapping_default_topic_total 1"));
+    }
+
+    /**
+     * Test writing the Kafka and Netty metrics
+     */
+    @Test
+    public void testWriteKafkaAndAllocator() {
+        PrometheusWriter writer = new PrometheusWriter();
+        BridgeMetrics.writeKafkaSends(writer, 5, Map.of("TimeoutException", 2L), 3, 0);
+        BridgeMetrics.writeKafkaProducers(writer, Map.of("ack-one", Map.of("request-latency-avg", 1.5)));
+        BridgeMetrics.writeAllocator(writer, new PooledByteBufAllocator(false));
+        List<String> lines = writer.toString().lines().toList();
+        assertThat(lines, hasItem("mqtt_bridge_kafka_send_success_total 5"));
+        assertThat(lines, hasItem("mqtt_bridge_kafka_send_failures_total{cause=\"TimeoutException\"} 2"));
+        assertThat(lines, hasItem("mqtt_bridge_kafka_send_expired_total{action=\"dropped\"} 3"));
+        assertThat(lines, hasItem("mqtt_bridge_kafka_producer_request_latency_avg{producer=\"ack-one\"} 1.5"));
+        assertThat(lines, hasItem("mqtt_bridge_netty_allocator_used_direct_bytes 0"));
+    }
+
+    /**
+     * Test escaping the label values
+     */
+    @Test
+    public void testLabelEscaping() {
+        PrometheusWriter writer = new PrometheusWriter();
+        writer.sample("metric", "label", "a\"b\\c\nd", 1);
+        assertThat(writer.toString(), is("metric{label=\"a\\\"b\\\\c\\nd\"} 1\n"));
+        assertThat(PrometheusWriter.sanitize("record-send-total"), is("record_send_total"));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link HeavyHitters}
+ */
+public class HeavyHittersTest {
+
+    /**
+     * Test the top clients and MQTT topics of the last completed window, by messages and by bytes
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTopOfLastWindow() {
+        HeavyHitters heavyHitters = new HeavyHitters(2, 1024, 1000, 0);
+        // a noisy client sending small messages, and a client sending large ones
+        for (int i = 0; i < 100; i++) {
+            heavyHitters.record("noisy", "sensors/" + (i % 10), 10, 1000 + i);
+        }
+        heavyHitters.record("large", "sensors/0", 5000, 1500);
+        heavyHitters.record("quiet", "sensors/1", 10, 1500);
+        // the window is not completed yet
+        assertThat(((Map<String, Object>) heavyHitters.toMap(1999).get("clients")).get("byMessages"), is(List.of()));
+
+        Map<String, Object> map = heavyHitters.toMap(2000);
+        assertThat(map.get("windowStart"), is(1000L));
+        Map<String, Object> clients = (Map<String, Object>) map.get("clients");
+        assertThat(clients.get("byMessages"), is(List.of(
+                Map.of("clientId", "noisy", "messages", 100L, "bytes", 1000L),
+                Map.of("clientId", "large", "messages", 1L, "bytes", 5000L))));
+        List<Map<String, Object>> byBytes = (List<Map<String, Object>>) clients.get("byBytes");
+        assertThat(byBytes.get(0).get("clientId"), is("large"));
+        assertThat(byBytes.get(1).get("clientId"), is("noisy"));
+        Map<String, Object> topics = (Map<String, Object>) map.get("topics");
+        List<Map<String, Object>> topicsByBytes = (List<Map<String, Object>>) topics.get("byBytes");
+        assertThat(topicsByBytes.get(0), is(Map.of("topic", "sensors/0", "messages", 11L, "bytes", 5100L)));
+
+        // the next window replaces the counts
+        heavyHitters.record("quiet", "sensors/1", 10, 2500);
+        clients = (Map<String, Object>) heavyHitters.toMap(3000).get("clients");
+        assertThat(clients.get("byMessages"), is(List.of(Map.of("clientId", "quiet", "messages", 1L, "bytes", 10L))));
+        // no messages in the last window
+        assertThat(((Map<String, Object>) heavyHitters.toMap(5000).get("clients")).get("byMessages"), is(List.of()));
+    }
+
+    /**
+     * Test the counts recorded by many threads are merged
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMergeThreads() throws InterruptedException {
+        HeavyHitters heavyHitters = new HeavyHitters(1, 1024, 1000, 0);
+        Thread thread = new Thread(() -> {
+            for (int i = 0; i < 50; i++) {
+                heavyHitters.record("client-" + i, "shared", 1, 1000);
+            }
+        });
+        thread.start();
+        for (int i = 0; i < 50; i++) {
+            heavyHitters.record("client-" + (i + 50), "shared", 1, 1000);
+        }
+        thread.join();
+
+        Map<String, Object> topics = (Map<String, Object>) heavyHitters.toMap(2000).get("topics");
+        assertThat(topics.get("byMessages"), is(List.of(Map.of("topic", "shared", "messages", 100L, "bytes", 100L))));
+    }
+
+    /**
+     * Test the heap keeps the keys with the highest counts
+     */
+    @Test
+    public void testTopK() {
+        TopK topK = new TopK(3);
+        topK.offer("a", 5);
+        topK.offer("b", 1);
+        topK.offer("c", 3);
+        // lower than all the keys
+        topK.offer("d", 1);
+        topK.offer("e", 4);
+        // grows past the others
+        topK.offer("c", 10);
+        assertThat(List.of(topK.keys()).stream().sorted().toList(), is(List.of("a", "c", "e")));
+        topK.offer("b", 6);
+        assertThat(List.of(topK.keys()).stream().sorted().toList(), is(List.of("a", "b", "c")));
+    }
+
+    /**
+     * Test a client is logged once per window, even when its estimate jumps past the threshold
+     */
+    @Test
+    public void testClientWarn() {
+        HeavyHitters heavyHitters = new HeavyHitters(2, 1024, 1000, 3);
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 1000), is(false));
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 1001), is(false));
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 1002), is(true));
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 1003), is(false));
+        // logged again within a new window
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 2000), is(false));
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 2001), is(false));
+        assertThat(heavyHitters.record("noisy", "sensors/0", 10, 2002), is(true));
+
+        // a tiny sketch, so the clients colliding with the noisy one start past the threshold
+        HeavyHitters tiny = new HeavyHitters(2, 2, 1000, 50);
+        for (int i = 0; i < 100; i++) {
+            tiny.record("noisy", "sensors/0", 10, 1000);
+        }
+        int warned = 0;
+        for (int i = 0; i < 64; i++) {
+            if (tiny.record("client-" + i, "sensors/0", 10, 1000)) {
+                warned++;
+                assertThat(tiny.record("client-" + i, "sensors/0", 10, 1000), is(false));
+            }
+        }
+        assertThat(warned > 0, is(true));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Unit tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test the buckets are contiguous and hold the values within their precision
+     */
+    @Test
+    public void testBuckets() {
+        assertThat(LatencyHistogram.bucketIndex(0), is(0));
+        assertThat(LatencyHistogram.bucketIndex(31), is(31));
+        for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+            long lowest = LatencyHistogram.highestValue(i - 1) + 1;
+            assertThat(LatencyHistogram.bucketIndex(lowest), is(i));
+            assertThat(LatencyHistogram.bucketIndex(LatencyHistogram.highestValue(i)), is(i));
+            // at most 1/32 of the bucket values
+            assertThat((double) (LatencyHistogram.highestValue(i) - lowest), lessThanOrEqualTo(lowest / 32.0));
+        }
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE), is(LatencyHistogram.BUCKETS - 1));
+    }
+
+    /**
+     * Test the percentiles of the latencies recorded by many threads
+     */
+    @Test
+    public void testPercentiles() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.snapshot().count(), is(0L));
+        assertThat(histogram.snapshot().percentile(99), is(0L));
+
+        // 1 to 1000 microseconds, half of them recorded by another thread
+        Thread thread = new Thread(() -> {
+            for (int i = 2; i <= 1000; i += 2) {
+                histogram.record(i * 1000L);
+            }
+        });
+        thread.start();
+        for (int i = 1; i <= 1000; i += 2) {
+            histogram.record(i * 1000L);
+        }
+        thread.join();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.count(), is(1000L));
+        assertThat(snapshot.sum(), is(500_500_000L));
+        assertWithin(snapshot.percentile(50), 500_000L);
+        assertWithin(snapshot.percentile(99), 990_000L);
+        assertWithin(snapshot.percentile(100), 1_000_000L);
+    }
+
+    /**
+     * Test writing the latencies as Prometheus summaries
+     */
+    @Test
+    public void testWriteSummary() {
+        LatencyMetrics latency = new LatencyMetrics();
+        latency.record(LatencyMetrics.Stage.BROKER_ACK, 1, 2_000_000);
+
+        PrometheusWriter writer = new PrometheusWriter();
+        latency.write(writer);
+        List<String> lines = writer.toString().lines().toList();
+        assertThat(lines, hasItem("# TYPE mqtt_bridge_publish_latency_seconds summary"));
+        assertThat(lines, hasItem("mqtt_bridge_publish_latency_seconds_count{stage=\"broker_ack\",qos=\"1\",producer=\"ack-one\"} 1"));
+        assertThat(lines, hasItem("mqtt_bridge_publish_latency_seconds{stage=\"broker_ack\",qos=\"2\",producer=\"exactly-once\",quantile=\"0.5\"} NaN"));
+        assertThat(lines, hasItem("mqtt_bridge_publish_latency_seconds_count{stage=\"map\",qos=\"0\",producer=\"ack-zero\"} 0"));
+        // no acknowledgment for QoS 0
+        assertThat(lines.stream().anyMatch(line -> line.contains("stage=\"broker_ack\",qos=\"0\"")), is(false));
+    }
+
+    private static void assertWithin(long value, long expected) {
+        assertThat(value, greaterThanOrEqualTo(expected));
+        assertThat((double) value, lessThanOrEqualTo(expected * (1 + 1 / 32.0)));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link ClientRegistry}
+ */
+public class ClientRegistryTest {
+
+    /**
+     * Test that a new connection with the same client identifier takes over the existing one
+     */
+    @Test
+    public void testTakeover() throws IOException {
+        ClientRegistry registry = new ClientRegistry(null);
+        EmbeddedChannel first = new EmbeddedChannel();
+        EmbeddedChannel second = new EmbeddedChannel();
+
+        ClientSession firstSession = registry.connect("client-1", true, first);
+        ClientSession secondSession = registry.connect("client-1", true, second);
+        assertThat(first.isOpen(), is(false));
+        assertThat(second.isOpen(), is(true));
+        assertThat(registry.size(), is(1));
+        assertThat(registry.toMap().get("takeovers"), is(1L));
+
+        // the disconnection of the old connection does not unregister the new one
+        registry.disconnect(firstSession);
+        assertThat(registry.size(), is(1));
+        registry.disconnect(secondSession);
+        assertThat(registry.size(), is(0));
+    }
+
+    /**
+     * Test that clients with an empty identifier are not tracked
+     */
+    @Test
+    public void testEmptyClientId() throws IOException {
+        ClientRegistry registry = new ClientRegistry(null);
+        EmbeddedChannel first = new EmbeddedChannel();
+        registry.connect("", true, first);
+        registry.connect("", true, new EmbeddedChannel());
+        assertThat(first.isOpen(), is(true));
+        assertThat(registry.size(), is(0));
+    }
+
+    /**
+     * Test that persistent sessions are restored, and that a taken over session does not overwrite the new one
+     */
+    @Test
+    public void testPersistentSession() throws IOException {
+        Path path = Files.createTempFile("sessions", ".db");
+        Files.delete(path);
+        try (ClientRegistry registry = new ClientRegistry(new SessionStore(path))) {
+            ClientSession first = registry.connect("client-1", false, new EmbeddedChannel());
+            assertThat(first.isPresent(), is(false));
+            first.getQos2Received().add(10);
+            registry.update(first);
+
+            ClientSession second = registry.connect("client-1", false, new EmbeddedChannel());
+            assertThat(second.isPresent(), is(true));
+            assertThat(Arrays.equals(second.getQos2Received().toArray(), new int[]{10}), is(true));
+
+            // late update from the taken over connection
+            first.getQos2Received().add(11);
+            registry.update(first);
+            ClientSession third = registry.connect("client-1", false, new EmbeddedChannel());
+            assertThat(Arrays.equals(third.getQos2Received().toArray(), new int[]{10}), is(true));
+
+            // clean session discards the stored one
+            ClientSession clean = registry.connect("client-1", true, new EmbeddedChannel());
+            assertThat(clean.isPresent(), is(false));
+            assertThat(registry.toMap().get("persistentSessions"), is(0));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Test that a QoS 2 message acknowledged by Kafka after a takeover is handed over to the new persistent session
+     */
+    @Test
+    public void testTakeoverDuringQos2Send() throws IOException {
+        Path path = Files.createTempFile("sessions", ".db");
+        Files.delete(path);
+        try (ClientRegistry registry = new ClientRegistry(new SessionStore(path))) {
+            ClientSession first = registry.connect("client-1", false, new EmbeddedChannel());
+            first.getQos2Pending().add(12);
+            EmbeddedChannel secondChannel = new EmbeddedChannel();
+            ClientSession second = registry.connect("client-1", false, secondChannel);
+            assertThat(second.getQos2Received().contains(12), is(false));
+
+            // the send started on the taken over connection completes
+            first.getQos2Pending().remove(12);
+            registry.received(first, 12);
+            secondChannel.runPendingTasks();
+            assertThat(second.getQos2Received().contains(12), is(true));
+            ClientSession third = registry.connect("client-1", false, new EmbeddedChannel());
+            assertThat(Arrays.equals(third.getQos2Received().toArray(), new int[]{12}), is(true));
+
+            // not handed over to a clean session, whose client does not re-send
+            EmbeddedChannel cleanChannel = new EmbeddedChannel();
+            ClientSession clean = registry.connect("client-1", true, cleanChannel);
+            registry.received(third, 13);
+            cleanChannel.runPendingTasks();
+            assertThat(clean.getQos2Received().isEmpty(), is(true));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
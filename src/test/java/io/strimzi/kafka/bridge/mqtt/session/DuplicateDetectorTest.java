@@ -0,0 +1,81 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link DuplicateDetector}
+ */
+public class DuplicateDetectorTest {
+
+    /**
+     * Test that only a re-sent message matching packet identifier and content is a duplicate
+     */
+    @Test
+    public void testDuplicate() {
+        DuplicateDetector detector = new DuplicateDetector(4, 100);
+        ByteBuf payload = Unpooled.copiedBuffer("21.5", StandardCharsets.UTF_8);
+        int hash = DuplicateDetector.hash("sensors/temperature", payload);
+        // the payload is not consumed
+        assertThat(payload.readableBytes(), is(4));
+
+        assertThat(detector.isDuplicate("client-1", 10, hash), is(false));
+        detector.record("client-1", 10, hash);
+
+        assertThat(detector.isDuplicate("client-1", 10, hash), is(true));
+        // same packet identifier reused for a different message
+        assertThat(detector.isDuplicate("client-1", 10, hash + 1), is(false));
+        // same message from another client
+        assertThat(detector.isDuplicate("client-2", 10, hash), is(false));
+        assertThat(detector.toMap().get("suppressed"), is(1L));
+        payload.release();
+    }
+
+    /**
+     * Test that the window of each client is bounded, forgetting the oldest messages
+     */
+    @Test
+    public void testWindowBounded() {
+        DuplicateDetector detector = new DuplicateDetector(4, 100);
+        for (int packetId = 1; packetId <= 6; packetId++) {
+            detector.record("client-1", packetId, 42);
+        }
+        assertThat(detector.isDuplicate("client-1", 1, 42), is(false));
+        assertThat(detector.isDuplicate("client-1", 2, 42), is(false));
+        assertThat(detector.isDuplicate("client-1", 3, 42), is(true));
+        assertThat(detector.isDuplicate("client-1", 6, 42), is(true));
+    }
+
+    /**
+     * Test that the clients with an empty identifier are not tracked, as they can't be told apart
+     */
+    @Test
+    public void testEmptyClientId() {
+        DuplicateDetector detector = new DuplicateDetector(4, 100);
+        detector.record("", 1, 42);
+        assertThat(detector.isDuplicate("", 1, 42), is(false));
+        assertThat(detector.toMap().get("clients"), is(0));
+    }
+
+    /**
+     * Test that the detection does nothing when disabled
+     */
+    @Test
+    public void testDisabled() {
+        DuplicateDetector detector = new DuplicateDetector(0, 100);
+        detector.record("client-1", 1, 42);
+        assertThat(detector.isEnabled(), is(false));
+        assertThat(detector.isDuplicate("client-1", 1, 42), is(false));
+        assertThat(detector.toMap().get("clients"), is(0));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for {@link KeepAliveMonitor}
+ */
+public class KeepAliveMonitorTest {
+
+    /**
+     * Test that the timeout is re-armed while the client is active and the connection is closed when it is not
+     */
+    @Test
+    public void testKeepAlive() throws Exception {
+        ManualTimer timer = new ManualTimer();
+        KeepAliveMonitor monitor = new KeepAliveMonitor(timer);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ClientSession session = new ClientSession("client-1", channel);
+
+        monitor.watch(session, 10);
+        assertThat(timer.delays.get(0), is(TimeUnit.SECONDS.toNanos(15)));
+
+        // activity 5 seconds ago, re-armed for the remaining time
+        session.touch(System.nanoTime() - TimeUnit.SECONDS.toNanos(5));
+        timer.fire(0, channel);
+        assertThat(channel.isOpen(), is(true));
+        assertThat(timer.delays.size(), is(2));
+        assertThat(timer.delays.get(1) <= TimeUnit.SECONDS.toNanos(10), is(true));
+
+        // no activity for more than 1.5 times the keep-alive
+        session.touch(System.nanoTime() - TimeUnit.SECONDS.toNanos(16));
+        timer.fire(1, channel);
+        assertThat(channel.isOpen(), is(false));
+        assertThat(monitor.toMap().get("expired"), is(1L));
+    }
+
+    /**
+     * Test that a keep-alive of 0 disables the enforcement
+     */
+    @Test
+    public void testKeepAliveDisabled() {
+        ManualTimer timer = new ManualTimer();
+        KeepAliveMonitor monitor = new KeepAliveMonitor(timer);
+        monitor.watch(new ClientSession("client-1", new EmbeddedChannel()), 0);
+        assertThat(timer.tasks.isEmpty(), is(true));
+    }
+
+    /**
+     * Timer collecting the scheduled tasks, which are run by the test
+     */
+    private static class ManualTimer implements Timer {
+        private final List<TimerTask> tasks = new ArrayList<>();
+        private final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+            this.tasks.add(task);
+            this.delays.add(unit.toNanos(delay));
+            return mock(Timeout.class);
+        }
+
+        @Override
+        public Set<Timeout> stop() {
+            return Set.of();
+        }
+
+        void fire(int i, EmbeddedChannel channel) throws Exception {
+            this.tasks.get(i).run(mock(Timeout.class));
+            // the check runs on the channel event loop
+            channel.runPendingTasks();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link PacketIdSet}
+ */
+public class PacketIdSetTest {
+
+    /**
+     * Test adding, checking and removing packet identifiers
+     */
+    @Test
+    public void testAddContainsRemove() {
+        PacketIdSet set = new PacketIdSet();
+        assertThat(set.isEmpty(), is(true));
+
+        assertThat(set.add(1), is(true));
+        assertThat(set.add(65535), is(true));
+        assertThat(set.add(1), is(false));
+        assertThat(set.size(), is(2));
+        assertThat(set.contains(1), is(true));
+        assertThat(set.contains(2), is(false));
+
+        assertThat(set.remove(1), is(true));
+        assertThat(set.remove(1), is(false));
+        assertThat(set.contains(65535), is(true));
+        assertThat(set.size(), is(1));
+    }
+
+    /**
+     * Test the set growing and the removals keeping the other identifiers reachable
+     */
+    @Test
+    public void testGrowAndRemove() {
+        PacketIdSet set = new PacketIdSet();
+        for (int i = 1; i <= 1000; i++) {
+            set.add(i);
+        }
+        assertThat(set.size(), is(1000));
+
+        // remove the even ones, the odd ones must still be found
+        for (int i = 2; i <= 1000; i += 2) {
+            assertThat(set.remove(i), is(true));
+        }
+        for (int i = 1; i <= 1000; i++) {
+            assertThat(set.contains(i), is(i % 2 == 1));
+        }
+
+        int[] ids = set.toArray();
+        Arrays.sort(ids);
+        assertThat(ids.length, is(500));
+        assertThat(ids[0], is(1));
+        assertThat(ids[499], is(999));
+
+        set.clear();
+        assertThat(set.isEmpty(), is(true));
+    }
+
+    /**
+     * Test that invalid packet identifiers are rejected
+     */
+    @Test
+    public void testInvalidPacketId() {
+        PacketIdSet set = new PacketIdSet();
+        assertThrows(IllegalArgumentException.class, () -> set.add(0));
+        assertThrows(IllegalArgumentException.class, () -> set.contains(65536));
+    }
+}
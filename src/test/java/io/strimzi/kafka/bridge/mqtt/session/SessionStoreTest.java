@@ -0,0 +1,108 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link SessionStore}
+ */
+public class SessionStoreTest {
+
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.path = Files.createTempFile("sessions", ".db");
+        Files.delete(this.path);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.path);
+    }
+
+    /**
+     * Test saving, loading and removing sessions
+     */
+    @Test
+    public void testSaveLoadRemove() throws IOException {
+        try (SessionStore store = new SessionStore(this.path)) {
+            PacketIdSet packetIds = new PacketIdSet();
+            packetIds.add(1);
+            packetIds.add(65535);
+
+            assertThat(store.load("client-1"), is(nullValue()));
+            assertThat(store.save("client-1", packetIds), is(true));
+            int[] loaded = store.load("client-1");
+            Arrays.sort(loaded);
+            assertThat(Arrays.equals(loaded, new int[]{1, 65535}), is(true));
+
+            packetIds.remove(1);
+            store.save("client-1", packetIds);
+            assertThat(Arrays.equals(store.load("client-1"), new int[]{65535}), is(true));
+            assertThat(store.size(), is(1));
+
+            assertThat(store.remove("client-1"), is(true));
+            assertThat(store.remove("client-1"), is(false));
+            assertThat(store.load("client-1"), is(nullValue()));
+            assertThat(store.size(), is(0));
+
+            // too long to be stored
+            assertThat(store.save("c".repeat(SessionStore.MAX_CLIENT_ID_BYTES + 1), packetIds), is(false));
+        }
+    }
+
+    /**
+     * Test that the sessions are restored when the store is opened again, also across multiple segments
+     */
+    @Test
+    public void testReopen() throws IOException {
+        int sessions = 70000;
+        PacketIdSet packetIds = new PacketIdSet();
+        packetIds.add(42);
+        try (SessionStore store = new SessionStore(this.path)) {
+            for (int i = 0; i < sessions; i++) {
+                store.save("client-" + i, packetIds);
+            }
+            for (int i = 0; i < sessions; i += 2) {
+                store.remove("client-" + i);
+            }
+        }
+
+        try (SessionStore store = new SessionStore(this.path)) {
+            assertThat(store.size(), is(sessions / 2));
+            for (int i = 0; i < sessions; i++) {
+                int[] loaded = store.load("client-" + i);
+                if (i % 2 == 0) {
+                    assertThat(loaded, is(nullValue()));
+                } else {
+                    assertThat(Arrays.equals(loaded, new int[]{42}), is(true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a file which is not a session store is rejected
+     */
+    @Test
+    public void testInvalidFile() throws IOException {
+        Files.writeString(this.path, "not a session store");
+        assertThrows(IOException.class, () -> new SessionStore(this.path));
+    }
+}
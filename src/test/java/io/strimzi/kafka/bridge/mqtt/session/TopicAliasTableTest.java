@@ -0,0 +1,63 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.session;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.MappedTopic;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingResult;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link TopicAliasTable}
+ */
+public class TopicAliasTableTest {
+
+    /**
+     * Test setting, replacing and getting the topic aliases, across the table growth
+     */
+    @Test
+    public void testPutAndGet() {
+        TopicAliasTable table = new TopicAliasTable(100);
+        assertThat(table.get(1), is(nullValue()));
+
+        MappedTopic first = mappedTopic("sensors/1/temperature");
+        table.put(1, first);
+        assertThat(table.get(1), is(first));
+
+        MappedTopic last = mappedTopic("sensors/100/temperature");
+        table.put(100, last);
+        assertThat(table.get(100), is(last));
+        assertThat(table.get(1), is(first));
+        assertThat(table.get(50), is(nullValue()));
+
+        MappedTopic replaced = mappedTopic("sensors/1/humidity");
+        table.put(1, replaced);
+        assertThat(table.get(1), is(replaced));
+    }
+
+    /**
+     * Test the range of the accepted topic aliases
+     */
+    @Test
+    public void testRange() {
+        TopicAliasTable table = new TopicAliasTable(10);
+        assertThat(table.isValid(0), is(false));
+        assertThat(table.isValid(1), is(true));
+        assertThat(table.isValid(10), is(true));
+        assertThat(table.isValid(11), is(false));
+        assertThrows(IllegalArgumentException.class, () -> table.put(11, mappedTopic("sensors/11/temperature")));
+        assertThrows(IllegalArgumentException.class, () -> new TopicAliasTable(0));
+    }
+
+    private static MappedTopic mappedTopic(String mqttTopic) {
+        return new MappedTopic(mqttTopic, mqttTopic.getBytes(StandardCharsets.UTF_8), new MappingResult("kafka-topic", null));
+    }
+}
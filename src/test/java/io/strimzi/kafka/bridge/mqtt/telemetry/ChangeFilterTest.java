@@ -0,0 +1,126 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link ChangeFilter}
+ */
+public class ChangeFilterTest {
+
+    /**
+     * Test that only the changed payloads are forwarded, per MQTT topic
+     */
+    @Test
+    public void testChanged() {
+        ChangeFilter filter = new ChangeFilter(100);
+        long now = System.nanoTime();
+
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now), is(true));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now), is(false));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now + TimeUnit.HOURS.toNanos(1)), is(false));
+        // the same payload on another topic
+        assertThat(filter.isChanged("sensors/2/temperature", payload("21.5"), 0, now), is(true));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.6"), 0, now), is(true));
+        // back to a previous value, which is a change
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now), is(true));
+
+        ByteBuf payload = payload("21.5");
+        filter.isChanged("sensors/1/temperature", payload, 0, now);
+        // the payload is not consumed
+        assertThat(payload.readableBytes(), is(4));
+
+        assertThat(filter.toMap().get("suppressed"), is(3L));
+        assertThat(filter.toMap().get("topics"), is(2));
+    }
+
+    /**
+     * Test that an unchanged payload is forwarded once the heartbeat is elapsed
+     */
+    @Test
+    public void testHeartbeat() {
+        ChangeFilter filter = new ChangeFilter(100);
+        long now = System.nanoTime();
+
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 60, now), is(true));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 60, now + TimeUnit.SECONDS.toNanos(59)), is(false));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 60, now + TimeUnit.SECONDS.toNanos(60)), is(true));
+        // the heartbeat restarts from the last forwarded message
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 60, now + TimeUnit.SECONDS.toNanos(100)), is(false));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 60, now + TimeUnit.SECONDS.toNanos(120)), is(true));
+
+        assertThat(filter.toMap().get("heartbeats"), is(2L));
+        assertThat(filter.toMap().get("suppressed"), is(2L));
+    }
+
+    /**
+     * Test that the least recently used MQTT topics are evicted, forwarding their next message
+     */
+    @Test
+    public void testEviction() {
+        // a single topic per stripe
+        ChangeFilter filter = new ChangeFilter(16);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 1000; i++) {
+            filter.isChanged("sensors/" + i + "/temperature", payload("21.5"), 0, now);
+        }
+        assertThat((int) filter.toMap().get("topics") <= 16, is(true));
+        // evicted, so forwarded again
+        assertThat(filter.isChanged("sensors/0/temperature", payload("21.5"), 0, now), is(true));
+    }
+
+    /**
+     * Test that a payload whose send failed is forgotten, so that it is forwarded again, unless another one was forwarded since
+     */
+    @Test
+    public void testForget() {
+        ChangeFilter filter = new ChangeFilter(100);
+        long now = System.nanoTime();
+
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now), is(true));
+        filter.forget("sensors/1/temperature", ChangeFilter.hash(payload("21.5")));
+        // the re-sent message is forwarded
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now), is(true));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.5"), 0, now), is(false));
+
+        // a failure of a previous payload does not forget the last forwarded one
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.6"), 0, now), is(true));
+        filter.forget("sensors/1/temperature", ChangeFilter.hash(payload("21.5")));
+        assertThat(filter.isChanged("sensors/1/temperature", payload("21.6"), 0, now), is(false));
+    }
+
+    /**
+     * Test that two different payloads of the same size, colliding with a linear hash, are both forwarded
+     */
+    @Test
+    public void testSameSizeChanged() {
+        ChangeFilter filter = new ChangeFilter(100);
+        long now = System.nanoTime();
+
+        // the second 32-bit word compensates the edit of the first one, so a 31-based linear hash collides
+        assertThat(filter.isChanged("sensors/1/status", payload("21.5,h=A"), 0, now), is(true));
+        assertThat(filter.isChanged("sensors/1/status", payload("21.4,h=`"), 0, now), is(true));
+        assertThat(ChangeFilter.hash(payload("21.5,h=A")) == ChangeFilter.hash(payload("21.4,h=`")), is(false));
+        // a single bit flipped, on a longer payload
+        assertThat(filter.isChanged("sensors/1/status", payload("{\"door\":\"open\",\"alarm\":1}"), 0, now), is(true));
+        assertThat(filter.isChanged("sensors/1/status", payload("{\"door\":\"open\",\"alarm\":0}"), 0, now), is(true));
+
+        assertThat(filter.toMap().get("suppressed"), is(0L));
+    }
+
+    private static ByteBuf payload(String value) {
+        return Unpooled.copiedBuffer(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.strimzi.kafka.bridge.mqtt.mapper.Downsampling;
+import io.strimzi.kafka.bridge.mqtt.mapper.MappingResult;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link Downsampler}
+ */
+public class DownsamplerTest {
+
+    /**
+     * Test reading the numeric value of plain and JSON payloads
+     */
+    @Test
+    public void testParse() {
+        assertThat(Downsampler.parse(payload("21.5"), null), is(21.5));
+        assertThat(Downsampler.parse(payload(" -3 "), null), is(-3.0));
+        assertThat(Downsampler.parse(payload("{\"id\":\"s1\",\"tags\":{\"temperature\":1},\"temperature\":21.5}"), "temperature"), is(21.5));
+        assertThat(Double.isNaN(Downsampler.parse(payload("on"), null)), is(true));
+        assertThat(Double.isNaN(Downsampler.parse(payload("{\"temperature\":21.5}"), null)), is(true));
+        assertThat(Double.isNaN(Downsampler.parse(payload("{\"temperature\":\"high\"}"), "temperature")), is(true));
+        assertThat(Double.isNaN(Downsampler.parse(payload("{\"humidity\":40}"), "temperature")), is(true));
+        assertThat(Double.isNaN(Downsampler.parse(payload("21.5"), "temperature")), is(true));
+
+        // direct buffer, read through a stream, and the payload is not consumed
+        ByteBuf direct = Unpooled.directBuffer().writeBytes("{\"temperature\":21.5}".getBytes(StandardCharsets.UTF_8));
+        assertThat(Downsampler.parse(direct, "temperature"), is(21.5));
+        assertThat(direct.readableBytes(), is(20));
+    }
+
+    /**
+     * Test that a window summary is emitted when the window ends, and that the idle MQTT topics are freed
+     */
+    @Test
+    public void testWindows() {
+        DownsamplingWindows windows = new DownsamplingWindows();
+        List<String> summaries = new ArrayList<>();
+        DownsamplingWindows.Emitter emitter = (mqttTopic, kafkaTopic, kafkaKey, windowStart, windowMs, count, min, max, sum) ->
+                summaries.add(mqttTopic + " " + kafkaTopic + " " + windowStart + " " + count + " " + min + " " + max + " " + sum);
+
+        windows.add("sensors/1", "telemetry", null, 1000, 3, 10_000, emitter);
+        windows.add("sensors/1", "telemetry", null, 1000, 1, 10_500, emitter);
+        windows.add("sensors/1", "telemetry", null, 1000, 2, 10_999, emitter);
+        windows.add("sensors/2", "telemetry", null, 1000, 5, 10_100, emitter);
+        assertThat(summaries.size(), is(0));
+        assertThat(windows.size(), is(2));
+
+        // a value of the next window emits the previous one
+        windows.add("sensors/1", "telemetry", null, 1000, 7, 11_000, emitter);
+        assertThat(summaries, is(List.of("sensors/1 telemetry 10000 3 1.0 3.0 6.0")));
+
+        // the sweep emits the other ended window
+        windows.sweep(11_200, emitter);
+        assertThat(summaries.get(1), is("sensors/2 telemetry 10000 1 5.0 5.0 5.0"));
+        // no values for a whole window, so the topic is freed
+        windows.sweep(12_100, emitter);
+        assertThat(summaries.get(2), is("sensors/1 telemetry 11000 1 7.0 7.0 7.0"));
+        assertThat(windows.size(), is(1));
+        windows.sweep(13_100, emitter);
+        assertThat(windows.size(), is(0));
+        assertThat(summaries.size(), is(3));
+    }
+
+    /**
+     * Test that the slots grow and are reused once freed
+     */
+    @Test
+    public void testWindowsGrow() {
+        DownsamplingWindows windows = new DownsamplingWindows();
+        List<String> summaries = new ArrayList<>();
+        DownsamplingWindows.Emitter emitter = (mqttTopic, kafkaTopic, kafkaKey, windowStart, windowMs, count, min, max, sum) ->
+                summaries.add(mqttTopic);
+
+        for (int i = 0; i < 1000; i++) {
+            windows.add("sensors/" + i, "telemetry", null, 1000, i, 10_000, emitter);
+        }
+        assertThat(windows.size(), is(1000));
+        windows.flushAll(emitter);
+        assertThat(summaries.size(), is(1000));
+        assertThat(summaries.get(999), is("sensors/999"));
+        windows.sweep(11_000, emitter);
+        assertThat(windows.size(), is(0));
+        windows.add("sensors/new", "telemetry", null, 1000, 1, 11_000, emitter);
+        assertThat(windows.size(), is(1));
+    }
+
+    /**
+     * Test the summary records sent by the event loop
+     */
+    @Test
+    public void testSummaryRecord() throws Exception {
+        List<ProducerRecord<String, byte[]>> records = new CopyOnWriteArrayList<>();
+        Downsampler downsampler = new Downsampler(record -> {
+            records.add(record);
+            return CompletableFuture.completedFuture(null);
+        }, 10);
+        EventLoop eventLoop = new DefaultEventLoop();
+        MappingResult mappingResult = new MappingResult("telemetry", "sensor-1", null);
+        Downsampling downsampling = new Downsampling(3_600_000, "temperature");
+
+        eventLoop.submit(() -> {
+            downsampler.add(eventLoop, mappingResult, downsampling, "sensors/1", payload("{\"temperature\":20}"));
+            downsampler.add(eventLoop, mappingResult, downsampling, "sensors/1", payload("{\"temperature\":22}"));
+            downsampler.add(eventLoop, mappingResult, downsampling, "sensors/1", payload("{\"humidity\":40}"));
+        }).get(5, TimeUnit.SECONDS);
+        downsampler.flushAll();
+
+        assertThat(records.size(), is(1));
+        ProducerRecord<String, byte[]> record = records.get(0);
+        assertThat(record.topic(), is("telemetry"));
+        assertThat(record.key(), is("sensor-1"));
+        String summary = new String(record.value(), StandardCharsets.UTF_8);
+        assertThat(summary.contains("\"mqttTopic\":\"sensors/1\""), is(true));
+        assertThat(summary.contains("\"count\":2,\"min\":20.0,\"max\":22.0,\"avg\":21.0"), is(true));
+        assertThat(downsampler.toMap().get("samples"), is(2L));
+        assertThat(downsampler.toMap().get("unparsable"), is(1L));
+        assertThat(downsampler.toMap().get("topics"), is(1));
+        eventLoop.shutdownGracefully();
+    }
+
+    /**
+     * Test a summary which could not be delivered is counted as a failure
+     */
+    @Test
+    public void testSummaryFailure() throws Exception {
+        Downsampler downsampler = new Downsampler(record -> CompletableFuture.failedFuture(new IllegalStateException("undelivered")), 10);
+        EventLoop eventLoop = new DefaultEventLoop();
+        MappingResult mappingResult = new MappingResult("telemetry", null, null);
+
+        eventLoop.submit(() -> downsampler.add(eventLoop, mappingResult, new Downsampling(3_600_000, null), "sensors/1", payload("20")))
+                .get(5, TimeUnit.SECONDS);
+        downsampler.flushAll();
+
+        assertThat(downsampler.toMap().get("summaries"), is(1L));
+        assertThat(downsampler.toMap().get("failures"), is(1L));
+        eventLoop.shutdownGracefully();
+    }
+
+    private static ByteBuf payload(String value) {
+        return Unpooled.copiedBuffer(value, StandardCharsets.UTF_8);
+    }
+}
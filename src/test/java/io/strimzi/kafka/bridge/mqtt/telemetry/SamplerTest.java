@@ -0,0 +1,75 @@
+/*
+ * Copyright Strimzi authors.
+ * License: Apache License 2.0 (see the file LICENSE or http://apache.org/licenses/LICENSE-2.0.html).
+ */
+package io.strimzi.kafka.bridge.mqtt.telemetry;
+
+import io.strimzi.kafka.bridge.mqtt.mapper.Sampling;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link Sampler}
+ */
+public class SamplerTest {
+
+    /**
+     * Test sending one message every N, per MQTT topic
+     */
+    @Test
+    public void testEvery() {
+        Sampler sampler = new Sampler(100);
+        Sampling sampling = new Sampling(3, 100);
+
+        StringBuilder sampled = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            sampled.append(sampler.sample("debug/1", sampling) ? 'x' : '.');
+        }
+        assertThat(sampled.toString(), is("x..x..x"));
+        // counted separately from the other topics
+        assertThat(sampler.sample("debug/2", sampling), is(true));
+        assertThat(sampler.sample("debug/2", sampling), is(false));
+
+        assertThat(sampler.toMap().get("forwarded"), is(4L));
+        assertThat(sampler.toMap().get("sampledOut"), is(5L));
+    }
+
+    /**
+     * Test sending a random percentage of the messages
+     */
+    @Test
+    public void testPercentage() {
+        Sampler sampler = new Sampler(100);
+
+        int sampled = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (sampler.sample("debug/" + (i % 10), new Sampling(0, 10))) {
+                sampled++;
+            }
+        }
+        assertThat(sampled > 9_000 && sampled < 11_000, is(true));
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(sampler.sample("debug/1", new Sampling(0, 0)), is(false));
+            assertThat(sampler.sample("debug/1", new Sampling(0, 100)), is(true));
+        }
+    }
+
+    /**
+     * Test that the least recently used MQTT topics are evicted, restarting their count
+     */
+    @Test
+    public void testEviction() {
+        Sampler sampler = new Sampler(2);
+        Sampling sampling = new Sampling(10, 100);
+
+        assertThat(sampler.sample("debug/1", sampling), is(true));
+        assertThat(sampler.sample("debug/1", sampling), is(false));
+        sampler.sample("debug/2", sampling);
+        sampler.sample("debug/3", sampling);
+        // evicted, so the count restarts
+        assertThat(sampler.sample("debug/1", sampling), is(true));
+    }
+}